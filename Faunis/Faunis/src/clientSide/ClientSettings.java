@@ -24,6 +24,8 @@ import java.util.Properties;
 
 import common.Logger;
 import common.Settings;
+import common.transport.OrderCodec;
+import common.transport.WireFormat;
 
 public class ClientSettings extends Settings {
 	private String decoGraphicsPath;
@@ -36,6 +38,9 @@ public class ClientSettings extends Settings {
 	private int deltaLevelAmplitude = 2;
 	private String host = null; // the hostname, or null for loopback
 	private int port = 1024;	// the port through which to connect to the server
+	private boolean framedTransport = false; // must match the server's setting
+	private WireFormat wireFormat = WireFormat.serialization; // must match the server's setting
+	private OrderCodec orderCodec;
 	private int frameRate = 20;	// frames per second
 	private Color mapBackgroundColor = new Color(0, 180, 0); // default map background color
 
@@ -103,6 +108,24 @@ public class ClientSettings extends Settings {
 		return port;
 	}
 
+	/** If true, orders are sent as length-prefixed frames, as a server
+	 * with framed transport or NIO reception expects them. */
+	public boolean framedTransport() {
+		return framedTransport;
+	}
+
+	public WireFormat wireFormat() {
+		return wireFormat;
+	}
+
+	/** Returns the codec with which framed orders are encoded. */
+	public synchronized OrderCodec orderCodec() {
+		if (orderCodec == null) {
+			orderCodec = wireFormat.createCodec();
+		}
+		return orderCodec;
+	}
+
 	public int frameRate() {
 		return frameRate;
 	}
@@ -147,6 +170,8 @@ public class ClientSettings extends Settings {
 			host = null;
 		}
 		port = Integer.parseInt(properties.getProperty("port", "1024"));
+		framedTransport = Boolean.parseBoolean(properties.getProperty("framedTransport", "false"));
+		wireFormat = WireFormat.valueOf(properties.getProperty("wireFormat", "serialization"));
 		commandPrefix = properties.getProperty("commandPrefix");
 		connectCommand = properties.getProperty("connect");
 		disconnectCommand = properties.getProperty("disconnect");
@@ -18,8 +18,7 @@
  */
 package clientSide.animation;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledFuture;
 
 import common.Logger;
 import common.enums.AniEndType;
@@ -31,7 +30,7 @@ public class Animator<ANIMATEABLE extends Animateable> implements ModTimer {
 	protected boolean stopRunning;
 	protected AnimatorModule<ANIMATEABLE, ?, ?> parent;
 	protected ANIMATEABLE animateable;
-	private Timer timer;
+	private ScheduledFuture<?> scheduledTask;
 	private AnimatingTask animatingTask;
 	protected AniEndType endType;
 	private long interval;
@@ -43,7 +42,6 @@ public class Animator<ANIMATEABLE extends Animateable> implements ModTimer {
 			int maxFrameIndex) {
 		this.parent = parent;
 		this.animateable = animateable;
-		this.timer = new Timer();
 		this.animatingTask = new AnimatingTask();
 		this.runningMutexKey = new Object();
 		synchronized(runningMutexKey) {
@@ -62,7 +60,15 @@ public class Animator<ANIMATEABLE extends Animateable> implements ModTimer {
 	 */
 	@Override
 	public void start() {
-		this.timer.scheduleAtFixedRate(animatingTask, 0, interval);
+		ScheduledFuture<?> future = parent.scheduler().scheduleAtFixedRate(animatingTask, interval);
+		synchronized (runningMutexKey) {
+			this.scheduledTask = future;
+			// the task may already have finished and stopped before
+			// we got hold of the future
+			if (stopRunning) {
+				scheduledTask.cancel(false);
+			}
+		}
 	}
 
 	public ANIMATEABLE getAnimateable() {
@@ -75,7 +81,9 @@ public class Animator<ANIMATEABLE extends Animateable> implements ModTimer {
 	@Override
 	public void stop() {
 		synchronized (runningMutexKey) {
-			this.timer.cancel();
+			if (scheduledTask != null) {
+				scheduledTask.cancel(false);
+			}
 			stopRunning = true;
 			animateable.resetAnimation();
 		}
@@ -87,7 +95,7 @@ public class Animator<ANIMATEABLE extends Animateable> implements ModTimer {
 		parent.unregisterModTimer(animateable);
 	}
 
-	protected class AnimatingTask extends TimerTask {
+	protected class AnimatingTask implements Runnable {
 		@Override
 		public void run() {
 			// increase animateable's frame index and
@@ -25,7 +25,6 @@ import java.io.ObjectOutputStream;
 import java.net.Socket;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -34,6 +33,7 @@ import javax.swing.SwingUtilities;
 import tools.ConcurrentDupSortedMap;
 import listeners.StreamExceptionListener;
 import mux.MuxObjectInputStream;
+import mux.MuxObjectInputStream.Inlet;
 import clientSide.ClientSettings;
 import clientSide.MessageType;
 import clientSide.animation.Animator;
@@ -65,7 +65,7 @@ public class Client implements ZOrderManager, ModuleOwner {
 
 	ObjectInputStream serverInput;
 	ObjectOutputStream serverOutput;
-	final ArrayBlockingQueue<UCOrder> userInput;
+	final Inlet userInput;
 
 	final MuxObjectInputStream mux;
 
@@ -111,7 +111,6 @@ public class Client implements ZOrderManager, ModuleOwner {
 	}
 
 	public Client() {
-		this.userInput = new ArrayBlockingQueue<UCOrder>(16);
 		this.currentPlayers = new ConcurrentHashMap<String, ClientPlayer>();
 		this.movingPlayers = new ConcurrentHashMap<ClientPlayer, Mover<ClientPlayer, Client>>();
 		this.animatedPlayers = new ConcurrentHashMap<ClientPlayer, Animator<ClientPlayer>>();
@@ -121,9 +120,10 @@ public class Client implements ZOrderManager, ModuleOwner {
 											   // yet initialised and therefore can't be read yet
 
 		this.mux = new MuxObjectInputStream(
-			"Client", 16, true, new ObjectInputStream[0], new Class[0],
-			new BlockingQueue[] {this.userInput}, new Class[] {UCOrder.class}
+			"Client", 16, true, new ObjectInputStream[0], new Class<?>[0],
+			new BlockingQueue<?>[0], new Class<?>[0]
 		);
+		this.userInput = mux.addInlet(UCOrder.class);
 		mux.addStreamExceptionListener(new StreamExceptionListener() {
 			@Override
 			public void onEvent(
@@ -30,6 +30,7 @@ import common.butlerToClientOrders.*;
 import common.enums.ClientStatus;
 import common.graphics.GraphicalDecoStatus;
 import common.graphics.PlayerData;
+import common.graphics.PlayerDataDelta;
 
 
 public class ClientReceiver {
@@ -87,11 +88,31 @@ public class ClientReceiver {
 		parent.playerModule.remove(playerName, null);
 	}
 
+	/** Applies the changes to the existing ClientPlayer. Only movement
+	 * and animation that are affected by the changes are restarted. */
 	public void changeChar(BCChangeCharOrder order) {
-		PlayerData status = order.getGraphStatus();
-		ClientPlayer newPlayer = new ClientPlayer(status, parent, parent);
 		String playerName = order.getPlayerName();
-		parent.playerModule.removeAndAdd(playerName, newPlayer, null , null);
+		ClientPlayer player = parent.currentPlayers.get(playerName);
+		if (player == null) {
+			Logger.log("Received change for unknown player "+playerName+"!");
+			return;
+		}
+		PlayerDataDelta delta = order.getDelta();
+		boolean movementChanged = delta.has(PlayerDataDelta.position)
+								  || delta.has(PlayerDataDelta.path);
+		boolean animationChanged = delta.has(PlayerDataDelta.animation);
+		if (movementChanged) {
+			parent.moverModule.tryStop(player);
+		}
+		if (animationChanged) {
+			parent.animatorModule.tryStop(player);
+		}
+		player.applyDelta(delta);
+		if (movementChanged && player.hasPath()) {
+			parent.moverModule.tryStart(player, null);
+		} else if (animationChanged && !player.hasPath() && player.hasAnimation()) {
+			parent.animatorModule.tryStart(player, player.getAnimation());
+		}
 	}
 
 
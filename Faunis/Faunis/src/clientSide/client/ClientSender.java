@@ -56,6 +56,8 @@ import common.clientToButlerOrders.CBUnloadPlayerOrder;
 import common.enums.ClientStatus;
 import common.enums.InventoryType;
 import common.enums.Mood;
+import common.transport.FramedObjectInputStream;
+import common.transport.FramedObjectOutputStream;
 
 public class ClientSender {
 	private Client parent;
@@ -126,8 +128,16 @@ public class ClientSender {
 				// create input and output stream:
 				Logger.log("Try to create input / output streams...");
 				try {
-					parent.serverOutput = new ObjectOutputStream(parent.socket.getOutputStream());
-					parent.serverInput = new ObjectInputStream(parent.socket.getInputStream());
+					ClientSettings settings = parent.clientSettings;
+					if (settings.framedTransport()) {
+						parent.serverOutput = new FramedObjectOutputStream(
+							parent.socket.getOutputStream(), settings.orderCodec());
+						parent.serverInput = new FramedObjectInputStream(
+							parent.socket.getInputStream(), settings.orderCodec());
+					} else {
+						parent.serverOutput = new ObjectOutputStream(parent.socket.getOutputStream());
+						parent.serverInput = new ObjectInputStream(parent.socket.getInputStream());
+					}
 				} catch (IOException e) {
 					e.printStackTrace();
 					parent.logErrorMessage("Couldn't create input / output!");
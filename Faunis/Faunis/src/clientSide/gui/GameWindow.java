@@ -61,6 +61,7 @@ import common.movement.MovingTask;
 
 /** Extends GraphWin by functionality specific to Faunis. */
 public class GameWindow extends GraphWin {
+	private static final long commandTimeout = 5000; // milliseconds to wait for a parsed command
 	protected final Client parent;
 
 	private BufferedImage grassBackground; // TODO: This is just a quick hack, remove it later
@@ -339,12 +340,11 @@ public class GameWindow extends GraphWin {
 				UCParseCommandOrder order = new UCParseCommandOrder(command);
 				parent.putUCOrder(order);
 
-				Boolean response = null;
-				while (response == null) {
-					response = order.getResponse();
-					Thread.yield();
+				Boolean response = order.waitForResponse(commandTimeout);
+				if (response == null) {
+					Logger.log("Command hasn't been parsed in time: "+command);
+					return;
 				}
-
 				if (response.booleanValue() == true) {
 					commandEdit.setText(null);
 				}
@@ -29,6 +29,7 @@ import common.enums.CharacterClass;
 import common.enums.Direction;
 import common.enums.Mood;
 import common.graphics.PlayerData;
+import common.graphics.PlayerDataDelta;
 import common.movement.Moveable;
 import common.movement.MovingTask;
 import common.movement.Path;
@@ -184,6 +185,29 @@ public class ClientPlayer implements Moveable, Animateable, MapDrawable {
 		this.frame = frame;
 	}
 
+	/** Takes over the changes from given delta. Movement and animation
+	 * must have been stopped before if the delta changes them. */
+	public void applyDelta(PlayerDataDelta delta) {
+		if (delta.has(PlayerDataDelta.mood)) {
+			info.mood = delta.getMood();
+		}
+		if (delta.has(PlayerDataDelta.animation)) {
+			info.currentAnimation = delta.getAnimation();
+			this.frame = 0;
+		}
+		if (delta.has(PlayerDataDelta.position)) {
+			setX(delta.getX());
+			setY(delta.getY());
+			if (delta.getDirection() != null) {
+				info.direction = delta.getDirection();
+			}
+		}
+		if (delta.has(PlayerDataDelta.path)) {
+			info.path = delta.getPath();
+			this.deltaLevel = 0;
+		}
+	}
+
 	/** Directly sets the coordinates of this player to the given ones.
 	 * If given flag adaptDirection is set, sets the direction accordingly.
 	*/
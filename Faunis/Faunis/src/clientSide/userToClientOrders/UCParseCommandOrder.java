@@ -18,30 +18,49 @@
  */
 package clientSide.userToClientOrders;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import common.Completion;
+
 public class UCParseCommandOrder implements UCOrder {
 	private String command;
-	private Boolean response;
+	private final Completion<Boolean> response;
 
 	public UCParseCommandOrder(String command) {
 		this.command = command;
-		this.response = null;
+		this.response = new Completion<Boolean>();
 	}
 
 	public String getCommand() {
 		return command;
 	}
 
+	/** Returns null as long as the command hasn't been parsed. */
 	public Boolean getResponse() {
-		return response;
+		return response.getNow();
 	}
-	public void setResponse(Boolean response) {
-		this.response = response;
+	public void setResponse(Boolean _response) {
+		this.response.complete(_response);
+	}
+
+	/** Waits until the command has been parsed, but at most the given
+	 * number of milliseconds. Returns null if it hasn't. */
+	public Boolean waitForResponse(long timeout) {
+		try {
+			return response.get(timeout, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
 	}
 
 	@Override
 	public String toString() {
 		return "UCParseCommandOrder [command=" + command + ", response="
-				+ response + "]";
+				+ response.getNow() + "]";
 	}
 
 }
@@ -0,0 +1,38 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package common;
+
+import java.util.LinkedHashMap;
+
+/** A map that holds at most a given number of entries and forgets the
+ * least recently used one when another is added. Not thread-safe. */
+public class BoundedMap<K, V> extends LinkedHashMap<K, V> {
+	private static final long serialVersionUID = 1L;
+	private final int capacity;
+
+	public BoundedMap(int capacity) {
+		super(16, 0.75f, true);
+		this.capacity = capacity;
+	}
+
+	@Override
+	protected boolean removeEldestEntry(java.util.Map.Entry<K, V> eldest) {
+		return size() > capacity;
+	}
+}
@@ -0,0 +1,70 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package common;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/** The outcome of something that another thread does, which can be
+ * waited for without spinning. It is completed only once; all later
+ * attempts are ignored. */
+public class Completion<T> {
+	private final CountDownLatch latch;
+	private volatile T value;
+
+	public Completion() {
+		this.latch = new CountDownLatch(1);
+	}
+
+	/** Sets the value and wakes all waiting threads. Returns false if
+	 * this had been completed before, in which case nothing changes. */
+	public synchronized boolean complete(T _value) {
+		if (latch.getCount() == 0) {
+			return false;
+		}
+		this.value = _value;
+		latch.countDown();
+		return true;
+	}
+
+	public boolean isDone() {
+		return latch.getCount() == 0;
+	}
+
+	/** Returns the value if this has been completed, null otherwise. */
+	public T getNow() {
+		return value;
+	}
+
+	/** Waits until this has been completed and returns the value. */
+	public T get() throws InterruptedException {
+		latch.await();
+		return value;
+	}
+
+	/** Waits at most the given time until this has been completed and
+	 * returns the value. */
+	public T get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+		if (!latch.await(timeout, unit)) {
+			throw new TimeoutException();
+		}
+		return value;
+	}
+}
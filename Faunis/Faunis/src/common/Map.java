@@ -18,8 +18,13 @@
  */
 package common;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ShortBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import common.graphics.GraphicalDecoStatus;
 
@@ -29,17 +34,123 @@ public class Map implements Serializable {
 	private String name;
 	private int width;
 	private int height;
-	private ArrayList<GraphicalDecoStatus> decoInfos;
+	/** The names of all decorations that occur on this map. */
+	private String[] decoNames;
+	/** For every tile, row by row, the index of its decoration in
+	 * decoNames plus one, or 0 if it has none. On the server, this may
+	 * be mapped directly from a compiled map file. */
+	private transient ShortBuffer decoLayer;
+	private transient ArrayList<GraphicalDecoStatus> decoInfos;
+	/** One bit for every tile, row by row, which is set if the tile
+	 * can't be entered. Null if all tiles can be entered. */
+	private long[] blockedTiles;
+	/** Counts the changes of blockedTiles, so that whatever has been
+	 * derived from them can tell when it is outdated. */
+	private transient volatile int collisionVersion;
 	private ArrayList<Link> links;
+	/** For every tile, row by row, the index of its outgoing link in
+	 * links plus one, or 0 if it has none. Only used if the map has
+	 * many links compared to its size, otherwise see linkTiles. */
+	private transient int[] linkIndex;
+	/** An open addressing hash table from packed tile coordinates
+	 * (y * width + x) to the index of the tile's link in links, for
+	 * maps with few links. Free slots contain -1 in linkTiles. */
+	private transient int[] linkTiles;
+	private transient int[] linkIds;
+	private transient int linkShift;
+	/** Above how many tiles per link the hash table is used. */
+	private static final int sparseTilesPerLink = 64;
 
+	/** decoNames and decoLayer may be null if the map has no decorations,
+	 * blockedTiles if it has no obstacles (see blockedTiles). */
 	public Map(String name, int width, int height,
-				ArrayList<GraphicalDecoStatus> decoInfos,
-				ArrayList<Link> links) {
+				String[] decoNames, ShortBuffer decoLayer,
+				long[] blockedTiles, ArrayList<Link> links) {
+		assert(decoLayer == null || decoLayer.capacity() == width * height);
+		assert(blockedTiles == null || blockedTiles.length == blockedTilesLength(width, height));
 		this.name = name;
 		this.width = width;
 		this.height = height;
-		this.decoInfos = decoInfos;
+		this.decoNames = decoNames;
+		this.decoLayer = decoLayer;
+		this.blockedTiles = blockedTiles;
 		this.links = links;
+		indexLinks();
+	}
+
+	private void indexLinks() {
+		linkIndex = null;
+		linkTiles = null;
+		linkIds = null;
+		if (links == null || links.isEmpty()) {
+			return;
+		}
+		int tiles = width * height;
+		if (tiles <= links.size() * sparseTilesPerLink) {
+			linkIndex = new int[tiles];
+			for (int i = 0; i < links.size(); i++) {
+				int tile = tileOf(links.get(i));
+				// like a linear search, the first link on a tile wins
+				if (tile >= 0 && linkIndex[tile] == 0) {
+					linkIndex[tile] = i + 1;
+				}
+			}
+		} else {
+			int capacity = Integer.highestOneBit(links.size() * 2 - 1) << 1;
+			linkTiles = new int[capacity];
+			linkIds = new int[capacity];
+			linkShift = 32 - Integer.numberOfTrailingZeros(capacity);
+			Arrays.fill(linkTiles, -1);
+			for (int i = 0; i < links.size(); i++) {
+				int tile = tileOf(links.get(i));
+				if (tile < 0) {
+					continue;
+				}
+				int slot = slotOf(tile);
+				if (linkTiles[slot] != tile) {
+					linkTiles[slot] = tile;
+					linkIds[slot] = i;
+				}
+			}
+		}
+	}
+
+	/** Returns the packed coordinate of the source tile of given link,
+	 * or -1 if it lies outside of this map. */
+	private int tileOf(Link link) {
+		int x = link.getSourceX();
+		int y = link.getSourceY();
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			return -1;
+		}
+		return y * width + x;
+	}
+
+	/** Returns the slot of linkTiles that contains given tile, or the
+	 * free slot where it belongs. */
+	private int slotOf(int tile) {
+		int mask = linkTiles.length - 1;
+		int slot = (tile * 0x9e3779b9) >>> linkShift;
+		while (linkTiles[slot] != -1 && linkTiles[slot] != tile) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/** Returns the index in links of the link at given tile, or -1. */
+	private int linkIdAt(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			return -1;
+		}
+		int tile = y * width + x;
+		if (linkIndex != null) {
+			return linkIndex[tile] - 1;
+		}
+		if (linkTiles != null) {
+			int slot = slotOf(tile);
+			return linkTiles[slot] == tile ? linkIds[slot] : -1;
+		}
+		return -1;
 	}
 
 	public String getName() {
@@ -54,23 +165,131 @@ public class Map implements Serializable {
 		return height;
 	}
 
-	public ArrayList<GraphicalDecoStatus> getDecoInfos() {
+	/** Returns the name of the decoration at given tile, or null. */
+	public String getDecoName(int x, int y) {
+		if (decoLayer == null || x < 0 || y < 0 || x >= width || y >= height) {
+			return null;
+		}
+		int index = decoLayer.get(y * width + x);
+		return index == 0 ? null : decoNames[index-1];
+	}
+
+	public String[] getDecoNames() {
+		return decoNames;
+	}
+
+	/** Returns the deco layer, see decoLayer. Don't change its position. */
+	public ShortBuffer getDecoLayer() {
+		return decoLayer;
+	}
+
+	/** Returns all decorations of this map, or null if it has none.
+	 * The list is created on first call. */
+	public synchronized ArrayList<GraphicalDecoStatus> getDecoInfos() {
+		if (decoInfos == null && decoLayer != null) {
+			decoInfos = new ArrayList<GraphicalDecoStatus>();
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					int index = decoLayer.get(y * width + x);
+					if (index != 0) {
+						GraphicalDecoStatus decoStatus = new GraphicalDecoStatus();
+						decoStatus.x = x;
+						decoStatus.y = y;
+						decoStatus.name = decoNames[index-1];
+						decoInfos.add(decoStatus);
+					}
+				}
+			}
+		}
 		return decoInfos;
 	}
 
+	/** Returns true if given tile can't be entered. That includes all
+	 * tiles outside of the map. Takes constant time. */
+	public boolean isBlocked(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			return true;
+		}
+		if (blockedTiles == null) {
+			return false;
+		}
+		int tile = y * width + x;
+		return (blockedTiles[tile >>> 6] & (1L << tile)) != 0;
+	}
+
+	/** Returns the bits of all tiles, see blockedTiles. Don't change them. */
+	public long[] getBlockedTiles() {
+		return blockedTiles;
+	}
+
+	/** Marks given tile of this map as blocked or free, and counts
+	 * the change in the collision version. */
+	public synchronized void setBlocked(int x, int y, boolean blocked) {
+		assert(x >= 0 && y >= 0 && x < width && y < height);
+		if (blockedTiles == null) {
+			if (!blocked) {
+				return;
+			}
+			blockedTiles = new long[blockedTilesLength(width, height)];
+		}
+		setBlocked(blockedTiles, width, x, y, blocked);
+		collisionVersion++;
+	}
+
+	/** Returns how often the blocked tiles of this map have been changed. */
+	public int getCollisionVersion() {
+		return collisionVersion;
+	}
+
+	/** Returns how many longs the blockedTiles of a map of given size have. */
+	public static int blockedTilesLength(int width, int height) {
+		return (width * height + 63) >>> 6;
+	}
+
+	/** Marks given tile in given blockedTiles as blocked or free. */
+	public static void setBlocked(long[] blockedTiles, int width, int x, int y, boolean blocked) {
+		int tile = y * width + x;
+		if (blocked) {
+			blockedTiles[tile >>> 6] |= 1L << tile;
+		} else {
+			blockedTiles[tile >>> 6] &= ~(1L << tile);
+		}
+	}
+
 	public ArrayList<Link> getLinks() {
 		return links;
 	}
 
+	/** Returns the link that starts at given tile, or null. Takes
+	 * constant time. */
 	public Link getOutgoingLink(int x, int y) {
-		if (links == null) {
-			return null;
-		}
-		for (Link link : links) {
-			if (x==link.getSourceX() && y==link.getSourceY()) {
-				return link;
+		int id = linkIdAt(x, y);
+		return id < 0 ? null : links.get(id);
+	}
+
+	/** Returns true if a link starts at given tile. */
+	public boolean isLink(int x, int y) {
+		return linkIdAt(x, y) >= 0;
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		short[] layer = null;
+		if (decoLayer != null) {
+			layer = new short[decoLayer.capacity()];
+			for (int i = 0; i < layer.length; i++) {
+				layer[i] = decoLayer.get(i);
 			}
 		}
-		return null;
+		out.writeObject(layer);
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		short[] layer = (short[]) in.readObject();
+		if (layer != null) {
+			decoLayer = ShortBuffer.wrap(layer);
+		}
+		indexLinks();
 	}
 }
@@ -0,0 +1,100 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package common;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+import mux.MuxObjectInputStream;
+
+/** Creates the threads that spend their lives waiting in blocking calls:
+ * those of the reception, the connections, the Muxes and the workers.
+ * By default, they are platform threads. After useVirtualThreads(),
+ * they are virtual threads, whose stacks take a few kilobytes of heap
+ * instead of a fixed reservation each, so that many more connections
+ * fit into the same memory. <br />
+ * Virtual threads exist from Java 21 on. Since Faunis is built for older
+ * versions, they are found through reflection. Note that virtual threads
+ * are always daemon threads. <br />
+ * Before Java 24, a virtual thread that blocks inside a synchronized block
+ * pins the platform thread that carries it. Faunis does that a lot (e.g.
+ * logging while it holds a player), so that the few carrier threads can
+ * all end up pinned by threads that wait for each other, and the server
+ * stalls. Therefore virtual threads are only used from Java 24 on. */
+public class Threads {
+	/** null means platform threads */
+	private static volatile ThreadFactory factory = null;
+
+	/** Lets newThread() and the Muxes create virtual threads from now on.
+	 * Returns false and leaves everything as it was if the JVM doesn't
+	 * support them, or if they would pin their carriers while holding a
+	 * monitor, see monitorsPinCarriers(). */
+	public static synchronized boolean useVirtualThreads() {
+		if (factory != null) {
+			return true;
+		}
+		if (monitorsPinCarriers()) {
+			return false;
+		}
+		ThreadFactory virtualFactory;
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			// the builder's own class isn't public, but its interface is
+			Method factoryMethod = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+			virtualFactory = (ThreadFactory) factoryMethod.invoke(builder);
+		} catch (ReflectiveOperationException e) {
+			return false;
+		} catch (UnsupportedOperationException e) {
+			// preview feature that hasn't been enabled
+			return false;
+		}
+		factory = virtualFactory;
+		MuxObjectInputStream.setThreadFactory(virtualFactory);
+		return true;
+	}
+
+	/** Returns true if this JVM is older than Java 24, where virtual
+	 * threads pin their carrier threads while they hold a monitor. */
+	public static boolean monitorsPinCarriers() {
+		String version = System.getProperty("java.specification.version");
+		try {
+			return Integer.parseInt(version) < 24;
+		} catch (NumberFormatException e) {
+			// "1.7" and the like
+			return true;
+		}
+	}
+
+	/** Returns whether new threads are virtual ones. */
+	public static boolean virtual() {
+		return factory != null;
+	}
+
+	/** Creates a thread with given name that runs given runnable, without
+	 * starting it. */
+	public static Thread newThread(Runnable runnable, String name) {
+		ThreadFactory threadFactory = factory;
+		if (threadFactory == null) {
+			return new Thread(runnable, name);
+		}
+		Thread thread = threadFactory.newThread(runnable);
+		thread.setName(name);
+		return thread;
+	}
+}
@@ -33,6 +33,11 @@ public class BCAddCharOrder extends BCOrder {
 		this.graphStatus = order.getGraphStatus();
 	}
 
+	public BCAddCharOrder(String playerName, PlayerData graphStatus) {
+		this.playerName = playerName;
+		this.graphStatus = graphStatus;
+	}
+
 	public String getPlayerName() {
 		return playerName;
 	}
@@ -20,25 +20,30 @@ package common.butlerToClientOrders;
 
 import serverSide.mapmanToButlerOrders.MBChangeCharOrder;
 
-import common.graphics.PlayerData;
+import common.graphics.PlayerDataDelta;
 
 /** The butler tells the client that the character defined by this order
  * has changed the graphical status, so that the client can adjust the
- * way the character is displayed. */
+ * way the character is displayed. Only the changed fields are sent. */
 public class BCChangeCharOrder extends BCOrder {
-	private static final long serialVersionUID = 1L;
+	private static final long serialVersionUID = 2L;
 	private String playerName;
-	private PlayerData graphStatus;
+	private PlayerDataDelta delta;
 	public BCChangeCharOrder(MBChangeCharOrder order) {
 		this.playerName = order.getPlayerName();
-		this.graphStatus = order.getGraphStatus();
+		this.delta = order.getDelta();
+	}
+
+	public BCChangeCharOrder(String playerName, PlayerDataDelta delta) {
+		this.playerName = playerName;
+		this.delta = delta;
 	}
 
 	public String getPlayerName() {
 		return playerName;
 	}
 
-	public PlayerData getGraphStatus() {
-		return graphStatus;
+	public PlayerDataDelta getDelta() {
+		return delta;
 	}
 }
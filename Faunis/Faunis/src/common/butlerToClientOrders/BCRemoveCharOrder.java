@@ -30,6 +30,10 @@ public class BCRemoveCharOrder extends BCOrder {
 		this.playerName = order.getPlayerName();
 	}
 
+	public BCRemoveCharOrder(String playerName) {
+		this.playerName = playerName;
+	}
+
 	public String getPlayerName() {
 		return playerName;
 	}
@@ -48,4 +48,19 @@ public class PlayerData implements Serializable {
 	public boolean hasAnimation() {
 		return (currentAnimation != null);
 	}
+
+	/** Returns a shallow copy; path and accessoires are shared. */
+	public PlayerData copy() {
+		PlayerData result = new PlayerData();
+		result.name = name;
+		result.type = type;
+		result.mood = mood;
+		result.x = x;
+		result.y = y;
+		result.direction = direction;
+		result.path = path;
+		result.currentAnimation = currentAnimation;
+		result.accessoires = accessoires;
+		return result;
+	}
 }
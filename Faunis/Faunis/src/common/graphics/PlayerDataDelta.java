@@ -0,0 +1,172 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package common.graphics;
+
+import java.io.Serializable;
+
+import common.enums.Direction;
+import common.enums.Mood;
+import common.movement.Path;
+
+/** Describes which parts of a player's PlayerData have changed, and
+ * contains only their new values. Which fields are set is stored in a
+ * bitmask, so that e.g. a null animation can be told apart from an
+ * animation that hasn't changed. */
+public class PlayerDataDelta implements Serializable {
+	private static final long serialVersionUID = 1L;
+	public static final int mood = 1;
+	public static final int animation = 2;
+	/** coordinates and direction */
+	public static final int position = 4;
+	public static final int path = 8;
+
+	private int changedFields;
+	private Mood newMood;
+	private String newAnimation;
+	private int newX;
+	private int newY;
+	private Direction newDirection;
+	private Path newPath;
+
+	public PlayerDataDelta() {
+		this.changedFields = 0;
+	}
+
+	public PlayerDataDelta setMood(Mood value) {
+		changedFields |= mood;
+		newMood = value;
+		return this;
+	}
+
+	/** null means that the player has no animation anymore. */
+	public PlayerDataDelta setAnimation(String value) {
+		changedFields |= animation;
+		newAnimation = value;
+		return this;
+	}
+
+	public PlayerDataDelta setPosition(int x, int y, Direction direction) {
+		changedFields |= position;
+		newX = x;
+		newY = y;
+		newDirection = direction;
+		return this;
+	}
+
+	/** null means that the player doesn't move anymore. Given path isn't
+	 * copied, so it must not be changed afterwards. */
+	public PlayerDataDelta setPath(Path value) {
+		changedFields |= path;
+		newPath = value;
+		return this;
+	}
+
+	public boolean has(int field) {
+		return (changedFields & field) != 0;
+	}
+
+	public int getChangedFields() {
+		return changedFields;
+	}
+
+	public Mood getMood() {
+		return newMood;
+	}
+
+	public String getAnimation() {
+		return newAnimation;
+	}
+
+	public int getX() {
+		return newX;
+	}
+
+	public int getY() {
+		return newY;
+	}
+
+	public Direction getDirection() {
+		return newDirection;
+	}
+
+	public Path getPath() {
+		return newPath;
+	}
+
+	/** Returns a delta that has the same effect as first applying this
+	 * and then given newer delta. Neither one is changed. */
+	public PlayerDataDelta merge(PlayerDataDelta newer) {
+		PlayerDataDelta result = new PlayerDataDelta();
+		PlayerDataDelta[] deltas = new PlayerDataDelta[] {this, newer};
+		for (PlayerDataDelta delta : deltas) {
+			if (delta.has(mood)) {
+				result.setMood(delta.newMood);
+			}
+			if (delta.has(animation)) {
+				result.setAnimation(delta.newAnimation);
+			}
+			if (delta.has(position)) {
+				result.setPosition(delta.newX, delta.newY, delta.newDirection);
+			}
+			if (delta.has(path)) {
+				result.setPath(delta.newPath);
+			}
+		}
+		return result;
+	}
+
+	/** Returns a copy of given PlayerData with the changes applied. */
+	public PlayerData applyTo(PlayerData data) {
+		PlayerData result = data.copy();
+		if (has(mood)) {
+			result.mood = newMood;
+		}
+		if (has(animation)) {
+			result.currentAnimation = newAnimation;
+		}
+		if (has(position)) {
+			result.x = newX;
+			result.y = newY;
+			result.direction = newDirection;
+		}
+		if (has(path)) {
+			result.path = newPath;
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder("PlayerDataDelta [");
+		if (has(mood)) {
+			result.append(" mood=").append(newMood);
+		}
+		if (has(animation)) {
+			result.append(" animation=").append(newAnimation);
+		}
+		if (has(position)) {
+			result.append(" x=").append(newX).append(" y=").append(newY);
+			result.append(" direction=").append(newDirection);
+		}
+		if (has(path)) {
+			result.append(" path=").append(newPath);
+		}
+		return result.append(" ]").toString();
+	}
+}
@@ -18,6 +18,7 @@
  */
 package common.modules.timerModule;
 
+import java.util.ArrayList;
 import java.util.Map;
 
 import common.modules.ModuleOwner;
@@ -27,7 +28,41 @@ import common.movement.Mover;
 public abstract class MoverModule<MOVEABLE extends Moveable, PARENT extends ModuleOwner, START_ARG>
 								 extends TimerModule<MOVEABLE, Mover<MOVEABLE, PARENT>, PARENT, START_ARG> {
 
+	private final boolean externallyTicked;
+
 	public MoverModule(Map<MOVEABLE, Mover<MOVEABLE, PARENT>> map) {
+		this(map, false);
+	}
+
+	/** If externallyTicked is true, the Movers of this module won't be
+	 * scheduled on their own, but only advance when tickAll() is called. */
+	public MoverModule(Map<MOVEABLE, Mover<MOVEABLE, PARENT>> map, boolean externallyTicked) {
 		super(map);
+		this.externallyTicked = externallyTicked;
+	}
+
+	/** Is called by a Mover whose moveable can't take its next step
+	 * to given tile. The rest of its path has already been dropped, so
+	 * it will be unregistered with its next step. Does nothing by
+	 * default. */
+	public void movementBlocked(MOVEABLE moveable, int x, int y) {
+	}
+
+	/** Is called by a Mover after its moveable has taken a step. Does
+	 * nothing by default. */
+	public void moved(MOVEABLE moveable) {
+	}
+
+	public boolean isExternallyTicked() {
+		return externallyTicked;
+	}
+
+	/** Advances every registered Mover by one step in the calling thread.
+	 * Movers that finish during this call unregister as usual. */
+	public void tickAll() {
+		assert(externallyTicked);
+		for (Mover<MOVEABLE, PARENT> mover : new ArrayList<Mover<MOVEABLE, PARENT>>(map.values())) {
+			mover.tick();
+		}
 	}
 }
@@ -0,0 +1,104 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package common.modules.timerModule;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import common.Logger;
+
+/** Runs the periodic tasks of ModTimers (Movers, Animators) on a small
+ * pool of threads. Before, every ModTimer created its own java.util.Timer
+ * and thus its own thread, which was thrown away again as soon as the
+ * path or animation ended. Now starting a ModTimer only costs a slot in
+ * the scheduler's queue. <br />
+ * There is one shared instance per JVM, see shared(). */
+public class TickScheduler {
+	private static TickScheduler sharedScheduler;
+	private final ScheduledThreadPoolExecutor executor;
+
+	/** Creates a new scheduler with given amount of daemon threads,
+	 * which are named "[name]_[number]". */
+	public TickScheduler(final String name, int threads) {
+		ThreadFactory threadFactory = new ThreadFactory() {
+			private final AtomicInteger threadCounter = new AtomicInteger(0);
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, name+"_"+threadCounter.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		this.executor = new ScheduledThreadPoolExecutor(threads, threadFactory);
+	}
+
+	/** Returns the scheduler that is used by all TimerModules
+	 * by default. It is created on first call and uses as many threads
+	 * as there are processors available. */
+	public static synchronized TickScheduler shared() {
+		if (sharedScheduler == null) {
+			int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+			sharedScheduler = new TickScheduler("tick", threads);
+		}
+		return sharedScheduler;
+	}
+
+	/** Executes given task periodically, starting immediately. Cancel the
+	 * returned future to stop it. <br />
+	 * As opposed to java.util.Timer, an exception in the task doesn't kill
+	 * the thread, but it is logged and only the task itself won't run again. */
+	public ScheduledFuture<?> scheduleAtFixedRate(final Runnable task, long interval) {
+		return executor.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					task.run();
+				} catch(RuntimeException e) {
+					Logger.log("TickScheduler: Task "+task+" threw exception, won't run again:");
+					e.printStackTrace();
+					throw e;
+				}
+			}
+		}, 0, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/** Executes given task once after given delay in milliseconds. */
+	public ScheduledFuture<?> schedule(Runnable task, long delay) {
+		return executor.schedule(task, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/** Returns the number of threads in the pool. */
+	public int getPoolSize() {
+		return executor.getPoolSize();
+	}
+
+	/** Returns the number of tasks that are currently scheduled. Cancelled
+	 * tasks are counted until their next turn would have come. */
+	public int getScheduledTaskCount() {
+		return executor.getQueue().size();
+	}
+
+	/** Stops the scheduler. Already scheduled tasks won't run anymore. */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+}
@@ -28,6 +28,7 @@ public abstract class TimerModule<MODIFIABLE extends TimeModifiable, TIMER exten
 								  PARENT extends ModuleOwner, START_ARG> {
 	protected Map<MODIFIABLE, TIMER> map;
 	protected PARENT parent;
+	protected TickScheduler scheduler;
 
 	/** Post trigger after tryStop() has been called. */
 	public abstract void unregistered(MODIFIABLE forTimeModifiable);
@@ -41,9 +42,16 @@ public abstract class TimerModule<MODIFIABLE extends TimeModifiable, TIMER exten
 	 * because of some condition not met, return null. */
 	public abstract TIMER createCompleteModTimer(MODIFIABLE timeModifiable, START_ARG argument);
 
-	/** Don't forget to call init() afterwards. */
+	/** Don't forget to call init() afterwards.
+	 * The ModTimers will run on the shared TickScheduler. */
 	public TimerModule(Map<MODIFIABLE, TIMER> map) {
+		this(map, TickScheduler.shared());
+	}
+
+	/** Don't forget to call init() afterwards. */
+	public TimerModule(Map<MODIFIABLE, TIMER> map, TickScheduler scheduler) {
 		this.map = map;
+		this.scheduler = scheduler;
 	}
 
 	public final void init(PARENT _parent) {
@@ -92,6 +100,11 @@ public abstract class TimerModule<MODIFIABLE extends TimeModifiable, TIMER exten
 		started(timeModifiable);
 	}
 
+	/** Getter for the scheduler on which the ModTimers of this module run. */
+	public final TickScheduler scheduler() {
+		return scheduler;
+	}
+
 	/** Getter for ModuleOwner to which this module belongs. */
 	public final PARENT parent() {
 		return parent;
@@ -0,0 +1,155 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package common.modules.workerModule;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import mux.MuxObjectInputStream.Inlet;
+import common.Logger;
+
+/** Runs the WorkerModules in actor mode on a small work-stealing pool of
+ * threads, instead of giving each of them its own thread that mostly
+ * waits for messages. A worker is only scheduled on the pool while it
+ * has messages, see WorkerModule. <br />
+ * Workers may block, e.g. when the queue of a butler is full. To keep
+ * the other workers going meanwhile, they should put into bounded
+ * queues with put() below, which lets the pool start a spare thread.
+ * <br />
+ * There is one shared instance per JVM, see shared(). */
+public class ActorPool {
+	private static ActorPool sharedPool;
+	private final ForkJoinPool pool;
+
+	/** Creates a new pool with given amount of daemon threads, which
+	 * are named "[name]_[number]". */
+	public ActorPool(final String name, int threads) {
+		ForkJoinPool.ForkJoinWorkerThreadFactory threadFactory =
+				new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+			@Override
+			public ForkJoinWorkerThread newThread(ForkJoinPool forPool) {
+				ForkJoinWorkerThread thread = new ForkJoinWorkerThread(forPool) {};
+				thread.setName(name+"_"+thread.getPoolIndex());
+				return thread;
+			}
+		};
+		Thread.UncaughtExceptionHandler handler = new Thread.UncaughtExceptionHandler() {
+			@Override
+			public void uncaughtException(Thread thread, Throwable e) {
+				Logger.log("ActorPool: "+thread.getName()+" died:");
+				e.printStackTrace();
+			}
+		};
+		// asyncMode: tasks that are never joined are taken in FIFO order
+		this.pool = new ForkJoinPool(threads, threadFactory, handler, true);
+	}
+
+	/** Returns the pool that is used by all WorkerModules in actor mode.
+	 * It is created on first call and uses as many threads as there are
+	 * processors available. */
+	public static synchronized ActorPool shared() {
+		if (sharedPool == null) {
+			int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+			sharedPool = new ActorPool("actor", threads);
+		}
+		return sharedPool;
+	}
+
+	/** Runs given task once on one of the threads. */
+	public void execute(Runnable task) {
+		pool.execute(task);
+	}
+
+	/** Puts given element into given queue, waiting while it is full. If
+	 * called from a thread of an ActorPool, the pool may start another
+	 * thread for the time being, so that a full queue can't stall the
+	 * workers of other owners. */
+	public static <T> void put(final BlockingQueue<T> queue, final T element)
+			throws InterruptedException {
+		if (queue.offer(element)) {
+			return;
+		}
+		ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+			private boolean done = false;
+
+			@Override
+			public boolean block() throws InterruptedException {
+				if (!done) {
+					queue.put(element);
+					done = true;
+				}
+				return true;
+			}
+
+			@Override
+			public boolean isReleasable() {
+				if (!done) {
+					done = queue.offer(element);
+				}
+				return done;
+			}
+		});
+	}
+
+	/** Like above, for the inlet of a mux. Gives up without an
+	 * exception once the mux is closed. */
+	public static void put(final Inlet inlet, final Object element)
+			throws InterruptedException {
+		if (inlet.offer(element)) {
+			return;
+		}
+		ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+			private boolean done = false;
+
+			@Override
+			public boolean block() throws InterruptedException {
+				if (!done) {
+					inlet.put(element);
+					done = true;
+				}
+				return true;
+			}
+
+			@Override
+			public boolean isReleasable() {
+				if (!done) {
+					done = inlet.offer(element) || inlet.isClosed();
+				}
+				return done;
+			}
+		});
+	}
+
+	/** Returns the number of threads that have been started and haven't
+	 * ended yet. */
+	public int getPoolSize() {
+		return pool.getPoolSize();
+	}
+
+	/** Returns an estimate of the number of tasks that wait for a thread. */
+	public long getQueuedTaskCount() {
+		return pool.getQueuedTaskCount() + pool.getQueuedSubmissionCount();
+	}
+
+	/** Stops the pool. Queued tasks won't run anymore. */
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+}
@@ -19,19 +19,58 @@
 package common.modules.workerModule;
 
 import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import common.Logger;
+import common.Threads;
 import common.modules.ModuleOwner;
 import mux.MuxObjectInputStream;
 
 
+/** Deals with the messages for its owner one after another. Either it
+ * has its own thread which reads them from a mux, into which other
+ * threads put theirs through an inlet, or it is an actor:
+ * Then the messages are put into a mailbox, and the worker is only
+ * scheduled on an ActorPool while the mailbox isn't empty. Also in that
+ * case, no two messages are ever dealt with at the same time, and each
+ * message sees everything that has been done for the previous ones. */
 public abstract class WorkerModule<MODULE_OWNER extends ModuleOwner> {
+	/** How many messages an actor deals with before it lets the other
+	 * actors of its pool have their turn. */
+	private static final int messagesPerTurn = 32;
+
 	protected MODULE_OWNER parent;
 	protected Thread thread;
 	protected MuxObjectInputStream mux;
-	boolean stopRunning;
+	volatile boolean stopRunning;
+
+	/** Only in actor mode: */
+	protected final BlockingQueue<Object> mailbox;
+	private final ActorPool pool;
+	/** True while a turn of this actor is queued or running. */
+	private final AtomicBoolean scheduled;
+	private final Runnable turn;
+	private Thread turnThread;
 
 	public WorkerModule(MuxObjectInputStream mux, String threadName) {
 		this.mux = mux;
-		this.thread = new Thread(new WorkerRunnable(), threadName);
+		this.thread = Threads.newThread(new WorkerRunnable(), threadName);
+		this.stopRunning = false;
+		this.mailbox = null;
+		this.pool = null;
+		this.scheduled = null;
+		this.turn = null;
+	}
+
+	/** Creates a worker in actor mode, which takes its messages from
+	 * given mailbox and runs on given pool. Messages must be given to
+	 * putMessage() or offerMessage(). */
+	public WorkerModule(BlockingQueue<Object> mailbox, ActorPool pool) {
+		this.mailbox = mailbox;
+		this.pool = pool;
+		this.scheduled = new AtomicBoolean(false);
+		this.turn = new ActorTurn();
 		this.stopRunning = false;
 	}
 
@@ -41,11 +80,30 @@ public abstract class WorkerModule<MODULE_OWNER extends ModuleOwner> {
 	}
 
 	public void start() {
-		thread.start();
+		if (thread != null) {
+			thread.start();
+		}
 	}
 
+	/** Ends the worker. Messages that haven't been dealt with yet are
+	 * dropped. Waits until the current message has been dealt with,
+	 * unless called while dealing with it. */
 	public void stop() {
 		stopRunning = true;
+		if (thread == null) {
+			mailbox.clear();
+			synchronized(turn) {
+				while (turnThread != null && turnThread != Thread.currentThread()) {
+					try {
+						turn.wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+			}
+			return;
+		}
 		mux.close();
 		if (Thread.currentThread() != thread) {
 			thread.interrupt();
@@ -57,6 +115,37 @@ public abstract class WorkerModule<MODULE_OWNER extends ModuleOwner> {
 		}
 	}
 
+	/** Only in actor mode: Puts given message into the mailbox, waiting
+	 * while it is full, and schedules the worker. */
+	protected void putMessage(Object message) {
+		try {
+			ActorPool.put(mailbox, message);
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+			return;
+		}
+		schedule();
+	}
+
+	/** Only in actor mode: Like putMessage(), but doesn't block if the
+	 * mailbox is full. Returns whether the message could be queued. */
+	protected boolean offerMessage(Object message) {
+		if (!mailbox.offer(message)) {
+			return false;
+		}
+		schedule();
+		return true;
+	}
+
+	/** Queues a turn unless there already is one. A message that arrives
+	 * while a turn is ending is either still polled by it, or seen by
+	 * its check of the mailbox after scheduled has been reset. */
+	private void schedule() {
+		if (!stopRunning && scheduled.compareAndSet(false, true)) {
+			pool.execute(turn);
+		}
+	}
+
 	class WorkerRunnable implements Runnable {
 		@Override
 		public void run() {
@@ -80,6 +169,39 @@ public abstract class WorkerModule<MODULE_OWNER extends ModuleOwner> {
 		}
 	}
 
+	/** Deals with up to messagesPerTurn messages of the mailbox. */
+	class ActorTurn implements Runnable {
+		@Override
+		public void run() {
+			synchronized(this) {
+				turnThread = Thread.currentThread();
+			}
+			try {
+				for (int i = 0; i < messagesPerTurn && !stopRunning; i++) {
+					Object read = mailbox.poll();
+					if (read == null) {
+						break;
+					}
+					try {
+						handleMessage(read);
+					} catch(RuntimeException e) {
+						Logger.log("Worker: Dealing with "+read+" failed:");
+						e.printStackTrace();
+					}
+				}
+			} finally {
+				synchronized(this) {
+					turnThread = null;
+					notifyAll();
+				}
+				scheduled.set(false);
+			}
+			if (!mailbox.isEmpty()) {
+				schedule();
+			}
+		}
+	}
+
 	protected abstract void handleMessage(Object read);
 
 }
@@ -0,0 +1,481 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package common.movement;
+
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import common.BoundedMap;
+import common.Map;
+
+/** Hierarchical pathfinding (HPA*) for large maps. The map is divided
+ * into square clusters. Where two neighbouring clusters can be crossed,
+ * their border tiles become nodes of an abstract graph, and the nodes
+ * of each cluster are connected by their distances inside the cluster.
+ * A long path is first searched in that graph, whose size only depends
+ * on the number of clusters, and then refined into steps by short
+ * searches between consecutive nodes. Paths are near shortest. <br />
+ * Short trips are left to the Pathfinder directly. Refined paths are
+ * kept in a bounded cache keyed by start cluster and goal tile, since
+ * many players walk towards the same targets. The graph is rebuilt and
+ * the cache dropped when the collision version of the map changes.
+ * All methods are synchronized. */
+public class HierarchicalPathfinder {
+	/** Border runs of at least this many tiles get an entrance at each
+	 * end instead of one in the middle. */
+	private static final int longEntrance = 6;
+
+	private final Map map;
+	private final int width;
+	private final int height;
+	private final int clusterSize;
+	private final int clustersX;
+	private final int clustersY;
+	private final int cacheSize;
+	/** Maps start cluster and goal tile to the tiles of a path from a
+	 * node of the start cluster to the goal. */
+	private final BoundedMap<Long, int[]> cache;
+	private int builtVersion;
+
+	// the abstract graph:
+	private int nodeCount;
+	private int[] nodeTiles;
+	private int[][] clusterNodes;
+	private int[] clusterNodeCounts;
+	private int[][] edgeTargets;
+	private int[][] edgeCosts;
+	private int[] edgeCounts;
+
+	// scratch arrays of the searches:
+	private int[] gScore;
+	private int[] cameFrom;
+	private int[] seenStamp;
+	private int[] closedStamp;
+	private int[] goalDistance;
+	private int stamp;
+	/** Open set entries are made like those of the Pathfinder, of f,
+	 * then h, then the node. */
+	private final LongHeap openSet;
+	private final int hBits;
+	private int nodeBits;
+	private final int[] clusterDistance;
+	private final int[] clusterStamp;
+	private final int[] clusterQueue;
+	private int clusterStampValue;
+
+	private long hits;
+	private long misses;
+	private long direct;
+
+	public HierarchicalPathfinder(Map map, int clusterSize, int cacheSize) {
+		assert(clusterSize > 1);
+		this.map = map;
+		this.width = map.getWidth();
+		this.height = map.getHeight();
+		this.clusterSize = clusterSize;
+		this.clustersX = (width + clusterSize - 1) / clusterSize;
+		this.clustersY = (height + clusterSize - 1) / clusterSize;
+		this.cacheSize = cacheSize;
+		this.cache = new BoundedMap<Long, int[]>(Math.max(cacheSize, 1));
+		this.openSet = new LongHeap();
+		this.hBits = 32 - Integer.numberOfLeadingZeros(width + height);
+		this.clusterDistance = new int[clusterSize * clusterSize];
+		this.clusterStamp = new int[clusterSize * clusterSize];
+		this.clusterQueue = new int[clusterSize * clusterSize];
+		build();
+	}
+
+	/** Returns a path from the start to the goal tile around blocked
+	 * tiles, or null if there is none. Like Pathfinder.findPath, but
+	 * the path may be a little longer than the shortest one. */
+	public synchronized Path findPath(int fromX, int fromY, int toX, int toY) {
+		if (map.isBlocked(toX, toY) || fromX < 0 || fromY < 0
+				|| fromX >= width || fromY >= height) {
+			return null;
+		}
+		if (builtVersion != map.getCollisionVersion()) {
+			build();
+			cache.clear();
+		}
+		if (Math.abs(toX - fromX) + Math.abs(toY - fromY) <= 2 * clusterSize) {
+			direct++;
+			return Pathfinder.findPath(map, fromX, fromY, toX, toY, true);
+		}
+		int startCluster = clusterOf(fromX, fromY);
+		int goalTile = toY * width + toX;
+		Long key = Long.valueOf(((long) startCluster << 32) | goalTile);
+		int[] tiles = cacheSize > 0 ? cache.get(key) : null;
+		if (tiles != null) {
+			hits++;
+		} else {
+			misses++;
+			tiles = searchGraph(fromX, fromY, startCluster, goalTile);
+			if (tiles == null) {
+				return null;
+			}
+			if (cacheSize > 0) {
+				cache.put(key, tiles);
+			}
+		}
+		Path result = Pathfinder.findPath(map, fromX, fromY,
+			tiles[0] % width, tiles[0] / width, true);
+		if (result == null) {
+			return null;
+		}
+		for (int i = 1; i < tiles.length; i++) {
+			result.push(new Point(tiles[i] % width, tiles[i] / width));
+		}
+		return result;
+	}
+
+	/** Searches the abstract graph from the start tile to the goal tile
+	 * and returns the refined tiles from the first node on the way to
+	 * the goal, or null if the goal can't be reached. */
+	private int[] searchGraph(int fromX, int fromY, int startCluster, int goalTile) {
+		int goalX = goalTile % width;
+		int goalY = goalTile / width;
+		int start = nodeCount;
+		int goal = nodeCount + 1;
+		stamp++;
+		if (stamp == 0) {
+			Arrays.fill(seenStamp, 0);
+			Arrays.fill(closedStamp, 0);
+			stamp = 1;
+		}
+		openSet.clear();
+		// connect the goal to the nodes of its cluster:
+		int goalCluster = clusterOf(goalX, goalY);
+		exploreCluster(goalCluster, goalX, goalY);
+		for (int i = 0; i < clusterNodeCounts[goalCluster]; i++) {
+			int node = clusterNodes[goalCluster][i];
+			goalDistance[node] = distanceInCluster(goalCluster, nodeTiles[node]);
+		}
+		// and the start:
+		gScore[start] = 0;
+		closedStamp[start] = stamp;
+		openFrom(startCluster, fromX, fromY, 0, start, goalX, goalY);
+		if (map.isBlocked(fromX, fromY)) {
+			// then there is no entrance where it borders another cluster
+			for (int direction = 0; direction < 4; direction++) {
+				int nextX = fromX + Pathfinder.stepX[direction];
+				int nextY = fromY + Pathfinder.stepY[direction];
+				if (!map.isBlocked(nextX, nextY) && clusterOf(nextX, nextY) != startCluster) {
+					openFrom(clusterOf(nextX, nextY), nextX, nextY, 1, start, goalX, goalY);
+				}
+			}
+		}
+		while (!openSet.isEmpty()) {
+			int node = (int) (openSet.pop() & ((1L << nodeBits) - 1));
+			if (closedStamp[node] == stamp) {
+				continue;
+			}
+			closedStamp[node] = stamp;
+			if (node == goal) {
+				return refine(start, goal, goalTile);
+			}
+			for (int i = 0; i < edgeCounts[node]; i++) {
+				open(edgeTargets[node][i], gScore[node] + edgeCosts[node][i], node, goalX, goalY);
+			}
+			if (clusterOf(nodeTiles[node] % width, nodeTiles[node] / width) == goalCluster
+					&& goalDistance[node] >= 0) {
+				open(goal, gScore[node] + goalDistance[node], node, goalX, goalY);
+			}
+		}
+		return null;
+	}
+
+	/** Opens all nodes of given cluster that can be reached from given
+	 * tile inside the cluster. */
+	private void openFrom(int cluster, int x, int y, int g, int start, int goalX, int goalY) {
+		exploreCluster(cluster, x, y);
+		for (int i = 0; i < clusterNodeCounts[cluster]; i++) {
+			int node = clusterNodes[cluster][i];
+			int distance = distanceInCluster(cluster, nodeTiles[node]);
+			if (distance >= 0) {
+				open(node, g + distance, start, goalX, goalY);
+			}
+		}
+	}
+
+	private void open(int node, int g, int from, int goalX, int goalY) {
+		if (closedStamp[node] == stamp || (seenStamp[node] == stamp && gScore[node] <= g)) {
+			return;
+		}
+		seenStamp[node] = stamp;
+		gScore[node] = g;
+		cameFrom[node] = from;
+		int h = 0;
+		if (node < nodeCount) {
+			int tile = nodeTiles[node];
+			h = Math.abs(tile % width - goalX) + Math.abs(tile / width - goalY);
+		}
+		openSet.push((((long) (g + h) << hBits | h) << nodeBits) | node);
+	}
+
+	/** Turns the nodes found by searchGraph into tiles. Consecutive
+	 * nodes are either neighbours across a cluster border, or in the
+	 * same cluster, where the steps between them follow the distances
+	 * inside the cluster. */
+	private int[] refine(int start, int goal, int goalTile) {
+		int nodes = 0;
+		for (int node = cameFrom[goal]; node != start; node = cameFrom[node]) {
+			nodes++;
+		}
+		int[] way = new int[nodes + 1];
+		way[nodes] = goalTile;
+		int index = nodes;
+		for (int node = cameFrom[goal]; node != start; node = cameFrom[node]) {
+			way[--index] = nodeTiles[node];
+		}
+		int[] result = new int[gScore[goal] + 1];
+		int size = 0;
+		result[size++] = way[0];
+		for (int i = 1; i < way.length; i++) {
+			int fromTile = way[i - 1];
+			int toTile = way[i];
+			int fromX = fromTile % width;
+			int fromY = fromTile / width;
+			int toX = toTile % width;
+			int toY = toTile / width;
+			int cluster = clusterOf(toX, toY);
+			if (clusterOf(fromX, fromY) != cluster) {
+				assert(Math.abs(toX - fromX) + Math.abs(toY - fromY) == 1);
+				if (size == result.length) {
+					result = Arrays.copyOf(result, size * 2);
+				}
+				result[size++] = toTile;
+				continue;
+			}
+			exploreCluster(cluster, toX, toY);
+			int distance = distanceInCluster(cluster, fromTile);
+			assert(distance >= 0);
+			if (size + distance > result.length) {
+				result = Arrays.copyOf(result, Math.max(size + distance, result.length * 2));
+			}
+			int x = fromX;
+			int y = fromY;
+			while (distance > 0) {
+				for (int direction = 0; direction < 4; direction++) {
+					int nextX = x + Pathfinder.stepX[direction];
+					int nextY = y + Pathfinder.stepY[direction];
+					if (clusterOf(nextX, nextY) == cluster && !map.isBlocked(nextX, nextY)
+							&& distanceInCluster(cluster, nextY * width + nextX) == distance - 1) {
+						x = nextX;
+						y = nextY;
+						break;
+					}
+				}
+				distance--;
+				result[size++] = y * width + x;
+			}
+		}
+		return Arrays.copyOf(result, size);
+	}
+
+	/** Builds the abstract graph from the current blocked tiles. */
+	private void build() {
+		builtVersion = map.getCollisionVersion();
+		int clusters = clustersX * clustersY;
+		nodeCount = 0;
+		nodeTiles = new int[64];
+		edgeTargets = new int[64][];
+		edgeCosts = new int[64][];
+		edgeCounts = new int[64];
+		clusterNodes = new int[clusters][];
+		clusterNodeCounts = new int[clusters];
+		HashMap<Integer, Integer> nodeOfTile = new HashMap<Integer, Integer>();
+		for (int cluster = 0; cluster < clusters; cluster++) {
+			int left = clusterLeft(cluster);
+			int top = clusterTop(cluster);
+			int right = Math.min(left + clusterSize, width) - 1;
+			int bottom = Math.min(top + clusterSize, height) - 1;
+			if (right + 1 < width) {
+				scanBorder(right, top, 0, 1, bottom - top + 1, 1, 0, nodeOfTile);
+			}
+			if (bottom + 1 < height) {
+				scanBorder(left, bottom, 1, 0, right - left + 1, 0, 1, nodeOfTile);
+			}
+		}
+		for (int cluster = 0; cluster < clusters; cluster++) {
+			for (int i = 0; i < clusterNodeCounts[cluster]; i++) {
+				int node = clusterNodes[cluster][i];
+				exploreCluster(cluster, nodeTiles[node] % width, nodeTiles[node] / width);
+				for (int j = 0; j < clusterNodeCounts[cluster]; j++) {
+					int other = clusterNodes[cluster][j];
+					int distance = distanceInCluster(cluster, nodeTiles[other]);
+					if (other != node && distance >= 0) {
+						addEdge(node, other, distance);
+					}
+				}
+			}
+		}
+		gScore = new int[nodeCount + 2];
+		cameFrom = new int[nodeCount + 2];
+		seenStamp = new int[nodeCount + 2];
+		closedStamp = new int[nodeCount + 2];
+		goalDistance = new int[nodeCount];
+		stamp = 0;
+		nodeBits = 32 - Integer.numberOfLeadingZeros(nodeCount + 1);
+	}
+
+	/** Walks length tiles along a cluster border from (x, y) in steps
+	 * of (stepX, stepY), and adds entrances where both the tile and the
+	 * one across the border at (+acrossX, +acrossY) are free. */
+	private void scanBorder(int x, int y, int stepX, int stepY, int length,
+							int acrossX, int acrossY, HashMap<Integer, Integer> nodeOfTile) {
+		int runStart = -1;
+		for (int i = 0; i <= length; i++) {
+			int tileX = x + i * stepX;
+			int tileY = y + i * stepY;
+			boolean free = i < length && !map.isBlocked(tileX, tileY)
+				&& !map.isBlocked(tileX + acrossX, tileY + acrossY);
+			if (free && runStart < 0) {
+				runStart = i;
+			} else if (!free && runStart >= 0) {
+				int runLength = i - runStart;
+				if (runLength < longEntrance) {
+					int middle = runStart + runLength / 2;
+					addEntrance(x + middle * stepX, y + middle * stepY, acrossX, acrossY, nodeOfTile);
+				} else {
+					addEntrance(x + runStart * stepX, y + runStart * stepY, acrossX, acrossY, nodeOfTile);
+					addEntrance(x + (i - 1) * stepX, y + (i - 1) * stepY, acrossX, acrossY, nodeOfTile);
+				}
+				runStart = -1;
+			}
+		}
+	}
+
+	private void addEntrance(int x, int y, int acrossX, int acrossY,
+							HashMap<Integer, Integer> nodeOfTile) {
+		int node = node(x, y, nodeOfTile);
+		int across = node(x + acrossX, y + acrossY, nodeOfTile);
+		addEdge(node, across, 1);
+		addEdge(across, node, 1);
+	}
+
+	/** Returns the node of given tile, adding one if there is none yet. */
+	private int node(int x, int y, HashMap<Integer, Integer> nodeOfTile) {
+		int tile = y * width + x;
+		Integer existing = nodeOfTile.get(tile);
+		if (existing != null) {
+			return existing;
+		}
+		int node = nodeCount++;
+		if (node == nodeTiles.length) {
+			nodeTiles = Arrays.copyOf(nodeTiles, node * 2);
+			edgeTargets = Arrays.copyOf(edgeTargets, node * 2);
+			edgeCosts = Arrays.copyOf(edgeCosts, node * 2);
+			edgeCounts = Arrays.copyOf(edgeCounts, node * 2);
+		}
+		nodeTiles[node] = tile;
+		edgeTargets[node] = new int[4];
+		edgeCosts[node] = new int[4];
+		nodeOfTile.put(tile, node);
+		int cluster = clusterOf(x, y);
+		int count = clusterNodeCounts[cluster];
+		if (clusterNodes[cluster] == null) {
+			clusterNodes[cluster] = new int[4];
+		} else if (count == clusterNodes[cluster].length) {
+			clusterNodes[cluster] = Arrays.copyOf(clusterNodes[cluster], count * 2);
+		}
+		clusterNodes[cluster][count] = node;
+		clusterNodeCounts[cluster] = count + 1;
+		return node;
+	}
+
+	private void addEdge(int from, int to, int cost) {
+		int count = edgeCounts[from];
+		if (count == edgeTargets[from].length) {
+			edgeTargets[from] = Arrays.copyOf(edgeTargets[from], count * 2);
+			edgeCosts[from] = Arrays.copyOf(edgeCosts[from], count * 2);
+		}
+		edgeTargets[from][count] = to;
+		edgeCosts[from][count] = cost;
+		edgeCounts[from] = count + 1;
+	}
+
+	/** Finds the distances from given tile to all tiles of given cluster
+	 * that can be reached without leaving it; see distanceInCluster. */
+	private void exploreCluster(int cluster, int x, int y) {
+		int left = clusterLeft(cluster);
+		int top = clusterTop(cluster);
+		clusterStampValue++;
+		if (clusterStampValue == 0) {
+			Arrays.fill(clusterStamp, 0);
+			clusterStampValue = 1;
+		}
+		int first = (y - top) * clusterSize + (x - left);
+		clusterStamp[first] = clusterStampValue;
+		clusterDistance[first] = 0;
+		clusterQueue[0] = first;
+		int head = 0;
+		int tail = 1;
+		while (head < tail) {
+			int local = clusterQueue[head++];
+			int localX = local % clusterSize;
+			int localY = local / clusterSize;
+			for (int direction = 0; direction < 4; direction++) {
+				int nextX = localX + Pathfinder.stepX[direction];
+				int nextY = localY + Pathfinder.stepY[direction];
+				if (nextX < 0 || nextY < 0 || nextX >= clusterSize || nextY >= clusterSize
+						|| map.isBlocked(left + nextX, top + nextY)) {
+					continue;
+				}
+				int next = nextY * clusterSize + nextX;
+				if (clusterStamp[next] != clusterStampValue) {
+					clusterStamp[next] = clusterStampValue;
+					clusterDistance[next] = clusterDistance[local] + 1;
+					clusterQueue[tail++] = next;
+				}
+			}
+		}
+	}
+
+	/** Returns the distance of given tile found by the last call of
+	 * exploreCluster, or -1 if it couldn't be reached. */
+	private int distanceInCluster(int cluster, int tile) {
+		int local = (tile / width - clusterTop(cluster)) * clusterSize
+			+ (tile % width - clusterLeft(cluster));
+		return clusterStamp[local] == clusterStampValue ? clusterDistance[local] : -1;
+	}
+
+	private int clusterOf(int x, int y) {
+		return (y / clusterSize) * clustersX + x / clusterSize;
+	}
+
+	private int clusterLeft(int cluster) {
+		return (cluster % clustersX) * clusterSize;
+	}
+
+	private int clusterTop(int cluster) {
+		return (cluster / clustersX) * clusterSize;
+	}
+
+	@Override
+	public synchronized String toString() {
+		int edges = 0;
+		for (int node = 0; node < nodeCount; node++) {
+			edges += edgeCounts[node];
+		}
+		return String.format("%d clusters, %d nodes, %d edges; %d paths cached, %d hits, "
+				+"%d misses, %d direct", clustersX * clustersY, nodeCount, edges, cache.size(),
+				hits, misses, direct);
+	}
+}
@@ -0,0 +1,79 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package common.movement;
+
+import java.util.Arrays;
+
+/** A binary min-heap of longs, used as the open set of the pathfinders.
+ * The caller packs the priority into the high bits of each entry and
+ * the node into the low bits. */
+class LongHeap {
+	private long[] heap = new long[64];
+	private int size;
+
+	void clear() {
+		size = 0;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/** Adds given entry. A node may be in here more than once; the
+	 * callers skip the worse entries when they are taken out, since
+	 * the node is closed by then. */
+	void push(long entry) {
+		if (size == heap.length) {
+			heap = Arrays.copyOf(heap, size * 2);
+		}
+		int index = size++;
+		while (index > 0) {
+			int parentIndex = (index - 1) >>> 1;
+			if (heap[parentIndex] <= entry) {
+				break;
+			}
+			heap[index] = heap[parentIndex];
+			index = parentIndex;
+		}
+		heap[index] = entry;
+	}
+
+	/** Removes the lowest entry and returns it. */
+	long pop() {
+		long result = heap[0];
+		long last = heap[--size];
+		int index = 0;
+		int half = size >>> 1;
+		while (index < half) {
+			int child = 2 * index + 1;
+			if (child + 1 < size && heap[child + 1] < heap[child]) {
+				child++;
+			}
+			if (last <= heap[child]) {
+				break;
+			}
+			heap[index] = heap[child];
+			index = child;
+		}
+		if (size > 0) {
+			heap[index] = last;
+		}
+		return result;
+	}
+}
@@ -18,7 +18,7 @@
  */
 package common.movement;
 
-import java.util.Timer;
+import java.util.concurrent.ScheduledFuture;
 
 import common.modules.ModuleOwner;
 import common.modules.timerModule.MoverModule;
@@ -27,7 +27,8 @@ import common.modules.timerModule.ModTimer;
 public class Mover<MOVEABLE extends Moveable, PARENT_OWNER extends ModuleOwner> implements ModTimer {
 	protected MoverModule<MOVEABLE, PARENT_OWNER, ?> parent;
 	protected MOVEABLE moveable;
-	protected Timer timer;
+	protected ScheduledFuture<?> scheduledTask;
+	protected boolean cancelled;
 	protected MovingTask<MOVEABLE, PARENT_OWNER> movingTask;
 	protected long interval;
 
@@ -39,7 +40,7 @@ public class Mover<MOVEABLE extends Moveable, PARENT_OWNER extends ModuleOwner>
 		this.parent = parent;
 		this.moveable = moveable;
 		this.interval = delay;
-		this.timer = new Timer();
+		this.cancelled = false;
 	}
 
 	public void setMovingTask(MovingTask<MOVEABLE, PARENT_OWNER> movingTask) {
@@ -54,7 +55,44 @@ public class Mover<MOVEABLE extends Moveable, PARENT_OWNER extends ModuleOwner>
 	public void start() {
 		//TODO //startDelay for server so that character arrives on a field at the
 			  // same time for client and server
-		this.timer.scheduleAtFixedRate(movingTask, 0, interval);
+		if (parent.isExternallyTicked()) {
+			// the parent module will call tick()
+			return;
+		}
+		ScheduledFuture<?> future = parent.scheduler().scheduleAtFixedRate(movingTask, interval);
+		synchronized(this) {
+			this.scheduledTask = future;
+			// the task may already have finished and cancelled before
+			// we got hold of the future
+			if (cancelled) {
+				scheduledTask.cancel(false);
+			}
+		}
+	}
+
+	/** Executes one step of the MovingTask in the calling thread.
+	 * Is used instead of start() if the parent module is externally ticked. */
+	public void tick() {
+		movingTask.run();
+	}
+
+	/** Removes the MovingTask from the scheduler. Is called by
+	 * MovingTask.stop(). */
+	protected synchronized void cancel() {
+		this.cancelled = true;
+		if (scheduledTask != null) {
+			scheduledTask.cancel(false);
+		}
+	}
+
+	/** Tells the parent module that the moveable can't enter given tile. */
+	protected void movementBlocked(int x, int y) {
+		parent.movementBlocked(moveable, x, y);
+	}
+
+	/** Tells the parent module that the moveable has taken a step. */
+	protected void moved() {
+		parent.moved(moveable);
 	}
 
 	public MOVEABLE getMoveable() {
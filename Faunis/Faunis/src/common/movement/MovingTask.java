@@ -19,11 +19,10 @@
 package common.movement;
 
 import java.awt.Point;
-import java.util.TimerTask;
 import common.enums.Direction;
 import common.modules.ModuleOwner;
 
-public abstract class MovingTask<MOVEABLE extends Moveable, MODULE_OWNER extends ModuleOwner> extends TimerTask {
+public abstract class MovingTask<MOVEABLE extends Moveable, MODULE_OWNER extends ModuleOwner> implements Runnable {
 	protected Object runningMutexKey;
 	protected boolean stopRunning;
 	protected Mover<MOVEABLE, MODULE_OWNER> parent;
@@ -63,7 +62,7 @@ public abstract class MovingTask<MOVEABLE extends Moveable, MODULE_OWNER extends
 
 	public void stop() {
 		synchronized(runningMutexKey) {
-			parent.timer.cancel();
+			parent.cancel();
 			this.stopRunning = true;
 			moveable.resetPath();
 		}
@@ -20,6 +20,8 @@ package common.movement;
 
 import java.awt.Point;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 
@@ -56,10 +58,21 @@ public class Path implements Serializable {
 		return steps.peek();
 	}
 
+	/** Removes all remaining waypoints. */
+	public void clear() {
+		steps.clear();
+	}
+
 	public boolean isEmpty() {
 		return steps.isEmpty();
 	}
 
+	/** Returns the remaining waypoints in order. The list is a snapshot,
+	 * but the points are not copied. */
+	public List<Point> getSteps() {
+		return new ArrayList<Point>(steps);
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder stringBuilder = new StringBuilder();
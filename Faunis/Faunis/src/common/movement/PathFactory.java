@@ -21,6 +21,7 @@ package common.movement;
 import java.awt.Point;
 
 import common.Logger;
+import common.Map;
 
 public class PathFactory {
 	public static Path createAirlinePath(int fromX, int fromY, int toX, int toY) {
@@ -45,9 +46,28 @@ public class PathFactory {
 		return result;
 	}
 
-	/*
-	public static Path createShortestPath(Map map, int fromX, int fromY, int toX, int toY) {
-		// TODO
+	/** Returns a shortest path around the blocked tiles of given map,
+	 * or null if the target can't be reached. */
+	public static Path createShortestPath(Map map, int fromX, int fromY, int toX, int toY,
+										boolean jumpPoints) {
+		return Pathfinder.findPath(map, fromX, fromY, toX, toY, jumpPoints);
+	}
+
+	/** Builds a path the way given mode says. Returns null if the
+	 * target can't be reached. The hierarchical mode needs the clusters
+	 * of a HierarchicalPathfinder, so jump point search is used instead. */
+	public static Path createPath(PathfindingMode mode, Map map,
+								int fromX, int fromY, int toX, int toY) {
+		switch (mode) {
+			case airline:
+				return createAirlinePath(fromX, fromY, toX, toY);
+			case aStar:
+				return createShortestPath(map, fromX, fromY, toX, toY, false);
+			case jumpPointSearch:
+			case hierarchical:
+				return createShortestPath(map, fromX, fromY, toX, toY, true);
+			default:
+				throw new IllegalArgumentException("Unknown pathfinding mode "+mode);
+		}
 	}
-	*/
 }
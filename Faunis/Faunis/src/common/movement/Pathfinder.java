@@ -18,6 +18,249 @@
  */
 package common.movement;
 
+import java.awt.Point;
+import java.util.Arrays;
+
+import common.Map;
+
+/** Finds shortest paths over the tiles of a map that aren't blocked,
+ * moving in the four directions only, like RoughMovingTask does. Uses
+ * A*, optionally with jump point search (JPS), which only puts the
+ * tiles where a path may turn into the open set and skips straight
+ * runs in between. <br />
+ * The search doesn't allocate: tiles are ints (y * width + x), the open
+ * set is a binary heap of longs, and all arrays belong to the calling
+ * thread and are reused for every search, growing with the largest
+ * map. Only the resulting path is made of Points. */
 public class Pathfinder {
-	// TODO
+	/** The four directions; also used by HierarchicalPathfinder. */
+	static final int[] stepX = new int[] {1, -1, 0, 0};
+	static final int[] stepY = new int[] {0, 0, 1, -1};
+
+	/** The arrays of one thread. A tile counts as seen or closed only
+	 * if its stamp equals the stamp of the current search, which saves
+	 * clearing the arrays every time. */
+	private static class Scratch {
+		int[] gScore = new int[0];
+		int[] cameFrom = new int[0];
+		int[] seenStamp = new int[0];
+		int[] closedStamp = new int[0];
+		final LongHeap openSet = new LongHeap();
+		int stamp;
+		/** Tiles taken from the open set by the last search. */
+		int expanded;
+
+		void prepare(int tiles) {
+			if (gScore.length < tiles) {
+				gScore = new int[tiles];
+				cameFrom = new int[tiles];
+				seenStamp = new int[tiles];
+				closedStamp = new int[tiles];
+				stamp = 0;
+			}
+			stamp++;
+			if (stamp == 0) {
+				// after an overflow, old stamps could become valid again
+				Arrays.fill(seenStamp, 0);
+				Arrays.fill(closedStamp, 0);
+				stamp = 1;
+			}
+			openSet.clear();
+			expanded = 0;
+		}
+	}
+
+	private static final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
+	private final Map map;
+	private final int width;
+	private final int height;
+	private final boolean jumpPoints;
+	private Scratch s;
+	/** An open set entry is made of f = g + h, then h, then the tile,
+	 * so that of two tiles with the same f, the one closer to the goal
+	 * comes first. */
+	private final int tileBits;
+	private final int hBits;
+	private int goalX;
+	private int goalY;
+
+	private Pathfinder(Map map, boolean jumpPoints) {
+		this.map = map;
+		this.width = map.getWidth();
+		this.height = map.getHeight();
+		this.jumpPoints = jumpPoints;
+		this.tileBits = 32 - Integer.numberOfLeadingZeros(width * height);
+		this.hBits = 32 - Integer.numberOfLeadingZeros(width + height);
+	}
+
+	/** Returns a shortest path from the start to the goal tile that
+	 * only consists of steps to neighbouring tiles which aren't blocked,
+	 * or null if there is none. The start tile itself may be blocked
+	 * and isn't part of the path. If jumpPoints is true, JPS is used. */
+	public static Path findPath(Map map, int fromX, int fromY, int toX, int toY,
+								boolean jumpPoints) {
+		if (map.isBlocked(toX, toY) || fromX < 0 || fromY < 0
+				|| fromX >= map.getWidth() || fromY >= map.getHeight()) {
+			return null;
+		}
+		Pathfinder pathfinder = new Pathfinder(map, jumpPoints);
+		return pathfinder.search(fromX, fromY, toX, toY);
+	}
+
+	/** Returns how many tiles the last search of the calling thread
+	 * took from its open set. */
+	public static int lastExpanded() {
+		return scratch.get().expanded;
+	}
+
+	private Path search(int fromX, int fromY, int toX, int toY) {
+		s = scratch.get();
+		s.prepare(width * height);
+		goalX = toX;
+		goalY = toY;
+		int start = fromY * width + fromX;
+		int goal = toY * width + toX;
+		open(start, 0, -1);
+		while (!s.openSet.isEmpty()) {
+			int tile = (int) (s.openSet.pop() & ((1L << tileBits) - 1));
+			if (s.closedStamp[tile] == s.stamp) {
+				continue;
+			}
+			s.closedStamp[tile] = s.stamp;
+			s.expanded++;
+			if (tile == goal) {
+				return buildPath(start, goal);
+			}
+			int x = tile % width;
+			int y = tile / width;
+			if (jumpPoints) {
+				expandJumpPoint(tile, x, y);
+			} else {
+				for (int direction = 0; direction < 4; direction++) {
+					int nextX = x + stepX[direction];
+					int nextY = y + stepY[direction];
+					if (!map.isBlocked(nextX, nextY)) {
+						open(nextY * width + nextX, s.gScore[tile] + 1, tile);
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	/** Adds given tile to the open set, unless it has already been
+	 * reached at no higher cost. */
+	private void open(int tile, int g, int from) {
+		if (s.closedStamp[tile] == s.stamp
+				|| (s.seenStamp[tile] == s.stamp && s.gScore[tile] <= g)) {
+			return;
+		}
+		s.seenStamp[tile] = s.stamp;
+		s.gScore[tile] = g;
+		s.cameFrom[tile] = from;
+		int h = Math.abs(tile % width - goalX) + Math.abs(tile / width - goalY);
+		s.openSet.push((((long) (g + h) << hBits | h) << tileBits) | tile);
+	}
+
+	/** Looks for the next jump points from given tile, in all four
+	 * directions if it is the start, otherwise straight on and to both
+	 * sides of the direction in which it was reached. */
+	private void expandJumpPoint(int tile, int x, int y) {
+		int from = s.cameFrom[tile];
+		for (int direction = 0; direction < 4; direction++) {
+			int dx = stepX[direction];
+			int dy = stepY[direction];
+			if (from >= 0) {
+				int fromX = from % width;
+				int fromY = from / width;
+				int cameX = Integer.signum(x - fromX);
+				int cameY = Integer.signum(y - fromY);
+				if (dx == -cameX && dy == -cameY) {
+					// never go back
+					continue;
+				}
+			}
+			int jumpPoint = dy == 0 ? jumpHorizontally(x, y, dx) : jumpVertically(x, y, dy);
+			if (jumpPoint >= 0) {
+				int distance = Math.abs(jumpPoint % width - x) + Math.abs(jumpPoint / width - y);
+				open(jumpPoint, s.gScore[tile] + distance, tile);
+			}
+		}
+	}
+
+	/** Walks from given tile in direction dx and returns the first tile
+	 * where a path may turn: the goal, or a tile with an open side whose
+	 * tile behind is blocked. Returns -1 if it runs into an obstacle. */
+	private int jumpHorizontally(int x, int y, int dx) {
+		while (true) {
+			x += dx;
+			if (map.isBlocked(x, y)) {
+				return -1;
+			}
+			if (x == goalX && y == goalY) {
+				return y * width + x;
+			}
+			if ((!map.isBlocked(x, y - 1) && map.isBlocked(x - dx, y - 1))
+					|| (!map.isBlocked(x, y + 1) && map.isBlocked(x - dx, y + 1))) {
+				return y * width + x;
+			}
+		}
+	}
+
+	/** Walks from given tile in direction dy and returns the first tile
+	 * where a path may turn: the goal, a tile with an open side whose
+	 * tile behind is blocked, or a tile from which a horizontal jump
+	 * finds a jump point. Returns -1 if it runs into an obstacle. */
+	private int jumpVertically(int x, int y, int dy) {
+		while (true) {
+			y += dy;
+			if (map.isBlocked(x, y)) {
+				return -1;
+			}
+			if (x == goalX && y == goalY) {
+				return y * width + x;
+			}
+			if ((!map.isBlocked(x - 1, y) && map.isBlocked(x - 1, y - dy))
+					|| (!map.isBlocked(x + 1, y) && map.isBlocked(x + 1, y - dy))) {
+				return y * width + x;
+			}
+			if (jumpHorizontally(x, y, 1) >= 0 || jumpHorizontally(x, y, -1) >= 0) {
+				return y * width + x;
+			}
+		}
+	}
+
+	/** Follows cameFrom back from the goal and fills in the straight
+	 * runs between jump points. */
+	private Path buildPath(int start, int goal) {
+		int steps = s.gScore[goal];
+		Point[] points = new Point[steps];
+		int tile = goal;
+		int index = steps;
+		while (tile != start) {
+			int from = s.cameFrom[tile];
+			int x = tile % width;
+			int y = tile / width;
+			int dx = Integer.signum(from % width - x);
+			int dy = Integer.signum(from / width - y);
+			while (y * width + x != from) {
+				points[--index] = new Point(x, y);
+				x += dx;
+				y += dy;
+			}
+			tile = from;
+		}
+		assert(index == 0);
+		Path result = new Path();
+		for (Point point : points) {
+			result.push(point);
+		}
+		return result;
+	}
 }
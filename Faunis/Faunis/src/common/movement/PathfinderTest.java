@@ -0,0 +1,192 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package common.movement;
+
+import static org.junit.Assert.*;
+
+import java.awt.Point;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import common.Link;
+import common.Map;
+
+/** Checks A* and jump point search against the distances a breadth
+ * first search finds, on random maps with different shares of blocked
+ * tiles. */
+public class PathfinderTest {
+	private static final int[][] sizes = new int[][] {
+		{1, 1}, {2, 1}, {1, 7}, {5, 5}, {13, 8}, {32, 32}, {64, 17}
+	};
+	private static final double[] blockedShares = new double[] {0, 0.1, 0.25, 0.4, 0.55};
+
+	private static Map randomMap(int width, int height, double blockedShare, Random random) {
+		long[] blockedTiles = new long[Map.blockedTilesLength(width, height)];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				if (random.nextDouble() < blockedShare) {
+					Map.setBlocked(blockedTiles, width, x, y, true);
+				}
+			}
+		}
+		return new Map("test", width, height, new String[0], null,
+			blockedTiles, new ArrayList<Link>());
+	}
+
+	/** Returns the number of steps from given tile to every tile, or
+	 * -1 where there is no way. The start tile may be blocked. */
+	private static int[] distances(Map map, int fromX, int fromY) {
+		int width = map.getWidth();
+		int[] result = new int[width * map.getHeight()];
+		Arrays.fill(result, -1);
+		ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+		result[fromY * width + fromX] = 0;
+		queue.add(fromY * width + fromX);
+		while (!queue.isEmpty()) {
+			int tile = queue.poll();
+			for (int direction = 0; direction < 4; direction++) {
+				int x = tile % width + Pathfinder.stepX[direction];
+				int y = tile / width + Pathfinder.stepY[direction];
+				if (!map.isBlocked(x, y) && result[y * width + x] < 0) {
+					result[y * width + x] = result[tile] + 1;
+					queue.add(y * width + x);
+				}
+			}
+		}
+		return result;
+	}
+
+	/** Asserts that the path leads from the start to the goal in steps
+	 * to neighbouring tiles that aren't blocked. */
+	private static void assertValid(Map map, Path path, int fromX, int fromY,
+									int toX, int toY, String description) {
+		Point previous = new Point(fromX, fromY);
+		for (Point step : path.getSteps()) {
+			assertEquals(description+" jumps from "+previous+" to "+step, 1,
+				Math.abs(step.x - previous.x) + Math.abs(step.y - previous.y));
+			assertFalse(description+" runs into "+step, map.isBlocked(step.x, step.y));
+			previous = step;
+		}
+		assertEquals(description+" ends elsewhere", new Point(toX, toY), previous);
+	}
+
+	private static void check(Map map, int fromX, int fromY, int[] distances,
+								boolean jumpPoints) {
+		int width = map.getWidth();
+		for (int toY = 0; toY < map.getHeight(); toY++) {
+			for (int toX = 0; toX < width; toX++) {
+				String description = (jumpPoints ? "JPS" : "A*")+" path from ("+fromX+","
+					+fromY+") to ("+toX+","+toY+") on "+width+"x"+map.getHeight();
+				Path path = Pathfinder.findPath(map, fromX, fromY, toX, toY, jumpPoints);
+				int distance = distances[toY * width + toX];
+				if (map.isBlocked(toX, toY) || distance < 0) {
+					assertNull(description+" should not exist", path);
+					continue;
+				}
+				assertNotNull(description+" is missing", path);
+				assertEquals(description+" is not the shortest", distance, path.getSteps().size());
+				assertValid(map, path, fromX, fromY, toX, toY, description);
+			}
+		}
+	}
+
+	@Test
+	public void testRandomMaps() {
+		Random random = new Random(19l);
+		for (int[] size : sizes) {
+			for (double blockedShare : blockedShares) {
+				for (int round = 0; round < 5; round++) {
+					Map map = randomMap(size[0], size[1], blockedShare, random);
+					for (int start = 0; start < 4; start++) {
+						// also starts on blocked tiles, as after a map change
+						int fromX = random.nextInt(size[0]);
+						int fromY = random.nextInt(size[1]);
+						int[] distances = distances(map, fromX, fromY);
+						check(map, fromX, fromY, distances, false);
+						check(map, fromX, fromY, distances, true);
+					}
+				}
+			}
+		}
+	}
+
+	/** Walls with single gaps make for many forced neighbours. */
+	@Test
+	public void testWalls() {
+		Random random = new Random(23l);
+		int width = 31;
+		int height = 23;
+		for (int round = 0; round < 20; round++) {
+			long[] blockedTiles = new long[Map.blockedTilesLength(width, height)];
+			for (int x = 2; x < width; x += 2 + random.nextInt(3)) {
+				int gap = random.nextInt(height);
+				for (int y = 0; y < height; y++) {
+					if (y != gap) {
+						Map.setBlocked(blockedTiles, width, x, y, true);
+					}
+				}
+			}
+			for (int y = 2; y < height; y += 3 + random.nextInt(4)) {
+				int gap = random.nextInt(width);
+				for (int x = 0; x < width; x++) {
+					if (x != gap && random.nextInt(3) > 0) {
+						Map.setBlocked(blockedTiles, width, x, y, true);
+					}
+				}
+			}
+			Map map = new Map("walls", width, height, new String[0], null,
+				blockedTiles, new ArrayList<Link>());
+			int fromX = random.nextInt(width);
+			int fromY = random.nextInt(height);
+			int[] distances = distances(map, fromX, fromY);
+			check(map, fromX, fromY, distances, false);
+			check(map, fromX, fromY, distances, true);
+		}
+	}
+
+	@Test
+	public void testSpecialCases() {
+		Map map = randomMap(6, 4, 0, new Random(1l));
+		Path path = Pathfinder.findPath(map, 2, 2, 2, 2, true);
+		assertNotNull(path);
+		assertTrue(path.isEmpty());
+		// outside of the map
+		assertNull(Pathfinder.findPath(map, -1, 0, 2, 2, true));
+		assertNull(Pathfinder.findPath(map, 0, 4, 2, 2, false));
+		assertNull(Pathfinder.findPath(map, 0, 0, 6, 0, true));
+		// enclosed goal
+		long[] blockedTiles = new long[Map.blockedTilesLength(6, 4)];
+		Map.setBlocked(blockedTiles, 6, 4, 0, true);
+		Map.setBlocked(blockedTiles, 6, 4, 2, true);
+		Map.setBlocked(blockedTiles, 6, 3, 1, true);
+		Map.setBlocked(blockedTiles, 6, 5, 1, true);
+		map = new Map("enclosed", 6, 4, new String[0], null, blockedTiles, new ArrayList<Link>());
+		assertNull(Pathfinder.findPath(map, 0, 0, 4, 1, false));
+		assertNull(Pathfinder.findPath(map, 0, 0, 4, 1, true));
+		// but a blocked start tile can be left
+		path = Pathfinder.findPath(map, 4, 0, 4, 3, true);
+		assertNotNull(path);
+		assertEquals(7, path.getSteps().size());
+		assertValid(map, path, 4, 0, 4, 3, "path from a blocked tile");
+	}
+}
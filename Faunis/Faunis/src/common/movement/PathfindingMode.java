@@ -0,0 +1,34 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package common.movement;
+
+/** Tells how paths to a clicked tile are built. */
+public enum PathfindingMode {
+	/** Walks straight towards the target and ignores obstacles. */
+	airline,
+	/** Searches a shortest way around blocked tiles with A*. */
+	aStar,
+	/** Like aStar, but with jump point search, which expands far fewer
+	 * tiles on open maps. */
+	jumpPointSearch,
+	/** Searches long paths between clusters of the map first, see
+	 * HierarchicalPathfinder, and caches them. The paths may be a little
+	 * longer than the shortest ones. */
+	hierarchical
+}
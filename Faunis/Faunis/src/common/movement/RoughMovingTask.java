@@ -20,16 +20,22 @@ package common.movement;
 
 import java.awt.Point;
 
+import common.Map;
+
 import serverSide.mapManager.MapManager;
 import serverSide.player.ServerPlayer;
 
 /** For the server side: Moves the Player in whole steps along the path
  *  without any intermediate animation adjustments like in SoftMovingTask.
- *  Therefore, one call of move() = one field onward. */
+ *  Therefore, one call of move() = one field onward. <br />
+ *  Every step must lead to a neighbouring tile that isn't blocked on
+ *  the map; otherwise the rest of the path is dropped. */
 public class RoughMovingTask extends MovingTask<ServerPlayer, MapManager> {
+	private final Map map;
 
-	public RoughMovingTask(Mover<ServerPlayer, MapManager> parent, ServerPlayer moveable) {
+	public RoughMovingTask(Mover<ServerPlayer, MapManager> parent, ServerPlayer moveable, Map map) {
 		super(parent, moveable);
+		this.map = map;
 	}
 
 	@Override
@@ -50,7 +56,15 @@ public class RoughMovingTask extends MovingTask<ServerPlayer, MapManager> {
 //					moveable.resetPath();
 				return;
 			}
+			int distance = Math.abs(nextPoint.x - moveable.getX())
+						   + Math.abs(nextPoint.y - moveable.getY());
+			if (distance != 1 || map.isBlocked(nextPoint.x, nextPoint.y)) {
+				path.clear();
+				parent.movementBlocked(nextPoint.x, nextPoint.y);
+				return;
+			}
 			moveable.moveAbsolute(nextPoint.x, nextPoint.y, true);
+			parent.moved();
 //				if (path.isEmpty()) moveable.resetPath();
 		}
 	}
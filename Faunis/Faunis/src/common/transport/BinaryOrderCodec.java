@@ -0,0 +1,529 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package common.transport;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import common.butlerToClientOrders.BCAddCharOrder;
+import common.butlerToClientOrders.BCChangeCharOrder;
+import common.butlerToClientOrders.BCChatMessageOrder;
+import common.butlerToClientOrders.BCErrorMessageOrder;
+import common.butlerToClientOrders.BCOwnPlayersInfoOrder;
+import common.butlerToClientOrders.BCRemoveCharOrder;
+import common.butlerToClientOrders.BCSetClientStatusOrder;
+import common.butlerToClientOrders.BCSystemMessageOrder;
+import common.clientToButlerOrders.CBChatOrder;
+import common.clientToButlerOrders.CBCreatePlayerOrder;
+import common.clientToButlerOrders.CBLoadPlayerOrder;
+import common.clientToButlerOrders.CBLoginOrder;
+import common.clientToButlerOrders.CBLogoutOrder;
+import common.clientToButlerOrders.CBMoveOrder;
+import common.clientToButlerOrders.CBQueryOwnPlayersOrder;
+import common.clientToButlerOrders.CBServerSourceOrder;
+import common.clientToButlerOrders.CBSetMoodOrder;
+import common.clientToButlerOrders.CBTriggerAnimationOrder;
+import common.clientToButlerOrders.CBUnloadPlayerOrder;
+import common.enums.CharacterClass;
+import common.enums.ClientStatus;
+import common.enums.Direction;
+import common.enums.Mood;
+import common.graphics.PlayerData;
+import common.graphics.PlayerDataDelta;
+import common.movement.Path;
+
+/** Hand-written binary encoding of the frequent CB and BC orders. <br />
+ * A frame consists of the format version, a type tag and the order's
+ * fields. Integers are written as variable length quantities, signed ones
+ * zigzag encoded, so that coordinates mostly take a single byte. Path
+ * waypoints are written relative to their predecessor. Enums are written
+ * by ordinal, which is why the version must be increased whenever one of
+ * them or one of the layouts below changes. BCChangeCharOrder only carries
+ * a PlayerDataDelta, whose changed-fields mask decides which values
+ * follow. <br />
+ * Strings are interned per frame: the second occurrence of a string, e.g.
+ * the player name that is both in BCAddCharOrder and in its PlayerData, is only
+ * a reference. There is no table that lives longer than a frame, so every
+ * frame can still be decoded on its own and be sent to any client. <br />
+ * Orders without a layout of their own (like BCSetMapOrder, which is rare
+ * but big) are embedded using Java serialization. */
+public class BinaryOrderCodec implements OrderCodec {
+	public static final int formatVersion = 2;
+
+	private static final int serializedTag = 0;
+	// client to butler:
+	private static final int cbLoginTag = 1;
+	private static final int cbLogoutTag = 2;
+	private static final int cbCreatePlayerTag = 3;
+	private static final int cbLoadPlayerTag = 4;
+	private static final int cbUnloadPlayerTag = 5;
+	private static final int cbMoveTag = 6;
+	private static final int cbChatTag = 7;
+	private static final int cbSetMoodTag = 8;
+	private static final int cbTriggerAnimationTag = 9;
+	private static final int cbServerSourceTag = 10;
+	private static final int cbQueryOwnPlayersTag = 11;
+	// butler to client:
+	private static final int bcAddCharTag = 32;
+	private static final int bcChangeCharTag = 33;
+	private static final int bcRemoveCharTag = 34;
+	private static final int bcChatMessageTag = 35;
+	private static final int bcErrorMessageTag = 36;
+	private static final int bcSystemMessageTag = 37;
+	private static final int bcSetClientStatusTag = 38;
+	private static final int bcOwnPlayersInfoTag = 39;
+
+	private static final CharacterClass[] characterClasses = CharacterClass.values();
+	private static final Mood[] moods = Mood.values();
+	private static final Direction[] directions = Direction.values();
+	private static final ClientStatus[] clientStatuses = ClientStatus.values();
+
+	private final SerializationCodec fallback = new SerializationCodec();
+
+	@Override
+	public byte[] encode(Object order) throws IOException {
+		Writer out = new Writer();
+		out.writeByte(formatVersion);
+		if (order instanceof CBMoveOrder) {
+			CBMoveOrder move = (CBMoveOrder) order;
+			out.writeByte(cbMoveTag);
+			out.writeSigned(move.getXTarget());
+			out.writeSigned(move.getYTarget());
+		} else if (order instanceof BCChangeCharOrder) {
+			BCChangeCharOrder change = (BCChangeCharOrder) order;
+			out.writeByte(bcChangeCharTag);
+			out.writeString(change.getPlayerName());
+			writeDelta(out, change.getDelta());
+		} else if (order instanceof BCAddCharOrder) {
+			BCAddCharOrder add = (BCAddCharOrder) order;
+			out.writeByte(bcAddCharTag);
+			out.writeString(add.getPlayerName());
+			writePlayerData(out, add.getGraphStatus());
+		} else if (order instanceof BCRemoveCharOrder) {
+			out.writeByte(bcRemoveCharTag);
+			out.writeString(((BCRemoveCharOrder) order).getPlayerName());
+		} else if (order instanceof BCChatMessageOrder) {
+			BCChatMessageOrder chat = (BCChatMessageOrder) order;
+			out.writeByte(bcChatMessageTag);
+			out.writeString(chat.getMessage());
+			out.writeString(chat.getFromName());
+			out.writeByte(chat.isBroadcast() ? 1 : 0);
+		} else if (order instanceof CBChatOrder) {
+			CBChatOrder chat = (CBChatOrder) order;
+			out.writeByte(cbChatTag);
+			out.writeString(chat.getMessage());
+			out.writeString(chat.getToName());
+		} else if (order instanceof CBLoginOrder) {
+			CBLoginOrder login = (CBLoginOrder) order;
+			out.writeByte(cbLoginTag);
+			out.writeString(login.getName());
+			out.writeString(login.getPassword());
+		} else if (order instanceof CBLogoutOrder) {
+			out.writeByte(cbLogoutTag);
+		} else if (order instanceof CBCreatePlayerOrder) {
+			out.writeByte(cbCreatePlayerTag);
+			out.writeString(((CBCreatePlayerOrder) order).getPlayerName());
+		} else if (order instanceof CBLoadPlayerOrder) {
+			out.writeByte(cbLoadPlayerTag);
+			out.writeString(((CBLoadPlayerOrder) order).getPlayerName());
+		} else if (order instanceof CBUnloadPlayerOrder) {
+			out.writeByte(cbUnloadPlayerTag);
+		} else if (order instanceof CBSetMoodOrder) {
+			out.writeByte(cbSetMoodTag);
+			out.writeEnum(((CBSetMoodOrder) order).getMood());
+		} else if (order instanceof CBTriggerAnimationOrder) {
+			out.writeByte(cbTriggerAnimationTag);
+			out.writeString(((CBTriggerAnimationOrder) order).getAnimation());
+		} else if (order instanceof CBServerSourceOrder) {
+			out.writeByte(cbServerSourceTag);
+		} else if (order instanceof CBQueryOwnPlayersOrder) {
+			out.writeByte(cbQueryOwnPlayersTag);
+		} else if (order instanceof BCErrorMessageOrder) {
+			out.writeByte(bcErrorMessageTag);
+			out.writeString(((BCErrorMessageOrder) order).getMessage());
+		} else if (order instanceof BCSystemMessageOrder) {
+			out.writeByte(bcSystemMessageTag);
+			out.writeString(((BCSystemMessageOrder) order).getMessage());
+		} else if (order instanceof BCSetClientStatusOrder) {
+			out.writeByte(bcSetClientStatusTag);
+			out.writeEnum(((BCSetClientStatusOrder) order).getNewStatus());
+		} else if (order instanceof BCOwnPlayersInfoOrder) {
+			out.writeByte(bcOwnPlayersInfoTag);
+			out.writeStringList(((BCOwnPlayersInfoOrder) order).getPlayerNames());
+		} else {
+			out.writeByte(serializedTag);
+			out.writeBytes(fallback.encode(order));
+		}
+		return out.toByteArray();
+	}
+
+	@Override
+	public Object decode(byte[] data, int offset, int length) throws IOException {
+		Reader in = new Reader(data, offset, length);
+		int version = in.readByte();
+		if (version != formatVersion) {
+			throw new IOException("Unsupported wire format version "+version
+								  +", expected "+formatVersion);
+		}
+		int tag = in.readByte();
+		switch (tag) {
+		case serializedTag:
+			return fallback.decode(data, in.position, in.end - in.position);
+		case cbLoginTag:
+			return new CBLoginOrder(in.readString(), in.readString());
+		case cbLogoutTag:
+			return new CBLogoutOrder();
+		case cbCreatePlayerTag:
+			return new CBCreatePlayerOrder(in.readString());
+		case cbLoadPlayerTag:
+			return new CBLoadPlayerOrder(in.readString());
+		case cbUnloadPlayerTag:
+			return new CBUnloadPlayerOrder();
+		case cbMoveTag:
+			return new CBMoveOrder(in.readSigned(), in.readSigned());
+		case cbChatTag:
+			return new CBChatOrder(in.readString(), in.readString());
+		case cbSetMoodTag:
+			return new CBSetMoodOrder(in.readEnum(moods));
+		case cbTriggerAnimationTag:
+			return new CBTriggerAnimationOrder(in.readString());
+		case cbServerSourceTag:
+			return new CBServerSourceOrder();
+		case cbQueryOwnPlayersTag:
+			return new CBQueryOwnPlayersOrder();
+		case bcAddCharTag:
+			return new BCAddCharOrder(in.readString(), readPlayerData(in));
+		case bcChangeCharTag:
+			return new BCChangeCharOrder(in.readString(), readDelta(in));
+		case bcRemoveCharTag:
+			return new BCRemoveCharOrder(in.readString());
+		case bcChatMessageTag:
+			return new BCChatMessageOrder(in.readString(), in.readString(), in.readByte() != 0);
+		case bcErrorMessageTag:
+			return new BCErrorMessageOrder(in.readString());
+		case bcSystemMessageTag:
+			return new BCSystemMessageOrder(in.readString());
+		case bcSetClientStatusTag:
+			return new BCSetClientStatusOrder(in.readEnum(clientStatuses));
+		case bcOwnPlayersInfoTag:
+			return new BCOwnPlayersInfoOrder(in.readStringList());
+		default:
+			throw new IOException("Unknown order tag "+tag);
+		}
+	}
+
+	private void writePlayerData(Writer out, PlayerData data) {
+		if (data == null) {
+			out.writeByte(0);
+			return;
+		}
+		out.writeByte(1);
+		out.writeString(data.name);
+		out.writeEnum(data.type);
+		out.writeEnum(data.mood);
+		out.writeSigned(data.x);
+		out.writeSigned(data.y);
+		out.writeEnum(data.direction);
+		writePath(out, data.path, data.x, data.y);
+		out.writeString(data.currentAnimation);
+		out.writeStringList(data.accessoires);
+	}
+
+	private PlayerData readPlayerData(Reader in) throws IOException {
+		if (in.readByte() == 0) {
+			return null;
+		}
+		PlayerData data = new PlayerData();
+		data.name = in.readString();
+		data.type = in.readEnum(characterClasses);
+		data.mood = in.readEnum(moods);
+		data.x = in.readSigned();
+		data.y = in.readSigned();
+		data.direction = in.readEnum(directions);
+		data.path = readPath(in, data.x, data.y);
+		data.currentAnimation = in.readString();
+		data.accessoires = in.readStringList();
+		return data;
+	}
+
+	/** Writes the changed-fields mask followed by the changed values only.
+	 * If the position is part of the delta, the path is written relative
+	 * to it. */
+	private void writeDelta(Writer out, PlayerDataDelta delta) {
+		out.writeUnsigned(delta.getChangedFields());
+		if (delta.has(PlayerDataDelta.mood)) {
+			out.writeEnum(delta.getMood());
+		}
+		if (delta.has(PlayerDataDelta.animation)) {
+			out.writeString(delta.getAnimation());
+		}
+		int originX = 0;
+		int originY = 0;
+		if (delta.has(PlayerDataDelta.position)) {
+			originX = delta.getX();
+			originY = delta.getY();
+			out.writeSigned(originX);
+			out.writeSigned(originY);
+			out.writeEnum(delta.getDirection());
+		}
+		if (delta.has(PlayerDataDelta.path)) {
+			writePath(out, delta.getPath(), originX, originY);
+		}
+	}
+
+	private PlayerDataDelta readDelta(Reader in) throws IOException {
+		int changedFields = in.readUnsigned();
+		PlayerDataDelta delta = new PlayerDataDelta();
+		if ((changedFields & PlayerDataDelta.mood) != 0) {
+			delta.setMood(in.readEnum(moods));
+		}
+		if ((changedFields & PlayerDataDelta.animation) != 0) {
+			delta.setAnimation(in.readString());
+		}
+		int originX = 0;
+		int originY = 0;
+		if ((changedFields & PlayerDataDelta.position) != 0) {
+			originX = in.readSigned();
+			originY = in.readSigned();
+			delta.setPosition(originX, originY, in.readEnum(directions));
+		}
+		if ((changedFields & PlayerDataDelta.path) != 0) {
+			delta.setPath(readPath(in, originX, originY));
+		}
+		return delta;
+	}
+
+	/** Writes the step count plus one (zero meaning no path at all),
+	 * followed by each step relative to its predecessor, the first one
+	 * relative to the given origin. */
+	private void writePath(Writer out, Path path, int originX, int originY) {
+		if (path == null) {
+			out.writeUnsigned(0);
+			return;
+		}
+		List<Point> steps = path.getSteps();
+		out.writeUnsigned(steps.size() + 1);
+		int lastX = originX;
+		int lastY = originY;
+		for (Point step : steps) {
+			out.writeSigned(step.x - lastX);
+			out.writeSigned(step.y - lastY);
+			lastX = step.x;
+			lastY = step.y;
+		}
+	}
+
+	private Path readPath(Reader in, int originX, int originY) throws IOException {
+		int stepCount = in.readUnsigned() - 1;
+		if (stepCount < 0) {
+			return null;
+		}
+		Path path = new Path();
+		int lastX = originX;
+		int lastY = originY;
+		for (int i = 0; i < stepCount; i++) {
+			lastX += in.readSigned();
+			lastY += in.readSigned();
+			path.push(new Point(lastX, lastY));
+		}
+		return path;
+	}
+
+	/** Growing byte buffer with the primitive write operations. */
+	private static class Writer {
+		private byte[] buffer = new byte[64];
+		private int size = 0;
+		/** strings written so far, with their index */
+		private HashMap<String, Integer> strings = null;
+
+		void writeByte(int value) {
+			ensureCapacity(1);
+			buffer[size++] = (byte) value;
+		}
+
+		void writeBytes(byte[] bytes) {
+			ensureCapacity(bytes.length);
+			System.arraycopy(bytes, 0, buffer, size, bytes.length);
+			size += bytes.length;
+		}
+
+		void writeUnsigned(int value) {
+			ensureCapacity(5);
+			while ((value & ~0x7F) != 0) {
+				buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			buffer[size++] = (byte) value;
+		}
+
+		void writeSigned(int value) {
+			writeUnsigned((value << 1) ^ (value >> 31));
+		}
+
+		void writeEnum(Enum<?> value) {
+			writeUnsigned(value == null ? 0 : value.ordinal() + 1);
+		}
+
+		/** 0 means null, 1 a new string that follows,
+		 * n > 1 the (n-2)th string of this frame. */
+		void writeString(String value) {
+			if (value == null) {
+				writeUnsigned(0);
+				return;
+			}
+			if (strings == null) {
+				strings = new HashMap<String, Integer>();
+			}
+			Integer index = strings.get(value);
+			if (index != null) {
+				writeUnsigned(index + 2);
+				return;
+			}
+			strings.put(value, strings.size());
+			writeUnsigned(1);
+			byte[] bytes;
+			try {
+				bytes = value.getBytes("UTF-8");
+			} catch (UnsupportedEncodingException e) {
+				throw new RuntimeException(e);
+			}
+			writeUnsigned(bytes.length);
+			writeBytes(bytes);
+		}
+
+		void writeStringList(List<String> values) {
+			if (values == null) {
+				writeUnsigned(0);
+				return;
+			}
+			writeUnsigned(values.size() + 1);
+			for (String value : values) {
+				writeString(value);
+			}
+		}
+
+		private void ensureCapacity(int additional) {
+			if (size + additional > buffer.length) {
+				byte[] larger = new byte[Math.max(buffer.length * 2, size + additional)];
+				System.arraycopy(buffer, 0, larger, 0, size);
+				buffer = larger;
+			}
+		}
+
+		byte[] toByteArray() {
+			byte[] result = new byte[size];
+			System.arraycopy(buffer, 0, result, 0, size);
+			return result;
+		}
+	}
+
+	/** Counterpart to Writer. Throws an IOException instead of reading
+	 * past the end of the frame. */
+	private static class Reader {
+		private final byte[] data;
+		private int position;
+		private final int end;
+		private ArrayList<String> strings = null;
+
+		Reader(byte[] data, int offset, int length) {
+			this.data = data;
+			this.position = offset;
+			this.end = offset + length;
+		}
+
+		int readByte() throws IOException {
+			if (position >= end) {
+				throw new IOException("Frame too short");
+			}
+			return data[position++] & 0xFF;
+		}
+
+		int readUnsigned() throws IOException {
+			int result = 0;
+			for (int shift = 0; shift < 35; shift += 7) {
+				int b = readByte();
+				result |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return result;
+				}
+			}
+			throw new IOException("Malformed variable length integer");
+		}
+
+		int readSigned() throws IOException {
+			int raw = readUnsigned();
+			return (raw >>> 1) ^ -(raw & 1);
+		}
+
+		<E extends Enum<E>> E readEnum(E[] values) throws IOException {
+			int index = readUnsigned();
+			if (index == 0) {
+				return null;
+			}
+			if (index > values.length) {
+				throw new IOException("Unknown enum ordinal "+(index-1));
+			}
+			return values[index - 1];
+		}
+
+		String readString() throws IOException {
+			int marker = readUnsigned();
+			if (marker == 0) {
+				return null;
+			}
+			if (strings == null) {
+				strings = new ArrayList<String>();
+			}
+			if (marker > 1) {
+				int index = marker - 2;
+				if (index >= strings.size()) {
+					throw new IOException("Unknown string reference "+index);
+				}
+				return strings.get(index);
+			}
+			int length = readUnsigned();
+			if (length < 0 || length > end - position) {
+				throw new IOException("String length "+length+" exceeds frame");
+			}
+			String result = new String(data, position, length, "UTF-8");
+			position += length;
+			strings.add(result);
+			return result;
+		}
+
+		List<String> readStringList() throws IOException {
+			int count = readUnsigned() - 1;
+			if (count < 0) {
+				return null;
+			}
+			if (count > end - position) {
+				throw new IOException("List length "+count+" exceeds frame");
+			}
+			ArrayList<String> result = new ArrayList<String>(count);
+			for (int i = 0; i < count; i++) {
+				result.add(readString());
+			}
+			return result;
+		}
+	}
+}
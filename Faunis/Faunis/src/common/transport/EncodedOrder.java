@@ -0,0 +1,68 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package common.transport;
+
+import java.io.IOException;
+
+/** An order together with its frame, i.e. its encoded bytes behind their
+ * length as a four byte int. The frame is made on first demand and then
+ * shared: an order that is broadcast to all players on a map is thus
+ * encoded once instead of once per recipient. <br />
+ * The frame must not be modified by anyone once it has been returned. */
+public class EncodedOrder {
+	private final Object order;
+	private OrderCodec codec; // guarded by this
+	private byte[] frame; // guarded by this
+
+	public EncodedOrder(Object order) {
+		this.order = order;
+	}
+
+	public Object getOrder() {
+		return order;
+	}
+
+	/** Returns the frame that given codec makes of the order. Only the
+	 * frame of the first codec is kept; asking with another codec
+	 * encodes the order anew. */
+	public byte[] getFrame(OrderCodec codec) throws IOException {
+		synchronized(this) {
+			if (frame == null) {
+				this.frame = frame(codec.encode(order));
+				this.codec = codec;
+				return frame;
+			} else if (this.codec == codec) {
+				return frame;
+			}
+		}
+		return frame(codec.encode(order));
+	}
+
+	/** Puts the length in front of given encoded order. */
+	public static byte[] frame(byte[] encoded) {
+		int length = encoded.length;
+		byte[] result = new byte[4 + length];
+		result[0] = (byte) (length >>> 24);
+		result[1] = (byte) (length >>> 16);
+		result[2] = (byte) (length >>> 8);
+		result[3] = (byte) length;
+		System.arraycopy(encoded, 0, result, 4, length);
+		return result;
+	}
+}
@@ -0,0 +1,53 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package common.transport;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+
+/** Reads the frames written by a FramedObjectOutputStream.
+ * Only readObject() and close() are supported. */
+public class FramedObjectInputStream extends ObjectInputStream {
+	private final DataInputStream input;
+	private final OrderCodec codec;
+
+	public FramedObjectInputStream(InputStream input, OrderCodec codec) throws IOException {
+		super();
+		this.input = new DataInputStream(input);
+		this.codec = codec;
+	}
+
+	@Override
+	protected Object readObjectOverride() throws IOException {
+		int length = input.readInt();
+		if (length < 0 || length > OrderCodec.maxFrameLength) {
+			throw new IOException("Invalid frame length "+length);
+		}
+		byte[] frame = new byte[length];
+		input.readFully(frame);
+		return codec.decode(frame, 0, length);
+	}
+
+	@Override
+	public void close() throws IOException {
+		input.close();
+	}
+}
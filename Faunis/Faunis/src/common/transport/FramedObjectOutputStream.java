@@ -0,0 +1,69 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package common.transport;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/** Writes every object as one frame: its length as a four byte int,
+ * followed by the bytes that the OrderCodec made of it. As opposed to
+ * an ordinary ObjectOutputStream, every frame can be read on its own,
+ * which is what the non-blocking server side needs. <br />
+ * Only writeObject(), flush() and close() are supported. */
+public class FramedObjectOutputStream extends ObjectOutputStream {
+	private final DataOutputStream output;
+	private final OrderCodec codec;
+
+	public FramedObjectOutputStream(OutputStream output, OrderCodec codec) throws IOException {
+		super();
+		this.output = new DataOutputStream(output);
+		this.codec = codec;
+	}
+
+	@Override
+	protected void writeObjectOverride(Object object) throws IOException {
+		writeFrame(codec.encode(object));
+	}
+
+	/** Writes given already encoded object as one frame. */
+	public synchronized void writeFrame(byte[] frame) throws IOException {
+		output.writeInt(frame.length);
+		output.write(frame);
+		output.flush();
+	}
+
+	/** Writes the frame of given order, which is only encoded if no
+	 * other stream has done so before. */
+	public synchronized void writeEncoded(EncodedOrder order) throws IOException {
+		output.write(order.getFrame(codec));
+		output.flush();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		output.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		output.close();
+	}
+}
@@ -0,0 +1,34 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package common.transport;
+
+import java.io.IOException;
+
+/** Turns orders into bytes and back. Client and server must use the same
+ * codec. Every call must be self-contained, i.e. decode() must not depend
+ * on anything that was decoded before, so that one frame can be decoded
+ * without its predecessors. Implementations must be thread safe. */
+public interface OrderCodec {
+	/** Frames that claim to be longer than this are considered broken. */
+	int maxFrameLength = 1 << 20;
+
+	byte[] encode(Object order) throws IOException;
+
+	Object decode(byte[] data, int offset, int length) throws IOException;
+}
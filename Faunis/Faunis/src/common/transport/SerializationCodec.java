@@ -0,0 +1,52 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package common.transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/** Encodes each order with plain Java serialization, using a fresh
+ * ObjectOutputStream for every order. */
+public class SerializationCodec implements OrderCodec {
+
+	@Override
+	public byte[] encode(Object order) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		ObjectOutputStream output = new ObjectOutputStream(bytes);
+		output.writeObject(order);
+		output.close();
+		return bytes.toByteArray();
+	}
+
+	@Override
+	public Object decode(byte[] data, int offset, int length) throws IOException {
+		ObjectInputStream input = new ObjectInputStream(
+			new ByteArrayInputStream(data, offset, length));
+		try {
+			return input.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Unknown class in frame: "+e.getMessage());
+		} finally {
+			input.close();
+		}
+	}
+}
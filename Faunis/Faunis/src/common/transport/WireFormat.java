@@ -0,0 +1,37 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package common.transport;
+
+/** The ways in which framed orders can be encoded. */
+public enum WireFormat {
+	/** plain Java serialization, see SerializationCodec */
+	serialization,
+	/** compact hand-written format, see BinaryOrderCodec */
+	binary;
+
+	public OrderCodec createCodec() {
+		switch (this) {
+		case binary:
+			return new BinaryOrderCodec();
+		case serialization:
+		default:
+			return new SerializationCodec();
+		}
+	}
+}
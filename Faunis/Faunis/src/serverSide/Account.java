@@ -20,19 +20,20 @@ package serverSide;
 
 import java.util.ArrayList;
 
+import serverSide.archivist.PasswordHash;
 import serverSide.player.ServerPlayer;
 
 
 public class Account {
 	private String name;
-	private String password;
+	private PasswordHash passwordHash;
 	private ArrayList<String> playerNames;	// Names of the players as they exist in
 											// the directory "players"
 	private ServerPlayer activePlayer;	// player which is currently loaded and controlled
 
-	public Account(String name, String password, ArrayList<String> playerNames){
+	public Account(String name, PasswordHash passwordHash, ArrayList<String> playerNames){
 		this.name = name;
-		this.password = password;
+		this.passwordHash = passwordHash;
 		this.playerNames = playerNames;
 		this.activePlayer = null;
 	}
@@ -43,8 +44,8 @@ public class Account {
 		return this.name;
 	}
 
-	public String getPassword(){
-		return this.password;
+	public PasswordHash getPasswordHash(){
+		return this.passwordHash;
 	}
 
 	public ArrayList<String> getPlayerNames() {
@@ -18,23 +18,28 @@
  */
 package serverSide;
 
-import java.net.Socket;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Set;
 import java.util.Map.Entry;
 
 import javax.swing.JFrame;
 
+import serverSide.archivist.AccountsArchivist;
+import serverSide.archivist.CachingAccountsArchivist;
+import serverSide.archivist.CheckpointService;
 import serverSide.archivist.CoreArchivist;
+import serverSide.archivist.PasswordHasher;
 import serverSide.archivist.fileSystemArchivist.FileSystemArchivist;
+import serverSide.archivist.logArchivist.LogArchivist;
 import serverSide.butler.Butler;
+import serverSide.butler.ClientConnection;
 import serverSide.mapManager.MapManager;
+import serverSide.mapManager.MapShards;
 import serverSide.mapmanToButlerOrders.MBPoisonPillOrder;
+import serverSide.nio.NioReception;
 import serverSide.player.ServerPlayer;
 import common.Logger;
 import common.Map;
+import common.Threads;
 import common.enums.CharacterClass;
 import common.graphics.graphicsContentManager.GraphicsContentManager;
 
@@ -42,15 +47,13 @@ import common.graphics.graphicsContentManager.GraphicsContentManager;
 /** The main program; Holds all references and manages file access. */
 public class MainServer {
 	private ServerSettings serverSettings;
-	private Reception reception;
+	private ClientAcceptor reception;
 	private CoreArchivist archivist;
+	private AccountsArchivist accountsArchivist;
+	private PasswordHasher passwordHasher;
+	private CheckpointService checkpointService;
 
-	private final List<Butler> butlers;	// To avoid deadlocks, these resources have to
-									// be always locked from top to bottom
-	private final HashMap<String, Butler> accnameToButler;
-	private final HashMap<String, MapManager> mapnameToMapman;
-	private final HashMap<String, ServerPlayer> activePlayernameToPlayer;
-	private final HashMap<String, Account> loggedAccnameToAccount;
+	private final SessionRegistry sessions;
 	private GraphicsContentManager graphicsContentManager;
 	private java.util.Map<String, Map> maps;
 
@@ -60,11 +63,14 @@ public class MainServer {
 	}
 
 	public MainServer() {
-		butlers = new ArrayList<Butler>();
-		accnameToButler = new HashMap<String, Butler>();
-		mapnameToMapman = new HashMap<String, MapManager>();
-		activePlayernameToPlayer = new HashMap<String, ServerPlayer>();
-		loggedAccnameToAccount = new HashMap<String, Account>();
+		sessions = new SessionRegistry();
+	}
+
+	/** Creates a server that isn't started, so that tests can run
+	 * mapmen with given settings. */
+	public MainServer(ServerSettings serverSettings) {
+		this();
+		this.serverSettings = serverSettings;
 	}
 
 	public void initAndRun() {
@@ -72,13 +78,43 @@ public class MainServer {
 		Logger.log("Copyright 2012 - 2014 Simon Ley alias \"skarute\"");
 		Logger.log("Licensed under GNU AGPL v3 or later");
 		serverSettings = new ServerSettings();
-		Logger.log("account storage in "+serverSettings.accountPath());
 		// Check if serverSettings paths exist:
 		serverSettings.checkPaths();
-		archivist = new FileSystemArchivist(this);
+		if (serverSettings.virtualThreads()) {
+			if (Threads.useVirtualThreads()) {
+				Logger.log("Using virtual threads.");
+			} else {
+				Logger.log("Virtual threads need Java 24 or later, using platform threads.");
+			}
+		}
+		passwordHasher = new PasswordHasher(serverSettings.passwordHashIterations(),
+				serverSettings.passwordThreads(), serverSettings.passwordQueueCapacity());
+		if (serverSettings.logArchivist()) {
+			Logger.log("account storage in "+serverSettings.accountLogPath());
+			archivist = new LogArchivist(serverSettings, passwordHasher);
+		} else {
+			Logger.log("account storage in "+serverSettings.accountPath());
+			archivist = new FileSystemArchivist(serverSettings, passwordHasher);
+		}
 		archivist.init();
+		accountsArchivist = archivist.accountsArchivist();
+		if (serverSettings.accountCacheSize() > 0) {
+			accountsArchivist = new CachingAccountsArchivist(accountsArchivist, passwordHasher,
+					serverSettings.accountCacheSize(), serverSettings.unknownAccountCacheTime());
+		}
+		// also when the control window is closed:
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				stopArchiving();
+			}
+		}, "archivist_shutdown"));
 
-		reception = new Reception(this, serverSettings.receptionPort());
+		if (serverSettings.nioReception()) {
+			reception = new NioReception(this, serverSettings);
+		} else {
+			reception = new Reception(this, serverSettings.receptionPort());
+		}
 		Logger.log("Reception has been created.");
 
 		JFrame control = new JFrame("MainServer");
@@ -91,12 +127,15 @@ public class MainServer {
 		graphicsContentManager.loadResourcesForServer();
 
 		maps = archivist.mapArchivist().loadAllMaps(serverSettings.mapPath());
-		synchronized(mapnameToMapman) {
-			for (Entry<String, Map> mapEntry : maps.entrySet()) {
-				MapManager mapman = new MapManager(this, mapEntry.getValue());
-				mapman.init();
-				mapnameToMapman.put(mapEntry.getKey(), mapman);
-			}
+		for (Entry<String, Map> mapEntry : maps.entrySet()) {
+			MapShards shards = new MapShards(this, mapEntry.getValue(), serverSettings.mapShards());
+			shards.init();
+			sessions.putShards(mapEntry.getKey(), shards);
+		}
+		if (serverSettings.checkpointInterval() > 0) {
+			checkpointService = new CheckpointService(sessions, accountsArchivist,
+													  serverSettings.checkpointInterval());
+			checkpointService.start();
 		}
 		//invMan = new InventoryManager(this);
 		reception.startListening();
@@ -117,17 +156,19 @@ public class MainServer {
 
 	/** locks allExistingPlayerNames, account */
 	public Result<Boolean> createNewPlayer(Account account, String playerName, CharacterClass type) {
-		return archivist.accountsArchivist().createNewPlayer(account, playerName, type);
+		return accountsArchivist.createNewPlayer(account, playerName, type);
 
 	}
 
-	/** locks account; activatePlayerNameToPlayer */
+	/** locks account */
 	public Result<ServerPlayer> loadAndActivatePlayer(Account account, String playerName) {
-		Result<ServerPlayer> result = archivist.accountsArchivist().loadAndActivatePlayer(account, playerName);
-		if (result.successful()) {
-			synchronized(activePlayernameToPlayer) {
-				activePlayernameToPlayer.put(playerName, result.getResult());
+		Result<ServerPlayer> result = accountsArchivist.loadAndActivatePlayer(account, playerName);
+		if (result.successful() && !sessions.activate(result.getResult())) {
+			synchronized(account) {
+				account.setActivePlayer(null);
 			}
+			String error = "Couldn't load "+playerName+" since it is already active!";
+			return new Result<ServerPlayer>(null, error);
 		}
 		return result;
 
@@ -142,94 +183,71 @@ public class MainServer {
 		return maps.keySet();
 	}
 
-	public HashMap<String, MapManager> getMapnameToMapman() {
-		return mapnameToMapman;
+	public java.util.Map<String, MapShards> getMapnameToShards() {
+		return sessions.getMapnameToShards();
 	}
 
-	/** locks mapnameToMapman */
-	public MapManager getMapman(String mapName) {
-		synchronized(mapnameToMapman) {
-			MapManager result = mapnameToMapman.get(mapName);
-			if (result == null) {
-				throw new RuntimeException("Could not find a MapManager for this map name!");
-			}
-			return result;
+	/** Returns the mapman of given map whose region contains given tile. */
+	public MapManager getMapman(String mapName, int x, int y) {
+		MapManager result = sessions.getMapman(mapName, x, y);
+		if (result == null) {
+			throw new RuntimeException("Could not find a MapManager for this map name!");
 		}
+		return result;
 	}
 
-	/** locks activePlayernameToPlayer<br />
-	 * returns the active Player instance with the given name */
+	/** returns the active Player instance with the given name */
 	public ServerPlayer getActivePlayerByName(String playerName) {
-		synchronized(activePlayernameToPlayer) {
-			return activePlayernameToPlayer.get(playerName);
-		}
+		return sessions.getActivePlayer(playerName);
 	}
 
-	/** locks activePlayerNameToPlayer; accNameToButler */
 	public Result<Butler> getButlerByPlayerName(String playerName) {
-		ServerPlayer player = getActivePlayerByName(playerName);
-		if (player == null) {
+		Butler butler = sessions.getButlerByPlayerName(playerName);
+		if (butler == null) {
 			String error = "getButlerByPlayerName(): Player with given name isn't active!";
 			return new Result<Butler>(null, error);
 		}
-		String accountName = player.getAccountName();
-		synchronized(accnameToButler) {
-			return new Result<Butler>(accnameToButler.get(accountName), null);
-		}
+		return new Result<Butler>(butler, null);
 	}
 
-	/** locks activePlayerNameToPlayer; mapnameToMapman */
 	public Result<MapManager> getMapmanByPlayerName(String playerName) {
-		ServerPlayer player = getActivePlayerByName(playerName);
-		if (player == null) {
+		MapManager mapman = sessions.getMapmanByPlayerName(playerName);
+		if (mapman == null) {
 			String error = "getMapmanByPlayerName(): Player with given name isn't active!";
 			return new Result<MapManager>(null, error);
 		}
-		String mapName = player.getMapName();
-		synchronized(mapnameToMapman) {
-			return new Result<MapManager>(mapnameToMapman.get(mapName), null);
-		}
+		return new Result<MapManager>(mapman, null);
 	}
 
 
-	/** locks butlers<br />
-	 * Creates a butler who looks after the querying client at given socket.
+	/** Creates a butler who looks after the querying client at given connection.
 	 * That doesn't mean that the client is logged in already! */
-	public Butler createButler(Socket c){
+	public Butler createButler(ClientConnection c){
 		Butler b = new Butler(this, c);
 		b.init();
-		synchronized(butlers) {
-			butlers.add(b);
-		}
+		sessions.addButler(b);
 		Logger.log("new butler for client at port "+c.getPort());
 		return b;
 	}
 
 
-	/** locks butlers */
 	public void deleteButler(Butler b){
-		synchronized(butlers) {
-			assert(butlers.contains(b));
-			butlers.remove(b);
-		}
-		Logger.log("Butler at port " + b.getClientSocket().getPort()+" destroyed!");
+		boolean removed = sessions.removeButler(b);
+		assert(removed);
+		Logger.log("Butler at port " + b.getConnection().getPort()+" destroyed!");
 	}
 
 
-	/** locks accnameToButler, loggedAccnameToAccount<br />
-	 * logs out the account with the given name
+	/** logs out the account with the given name
 	 * Requirement: No more active players */
 	public Result<Boolean> logoutAccount(String accountName){
-		if (!loggedIn(accountName)){
+		SessionRegistry.Session session = sessions.getSession(accountName);
+		if (session == null){
 			String error = "This account isn't even logged in!";
 			return new Result<Boolean>(null, error);
 		}
 		// Check if there's still an active player:
-		Account account;
-		synchronized (loggedAccnameToAccount) {
-			account = this.loggedAccnameToAccount.get(accountName);
-		}
-		ServerPlayer activePlayer = account.getActivePlayer();
+		ServerPlayer activePlayer = session.getAccount().getActivePlayer();
 		if (activePlayer != null) {
 			String error = "Can't log out since there's still an active player!";
 			return new Result<Boolean>(null, error);
@@ -237,40 +255,30 @@ public class MainServer {
 
 		// log out:
 		//saveAccount(acc); TODO
-		synchronized(accnameToButler) {
-			synchronized (loggedAccnameToAccount) {
-				assert(loggedAccnameToAccount.containsKey(accountName));
-				assert(accnameToButler.containsKey(accountName));
-				loggedAccnameToAccount.remove(accountName);
-				accnameToButler.remove(accountName);
-			}
-		}
+		sessions.logout(accountName);
 		Logger.log("Account "+accountName+" successfully logged out.");
 		return new Result<Boolean>(true, null);
 	}
 
 
-	/** locks loggedAccounts, accnameToButler */
+	/** Checks the password and logs in atomically, so that of two butlers
+	 * who try to log in the same account at once only one succeeds. */
 	public Result<Account> loginAccount(Butler butler, String name, String password){
 		// logs in the account with the given data
-		if (!archivist.accountsArchivist().existAccount(name)){
+		if (!accountsArchivist.existAccount(name)){
 			String error = "Login to non-existent account failed!";
 			return new Result<Account>(null, error);
-		} else if (loggedIn(name)){
+		} else if (sessions.isLoggedIn(name)){
 			String error = "This account is already logged in!";// TODO: Privacy?!
 			return new Result<Account>(null, error);
 		} else {
 			// log in:
-			Result<Account> result = archivist.accountsArchivist().loadAccount(name, password);
+			Result<Account> result = accountsArchivist.loadAccount(name, password);
 			if (result.successful()) {
 				Account account = result.getResult();
-				synchronized(accnameToButler) {
-					synchronized(loggedAccnameToAccount) {
-						assert(!loggedAccnameToAccount.containsKey(name));
-						assert(!accnameToButler.containsKey(name));
-						loggedAccnameToAccount.put(name, account);
-						accnameToButler.put(name, butler);
-					}
+				if (!sessions.login(account, butler)) {
+					String error = "This account is already logged in!";
+					return new Result<Account>(null, error);
 				}
 				Logger.log("Account "+name+" successfully logged in.");
 				return new Result<Account>(account, null);
@@ -281,36 +289,20 @@ public class MainServer {
 		}
 	}
 
-	/** locks loggedAccounts<br />
-	 * Checks if an account of given name is already logged in. */
-	private boolean loggedIn(String name){
-		synchronized(loggedAccnameToAccount) {
-			if (loggedAccnameToAccount.containsKey(name)) {
-				return true;
-			}
-			return false;
-		}
-	}
-
-
-	/** locks activePlayernameToPlayer, player, loggedAccnameToAccount, account<br />
+	/** locks player, account<br />
+	 * Doesn't wait for the player file to be written. <br />
 	 * => to be called by butlers! <br />
 	 * Saves and unloads given player. <br />
 	 * NOTE: Requires that given player is not registered at any mapmans
 	 * ( -> task of the butler to care about that)*/
 	public void unloadPlayer(ServerPlayer player) {
 		String accountName;
-		synchronized(activePlayernameToPlayer) {
-			synchronized(player) {
-				archivist.accountsArchivist().savePlayer(player);
-				accountName = player.getAccountName();
-				activePlayernameToPlayer.remove(player.getName());
-			}
-		}
-		Account account;
-		synchronized(loggedAccnameToAccount) {
-			account = loggedAccnameToAccount.get(accountName);
+		synchronized(player) {
+			accountsArchivist.savePlayer(player);
+			accountName = player.getAccountName();
 		}
+		sessions.deactivate(player);
+		Account account = sessions.getSession(accountName).getAccount();
 		synchronized(account) {
 			account.setActivePlayer(null);
 		}
@@ -319,10 +311,25 @@ public class MainServer {
 	/** NOTE: Doesn't wait until all threads have terminated. */
 	public void shutdownAll() {
 		reception.shutdown();
-		synchronized(butlers) {
-			for (Butler butler : butlers) {
-				butler.put(new MBPoisonPillOrder(null));
-			}
+		for (MapShards shards : sessions.getMapnameToShards().values()) {
+			shards.stopTicking();
+		}
+		for (Butler butler : sessions.getButlers()) {
+			butler.put(new MBPoisonPillOrder(null));
+		}
+		stopArchiving();
+	}
+
+	/** Makes a last checkpoint and writes everything that is pending. */
+	private void stopArchiving() {
+		if (checkpointService != null) {
+			checkpointService.stop();
+		}
+		archivist.shutdown();
+		if (accountsArchivist instanceof CachingAccountsArchivist) {
+			Logger.log("Account cache: "+accountsArchivist);
 		}
+		passwordHasher.shutdown();
+		Logger.log(passwordHasher.toString());
 	}
 }
@@ -22,13 +22,15 @@ import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
 
+import serverSide.butler.StreamClientConnection;
 import common.Logger;
+import common.Threads;
 
 /** Exactly one instance is created.
  *	Receives clients that want to connect to the game,
  *	Creates butlers for them and redirects them to a new port.
  */
-public class Reception{
+public class Reception implements ClientAcceptor {
 
 	protected boolean stopRunning;
 	protected MainServer parent;
@@ -49,9 +51,10 @@ public class Reception{
 			throw new RuntimeException("Couldn't create reception socket!");
 		}
 		this.recRunnable = new RecRunnable();
-		this.recThread = new Thread(this.recRunnable, "reception_thread");
+		this.recThread = Threads.newThread(this.recRunnable, "reception_thread");
 	}
 
+	@Override
 	public void startListening() {
 		this.recThread.start();
 	}
@@ -75,12 +78,14 @@ public class Reception{
 					return;
 				}
 				Logger.log("Client heard, create butler ...");
-				parent.createButler(clientSocket);
+				parent.createButler(new StreamClientConnection(
+					clientSocket, parent.getServerSettings()));
 			}
 		}
 	}
 
 	/** NOTE: Execution doesn't wait for reception to terminate. */
+	@Override
 	public void shutdown() {
 		stopRunning = true;
 		try {
@@ -20,25 +20,73 @@ package serverSide;
 
 import java.io.File;
 
+import serverSide.archivist.logArchivist.SyncPolicy;
+import serverSide.butler.SlowConsumerPolicy;
 import common.Logger;
 import common.Settings;
+import common.movement.PathfindingMode;
+import common.transport.OrderCodec;
+import common.transport.WireFormat;
 
 public class ServerSettings extends Settings {
 	private String serverDataPath; // NOTE: All paths must end in "/"
 	private String accountPath;
 	private String mapPath;
+	private String accountLogPath;
 	private String starterRegion = "sw-green";
 	private int maxPlayersPerAccount = 3;
 	private int receptionPort = 1024;
 	private String serverSourceAt = "http://savannah.nongnu.org";
+	private long moveInterval = 500; // milliseconds per movement step
+	private boolean compileMaps = true;
+	private PathfindingMode pathfinding = PathfindingMode.hierarchical;
+	private int pathClusterSize = 16; // tiles, only used with PathfindingMode.hierarchical
+	private int pathCacheSize = 1024; // paths per map, 0 to disable the path cache
+	private boolean mapmanTickMode = false;
+	private boolean mapmanActors = true; // false for one thread per mapman
+	private int mapShards = 1; // mapmen per map, each serving a strip of it
+	private int interestCellSize = 16; // tiles
+	private int interestViewRange = 1; // cells around a player's own cell that it sees
+	private long mapmanOrderTimeout = 5000; // milliseconds until a waiting butler complains
+	private long playerFlushInterval = 1000; // milliseconds between writing saved players
+	private long checkpointInterval = 30000; // milliseconds, 0 to disable checkpoints
+	private int passwordHashIterations = 20000;
+	private int passwordThreads = 2;
+	private int passwordQueueCapacity = 64; // logins waiting for a password thread
+	private int accountCacheSize = 10000; // 0 to disable the account cache
+	private long unknownAccountCacheTime = 60000; // milliseconds
+	private boolean logArchivist = false;
+	private SyncPolicy logSyncPolicy = SyncPolicy.interval;
+	private long logSyncInterval = 1000; // milliseconds, only used with SyncPolicy.interval
+	private double logCompactionRatio = 0.5; // share of outdated records that triggers compaction
+	private boolean framedTransport = false;
+	private boolean nioReception = false;
+	private boolean virtualThreads = false; // needs Java 24, otherwise ignored
+	private int nioThreads = 2;
+	private WireFormat wireFormat = WireFormat.serialization; // only used with framedTransport
+	private int outboundQueueCapacity = 256; // orders per client
+	private SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.dropStale;
+	private OrderCodec orderCodec;
 
 	public ServerSettings() {
 		super();
 		File classPathFile = new File(classPath);
 		String parentPath = classPathFile.getParent()+"/";
-		serverDataPath = parentPath+"serverData/";
+		setServerDataPath(parentPath+"serverData/");
+	}
+
+	/** Uses the server data under given path instead of the one next to
+	 * the binaries, e.g. for tools and benchmarks. */
+	public ServerSettings(String serverDataPath) {
+		super();
+		setServerDataPath(serverDataPath);
+	}
+
+	private void setServerDataPath(String serverDataPath) {
+		this.serverDataPath = serverDataPath;
 		accountPath = serverDataPath+"accounts/";
 		mapPath = serverDataPath+"maps/";
+		accountLogPath = serverDataPath+"accounts.log";
 	}
 
 	public String accountPath() {
@@ -65,10 +113,192 @@ public class ServerSettings extends Settings {
 		return receptionPort;
 	}
 
+	public long moveInterval() {
+		return moveInterval;
+	}
+
+	/** If true, maps are read from their compiled map.bin as long as
+	 * it is newer than their text files, and compiled otherwise. */
+	public boolean compileMaps() {
+		return compileMaps;
+	}
+
+	/** Tells how mapmen build the path of a moving player. */
+	public PathfindingMode pathfinding() {
+		return pathfinding;
+	}
+
+	/** Returns the width and height of the clusters into which maps
+	 * are divided for hierarchical pathfinding. */
+	public int pathClusterSize() {
+		return pathClusterSize;
+	}
+
+	/** Returns how many paths to frequent targets each mapman keeps. */
+	public int pathCacheSize() {
+		return pathCacheSize;
+	}
+
+	/** Returns the width and height of the cells into which mapmen divide
+	 * their maps to find out which players see each other. */
+	public int interestCellSize() {
+		return interestCellSize;
+	}
+
+	/** Returns how many cells in each direction players see around
+	 * their own cell. Only what happens there is sent to them. */
+	public int interestViewRange() {
+		return interestViewRange;
+	}
+
+	/** Returns into how many regions each map is divided, each served
+	 * by its own mapman. See MapShards. */
+	public int mapShards() {
+		return mapShards;
+	}
+
+	/** If true, the mapmen don't have their own threads, but run as
+	 * actors on the shared ActorPool whenever they have orders. */
+	public boolean mapmanActors() {
+		return mapmanActors;
+	}
+
+	/** If true, each mapman advances all its moving players from its own
+	 * worker once per moveInterval, instead of every player being
+	 * moved by its own scheduled task. */
+	public boolean mapmanTickMode() {
+		return mapmanTickMode;
+	}
+
+	/** Returns after how many milliseconds a butler who waits for his
+	 * mapman to register or unregister a player logs a warning. */
+	public long mapmanOrderTimeout() {
+		return mapmanOrderTimeout;
+	}
+
+	/** Returns how often saved players are written to disk. A crash
+	 * loses at most the changes of that time. */
+	public long playerFlushInterval() {
+		return playerFlushInterval;
+	}
+
+	/** Returns how often all active players that have changed are
+	 * saved, or 0 if they are only saved when they are unloaded. */
+	public long checkpointInterval() {
+		return checkpointInterval;
+	}
+
+	/** Returns the PBKDF2 iteration count of new password hashes. The
+	 * higher it is, the longer every login takes. Accounts with another
+	 * count get a new hash when they log in. */
+	public int passwordHashIterations() {
+		return passwordHashIterations;
+	}
+
+	/** Returns how many threads hash passwords. Logins can't take more
+	 * processors than that. */
+	public int passwordThreads() {
+		return passwordThreads;
+	}
+
+	/** Returns how many logins may wait for a password thread before
+	 * further ones are refused. */
+	public int passwordQueueCapacity() {
+		return passwordQueueCapacity;
+	}
+
+	/** Returns how many accounts and how many unknown account names
+	 * are kept in memory at most, or 0 if accounts are always read
+	 * from the archivist. */
+	public int accountCacheSize() {
+		return accountCacheSize;
+	}
+
+	/** Returns for how many milliseconds an account name that doesn't
+	 * exist is remembered. */
+	public long unknownAccountCacheTime() {
+		return unknownAccountCacheTime;
+	}
+
+	/** If true, accounts and players are kept in the single log file
+	 * accountLogPath() instead of one directory per account. Existing
+	 * accounts can be copied there with LogStoreMigration. */
+	public boolean logArchivist() {
+		return logArchivist;
+	}
+
+	public String accountLogPath() {
+		return accountLogPath;
+	}
+
+	public SyncPolicy logSyncPolicy() {
+		return logSyncPolicy;
+	}
+
+	public long logSyncInterval() {
+		return logSyncInterval;
+	}
+
+	/** Returns which share of the account log may consist of records
+	 * that have been overwritten since, before it is compacted. */
+	public double logCompactionRatio() {
+		return logCompactionRatio;
+	}
+
+	/** If true, orders are sent as length-prefixed frames (see
+	 * common.transport) instead of over one long-lived object stream.
+	 * The clients must be configured accordingly. */
+	public boolean framedTransport() {
+		return framedTransport || nioReception;
+	}
+
+	/** If true, the clients are served by a few selector threads instead
+	 * of a reading thread per client. Implies framedTransport(). */
+	public boolean nioReception() {
+		return nioReception;
+	}
+
+	/** If true, the reception, connection, Mux and worker threads are
+	 * virtual threads, if the JVM is Java 24 or later. See common.Threads. */
+	public boolean virtualThreads() {
+		return virtualThreads;
+	}
+
+	public int nioThreads() {
+		return nioThreads;
+	}
+
+	public WireFormat wireFormat() {
+		return wireFormat;
+	}
+
+	/** Returns how many orders may wait to be written to a client
+	 * before the slowConsumerPolicy() applies. */
+	public int outboundQueueCapacity() {
+		return outboundQueueCapacity;
+	}
+
+	public SlowConsumerPolicy slowConsumerPolicy() {
+		return slowConsumerPolicy;
+	}
+
+	/** Returns the codec with which framed orders are encoded. */
+	public synchronized OrderCodec orderCodec() {
+		if (orderCodec == null) {
+			orderCodec = wireFormat.createCodec();
+		}
+		return orderCodec;
+	}
+
 	@Override
 	public void checkPaths() {
 		super.checkPaths();
-		String[] paths = new String[] {accountPath, mapPath};
+		String[] paths;
+		if (logArchivist) {
+			paths = new String[] {serverDataPath, mapPath};
+		} else {
+			paths = new String[] {accountPath, mapPath};
+		}
 		for (String path : paths) {
 			if (!isPathAccessible(path)) {
 				Logger.log("WARNING: directory "+path+" is not accessible!");
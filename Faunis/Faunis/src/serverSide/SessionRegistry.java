@@ -0,0 +1,167 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import serverSide.butler.Butler;
+import serverSide.mapManager.MapManager;
+import serverSide.mapManager.MapShards;
+import serverSide.player.ServerPlayer;
+
+/** Knows who is connected, which accounts are logged in, which players
+ * are active and which mapmen serve which map. <br />
+ * All lookups go without locking. Logging in and activating a player
+ * are atomic: if two butlers try it for the same name at once, exactly
+ * one succeeds. There is no lock order to be observed, since no method
+ * holds a lock while calling another. */
+public class SessionRegistry {
+	/** A logged in account together with the butler who logged it in. */
+	public static class Session {
+		private final Account account;
+		private final Butler butler;
+
+		Session(Account account, Butler butler) {
+			this.account = account;
+			this.butler = butler;
+		}
+
+		public Account getAccount() {
+			return account;
+		}
+
+		public Butler getButler() {
+			return butler;
+		}
+	}
+
+	private final Set<Butler> butlers;
+	private final ConcurrentHashMap<String, Session> accnameToSession;
+	private final ConcurrentHashMap<String, ServerPlayer> activePlayernameToPlayer;
+	private final ConcurrentHashMap<String, MapShards> mapnameToShards;
+
+	public SessionRegistry() {
+		this.butlers = Collections.newSetFromMap(new ConcurrentHashMap<Butler, Boolean>());
+		this.accnameToSession = new ConcurrentHashMap<String, Session>();
+		this.activePlayernameToPlayer = new ConcurrentHashMap<String, ServerPlayer>();
+		this.mapnameToShards = new ConcurrentHashMap<String, MapShards>();
+	}
+
+	public void addButler(Butler butler) {
+		butlers.add(butler);
+	}
+
+	/** Returns whether given butler had been added. */
+	public boolean removeButler(Butler butler) {
+		return butlers.remove(butler);
+	}
+
+	/** Returns a live, unmodifiable view that may be iterated while
+	 * butlers come and go. */
+	public Collection<Butler> getButlers() {
+		return Collections.unmodifiableSet(butlers);
+	}
+
+	/** Logs given account in for given butler. Returns false if it is
+	 * already logged in. */
+	public boolean login(Account account, Butler butler) {
+		Session session = new Session(account, butler);
+		return accnameToSession.putIfAbsent(account.getName(), session) == null;
+	}
+
+	/** Logs the account of given name out. Returns its session, or null
+	 * if it hadn't been logged in. */
+	public Session logout(String accountName) {
+		return accnameToSession.remove(accountName);
+	}
+
+	public boolean isLoggedIn(String accountName) {
+		return accnameToSession.containsKey(accountName);
+	}
+
+	/** Returns the session of the account of given name, or null if it
+	 * isn't logged in. */
+	public Session getSession(String accountName) {
+		return accnameToSession.get(accountName);
+	}
+
+	/** Marks given player as active. Returns false if a player of the
+	 * same name is already active. */
+	public boolean activate(ServerPlayer player) {
+		return activePlayernameToPlayer.putIfAbsent(player.getName(), player) == null;
+	}
+
+	/** Marks given player as inactive, but only if it is the one that
+	 * is active under its name. Returns whether it was. */
+	public boolean deactivate(ServerPlayer player) {
+		return activePlayernameToPlayer.remove(player.getName(), player);
+	}
+
+	/** Returns a live, unmodifiable view that may be iterated while
+	 * players come and go. */
+	public Collection<ServerPlayer> getActivePlayers() {
+		return Collections.unmodifiableCollection(activePlayernameToPlayer.values());
+	}
+
+	/** Returns the active player of given name, or null. */
+	public ServerPlayer getActivePlayer(String playerName) {
+		return activePlayernameToPlayer.get(playerName);
+	}
+
+	/** Returns the butler who looks after the active player of given
+	 * name, or null if there is no such player. */
+	public Butler getButlerByPlayerName(String playerName) {
+		ServerPlayer player = activePlayernameToPlayer.get(playerName);
+		if (player == null) {
+			return null;
+		}
+		Session session = accnameToSession.get(player.getAccountName());
+		return (session == null) ? null : session.getButler();
+	}
+
+	/** Returns the mapman of the region where the active player of
+	 * given name is, or null if there is no such player. */
+	public MapManager getMapmanByPlayerName(String playerName) {
+		ServerPlayer player = activePlayernameToPlayer.get(playerName);
+		if (player == null) {
+			return null;
+		}
+		return getMapman(player.getMapName(), player.getX(), player.getY());
+	}
+
+	public void putShards(String mapName, MapShards shards) {
+		mapnameToShards.put(mapName, shards);
+	}
+
+	/** Returns the mapman of given map whose region contains given
+	 * tile, or null if there is no such map. */
+	public MapManager getMapman(String mapName, int x, int y) {
+		MapShards shards = mapnameToShards.get(mapName);
+		return (shards == null) ? null : shards.shardAt(x, y);
+	}
+
+	/** Returns a live, unmodifiable view. */
+	public Map<String, MapShards> getMapnameToShards() {
+		return Collections.unmodifiableMap(mapnameToShards);
+	}
+}
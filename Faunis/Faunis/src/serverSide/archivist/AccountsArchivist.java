@@ -43,9 +43,17 @@ public interface AccountsArchivist {
 			CharacterClass type);
 
 	/** locks player<br />
-	 * Saves the current state of given player. */
+	 * Saves the current state of given player. The state may be written
+	 * to disk only later, but loadAndActivatePlayer() will already
+	 * return it. */
 	boolean savePlayer(ServerPlayer player);
 
+	/** locks player<br />
+	 * Saves a copy of everything that is persistent of given player,
+	 * even if he is moving at the moment. Returns the size of the saved
+	 * snapshot in bytes, or -1 if it failed. */
+	int checkpointPlayer(ServerPlayer player);
+
 	/** locks account <br />
 	 * Loads a player object from disk and returns it, or returns null if it failed.
 	 * => To be called by butlers!<br />
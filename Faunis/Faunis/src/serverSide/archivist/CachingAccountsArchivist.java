@@ -0,0 +1,225 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.archivist;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import serverSide.Account;
+import serverSide.Result;
+import serverSide.player.ServerPlayer;
+
+import common.BoundedMap;
+import common.Logger;
+import common.enums.CharacterClass;
+
+/** Keeps the data of recently loaded accounts in memory in front of
+ * another AccountsArchivist, so that logging in again after a
+ * reconnect doesn't touch the disk. The password is still verified
+ * against the cached hash every time. Names that turned out not to
+ * belong to any account are remembered for a while, too. Both caches
+ * are bounded and forget the least recently used entries first. <br />
+ * Entries are invalidated by createAccount() and createNewPlayer(), and
+ * when their password hash needs to be renewed, so that the archivist
+ * behind can do that. Accounts that are created behind the server's
+ * back are only found once their negative entry has expired. */
+public class CachingAccountsArchivist implements AccountsArchivist {
+	/** What is needed to log an account in without asking the disk. */
+	private static class AccountRecord {
+		final PasswordHash passwordHash;
+		final ArrayList<String> playerNames;
+		AccountRecord(PasswordHash passwordHash, ArrayList<String> playerNames) {
+			this.passwordHash = passwordHash;
+			this.playerNames = playerNames;
+		}
+	}
+
+	private final AccountsArchivist archivist;
+	private final PasswordHasher passwordHasher;
+	private final long negativeTime;
+	// all following fields are guarded by this
+	private final BoundedMap<String, AccountRecord> accounts;
+	/** Maps names of non-existing accounts to when they expire. */
+	private final BoundedMap<String, Long> unknownNames;
+	/** Counts invalidations, so that what has been read from the
+	 * archivist meanwhile isn't cached. */
+	private long generation;
+	private long hits;
+	private long negativeHits;
+	private long misses;
+
+	/** Caches up to capacity accounts and as many unknown names, the
+	 * latter for negativeTime milliseconds. */
+	public CachingAccountsArchivist(AccountsArchivist archivist, PasswordHasher passwordHasher,
+									int capacity, long negativeTime) {
+		this.archivist = archivist;
+		this.passwordHasher = passwordHasher;
+		this.negativeTime = negativeTime;
+		this.accounts = new BoundedMap<String, AccountRecord>(capacity);
+		this.unknownNames = new BoundedMap<String, Long>(capacity);
+	}
+
+	/** Returns true if given name is known not to be an account, and
+	 * counts the lookup. */
+	private synchronized boolean isUnknown(String accountName) {
+		Long expiry = unknownNames.get(accountName);
+		if (expiry != null) {
+			if (expiry > System.currentTimeMillis()) {
+				negativeHits++;
+				return true;
+			}
+			unknownNames.remove(accountName);
+		}
+		return false;
+	}
+
+	private synchronized void putUnknown(String accountName, long readGeneration) {
+		if (generation == readGeneration) {
+			unknownNames.put(accountName, System.currentTimeMillis() + negativeTime);
+		}
+	}
+
+	private synchronized void invalidate(String accountName) {
+		generation++;
+		accounts.remove(accountName);
+		unknownNames.remove(accountName);
+	}
+
+	@Override
+	public Result<Boolean> createAccount(String name, String password) {
+		Result<Boolean> result = archivist.createAccount(name, password);
+		invalidate(name);
+		return result;
+	}
+
+	@Override
+	public Result<Account> loadAccount(String name, String password) {
+		AccountRecord record;
+		long readGeneration;
+		synchronized(this) {
+			record = accounts.get(name);
+			if (record != null && passwordHasher.needsRehash(record.passwordHash)) {
+				// e.g. the iterations have been changed
+				accounts.remove(name);
+				record = null;
+			}
+			if (record != null) {
+				hits++;
+			} else if (isUnknown(name)) {
+				String error = "Account "+name+" couldn't be loaded since it does not exist!";
+				return new Result<Account>(null, error);
+			} else {
+				misses++;
+			}
+			readGeneration = generation;
+		}
+		if (record != null) {
+			Result<Boolean> valid = passwordHasher.verify(record.passwordHash, password);
+			if (!valid.successful()) {
+				return new Result<Account>(null, valid.getErrorMessage());
+			}
+			if (!valid.getResult()) {
+				Logger.log("Invalid password for account "+name);
+				return new Result<Account>(null, "Invalid login data!");
+			}
+			Logger.log("Account "+name+" loaded from cache.");
+			return new Result<Account>(new Account(name, record.passwordHash,
+					new ArrayList<String>(record.playerNames)), null);
+		}
+		Result<Account> result = archivist.loadAccount(name, password);
+		if (result.successful()) {
+			Account account = result.getResult();
+			synchronized(this) {
+				if (generation == readGeneration) {
+					accounts.put(name, new AccountRecord(account.getPasswordHash(),
+							new ArrayList<String>(account.getPlayerNames())));
+				}
+			}
+		} else if (!archivist.existAccount(name)) {
+			putUnknown(name, readGeneration);
+		}
+		return result;
+	}
+
+	/** Only counts unknown names: a login asks this and then
+	 * loadAccount(), which counts an existing account, so that each login
+	 * is only counted once. */
+	@Override
+	public boolean existAccount(String accountName) {
+		long readGeneration;
+		synchronized(this) {
+			if (accounts.get(accountName) != null) {
+				return true;
+			}
+			if (isUnknown(accountName)) {
+				return false;
+			}
+			readGeneration = generation;
+		}
+		boolean result = archivist.existAccount(accountName);
+		if (!result) {
+			synchronized(this) {
+				misses++;
+			}
+			putUnknown(accountName, readGeneration);
+		}
+		return result;
+	}
+
+	@Override
+	public HashSet<String> loadAllExistingPlayerNames() {
+		return archivist.loadAllExistingPlayerNames();
+	}
+
+	@Override
+	public Result<Boolean> createNewPlayer(Account account, String playerName, CharacterClass type) {
+		Result<Boolean> result = archivist.createNewPlayer(account, playerName, type);
+		invalidate(account.getName());
+		return result;
+	}
+
+	@Override
+	public boolean savePlayer(ServerPlayer player) {
+		return archivist.savePlayer(player);
+	}
+
+	@Override
+	public int checkpointPlayer(ServerPlayer player) {
+		return archivist.checkpointPlayer(player);
+	}
+
+	@Override
+	public Result<ServerPlayer> loadAndActivatePlayer(Account account, String playerName) {
+		return archivist.loadAndActivatePlayer(account, playerName);
+	}
+
+	/** Returns the share of account lookups that didn't need the
+	 * archivist behind, between 0 and 1. */
+	public synchronized double getHitRate() {
+		long lookups = hits + negativeHits + misses;
+		return lookups == 0 ? 0 : (double) (hits + negativeHits) / lookups;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("%d accounts and %d unknown names cached; %d hits, %d negative hits, "
+				+"%d misses (hit rate %.1f%%)", accounts.size(), unknownNames.size(), hits,
+				negativeHits, misses, getHitRate() * 100);
+	}
+}
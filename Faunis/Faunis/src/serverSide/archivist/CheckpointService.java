@@ -0,0 +1,162 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.archivist;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import serverSide.SessionRegistry;
+import serverSide.player.ServerPlayer;
+import common.Logger;
+
+/** Periodically saves all active players, so that a crash doesn't lose
+ * everything since they were loaded. Players keep moving meanwhile: each
+ * one is copied on its own (see ServerPlayer.persistentCopy()), without
+ * path and animation. Only players that have changed since their last
+ * checkpoint are saved again. */
+public class CheckpointService {
+	private final SessionRegistry sessions;
+	private final AccountsArchivist archivist;
+	private final long interval;
+	private Timer timer;
+	/** The version of each player at his last checkpoint. Only accessed
+	 * by the timer thread, or after it has been stopped. */
+	private final HashMap<String, Long> checkpointedVersions;
+	// statistics:
+	private volatile long checkpoints;
+	private volatile long lastNanos;
+	private volatile long maxNanos;
+	private volatile int lastPlayersSaved;
+	private volatile long playersSaved;
+	private volatile long lastBytes;
+	private volatile long bytes;
+
+	public CheckpointService(SessionRegistry sessions, AccountsArchivist archivist, long interval) {
+		this.sessions = sessions;
+		this.archivist = archivist;
+		this.interval = interval;
+		this.checkpointedVersions = new HashMap<String, Long>();
+	}
+
+	public synchronized void start() {
+		assert(timer == null);
+		timer = new Timer("checkpoint", true);
+		timer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				checkpoint();
+			}
+		}, interval, interval);
+	}
+
+	/** Stops the periodic checkpoints and makes a last one. */
+	public synchronized void stop() {
+		if (timer == null) {
+			return;
+		}
+		timer.cancel();
+		timer = null;
+		checkpoint();
+		Logger.log("Checkpoints: "+this);
+	}
+
+	/** Saves all active players that have changed since their last
+	 * checkpoint. */
+	synchronized void checkpoint() {
+		long start = System.nanoTime();
+		int saved = 0;
+		long savedBytes = 0;
+		HashSet<String> active = new HashSet<String>();
+		for (ServerPlayer player : sessions.getActivePlayers()) {
+			String name = player.getName();
+			active.add(name);
+			// read the version before copying, so that a change in
+			// between causes another checkpoint next time
+			long version = player.getVersion();
+			Long checkpointed = checkpointedVersions.get(name);
+			if (checkpointed != null && checkpointed.longValue() == version) {
+				continue;
+			}
+			int size = archivist.checkpointPlayer(player);
+			if (size >= 0) {
+				checkpointedVersions.put(name, version);
+				saved++;
+				savedBytes += size;
+			}
+		}
+		// forget players that have been unloaded:
+		Iterator<String> iterator = checkpointedVersions.keySet().iterator();
+		while (iterator.hasNext()) {
+			if (!active.contains(iterator.next())) {
+				iterator.remove();
+			}
+		}
+		long nanos = System.nanoTime() - start;
+		checkpoints++;
+		lastNanos = nanos;
+		if (nanos > maxNanos) {
+			maxNanos = nanos;
+		}
+		lastPlayersSaved = saved;
+		playersSaved += saved;
+		lastBytes = savedBytes;
+		bytes += savedBytes;
+		if (saved > 0) {
+			Logger.log("Checkpoint: saved "+saved+" players ("+savedBytes+" bytes) in "
+					   +nanos/1000+"us.");
+		}
+	}
+
+	public long getCheckpoints() {
+		return checkpoints;
+	}
+
+	/** Returns how long the last checkpoint took in nanoseconds. */
+	public long getLastNanos() {
+		return lastNanos;
+	}
+
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+
+	/** Returns how many players the last checkpoint saved. */
+	public int getLastPlayersSaved() {
+		return lastPlayersSaved;
+	}
+
+	/** Returns how many bytes of snapshots the last checkpoint saved. */
+	public long getLastBytes() {
+		return lastBytes;
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+
+	@Override
+	public String toString() {
+		return "CheckpointService [checkpoints=" + checkpoints
+				+ ", last=" + lastNanos/1000 + "us/" + lastPlayersSaved + " players/" + lastBytes + " bytes"
+				+ ", max=" + maxNanos/1000 + "us, total=" + playersSaved + " players/" + bytes + " bytes]";
+	}
+}
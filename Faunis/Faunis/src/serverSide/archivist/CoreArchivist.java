@@ -24,5 +24,8 @@ public interface CoreArchivist {
 	void init();
 	AccountsArchivist accountsArchivist();
 	MapArchivist mapArchivist();
+	/** Writes everything that is still pending. Whatever is saved
+	 * afterwards is written immediately. */
+	void shutdown();
 
 }
\ No newline at end of file
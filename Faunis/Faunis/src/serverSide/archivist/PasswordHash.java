@@ -0,0 +1,116 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.archivist;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Properties;
+
+/** A password as it is stored in an account record: a salted PBKDF2
+ * hash together with the salt and the iteration count it was made
+ * with. Records from before hashing only contain the password itself;
+ * they are represented with zero iterations and replaced by a hash as
+ * soon as the account logs in. See PasswordHasher. */
+public class PasswordHash {
+	private final byte[] salt;
+	private final byte[] hash;
+	private final int iterations;
+
+	public PasswordHash(byte[] salt, byte[] hash, int iterations) {
+		this.salt = salt;
+		this.hash = hash;
+		this.iterations = iterations;
+	}
+
+	/** Reads the properties that toProperties() writes, or the
+	 * plaintext "password" of an old record. Returns null if there
+	 * is neither. */
+	public static PasswordHash fromProperties(Properties properties) {
+		String hash = properties.getProperty("passwordHash");
+		if (hash != null) {
+			try {
+				return new PasswordHash(fromHex(properties.getProperty("salt")), fromHex(hash),
+										Integer.parseInt(properties.getProperty("iterations")));
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				return null;
+			}
+		}
+		String password = properties.getProperty("password");
+		if (password != null) {
+			return new PasswordHash(new byte[0], utf8(password), 0);
+		}
+		return null;
+	}
+
+	/** Stores this hash in given properties, replacing a plaintext
+	 * password. */
+	public void toProperties(Properties properties) {
+		assert(!isPlaintext());
+		properties.remove("password");
+		properties.setProperty("passwordHash", toHex(hash));
+		properties.setProperty("salt", toHex(salt));
+		properties.setProperty("iterations", Integer.toString(iterations));
+	}
+
+	/** Returns true if this comes from an old record that contains the
+	 * password itself. */
+	public boolean isPlaintext() {
+		return iterations == 0;
+	}
+
+	byte[] getSalt() {
+		return salt;
+	}
+
+	byte[] getHash() {
+		return hash;
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	static byte[] utf8(String string) {
+		try {
+			return string.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder result = new StringBuilder(bytes.length*2);
+		for (byte b : bytes) {
+			result.append(Character.forDigit((b >> 4) & 0xf, 16));
+			result.append(Character.forDigit(b & 0xf, 16));
+		}
+		return result.toString();
+	}
+
+	private static byte[] fromHex(String hex) {
+		if (hex.length() % 2 != 0) {
+			throw new IllegalArgumentException("Odd length of hex string "+hex);
+		}
+		byte[] result = new byte[hex.length()/2];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = (byte) Integer.parseInt(hex.substring(2*i, 2*i+2), 16);
+		}
+		return result;
+	}
+}
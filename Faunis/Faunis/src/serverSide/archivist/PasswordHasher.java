@@ -0,0 +1,156 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.archivist;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import serverSide.Result;
+
+/** Hashes and verifies passwords with PBKDF2, salted with 16 random
+ * bytes. The iteration count makes every hash as expensive as wanted;
+ * to keep a flood of logins from occupying all butlers with it, the
+ * work is done by a few threads of its own. If more hashes are waiting
+ * for them than the queue capacity, further logins fail at once with
+ * an error. Hashes are compared in constant time. */
+public class PasswordHasher {
+	private static final String algorithm = "PBKDF2WithHmacSHA1";
+	private static final int saltLength = 16;
+	private static final int hashBits = 160;
+	public static final String busyError = "The server is busy, please try again later!";
+
+	private final int iterations;
+	private final ThreadPoolExecutor executor;
+	private final SecureRandom random;
+	private final AtomicLong hashes = new AtomicLong();
+	private final AtomicLong hashNanos = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+
+	/** Creates new hashes with given iteration count, using given
+	 * amount of daemon threads named "password_[number]". */
+	public PasswordHasher(int iterations, int threads, int queueCapacity) {
+		this.iterations = iterations;
+		ThreadFactory threadFactory = new ThreadFactory() {
+			private final AtomicInteger threadCounter = new AtomicInteger(0);
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "password_"+threadCounter.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity), threadFactory);
+		this.random = new SecureRandom();
+	}
+
+	/** Returns a new salted hash of given password. */
+	public Result<PasswordHash> hash(final String password) {
+		final byte[] salt = new byte[saltLength];
+		synchronized(random) {
+			random.nextBytes(salt);
+		}
+		return run(new Callable<PasswordHash>() {
+			@Override
+			public PasswordHash call() throws GeneralSecurityException {
+				return new PasswordHash(salt, derive(password, salt, iterations), iterations);
+			}
+		});
+	}
+
+	/** Returns whether given password matches given hash. */
+	public Result<Boolean> verify(final PasswordHash stored, final String password) {
+		if (stored.isPlaintext()) {
+			boolean valid = MessageDigest.isEqual(PasswordHash.utf8(password), stored.getHash());
+			return new Result<Boolean>(valid, null);
+		}
+		return run(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws GeneralSecurityException {
+				byte[] hash = derive(password, stored.getSalt(), stored.getIterations());
+				return MessageDigest.isEqual(hash, stored.getHash());
+			}
+		});
+	}
+
+	/** Returns true if given hash should be replaced by a new one,
+	 * once the password is known. */
+	public boolean needsRehash(PasswordHash stored) {
+		return stored.getIterations() != iterations;
+	}
+
+	private <T> Result<T> run(Callable<T> task) {
+		Future<T> future;
+		try {
+			future = executor.submit(task);
+		} catch (RejectedExecutionException e) {
+			rejected.incrementAndGet();
+			return new Result<T>(null, busyError);
+		}
+		try {
+			return new Result<T>(future.get(), null);
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			return new Result<T>(null, busyError);
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+			return new Result<T>(null, "Error while checking the password!");
+		}
+	}
+
+	private byte[] derive(String password, byte[] salt, int iterations)
+			throws GeneralSecurityException {
+		long startTime = System.nanoTime();
+		PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, hashBits);
+		try {
+			return SecretKeyFactory.getInstance(algorithm).generateSecret(spec).getEncoded();
+		} finally {
+			spec.clearPassword();
+			hashes.incrementAndGet();
+			hashNanos.addAndGet(System.nanoTime() - startTime);
+		}
+	}
+
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	@Override
+	public String toString() {
+		long count = hashes.get();
+		return "PasswordHasher [iterations="+iterations+", hashes="+count+", averageMicros="
+				+(count == 0 ? 0 : hashNanos.get()/count/1000)+", rejected="+rejected.get()
+				+", queued="+executor.getQueue().size()+"]";
+	}
+}
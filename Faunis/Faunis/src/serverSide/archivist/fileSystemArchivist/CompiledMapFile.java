@@ -0,0 +1,221 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.archivist.fileSystemArchivist;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+import common.Link;
+import common.Map;
+import common.enums.CoordinateType;
+
+/** Reads and writes the compiled form of a map, "map.bin" next to its
+ * text files. It is read by mapping it into memory, so that the deco
+ * layer of the map isn't copied onto the heap at all. <br />
+ * Layout: magic, formatVersion, width, height, then the deco names (or -1 if
+ * the map has no deco layer), the links (or -1 if it has no links),
+ * the blocked tiles (see Map.blockedTiles, or -1 if none), and finally the deco layer as one short per tile, row by row (see
+ * Map.decoLayer). Strings are written as their length in UTF-8 bytes,
+ * followed by these bytes. */
+public class CompiledMapFile {
+	public static final String fileName = "map.bin";
+	private static final int magic = 0x464d4150; // "FMAP"
+	private static final int formatVersion = 2;
+	private static final String[] sourceFiles = new String[] {
+		"settings.txt", "deco.txt", "links.txt", "collision.txt"
+	};
+
+	/** Returns true if the compiled map in given map directory exists
+	 * and is newer than all of the map's text files, and than the
+	 * collision properties of all maps. */
+	public static boolean isUpToDate(File mapDir) {
+		File compiledFile = new File(mapDir, fileName);
+		if (!compiledFile.isFile()) {
+			return false;
+		}
+		long compiled = compiledFile.lastModified();
+		for (String sourceFile : sourceFiles) {
+			if (new File(mapDir, sourceFile).lastModified() > compiled) {
+				return false;
+			}
+		}
+		File collisionProperties = new File(mapDir.getParentFile(),
+											FSMapArchivist.collisionFileName);
+		return collisionProperties.lastModified() <= compiled;
+	}
+
+	/** Writes given map to a temporary file first, which then replaces
+	 * the given one. */
+	public static void write(File file, Map map) throws IOException {
+		File tempFile = new File(file.getPath()+".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tempFile)));
+		try {
+			out.writeInt(magic);
+			out.writeInt(formatVersion);
+			out.writeInt(map.getWidth());
+			out.writeInt(map.getHeight());
+			String[] decoNames = map.getDecoNames();
+			ShortBuffer decoLayer = map.getDecoLayer();
+			if (decoLayer == null) {
+				out.writeInt(-1);
+			} else {
+				out.writeInt(decoNames.length);
+				for (String decoName : decoNames) {
+					writeString(out, decoName);
+				}
+			}
+			ArrayList<Link> links = map.getLinks();
+			if (links == null) {
+				out.writeInt(-1);
+			} else {
+				out.writeInt(links.size());
+				for (Link link : links) {
+					out.writeInt(link.getSourceX());
+					out.writeInt(link.getSourceY());
+					writeString(out, link.getTargetMap());
+					out.writeInt(link.getTargetX());
+					out.writeInt(link.getTargetY());
+					out.writeByte(link.getTargetXType().ordinal());
+					out.writeByte(link.getTargetYType().ordinal());
+				}
+			}
+			long[] blockedTiles = map.getBlockedTiles();
+			if (blockedTiles == null) {
+				out.writeInt(-1);
+			} else {
+				out.writeInt(blockedTiles.length);
+				for (long word : blockedTiles) {
+					out.writeLong(word);
+				}
+			}
+			if (decoLayer != null) {
+				for (int i = 0; i < decoLayer.capacity(); i++) {
+					out.writeShort(decoLayer.get(i));
+				}
+			}
+		} finally {
+			out.close();
+		}
+		// renameTo() doesn't replace an existing file on every platform
+		if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file))) {
+			throw new IOException("Couldn't rename "+tempFile+" to "+file);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String string) throws IOException {
+		byte[] bytes = string.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/** Maps given file into memory and reads the map with given name
+	 * from it. */
+	public static Map read(File file, String mapName) throws IOException {
+		MappedByteBuffer buffer;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			// the mapping stays valid after the file is closed
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			raf.close();
+		}
+		try {
+			if (buffer.getInt() != magic) {
+				throw new IOException(file+" is not a compiled map!");
+			}
+			int version = buffer.getInt();
+			if (version != formatVersion) {
+				throw new IOException(file+" has unknown version "+version);
+			}
+			int width = buffer.getInt();
+			int height = buffer.getInt();
+			if (width < 0 || height < 0) {
+				throw new IOException(file+" has invalid size "+width+"x"+height);
+			}
+			String[] decoNames = null;
+			int decoNameCount = buffer.getInt();
+			if (decoNameCount >= 0) {
+				decoNames = new String[decoNameCount];
+				for (int i = 0; i < decoNameCount; i++) {
+					decoNames[i] = readString(buffer);
+				}
+			}
+			ArrayList<Link> links = null;
+			int linkCount = buffer.getInt();
+			if (linkCount >= 0) {
+				CoordinateType[] types = CoordinateType.values();
+				links = new ArrayList<Link>(linkCount);
+				for (int i = 0; i < linkCount; i++) {
+					int sourceX = buffer.getInt();
+					int sourceY = buffer.getInt();
+					String targetMap = readString(buffer);
+					int targetX = buffer.getInt();
+					int targetY = buffer.getInt();
+					CoordinateType targetXType = types[buffer.get()];
+					CoordinateType targetYType = types[buffer.get()];
+					links.add(new Link(mapName, sourceX, sourceY, targetMap,
+									   targetX, targetY, targetXType, targetYType));
+				}
+			}
+			long[] blockedTiles = null;
+			int blockedTilesLength = buffer.getInt();
+			if (blockedTilesLength >= 0) {
+				if (blockedTilesLength != Map.blockedTilesLength(width, height)) {
+					throw new IOException(file+" has blocked tiles of wrong size");
+				}
+				blockedTiles = new long[blockedTilesLength];
+				buffer.asLongBuffer().get(blockedTiles);
+				buffer.position(buffer.position() + blockedTilesLength * 8);
+			}
+			ShortBuffer decoLayer = null;
+			if (decoNames != null) {
+				decoLayer = buffer.slice().asShortBuffer();
+				if (decoLayer.capacity() != width * height) {
+					throw new IOException(file+" has a deco layer of wrong size");
+				}
+			}
+			return new Map(mapName, width, height, decoNames, decoLayer, blockedTiles, links);
+		} catch (BufferUnderflowException e) {
+			throw new IOException(file+" is truncated");
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IOException(file+" contains an invalid coordinate type");
+		}
+	}
+
+	private static String readString(ByteBuffer buffer) throws IOException {
+		int length = buffer.getInt();
+		if (length < 0 || length > buffer.remaining()) {
+			throw new IOException("Invalid string length "+length);
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, "UTF-8");
+	}
+}
@@ -18,11 +18,14 @@
  */
 package serverSide.archivist.fileSystemArchivist;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
@@ -37,6 +40,7 @@ import serverSide.Account;
 import serverSide.Result;
 import serverSide.ServerSettings;
 import serverSide.archivist.AccountsArchivist;
+import serverSide.archivist.PasswordHash;
 import serverSide.player.ServerPlayer;
 
 public class FSAccountsArchivist implements AccountsArchivist {
@@ -53,7 +57,11 @@ public class FSAccountsArchivist implements AccountsArchivist {
 		// Check if an account already exists under given name:
 		if (!existAccountSubdir(name)){
 			// account doesn't yet exist, create it (without players)
-			Account acc = new Account(name, password, new ArrayList<String>());
+			Result<PasswordHash> passwordHash = parent.passwordHasher.hash(password);
+			if (!passwordHash.successful()) {
+				return new Result<Boolean>(null, passwordHash.getErrorMessage());
+			}
+			Account acc = new Account(name, passwordHash.getResult(), new ArrayList<String>());
 			boolean createAccSuccess=createAccountSubdir(acc);
 			if (createAccSuccess){
 				Logger.log("Account "+name+" successfully created.");
@@ -85,7 +93,6 @@ public class FSAccountsArchivist implements AccountsArchivist {
 	private boolean createAccountSubdir(Account newAccount){
 		String accountPath = parent.getAccountPath();
 		String newAccountName = newAccount.getName();
-		String newAccountPassword = newAccount.getPassword();
 		File newAccountDir = new File(accountPath+newAccountName+"/");
 		File newAccountPlayersDir = new File(accountPath+newAccountName+"/players");
 		boolean check = false;
@@ -96,18 +103,34 @@ public class FSAccountsArchivist implements AccountsArchivist {
 		}
 		File newAccountFile = new File(accountPath+newAccountName+"/account.properties");
 		Properties newAccountProperties = new Properties();
-		newAccountProperties.setProperty("password", newAccountPassword);
-		FileOutputStream newAccountOutputStream = null;
+		newAccount.getPasswordHash().toProperties(newAccountProperties);
+		return writeAccountProperties(newAccountFile, newAccountProperties);
+	}
+
+	/** Writes a temporary file first, so that a crash while the
+	 * password is replaced can't destroy the account. */
+	private boolean writeAccountProperties(File accountFile, Properties accountProperties) {
+		File tempFile = new File(accountFile.getPath()+".tmp");
+		FileOutputStream accountOutputStream = null;
 		try {
-			newAccountOutputStream = new FileOutputStream(newAccountFile);
-			newAccountProperties.store(newAccountOutputStream, null);
+			accountOutputStream = new FileOutputStream(tempFile);
+			accountProperties.store(accountOutputStream, null);
+			accountOutputStream.getFD().sync();
+			accountOutputStream.close();
+			accountOutputStream = null;
+			// renameTo() doesn't replace an existing file on every platform
+			if (!tempFile.renameTo(accountFile)
+					&& !(accountFile.delete() && tempFile.renameTo(accountFile))) {
+				Logger.log("Couldn't rename "+tempFile+" to "+accountFile);
+				return false;
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
 			return false;
 		} finally {
-			if (newAccountOutputStream != null) {
+			if (accountOutputStream != null) {
 				try {
-					newAccountOutputStream.close();
+					accountOutputStream.close();
 				} catch(IOException e) {
 					e.printStackTrace();
 					return false;
@@ -164,12 +187,12 @@ public class FSAccountsArchivist implements AccountsArchivist {
 		// read account.properties:
 		File accountFile = new File(accountPath+name+"/account.properties");
 		Properties accountProperties = new Properties();
-		String readPassword;
+		PasswordHash passwordHash;
 		FileInputStream accStream = null;
 		try {
 			accStream = new FileInputStream(accountFile);
 			accountProperties.load(accStream);
-			readPassword = accountProperties.getProperty("password");
+			passwordHash = PasswordHash.fromProperties(accountProperties);
 		} catch (FileNotFoundException e) {
 			Logger.log("Couldn't find account.properties for "+name);
 			e.printStackTrace();
@@ -188,11 +211,30 @@ public class FSAccountsArchivist implements AccountsArchivist {
 				}
 			}
 		}
+		if (passwordHash == null) {
+			Logger.log("account.properties of "+name+" contains no password!");
+			return new Result<Account>(null, "Error while reading account data!");
+		}
 		// compare passwords
-		if (!password.equals(readPassword)){
-			Logger.log("Password invalid, since "+password+" != "+readPassword);
+		Result<Boolean> valid = parent.passwordHasher.verify(passwordHash, password);
+		if (!valid.successful()) {
+			return new Result<Account>(null, valid.getErrorMessage());
+		}
+		if (!valid.getResult()) {
+			Logger.log("Invalid password for account "+name);
 			return new Result<Account>(null, "Invalid login data!");
 		}
+		if (parent.passwordHasher.needsRehash(passwordHash)) {
+			// e.g. a plaintext password from before passwords were hashed
+			Result<PasswordHash> newHash = parent.passwordHasher.hash(password);
+			if (newHash.successful()) {
+				newHash.getResult().toProperties(accountProperties);
+				if (writeAccountProperties(accountFile, accountProperties)) {
+					passwordHash = newHash.getResult();
+					Logger.log("Password of "+name+" has been hashed anew.");
+				}
+			}
+		}
 		/*
 		  Login data valid, read further data:
 		  Read player names
@@ -207,7 +249,7 @@ public class FSAccountsArchivist implements AccountsArchivist {
 			playerNames.add(accountPlayerDir.getName());
 		}
 		// Finally create the account object:
-		Account acc = new Account(name, password, playerNames);
+		Account acc = new Account(name, passwordHash, playerNames);
 		Logger.log("Account "+name+" successfully loaded.");
 		return new Result<Account>(acc, null);
 	}
@@ -231,12 +273,10 @@ public class FSAccountsArchivist implements AccountsArchivist {
 				createPlayerDir(accountName, playerName);
 			}
 			File playerFile = new File(playerDirString+"/"+playerName);
-			FileOutputStream fos = null;
+			// only the snapshot is taken here, the file is written later
+			byte[] snapshot;
 			try {
-				fos = new FileOutputStream(playerFile);
-				ObjectOutputStream oos = new ObjectOutputStream(fos);
-				oos.writeObject(player);
-				oos.close();
+				snapshot = serialise(player);
 			} catch (IOException e) {
 				e.printStackTrace();
 				return false;
@@ -244,20 +284,46 @@ public class FSAccountsArchivist implements AccountsArchivist {
 				if (oldPath != null) {
 					player.setPath(oldPath);
 				}
-				if (fos != null) {
-					try {
-						fos.close();
-					} catch (IOException e) {
-						e.printStackTrace();
-						return false;
-					}
-				}
 			}
+			parent.playerWriteBehind.save(playerFile, snapshot);
 		}
 		Logger.log("MainServer: Player successfully saved.");
 		return true;
 	}
 
+	/** The snapshot is handed over while the player is locked, so that
+	 * it can't overtake a later savePlayer(). */
+	@Override
+	public int checkpointPlayer(ServerPlayer player) {
+		synchronized(player) {
+			ServerPlayer copy = player.persistentCopy();
+			String accountName = copy.getAccountName();
+			String playerName = copy.getName();
+			if (!existPlayerDir(accountName, playerName)) {
+				Logger.log("Can't checkpoint "+playerName+" since his directory is missing!");
+				return -1;
+			}
+			byte[] snapshot;
+			try {
+				snapshot = serialise(copy);
+			} catch (IOException e) {
+				e.printStackTrace();
+				return -1;
+			}
+			File playerFile = new File(playerDirString(accountName, playerName)+"/"+playerName);
+			parent.playerWriteBehind.save(playerFile, snapshot);
+			return snapshot.length;
+		}
+	}
+
+	private byte[] serialise(ServerPlayer player) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(result);
+		oos.writeObject(player);
+		oos.close();
+		return result.toByteArray();
+	}
+
 	@Override
 	public Result<ServerPlayer> loadAndActivatePlayer(Account account, String playerName) {
 		if (account.getActivePlayer() != null) {
@@ -269,10 +335,17 @@ public class FSAccountsArchivist implements AccountsArchivist {
 			return new Result<ServerPlayer>(null, error);
 		}
 		assert(this.existPlayerDir(account.getName(), playerName));
-		FileInputStream fis = null;
+		File playerFile = new File(playerDirString(account.getName(), playerName)+"/"+playerName);
+		InputStream fis = null;
 		ServerPlayer player = null;
 		try {
-			fis = new FileInputStream(playerDirString(account.getName(), playerName)+"/"+playerName);
+			// the player may have been saved shortly before without being written yet
+			byte[] unwritten = parent.playerWriteBehind.getUnwritten(playerFile);
+			if (unwritten != null) {
+				fis = new ByteArrayInputStream(unwritten);
+			} else {
+				fis = new FileInputStream(playerFile);
+			}
 			ObjectInputStream ois = new ObjectInputStream(fis);
 			player = (ServerPlayer) ois.readObject();
 			ois.close();
@@ -300,7 +373,7 @@ public class FSAccountsArchivist implements AccountsArchivist {
 
 	@Override
 	public Result<Boolean> createNewPlayer(Account account, String playerName, CharacterClass type) {
-		ServerSettings settings = parent.parent.getServerSettings();
+		ServerSettings settings = parent.settings;
 		String starterRegion = settings.starterRegion();
 		synchronized(parent.allExistingPlayerNames) {
 			synchronized(account) {
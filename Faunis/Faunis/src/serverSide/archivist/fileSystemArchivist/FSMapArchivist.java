@@ -21,9 +21,13 @@ package serverSide.archivist.fileSystemArchivist;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.ShortBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Properties;
 
 import serverSide.archivist.MapArchivist;
 
@@ -31,13 +35,22 @@ import common.Link;
 import common.Logger;
 import common.Map;
 import common.enums.CoordinateType;
-import common.graphics.GraphicalDecoStatus;
 
 
 public class FSMapArchivist implements MapArchivist {
+	/** Which decorations can't be walked through, read from the file
+	 * of this name in the map directory. */
+	public static final String collisionFileName = "collision.properties";
+	private final boolean compileMaps;
+	/** The names of the decorations that block their tile, read on demand
+	 * from collisionFileName. */
+	private HashSet<String> blockingDecos;
 
-	/** Please call loadAllMaps() afterwards. */
-	public FSMapArchivist() {
+	/** If compileMaps is true, each map is loaded from its compiled
+	 * form if that is up to date, and compiled otherwise (see
+	 * CompiledMapFile). Please call loadAllMaps() afterwards. */
+	public FSMapArchivist(boolean compileMaps) {
+		this.compileMaps = compileMaps;
 	}
 
 	/** Must be called after the FSMapArchivist is constructed. */
@@ -47,53 +60,164 @@ public class FSMapArchivist implements MapArchivist {
 		File mapDirectory = new File(mapPath);
 		File[] mapSubdirs = mapDirectory.listFiles(FileSystemArchivist.directoryFilter);
 		for (File mapSubdir : mapSubdirs) {
-			String mapName = mapSubdir.getName();
-			// read map info
-			File settingsFile = new File(mapPath+mapName+"/settings.txt");
-			String line;
-			try {
-				BufferedReader reader = new BufferedReader(new InputStreamReader(
-												new FileInputStream(settingsFile)));
-				line = reader.readLine();
-				reader.close();
-			} catch (Exception e) {
-				Logger.log("Could not read settings file for map: "+mapName
-						+", reason: "+e.getMessage());
-				continue;
-			}
-			String[] arguments = line.split(",");
-			if (arguments.length != 2) {
-				Logger.log("Error reading map: "+mapName
-						+", wrong number of arguments!");
+			Map map = loadMap(mapSubdir);
+			if (map == null) {
 				continue;
 			}
-			for (int i = 0; i < arguments.length; i++) {
-				arguments[i] = arguments[i].trim();
+			assert(!maps.containsKey(map.getName()));
+			maps.put(map.getName(), map);
+		}
+		return maps;
+	}
+
+	private Map loadMap(File mapSubdir) {
+		String mapName = mapSubdir.getName();
+		File compiledFile = new File(mapSubdir, CompiledMapFile.fileName);
+		if (compileMaps && CompiledMapFile.isUpToDate(mapSubdir)) {
+			try {
+				return CompiledMapFile.read(compiledFile, mapName);
+			} catch (IOException e) {
+				Logger.log("Could not read "+compiledFile+", reading the text files instead."
+						+" Reason: "+e.getMessage());
 			}
-			int mapWidth, mapHeight;
+		}
+		Map map = loadTextMap(mapSubdir);
+		if (map != null && compileMaps) {
 			try {
-				mapWidth = Integer.parseInt(arguments[0]);
-				mapHeight = Integer.parseInt(arguments[1]);
-			} catch (NumberFormatException e) {
-				Logger.log("Error reading map: "+mapName
-						+", could not parse arguments!");
-				continue;
+				CompiledMapFile.write(compiledFile, map);
+				Logger.log("Compiled map "+mapName+" into "+compiledFile);
+			} catch (IOException e) {
+				Logger.log("Could not compile map "+mapName+", reason: "+e.getMessage());
+			}
+		}
+		return map;
+	}
+
+	/** Reads a map from settings.txt, deco.txt and links.txt in given
+	 * directory. Returns null if it fails. */
+	Map loadTextMap(File mapSubdir) {
+		String mapName = mapSubdir.getName();
+		// read map info
+		File settingsFile = new File(mapSubdir, "settings.txt");
+		String line;
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+											new FileInputStream(settingsFile)));
+			line = reader.readLine();
+			reader.close();
+		} catch (Exception e) {
+			Logger.log("Could not read settings file for map: "+mapName
+					+", reason: "+e.getMessage());
+			return null;
+		}
+		String[] arguments = line.split(",");
+		if (arguments.length != 2) {
+			Logger.log("Error reading map: "+mapName
+					+", wrong number of arguments!");
+			return null;
+		}
+		for (int i = 0; i < arguments.length; i++) {
+			arguments[i] = arguments[i].trim();
+		}
+		int mapWidth, mapHeight;
+		try {
+			mapWidth = Integer.parseInt(arguments[0]);
+			mapHeight = Integer.parseInt(arguments[1]);
+		} catch (NumberFormatException e) {
+			Logger.log("Error reading map: "+mapName
+					+", could not parse arguments!");
+			return null;
+		}
+		String[] decoNames = null;
+		ShortBuffer decoLayer = null;
+		File decoFile = new File(mapSubdir, "deco.txt");
+		if (decoFile.exists()) {
+			ArrayList<String> decoNameList = new ArrayList<String>();
+			decoLayer = loadDecoFile(mapWidth, mapHeight, decoFile, decoNameList);
+			decoNames = decoNameList.toArray(new String[decoNameList.size()]);
+		}
+		ArrayList<Link> links = null;
+		File linkFile = new File(mapSubdir, "links.txt");
+		if (linkFile.exists()) {
+			links = loadLinkFile(mapName, mapWidth, mapHeight, linkFile);
+		}
+		long[] blockedTiles = loadCollision(mapSubdir, mapWidth, mapHeight, decoNames, decoLayer);
+		return new Map(mapName, mapWidth, mapHeight, decoNames, decoLayer, blockedTiles, links);
+	}
+
+	/** Blocks every tile whose decoration is listed as blocked in
+	 * collisionFileName. Afterwards, the tiles that the optional
+	 * collision.txt of the map translates to "blocked" or "free" are
+	 * changed accordingly. Returns null if no tile is blocked. */
+	private long[] loadCollision(File mapSubdir, int mapWidth, int mapHeight,
+								 String[] decoNames, ShortBuffer decoLayer) {
+		if (blockingDecos == null) {
+			blockingDecos = loadBlockingDecos(new File(mapSubdir.getParentFile(),
+													   collisionFileName));
+		}
+		long[] blockedTiles = new long[Map.blockedTilesLength(mapWidth, mapHeight)];
+		boolean anyBlocked = false;
+		if (decoLayer != null) {
+			boolean[] blockingIndices = new boolean[decoNames.length+1];
+			for (int i = 0; i < decoNames.length; i++) {
+				blockingIndices[i+1] = blockingDecos.contains(decoNames[i]);
+			}
+			for (int y = 0; y < mapHeight; y++) {
+				for (int x = 0; x < mapWidth; x++) {
+					if (blockingIndices[decoLayer.get(y * mapWidth + x)]) {
+						Map.setBlocked(blockedTiles, mapWidth, x, y, true);
+						anyBlocked = true;
+					}
+				}
+			}
+		}
+		File collisionFile = new File(mapSubdir, "collision.txt");
+		if (collisionFile.exists()) {
+			char[][] mapChars = new char[mapHeight][mapWidth];
+			HashMap<Character, String> translationMap = new HashMap<Character, String>();
+			loadMapCharsAndTranslationMap(mapWidth, mapHeight, collisionFile,
+					mapChars, translationMap);
+			for (int y = 0; y < mapHeight; y++) {
+				for (int x = 0; x < mapWidth; x++) {
+					String collision = translationMap.get(mapChars[y][x]);
+					if ("blocked".equals(collision)) {
+						Map.setBlocked(blockedTiles, mapWidth, x, y, true);
+						anyBlocked = true;
+					} else if ("free".equals(collision)) {
+						Map.setBlocked(blockedTiles, mapWidth, x, y, false);
+					} else if (collision != null) {
+						Logger.log("loadCollision(): Warning, unknown collision "+collision
+								+" in "+collisionFile);
+					}
+				}
 			}
-			ArrayList<GraphicalDecoStatus> decoInfos = null;
-			File decoFile = new File(mapPath+mapName+"/deco.txt");
-			if (decoFile.exists()) {
-				decoInfos = loadDecoFile(mapWidth, mapHeight, decoFile);
+		}
+		return anyBlocked ? blockedTiles : null;
+	}
+
+	private HashSet<String> loadBlockingDecos(File collisionProperties) {
+		HashSet<String> result = new HashSet<String>();
+		if (!collisionProperties.exists()) {
+			return result;
+		}
+		Properties properties = new Properties();
+		try {
+			FileInputStream in = new FileInputStream(collisionProperties);
+			try {
+				properties.load(in);
+			} finally {
+				in.close();
 			}
-			ArrayList<Link> links = null;
-			File linkFile = new File(mapPath+mapName+"/links.txt");
-			if (linkFile.exists()) {
-				links = loadLinkFile(mapName, mapWidth, mapHeight, linkFile);
+		} catch (IOException e) {
+			Logger.log("Could not read "+collisionProperties+", reason: "+e.getMessage());
+			return result;
+		}
+		for (String decoName : properties.stringPropertyNames()) {
+			if (properties.getProperty(decoName).trim().equals("blocked")) {
+				result.add(decoName);
 			}
-			Map map = new Map(mapName, mapWidth, mapHeight, decoInfos, links);
-			assert(!maps.containsKey(mapName));
-			maps.put(mapName, map);
 		}
-		return maps;
+		return result;
 	}
 
 
@@ -147,27 +271,32 @@ public class FSMapArchivist implements MapArchivist {
 
 
 
-	private ArrayList<GraphicalDecoStatus> loadDecoFile(int mapWidth, int mapHeight,
-															File decoFile) {
+	/** Returns the deco layer (see Map.decoLayer) and adds the names
+	 * it refers to to decoNames. */
+	private ShortBuffer loadDecoFile(int mapWidth, int mapHeight, File decoFile,
+									 ArrayList<String> decoNames) {
 		char[][] mapChars = new char[mapHeight][mapWidth];
 		HashMap<Character, String> translationMap = new HashMap<Character, String>();
 		loadMapCharsAndTranslationMap(mapWidth, mapHeight, decoFile,
 				mapChars, translationMap);
-		ArrayList<GraphicalDecoStatus> decoInfos = new ArrayList<GraphicalDecoStatus>();
+		HashMap<String, Short> decoIndices = new HashMap<String, Short>();
+		short[] decoLayer = new short[mapWidth * mapHeight];
 		// Now translate and fill the result:
 		for (int y = 0; y < mapHeight; y++) {
 			for (int x = 0; x < mapWidth; x++) {
 				String decoName = translationMap.get(mapChars[y][x]);
 				if (decoName != null) {
-					GraphicalDecoStatus decoStatus = new GraphicalDecoStatus();
-					decoStatus.x = x;
-					decoStatus.y = y;
-					decoStatus.name = decoName;
-					decoInfos.add(decoStatus);
+					Short index = decoIndices.get(decoName);
+					if (index == null) {
+						decoNames.add(decoName);
+						index = (short) decoNames.size();
+						decoIndices.put(decoName, index);
+					}
+					decoLayer[y * mapWidth + x] = index;
 				}
 			}
 		}
-		return decoInfos;
+		return ShortBuffer.wrap(decoLayer);
 	}
 
 
@@ -21,37 +21,43 @@ package serverSide.archivist.fileSystemArchivist;
 import java.io.FileFilter;
 import java.util.HashSet;
 
-import serverSide.MainServer;
+import serverSide.ServerSettings;
 import serverSide.archivist.AccountsArchivist;
 import serverSide.archivist.CoreArchivist;
 import serverSide.archivist.MapArchivist;
+import serverSide.archivist.PasswordHasher;
 
 import common.archivist.fileSystemArchivist.DirectoryFilter;
 
 public class FileSystemArchivist implements CoreArchivist {
-	MainServer parent;
+	ServerSettings settings;
+	PasswordHasher passwordHasher;
 	FSAccountsArchivist accountsArchivist;
 	FSMapArchivist mapArchivist;
+	PlayerWriteBehind playerWriteBehind;
 
 
 	HashSet<String> allExistingPlayerNames;
 	public static final FileFilter directoryFilter = new DirectoryFilter();
 
 
-	public FileSystemArchivist(MainServer parent) {
-		this.parent = parent;
+	public FileSystemArchivist(ServerSettings settings, PasswordHasher passwordHasher) {
+		this.settings = settings;
+		this.passwordHasher = passwordHasher;
 	}
 
 	@Override
 	public void init() {
+		playerWriteBehind = new PlayerWriteBehind(settings.playerFlushInterval());
+		playerWriteBehind.start();
 		accountsArchivist = new FSAccountsArchivist(this);
-		mapArchivist = new FSMapArchivist();
+		mapArchivist = new FSMapArchivist(settings.compileMaps());
 
 		allExistingPlayerNames = accountsArchivist.loadAllExistingPlayerNames();
 	}
 
 	public String getAccountPath() {
-		return parent.getAccountPath();
+		return settings.accountPath();
 	}
 
 	@Override
@@ -64,4 +70,9 @@ public class FileSystemArchivist implements CoreArchivist {
 		return accountsArchivist;
 	}
 
+	@Override
+	public void shutdown() {
+		playerWriteBehind.close();
+	}
+
 }
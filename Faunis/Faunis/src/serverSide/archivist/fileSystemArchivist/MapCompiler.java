@@ -0,0 +1,59 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.archivist.fileSystemArchivist;
+
+import java.io.File;
+import java.io.IOException;
+
+import serverSide.ServerSettings;
+
+import common.Map;
+
+/** Compiles the text files of every map into its map.bin (see
+ * CompiledMapFile), e.g. before deploying, so that the server doesn't
+ * have to do it at its first start. <br />
+ * Usage: MapCompiler [mapPath] */
+public class MapCompiler {
+	public static void main(String[] args) throws IOException {
+		String mapPath;
+		if (args.length > 0) {
+			mapPath = args[0];
+		} else {
+			mapPath = new ServerSettings().mapPath();
+		}
+		File[] mapSubdirs = new File(mapPath).listFiles(FileSystemArchivist.directoryFilter);
+		if (mapSubdirs == null) {
+			throw new IOException(mapPath+" is not a directory!");
+		}
+		FSMapArchivist textReader = new FSMapArchivist(false);
+		int compiled = 0;
+		for (File mapSubdir : mapSubdirs) {
+			Map map = textReader.loadTextMap(mapSubdir);
+			if (map == null) {
+				continue;
+			}
+			File compiledFile = new File(mapSubdir, CompiledMapFile.fileName);
+			CompiledMapFile.write(compiledFile, map);
+			System.out.println(map.getName()+": "+map.getWidth()+"x"+map.getHeight()+", "
+					+compiledFile.length()+" bytes");
+			compiled++;
+		}
+		System.out.println("Compiled "+compiled+" of "+mapSubdirs.length+" maps.");
+	}
+}
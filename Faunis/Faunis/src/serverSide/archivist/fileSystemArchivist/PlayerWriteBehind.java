@@ -0,0 +1,197 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.archivist.fileSystemArchivist;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+import common.Logger;
+
+/** Writes player files in the background. Saving a player only hands
+ * over a serialised snapshot; a dedicated thread writes all snapshots
+ * that have piled up once per flush interval. If a player is saved again
+ * before his former snapshot has been written, only the newer one is
+ * written. <br />
+ * Every file is written to a temporary file first, synced and then
+ * renamed, so that a crash leaves either the old or the new version,
+ * and loses at most the last flush interval. Only one thread writes at
+ * a time, so that a newer snapshot is always written after an older
+ * one of the same file. */
+class PlayerWriteBehind {
+	private final long flushInterval;
+	private final Thread thread;
+	/** Held while writing files, so that two flushes never run at the
+	 * same time. */
+	private final Object writeLock = new Object();
+	// all following fields are guarded by this
+	private LinkedHashMap<File, byte[]> pending;
+	/** Snapshots that the writer thread is writing at the moment. */
+	private LinkedHashMap<File, byte[]> writing;
+	private boolean closed;
+	private long saved;
+	private long coalesced;
+	private long written;
+	private long batches;
+	private long failed;
+
+	PlayerWriteBehind(long flushInterval) {
+		this.flushInterval = flushInterval;
+		this.pending = new LinkedHashMap<File, byte[]>();
+		this.writing = new LinkedHashMap<File, byte[]>();
+		this.closed = false;
+		this.thread = new Thread(new WriterRunnable(), "player_writer");
+	}
+
+	void start() {
+		thread.start();
+	}
+
+	/** Schedules given snapshot to be written to given file. Doesn't
+	 * block, unless this has been closed already, in which case the
+	 * snapshot is flushed right away, after any older one. */
+	void save(File file, byte[] snapshot) {
+		synchronized(this) {
+			saved++;
+			if (pending.put(file, snapshot) != null) {
+				coalesced++;
+			}
+			if (!closed) {
+				return;
+			}
+		}
+		flush();
+	}
+
+	/** Returns the newest snapshot for given file that may not have
+	 * been written yet, or null if the file is up to date. */
+	synchronized byte[] getUnwritten(File file) {
+		byte[] result = pending.get(file);
+		if (result == null) {
+			result = writing.get(file);
+		}
+		return result;
+	}
+
+	/** Writes all pending snapshots and returns when they are written,
+	 * waiting for a flush of another thread to finish first. */
+	private void flush() {
+		synchronized(writeLock) {
+			LinkedHashMap<File, byte[]> batch;
+			synchronized(this) {
+				if (pending.isEmpty()) {
+					return;
+				}
+				batch = pending;
+				pending = writing;
+				writing = batch;
+				batches++;
+			}
+			for (Entry<File, byte[]> entry : batch.entrySet()) {
+				write(entry.getKey(), entry.getValue());
+			}
+			synchronized(this) {
+				writing.clear();
+			}
+		}
+	}
+
+	private void write(File file, byte[] snapshot) {
+		File tempFile = new File(file.getPath()+".tmp");
+		FileOutputStream fos = null;
+		boolean success = false;
+		try {
+			fos = new FileOutputStream(tempFile);
+			fos.write(snapshot);
+			fos.getFD().sync();
+			fos.close();
+			fos = null;
+			// renameTo() doesn't replace an existing file on every platform
+			success = tempFile.renameTo(file) || (file.delete() && tempFile.renameTo(file));
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			if (fos != null) {
+				try {
+					fos.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		synchronized(this) {
+			if (success) {
+				written++;
+			} else {
+				failed++;
+			}
+		}
+		if (!success) {
+			Logger.log("ERROR: Couldn't write "+file.getPath()+"!");
+		}
+	}
+
+	/** Writes everything that is pending and stops the writer thread.
+	 * Snapshots that are saved afterwards are flushed by the saving
+	 * thread itself. */
+	void close() {
+		synchronized(this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			notifyAll();
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+		Logger.log("Player files written: "+this);
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "PlayerWriteBehind [saved=" + saved + ", coalesced=" + coalesced
+				+ ", written=" + written + ", batches=" + batches
+				+ ", failed=" + failed + ", pending=" + pending.size() + "]";
+	}
+
+	private class WriterRunnable implements Runnable {
+		@Override
+		public void run() {
+			while (true) {
+				synchronized(PlayerWriteBehind.this) {
+					if (closed) {
+						return;
+					}
+					try {
+						PlayerWriteBehind.this.wait(flushInterval);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				flush();
+			}
+		}
+	}
+}
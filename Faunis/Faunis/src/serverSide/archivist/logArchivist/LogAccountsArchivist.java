@@ -0,0 +1,323 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.archivist.logArchivist;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Properties;
+
+import common.Logger;
+import common.enums.CharacterClass;
+import common.movement.Path;
+
+import serverSide.Account;
+import serverSide.Result;
+import serverSide.ServerSettings;
+import serverSide.archivist.AccountsArchivist;
+import serverSide.archivist.PasswordHash;
+import serverSide.archivist.PasswordHasher;
+import serverSide.player.ServerPlayer;
+
+/** Stores each account under "account/<accountName>" as the bytes of
+ * what would be its account.properties, and each player under
+ * "player/<accountName>/<playerName>" as the serialised ServerPlayer.
+ * Which players belong to which account is kept in memory. */
+public class LogAccountsArchivist implements AccountsArchivist {
+	static final String accountPrefix = "account/";
+	static final String playerPrefix = "player/";
+
+	private LogArchivist parent;
+	private LogStore store;
+	private PasswordHasher passwordHasher;
+	/** Guarded by itself. The lists are never handed out. */
+	private HashMap<String, ArrayList<String>> playerNamesByAccount;
+	/** Guarded by itself, like FileSystemArchivist.allExistingPlayerNames. */
+	private HashSet<String> allExistingPlayerNames;
+
+	public LogAccountsArchivist(LogArchivist parent) {
+		this.parent = parent;
+		this.store = parent.store;
+		this.passwordHasher = parent.passwordHasher;
+		this.playerNamesByAccount = new HashMap<String, ArrayList<String>>();
+		for (String key : store.keys()) {
+			if (key.startsWith(accountPrefix)) {
+				String accountName = key.substring(accountPrefix.length());
+				if (!playerNamesByAccount.containsKey(accountName)) {
+					playerNamesByAccount.put(accountName, new ArrayList<String>());
+				}
+			} else if (key.startsWith(playerPrefix)) {
+				int separator = key.indexOf('/', playerPrefix.length());
+				String accountName = key.substring(playerPrefix.length(), separator);
+				ArrayList<String> playerNames = playerNamesByAccount.get(accountName);
+				if (playerNames == null) {
+					playerNames = new ArrayList<String>();
+					playerNamesByAccount.put(accountName, playerNames);
+				}
+				playerNames.add(key.substring(separator+1));
+			}
+		}
+		this.allExistingPlayerNames = loadAllExistingPlayerNames();
+	}
+
+	static String accountKey(String accountName) {
+		return accountPrefix+accountName;
+	}
+
+	static String playerKey(String accountName, String playerName) {
+		return playerPrefix+accountName+"/"+playerName;
+	}
+
+	@Override
+	public Result<Boolean> createAccount(String name, String password) {
+		// the account name is part of the player keys
+		if (name.indexOf('/') >= 0) {
+			String error = "Account couldn't be created!?";
+			return new Result<Boolean>(null, error);
+		}
+		Result<PasswordHash> passwordHash = passwordHasher.hash(password);
+		if (!passwordHash.successful()) {
+			return new Result<Boolean>(null, passwordHash.getErrorMessage());
+		}
+		Properties accountProperties = new Properties();
+		passwordHash.getResult().toProperties(accountProperties);
+		synchronized(playerNamesByAccount) {
+			if (playerNamesByAccount.containsKey(name)) {
+				String error = "Account name already exists!";
+				return new Result<Boolean>(null, error);
+			}
+			try {
+				storeAccount(name, accountProperties);
+			} catch (IOException e) {
+				e.printStackTrace();
+				String error = "Account couldn't be created!?";
+				return new Result<Boolean>(null, error);
+			}
+			playerNamesByAccount.put(name, new ArrayList<String>());
+		}
+		Logger.log("Account "+name+" successfully created.");
+		return new Result<Boolean>(true, null);
+	}
+
+	private void storeAccount(String name, Properties accountProperties) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		accountProperties.store(bytes, null);
+		store.put(accountKey(name), bytes.toByteArray());
+	}
+
+	@Override
+	public boolean existAccount(String accountName) {
+		return store.containsKey(accountKey(accountName));
+	}
+
+	@Override
+	public HashSet<String> loadAllExistingPlayerNames() {
+		HashSet<String> result = new HashSet<String>();
+		synchronized(playerNamesByAccount) {
+			for (ArrayList<String> playerNames : playerNamesByAccount.values()) {
+				for (String playerName : playerNames) {
+					boolean added = result.add(playerName);
+					if (!added) {
+						Logger.log("ERROR: Couldn't add "+playerName);
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/** Pure function. <br />
+	 * Loads an account if it exists and given login data is valid. */
+	@Override
+	public Result<Account> loadAccount(String name, String password) {
+		byte[] accountBytes;
+		try {
+			accountBytes = store.get(accountKey(name));
+		} catch (IOException e) {
+			e.printStackTrace();
+			return new Result<Account>(null, "Error while reading account data!");
+		}
+		if (accountBytes == null) {
+			String error = "Account "+name+" couldn't be loaded since it does not exist!";
+			return new Result<Account>(null, error);
+		}
+		Properties accountProperties = new Properties();
+		try {
+			accountProperties.load(new ByteArrayInputStream(accountBytes));
+		} catch (IOException e) {
+			e.printStackTrace();
+			return new Result<Account>(null, "Error while reading account data!");
+		}
+		PasswordHash passwordHash = PasswordHash.fromProperties(accountProperties);
+		if (passwordHash == null) {
+			Logger.log("The record of account "+name+" contains no password!");
+			return new Result<Account>(null, "Error while reading account data!");
+		}
+		Result<Boolean> valid = passwordHasher.verify(passwordHash, password);
+		if (!valid.successful()) {
+			return new Result<Account>(null, valid.getErrorMessage());
+		}
+		if (!valid.getResult()) {
+			Logger.log("Invalid password for account "+name);
+			return new Result<Account>(null, "Invalid login data!");
+		}
+		if (passwordHasher.needsRehash(passwordHash)) {
+			// e.g. a plaintext password from before passwords were hashed
+			Result<PasswordHash> newHash = passwordHasher.hash(password);
+			if (newHash.successful()) {
+				newHash.getResult().toProperties(accountProperties);
+				try {
+					storeAccount(name, accountProperties);
+					passwordHash = newHash.getResult();
+					Logger.log("Password of "+name+" has been hashed anew.");
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		ArrayList<String> playerNames;
+		synchronized(playerNamesByAccount) {
+			playerNames = new ArrayList<String>(playerNamesByAccount.get(name));
+		}
+		Account acc = new Account(name, passwordHash, playerNames);
+		Logger.log("Account "+name+" successfully loaded.");
+		return new Result<Account>(acc, null);
+	}
+
+	@Override
+	public boolean savePlayer(ServerPlayer player) {
+		synchronized(player) {
+			Path oldPath = player.getPath();
+			if (oldPath != null) {
+				throw new RuntimeException("MainServer.savePlayer(): Player was still moving!");
+			}
+			// In no way may a path be serialised with the player
+			player.resetPath();
+			player.resetAnimation();
+			assert(existAccount(player.getAccountName()));
+			try {
+				store.put(playerKey(player.getAccountName(), player.getName()), serialise(player));
+			} catch (IOException e) {
+				e.printStackTrace();
+				return false;
+			}
+		}
+		Logger.log("MainServer: Player successfully saved.");
+		return true;
+	}
+
+	@Override
+	public int checkpointPlayer(ServerPlayer player) {
+		synchronized(player) {
+			ServerPlayer copy = player.persistentCopy();
+			String key = playerKey(copy.getAccountName(), copy.getName());
+			if (!store.containsKey(key)) {
+				Logger.log("Can't checkpoint "+copy.getName()+" since he has never been saved!");
+				return -1;
+			}
+			try {
+				byte[] snapshot = serialise(copy);
+				store.put(key, snapshot);
+				return snapshot.length;
+			} catch (IOException e) {
+				e.printStackTrace();
+				return -1;
+			}
+		}
+	}
+
+	private byte[] serialise(ServerPlayer player) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(result);
+		oos.writeObject(player);
+		oos.close();
+		return result.toByteArray();
+	}
+
+	@Override
+	public Result<ServerPlayer> loadAndActivatePlayer(Account account, String playerName) {
+		if (account.getActivePlayer() != null) {
+			String error = "Couldn't load "+playerName+" since there's still another player active!";
+			return new Result<ServerPlayer>(null, error);
+		}
+		if (!account.getPlayerNames().contains(playerName)) {
+			String error = "Couldn't load "+playerName+" since a player of that name doesn't exist!";
+			return new Result<ServerPlayer>(null, error);
+		}
+		ServerPlayer player;
+		try {
+			byte[] playerBytes = store.get(playerKey(account.getName(), playerName));
+			if (playerBytes == null) {
+				return new Result<ServerPlayer>(null, "IOException");
+			}
+			ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(playerBytes));
+			player = (ServerPlayer) ois.readObject();
+			ois.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return new Result<ServerPlayer>(null, "IOException");
+		} catch (ClassNotFoundException e) {
+			e.printStackTrace();
+			return new Result<ServerPlayer>(null, "ClassNotFoundException");
+		}
+		synchronized(account) {
+			account.setActivePlayer(player);
+		}
+		return new Result<ServerPlayer>(player, null);
+	}
+
+	@Override
+	public Result<Boolean> createNewPlayer(Account account, String playerName, CharacterClass type) {
+		ServerSettings settings = parent.settings;
+		String starterRegion = settings.starterRegion();
+		synchronized(allExistingPlayerNames) {
+			synchronized(account) {
+				String accountName = account.getName();
+				int maxPlayers = settings.maxPlayersPerAccount();
+				ArrayList<String> playerNames = account.getPlayerNames();
+				if (playerNames.size() >= maxPlayers) {
+					String error = "You cannot exceed the limit of "+maxPlayers+" players per account!";
+					return new Result<Boolean>(null, error);
+				}
+				if (allExistingPlayerNames.contains(playerName)) {
+					String error = "A player with the name "+playerName+" already exists!";
+					return new Result<Boolean>(null, error);
+				}
+				ServerPlayer player = new ServerPlayer(playerName, type, starterRegion, accountName);
+				boolean success = savePlayer(player);
+				if (success) {
+					playerNames.add(playerName);
+					allExistingPlayerNames.add(playerName);
+					synchronized(playerNamesByAccount) {
+						playerNamesByAccount.get(accountName).add(playerName);
+					}
+					return new Result<Boolean>(true, null);
+				} else {
+					String error = "The player could not be created!";
+					return new Result<Boolean>(null, error);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,79 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.archivist.logArchivist;
+
+import java.io.File;
+import java.io.IOException;
+
+import serverSide.ServerSettings;
+import serverSide.archivist.AccountsArchivist;
+import serverSide.archivist.CoreArchivist;
+import serverSide.archivist.MapArchivist;
+import serverSide.archivist.PasswordHasher;
+import serverSide.archivist.fileSystemArchivist.FSMapArchivist;
+
+import common.Logger;
+
+/** Keeps all accounts and players in one LogStore. Maps are still read
+ * from the file system. */
+public class LogArchivist implements CoreArchivist {
+	ServerSettings settings;
+	PasswordHasher passwordHasher;
+	LogStore store;
+	LogAccountsArchivist accountsArchivist;
+	FSMapArchivist mapArchivist;
+
+	public LogArchivist(ServerSettings settings, PasswordHasher passwordHasher) {
+		this.settings = settings;
+		this.passwordHasher = passwordHasher;
+	}
+
+	@Override
+	public void init() {
+		store = new LogStore(new File(settings.accountLogPath()), settings.logSyncPolicy(),
+				settings.logSyncInterval(), settings.logCompactionRatio());
+		try {
+			store.open();
+		} catch (IOException e) {
+			throw new RuntimeException("Couldn't open "+settings.accountLogPath(), e);
+		}
+		accountsArchivist = new LogAccountsArchivist(this);
+		mapArchivist = new FSMapArchivist(settings.compileMaps());
+	}
+
+	@Override
+	public AccountsArchivist accountsArchivist() {
+		return accountsArchivist;
+	}
+
+	@Override
+	public MapArchivist mapArchivist() {
+		return mapArchivist;
+	}
+
+	@Override
+	public void shutdown() {
+		try {
+			store.syncAlways();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		Logger.log(store.toString());
+	}
+}
@@ -0,0 +1,501 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.archivist.logArchivist;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map.Entry;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.zip.CRC32;
+
+import common.Logger;
+
+/** A key-value store in a single file that is only ever appended to.
+ * Every put() or remove() appends a record; an in-memory index knows
+ * where the current value of each key is, so that a get() costs one
+ * seek. When the records that have been overwritten or removed make up
+ * too large a share of the file, a background thread copies the live
+ * records into a new file that atomically replaces the old one
+ * (compaction). <br />
+ * Each record carries a checksum. A record that was torn by a crash is
+ * found when the store is opened, and cut off together with everything
+ * after it. <br />
+ * File layout: magic, formatVersion, then records of the form
+ * [int length][int crc][byte kind][UTF key][value] where length and
+ * crc cover everything after the crc. */
+public class LogStore {
+	private static final int magic = 0x46414c47; // "FALG"
+	private static final int formatVersion = 1;
+	private static final int headerSize = 8;
+	private static final int recordHeaderSize = 8;
+	private static final byte putKind = 1;
+	private static final byte removeKind = 2;
+	/** Compaction isn't worth it below this amount of outdated bytes. */
+	private static final long minCompactionGarbage = 64*1024;
+
+	/** Where the current value of a key is in the file. */
+	private static class Location {
+		final long recordOffset;
+		final int recordSize;
+		final int valueOffset; // relative to recordOffset
+		Location(long recordOffset, int recordSize, int valueOffset) {
+			this.recordOffset = recordOffset;
+			this.recordSize = recordSize;
+			this.valueOffset = valueOffset;
+		}
+		int valueSize() {
+			return recordSize - valueOffset;
+		}
+	}
+
+	private final File file;
+	private final long syncInterval;
+	private final double compactionRatio;
+	/** Held by the compaction that is running, so that there is only
+	 * one at a time. */
+	private final Object compactionLock = new Object();
+	// all following fields are guarded by this
+	private SyncPolicy syncPolicy;
+	private RandomAccessFile raf;
+	private HashMap<String, Location> index;
+	private long end;
+	/** Bytes of records that have been overwritten or removed. */
+	private long garbage;
+	private boolean unsynced;
+	private Timer syncTimer;
+	/** The thread that compacts in the background, if any. */
+	private Thread compactionThread;
+	private boolean closing;
+	private long puts;
+	private long removes;
+	private long syncs;
+	private long compactions;
+
+	public LogStore(File file, SyncPolicy syncPolicy, long syncInterval, double compactionRatio) {
+		this.file = file;
+		this.syncPolicy = syncPolicy;
+		this.syncInterval = syncInterval;
+		this.compactionRatio = compactionRatio;
+	}
+
+	/** Opens the file, creating it if necessary, and builds the index
+	 * from its records. */
+	public synchronized void open() throws IOException {
+		assert(raf == null);
+		index = new HashMap<String, Location>();
+		garbage = 0;
+		closing = false;
+		File tempFile = compactionFile();
+		if (tempFile.exists()) {
+			if (!file.exists()) {
+				// a complete compaction whose file wasn't moved in place yet
+				Logger.log("WARNING: Recovering "+file+" from "+tempFile);
+				Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} else {
+				// an interrupted compaction, the old file is still valid
+				Logger.log("WARNING: Deleting "+tempFile+" of an interrupted compaction.");
+				if (!tempFile.delete()) {
+					throw new IOException("Couldn't delete "+tempFile);
+				}
+			}
+		}
+		raf = new RandomAccessFile(file, "rw");
+		if (raf.length() == 0) {
+			raf.writeInt(magic);
+			raf.writeInt(formatVersion);
+			raf.getFD().sync();
+			end = headerSize;
+		} else {
+			end = scan();
+			if (end < raf.length()) {
+				Logger.log("WARNING: "+file+" ends with "+(raf.length()-end)
+						+" unreadable bytes, which are cut off.");
+				raf.setLength(end);
+				raf.getFD().sync();
+			}
+		}
+		if (syncPolicy == SyncPolicy.interval) {
+			syncTimer = new Timer("log_sync", true);
+			syncTimer.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					try {
+						sync();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			}, syncInterval, syncInterval);
+		}
+	}
+
+	/** Reads all records into the index and returns where the last
+	 * intact one ends. */
+	private long scan() throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file), 64*1024));
+		try {
+			if (in.readInt() != magic) {
+				throw new IOException(file+" is not an account log!");
+			}
+			int version = in.readInt();
+			if (version != formatVersion) {
+				throw new IOException(file+" has unknown version "+version);
+			}
+			long offset = headerSize;
+			long length = raf.length();
+			CRC32 crc = new CRC32();
+			while (offset + recordHeaderSize <= length) {
+				int bodySize = in.readInt();
+				int checksum = in.readInt();
+				if (bodySize < 3 || offset + recordHeaderSize + bodySize > length) {
+					break;
+				}
+				byte[] body = new byte[bodySize];
+				in.readFully(body);
+				crc.reset();
+				crc.update(body);
+				if ((int) crc.getValue() != checksum) {
+					break;
+				}
+				int keySize = ((body[1] & 0xff) << 8) | (body[2] & 0xff);
+				String key = new DataInputStream(new ByteArrayInputStream(body, 1, 2 + keySize)).readUTF();
+				int recordSize = recordHeaderSize + bodySize;
+				Location old;
+				if (body[0] == putKind) {
+					old = index.put(key, new Location(offset, recordSize,
+							recordHeaderSize + 3 + keySize));
+				} else if (body[0] == removeKind) {
+					old = index.remove(key);
+					garbage += recordSize;
+				} else {
+					break;
+				}
+				if (old != null) {
+					garbage += old.recordSize;
+				}
+				offset += recordSize;
+			}
+			return offset;
+		} catch (EOFException e) {
+			// can't happen since the lengths are checked beforehand
+			throw new IOException(e);
+		} finally {
+			in.close();
+		}
+	}
+
+	/** Returns the current value of given key, or null if there is none. */
+	public synchronized byte[] get(String key) throws IOException {
+		Location location = index.get(key);
+		if (location == null) {
+			return null;
+		}
+		byte[] result = new byte[location.valueSize()];
+		raf.seek(location.recordOffset + location.valueOffset);
+		raf.readFully(result);
+		return result;
+	}
+
+	public synchronized boolean containsKey(String key) {
+		return index.containsKey(key);
+	}
+
+	/** Returns a copy of all keys that currently have a value. */
+	public synchronized ArrayList<String> keys() {
+		return new ArrayList<String>(index.keySet());
+	}
+
+	public synchronized void put(String key, byte[] value) throws IOException {
+		Location old = index.get(key);
+		Location location = append(putKind, key, value);
+		index.put(key, location);
+		puts++;
+		if (old != null) {
+			garbage += old.recordSize;
+		}
+		afterAppend();
+	}
+
+	/** Removes given key. Returns false if it had no value. */
+	public synchronized boolean remove(String key) throws IOException {
+		Location old = index.remove(key);
+		if (old == null) {
+			return false;
+		}
+		Location location = append(removeKind, key, null);
+		removes++;
+		garbage += old.recordSize + location.recordSize;
+		afterAppend();
+		return true;
+	}
+
+	private Location append(byte kind, String key, byte[] value) throws IOException {
+		byte[] record = encode(kind, key, value);
+		raf.seek(end);
+		raf.write(record);
+		Location result = new Location(end, record.length,
+				record.length - (value == null ? 0 : value.length));
+		end += record.length;
+		return result;
+	}
+
+	private static byte[] encode(byte kind, String key, byte[] value) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+				recordHeaderSize + 3 + key.length() + (value == null ? 0 : value.length));
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(0); // length and checksum are filled in below
+		out.writeInt(0);
+		out.writeByte(kind);
+		out.writeUTF(key);
+		if (value != null) {
+			out.write(value);
+		}
+		out.close();
+		byte[] result = bytes.toByteArray();
+		int bodySize = result.length - recordHeaderSize;
+		CRC32 crc = new CRC32();
+		crc.update(result, recordHeaderSize, bodySize);
+		writeInt(result, 0, bodySize);
+		writeInt(result, 4, (int) crc.getValue());
+		return result;
+	}
+
+	private static void writeInt(byte[] array, int offset, int value) {
+		array[offset] = (byte) (value >>> 24);
+		array[offset+1] = (byte) (value >>> 16);
+		array[offset+2] = (byte) (value >>> 8);
+		array[offset+3] = (byte) value;
+	}
+
+	private void afterAppend() throws IOException {
+		if (syncPolicy == SyncPolicy.always) {
+			raf.getFD().sync();
+			syncs++;
+		} else {
+			unsynced = true;
+		}
+		if (compactionThread == null && !closing && garbage >= minCompactionGarbage
+				&& garbage > (end - headerSize) * compactionRatio) {
+			compactionThread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						compact();
+					} catch (IOException e) {
+						e.printStackTrace();
+					} finally {
+						synchronized(LogStore.this) {
+							compactionThread = null;
+						}
+					}
+				}
+			}, "log_compaction");
+			compactionThread.setDaemon(true);
+			compactionThread.start();
+		}
+	}
+
+	/** Forces all appended records to disk. */
+	public synchronized void sync() throws IOException {
+		if (unsynced && raf != null) {
+			raf.getFD().sync();
+			unsynced = false;
+			syncs++;
+		}
+	}
+
+	private File compactionFile() {
+		return new File(file.getPath()+".compact");
+	}
+
+	/** Writes all current values into a new file which then atomically
+	 * replaces the old one. Puts and removes go on while the values are
+	 * copied; only the records they have appended meanwhile are copied
+	 * at the end while holding the lock. If anything goes wrong before
+	 * the replacement, the old file stays as it was. */
+	public void compact() throws IOException {
+		synchronized(compactionLock) {
+			long startTime = System.nanoTime();
+			HashMap<String, Location> snapshot;
+			long snapshotEnd;
+			synchronized(this) {
+				if (raf == null) {
+					return;
+				}
+				snapshot = new HashMap<String, Location>(index);
+				snapshotEnd = end;
+			}
+			File tempFile = compactionFile();
+			// the records before snapshotEnd don't change anymore
+			HashMap<String, Location> copied = new HashMap<String, Location>();
+			long copiedEnd = headerSize;
+			boolean replaced = false;
+			FileOutputStream fos = new FileOutputStream(tempFile);
+			try {
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 64*1024));
+				out.writeInt(magic);
+				out.writeInt(formatVersion);
+				RandomAccessFile in = new RandomAccessFile(file, "r");
+				try {
+					for (Entry<String, Location> entry : snapshot.entrySet()) {
+						Location location = entry.getValue();
+						byte[] record = new byte[location.recordSize];
+						in.seek(location.recordOffset);
+						in.readFully(record);
+						out.write(record);
+						copied.put(entry.getKey(), new Location(copiedEnd, location.recordSize,
+								location.valueOffset));
+						copiedEnd += record.length;
+					}
+				} finally {
+					in.close();
+				}
+				synchronized(this) {
+					if (raf == null) {
+						// closed meanwhile
+						return;
+					}
+					copyTail(snapshotEnd, out);
+					out.flush();
+					fos.getFD().sync();
+					fos.close();
+					HashMap<String, Location> newIndex = new HashMap<String, Location>();
+					long live = 0;
+					for (Entry<String, Location> entry : index.entrySet()) {
+						Location location = entry.getValue();
+						Location newLocation;
+						if (location.recordOffset >= snapshotEnd) {
+							newLocation = new Location(copiedEnd + location.recordOffset - snapshotEnd,
+									location.recordSize, location.valueOffset);
+						} else {
+							// unchanged since the snapshot
+							newLocation = copied.get(entry.getKey());
+							assert(newLocation != null);
+						}
+						newIndex.put(entry.getKey(), newLocation);
+						live += location.recordSize;
+					}
+					long oldSize = end;
+					// not every platform can replace a file that is open
+					raf.close();
+					try {
+						Files.move(tempFile.toPath(), file.toPath(),
+								StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+						replaced = true;
+					} finally {
+						raf = new RandomAccessFile(file, "rw");
+					}
+					index = newIndex;
+					end = copiedEnd + oldSize - snapshotEnd;
+					garbage = end - headerSize - live;
+					unsynced = false;
+					compactions++;
+					Logger.log("Compacted "+file+" from "+oldSize+" to "+end+" bytes in "
+							+(System.nanoTime()-startTime)/1000000+" ms.");
+				}
+			} finally {
+				fos.close();
+				if (!replaced && tempFile.exists() && !tempFile.delete()) {
+					Logger.log("WARNING: Couldn't delete "+tempFile);
+				}
+			}
+		}
+	}
+
+	/** Copies the records from given offset up to the end. */
+	private void copyTail(long from, DataOutputStream out) throws IOException {
+		byte[] buffer = new byte[64*1024];
+		raf.seek(from);
+		long remaining = end - from;
+		while (remaining > 0) {
+			int size = (int) Math.min(buffer.length, remaining);
+			raf.readFully(buffer, 0, size);
+			out.write(buffer, 0, size);
+			remaining -= size;
+		}
+	}
+
+	/** Syncs all records appended so far, and from now on every record
+	 * right away. */
+	public synchronized void syncAlways() throws IOException {
+		if (syncTimer != null) {
+			syncTimer.cancel();
+			syncTimer = null;
+		}
+		syncPolicy = SyncPolicy.always;
+		sync();
+	}
+
+	/** Waits for a running compaction, then syncs and closes the file. */
+	public void close() throws IOException {
+		Thread compaction;
+		synchronized(this) {
+			closing = true;
+			compaction = compactionThread;
+		}
+		if (compaction != null) {
+			try {
+				compaction.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		closeFile();
+	}
+
+	private synchronized void closeFile() throws IOException {
+		if (raf == null) {
+			return;
+		}
+		if (syncTimer != null) {
+			syncTimer.cancel();
+			syncTimer = null;
+		}
+		sync();
+		raf.close();
+		raf = null;
+	}
+
+	public synchronized int size() {
+		return index.size();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return file.getName()+": "+index.size()+" keys in "+end+" bytes, "+garbage
+				+" of them outdated; "+puts+" puts, "+removes+" removes, "+syncs
+				+" syncs, "+compactions+" compactions";
+	}
+}
@@ -0,0 +1,106 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.archivist.logArchivist;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import serverSide.ServerSettings;
+import serverSide.archivist.fileSystemArchivist.FileSystemArchivist;
+
+/** Copies all accounts and players from the directory layout of the
+ * FileSystemArchivist into the account log of the LogArchivist. The
+ * files are copied as they are; accounts and players that are already
+ * in the log are overwritten. <br />
+ * Usage: LogStoreMigration [serverDataPath] */
+public class LogStoreMigration {
+	private int accounts;
+	private int players;
+	private long bytes;
+
+	public static void main(String[] args) throws IOException {
+		ServerSettings settings;
+		if (args.length > 0) {
+			String serverDataPath = args[0];
+			if (!serverDataPath.endsWith("/")) {
+				serverDataPath += "/";
+			}
+			settings = new ServerSettings(serverDataPath);
+		} else {
+			settings = new ServerSettings();
+		}
+		LogStore store = new LogStore(new File(settings.accountLogPath()), SyncPolicy.never,
+				0, settings.logCompactionRatio());
+		store.open();
+		LogStoreMigration migration = new LogStoreMigration();
+		long startTime = System.nanoTime();
+		try {
+			migration.migrate(new File(settings.accountPath()), store);
+		} finally {
+			store.close();
+		}
+		System.out.println("Copied "+migration+" from "+settings.accountPath()+" to "
+				+settings.accountLogPath()+" in "+(System.nanoTime()-startTime)/1000000+" ms.");
+	}
+
+	/** Copies every account directory in given directory into given store. */
+	public void migrate(File accountDir, LogStore store) throws IOException {
+		File[] accountSubdirs = accountDir.listFiles(FileSystemArchivist.directoryFilter);
+		if (accountSubdirs == null) {
+			throw new IOException(accountDir+" is not a directory!");
+		}
+		for (File accountSubdir : accountSubdirs) {
+			String accountName = accountSubdir.getName();
+			byte[] accountBytes = readFile(new File(accountSubdir, "account.properties"));
+			store.put(LogAccountsArchivist.accountKey(accountName), accountBytes);
+			accounts++;
+			bytes += accountBytes.length;
+			File[] playerDirs = new File(accountSubdir, "players").listFiles(
+					FileSystemArchivist.directoryFilter);
+			if (playerDirs == null) {
+				continue;
+			}
+			for (File playerDir : playerDirs) {
+				String playerName = playerDir.getName();
+				byte[] playerBytes = readFile(new File(playerDir, playerName));
+				store.put(LogAccountsArchivist.playerKey(accountName, playerName), playerBytes);
+				players++;
+				bytes += playerBytes.length;
+			}
+		}
+	}
+
+	private static byte[] readFile(File file) throws IOException {
+		byte[] result = new byte[(int) file.length()];
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			in.readFully(result);
+		} finally {
+			in.close();
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return accounts+" accounts and "+players+" players ("+bytes+" bytes)";
+	}
+}
@@ -0,0 +1,269 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.archivist.logArchivist;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map.Entry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import tools.Tools;
+
+public class LogStoreTest {
+	private File tmpDir;
+	private File file;
+	private LogStore store;
+
+	@Before
+	public void setUp() throws IOException {
+		tmpDir = Files.createTempDirectory("logstore").toFile();
+		file = new File(tmpDir, "accounts.log");
+		store = open();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		store.close();
+		assertTrue(Tools.deleteRecursive(tmpDir));
+	}
+
+	private LogStore open() throws IOException {
+		LogStore result = new LogStore(file, SyncPolicy.never, 0, 0.5);
+		result.open();
+		return result;
+	}
+
+	private LogStore reopen() throws IOException {
+		store.close();
+		store = open();
+		return store;
+	}
+
+	private static byte[] value(String key, int version, int size) {
+		byte[] result = new byte[size];
+		Arrays.fill(result, (byte) (key.hashCode() + version));
+		result[0] = (byte) version;
+		return result;
+	}
+
+	private void assertContent(HashMap<String, byte[]> expected) throws IOException {
+		assertEquals(expected.size(), store.size());
+		for (Entry<String, byte[]> entry : expected.entrySet()) {
+			assertArrayEquals(entry.getKey(), entry.getValue(), store.get(entry.getKey()));
+		}
+	}
+
+	@Test
+	public void testPutGetRemove() throws IOException {
+		store.put("a", new byte[] {1, 2, 3});
+		store.put("b", new byte[0]);
+		store.put("a", new byte[] {4});
+		assertTrue(store.remove("b"));
+		assertFalse(store.remove("b"));
+		assertFalse(store.remove("c"));
+		assertArrayEquals(new byte[] {4}, store.get("a"));
+		assertNull(store.get("b"));
+		reopen();
+		assertEquals(1, store.size());
+		assertArrayEquals(new byte[] {4}, store.get("a"));
+		assertFalse(store.containsKey("b"));
+	}
+
+	@Test
+	public void testTruncatedTail() throws IOException {
+		store.put("a", value("a", 1, 100));
+		store.put("b", value("b", 1, 100));
+		store.close();
+		long length = file.length();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(length - 10);
+		} finally {
+			raf.close();
+		}
+		store = open();
+		assertEquals(1, store.size());
+		assertArrayEquals(value("a", 1, 100), store.get("a"));
+		assertNull(store.get("b"));
+		// the torn record is cut off, so that new records follow the intact ones
+		store.put("c", value("c", 1, 10));
+		reopen();
+		assertEquals(2, store.size());
+		assertArrayEquals(value("c", 1, 10), store.get("c"));
+	}
+
+	@Test
+	public void testCorruptRecord() throws IOException {
+		store.put("a", value("a", 1, 100));
+		store.put("b", value("b", 1, 100));
+		store.put("c", value("c", 1, 100));
+		store.close();
+		long length = file.length();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			// flip a byte in the value of b
+			long offset = length - 2*(100 + 8 + 3 + 1) + 50;
+			raf.seek(offset);
+			int old = raf.read();
+			raf.seek(offset);
+			raf.write(old ^ 0xff);
+		} finally {
+			raf.close();
+		}
+		store = open();
+		// b fails its checksum, and everything after it is cut off
+		assertEquals(1, store.size());
+		assertArrayEquals(value("a", 1, 100), store.get("a"));
+		assertNull(store.get("c"));
+		assertTrue(file.length() < length);
+	}
+
+	@Test
+	public void testBackgroundCompaction() throws IOException {
+		HashMap<String, byte[]> expected = new HashMap<String, byte[]>();
+		long written = 0;
+		for (int version=0; version<20; version++) {
+			for (int i=0; i<100; i++) {
+				String key = "key"+i;
+				byte[] value = value(key, version, 200);
+				store.put(key, value);
+				expected.put(key, value);
+				written += 200;
+			}
+		}
+		for (int i=0; i<100; i+=3) {
+			store.remove("key"+i);
+			expected.remove("key"+i);
+		}
+		assertContent(expected);
+		// close() waits for the compaction the puts have started
+		reopen();
+		assertContent(expected);
+		assertTrue(file.length() < written / 2);
+	}
+
+	@Test
+	public void testPutsDuringCompaction() throws Exception {
+		final HashMap<String, byte[]> expected = new HashMap<String, byte[]>();
+		for (int i=0; i<2000; i++) {
+			String key = "key"+i;
+			store.put(key, value(key, 0, 500));
+			store.put(key, value(key, 1, 500));
+			expected.put(key, value(key, 1, 500));
+		}
+		final Exception[] failure = new Exception[1];
+		Thread writer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					for (int version=2; version<6; version++) {
+						for (int i=0; i<2000; i+=7) {
+							String key = "key"+i;
+							store.put(key, value(key, version, 500));
+							synchronized(expected) {
+								expected.put(key, value(key, version, 500));
+							}
+						}
+						store.remove("key"+version);
+						synchronized(expected) {
+							expected.remove("key"+version);
+						}
+					}
+				} catch (Exception e) {
+					failure[0] = e;
+				}
+			}
+		};
+		writer.start();
+		for (int i=0; i<5; i++) {
+			store.compact();
+		}
+		writer.join();
+		assertNull(failure[0]);
+		assertContent(expected);
+		store.compact();
+		assertContent(expected);
+		reopen();
+		assertContent(expected);
+	}
+
+	@Test
+	public void testInterruptedCompaction() throws IOException {
+		store.put("a", value("a", 1, 100));
+		store.put("b", value("b", 1, 100));
+		store.close();
+		// a crash while copying leaves a partial compaction file behind
+		File compactionFile = new File(file.getPath()+".compact");
+		Files.copy(file.toPath(), compactionFile.toPath());
+		RandomAccessFile raf = new RandomAccessFile(compactionFile, "rw");
+		try {
+			raf.setLength(raf.length() / 2);
+		} finally {
+			raf.close();
+		}
+		store = open();
+		assertFalse(compactionFile.exists());
+		assertEquals(2, store.size());
+		assertArrayEquals(value("b", 1, 100), store.get("b"));
+	}
+
+	@Test
+	public void testCompactionFileWithoutLog() throws IOException {
+		store.put("a", value("a", 1, 100));
+		store.close();
+		// a complete compaction whose file wasn't moved in place yet
+		File compactionFile = new File(file.getPath()+".compact");
+		Files.move(file.toPath(), compactionFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		store = open();
+		assertFalse(compactionFile.exists());
+		assertArrayEquals(value("a", 1, 100), store.get("a"));
+	}
+
+	@Test
+	public void testFailedCompaction() throws IOException {
+		store.put("a", value("a", 1, 100));
+		store.put("a", value("a", 2, 100));
+		// the compaction file can't be created where a directory is
+		File compactionFile = new File(file.getPath()+".compact");
+		assertTrue(new File(compactionFile, "blocker").mkdirs());
+		try {
+			store.compact();
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+		assertArrayEquals(value("a", 2, 100), store.get("a"));
+		store.put("b", value("b", 1, 100));
+		assertTrue(Tools.deleteRecursive(compactionFile));
+		reopen();
+		assertEquals(2, store.size());
+		assertArrayEquals(value("a", 2, 100), store.get("a"));
+		assertArrayEquals(value("b", 1, 100), store.get("b"));
+	}
+}
@@ -0,0 +1,32 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.archivist.logArchivist;
+
+/** Tells a LogStore when to force its appended records to disk. */
+public enum SyncPolicy {
+	/** Syncs after every record. Nothing is lost in a crash, but every
+	 * save waits for the disk. */
+	always,
+	/** Syncs once per sync interval if anything has been appended. A
+	 * crash loses at most the records of that time. */
+	interval,
+	/** Leaves it to the operating system, and only syncs when the log
+	 * is compacted or closed. */
+	never
+}
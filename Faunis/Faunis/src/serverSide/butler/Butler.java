@@ -18,11 +18,7 @@
  */
 package serverSide.butler;
 
-import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -40,13 +36,12 @@ import common.modules.ModuleOwner;
 
 
 /** The butler looks after the needs of a client.
- * He receives the socket that the reception has already created.
+ * He receives the connection that the reception has already created.
  * He represents his client on the server side. */
 public class Butler implements ModuleOwner {
 	private AtomicBoolean shutdownOccupied;
 	protected final MainServer parent;
-	protected final Socket clientSocket; // the socket through which to communicate with the client
-	protected final ObjectOutputStream clientOutput; // to write to the socket; synchronised access only
+	protected final ClientConnection connection; // through which to communicate with the client
 	protected final ButlerClientsideModule clientsideWorker;
 	protected final ButlerServersideModule serversideWorker;
 	protected Account loggedAccount;	// account for which the client is currently logged in (may also be null)
@@ -55,33 +50,30 @@ public class Butler implements ModuleOwner {
 	protected final ButlerWorkerModule worker;
 	protected final MuxObjectInputStream mux;
 
-	public Butler(MainServer parent, Socket clientSocket) {
+	public Butler(MainServer parent, ClientConnection connection) {
 		this.parent = parent;
 		this.shutdownOccupied = new AtomicBoolean(false);
 
 		this.clientsideWorker = new ButlerClientsideModule();
 		this.serversideWorker = new ButlerServersideModule();
 
-		this.clientSocket = clientSocket;
-		// create input and output streams from clientSocket
-		Logger.log("Butler: Try to create input / output streams...");
-
-		ObjectInputStream stream = null;
-		try {
-			// we cannot put clientOutput into clientsideWorker because
-			// everything that has to be synced on should stay in the common class
-			this.clientOutput = new ObjectOutputStream(this.clientSocket.getOutputStream());
-			stream = new ObjectInputStream(this.clientSocket.getInputStream());
-		} catch (IOException e) {
-			e.printStackTrace();
-			throw new RuntimeException("Couldn't create input / output stream!");
+		this.connection = connection;
+		// if the connection has no stream, it will deliver the client's
+		// orders itself through receiveFromClient()
+		ObjectInputStream stream = connection.getInputStream();
+		ObjectInputStream[] streams;
+		Class<?>[] streamFilters;
+		if (stream != null) {
+			streams = new ObjectInputStream[] {stream};
+			streamFilters = new Class<?>[] {CBOrder.class};
+		} else {
+			streams = new ObjectInputStream[0];
+			streamFilters = new Class<?>[0];
 		}
-		Logger.log("Input and output streams have been created.");
-		String workerThreadname = "butler_"+clientSocket.getLocalPort();
+		String workerThreadname = "butler_"+connection.getPort();
 		this.mux = new MuxObjectInputStream(
-			String.valueOf(clientSocket.getLocalPort()), 16, true,
-			new ObjectInputStream[] {stream}, new Class[] {CBOrder.class},
-			new BlockingQueue<?>[] {new ArrayBlockingQueue<MBOrder>(50)}, new Class[] {MBOrder.class}
+			String.valueOf(connection.getPort()), 64, true,
+			streams, streamFilters, new BlockingQueue<?>[0], new Class<?>[0]
 		);
 		this.worker = new ButlerWorkerModule(this.mux, workerThreadname);
 	}
@@ -138,12 +130,15 @@ public class Butler implements ModuleOwner {
 	}
 
 
-	public Socket getClientSocket() {
-		return clientSocket;
+	public ClientConnection getConnection() {
+		return connection;
 	}
 
-	public int getLocalPort() {
-		return clientSocket.getLocalPort();
+	/** Is called by connections without input stream to pass an order
+	 * of the client. Doesn't block; returns false if the butler can't take
+	 * it at the moment, so that the connection must try again later. */
+	public boolean receiveFromClient(CBOrder order) {
+		return mux.offer(order);
 	}
 
 	/** Shuts this butler down. Only one thread is allowed
@@ -158,6 +153,11 @@ public class Butler implements ModuleOwner {
 	public boolean shutdown(){
 		if (shutdownOccupied.compareAndSet(false, true)) {
 			worker.stop();
+			connection.close();
+			OutboundQueue outboundQueue = connection.getOutboundQueue();
+			if (outboundQueue.getDropped() > 0 || outboundQueue.getCoalesced() > 0) {
+				Logger.log("Butler: Client at port "+connection.getPort()+" had lagged: "+outboundQueue);
+			}
 			// Save data, log out, unregister butler etc.
 			if (loggedAccount != null) {
 				clientsideWorker.logoutAccount();
@@ -173,9 +173,21 @@ public class Butler implements ModuleOwner {
 		worker.put(order);
 	}
 
+	/** Like put(), but returns false instead of waiting if the queue
+	 * is full, or if the butler has shut down. */
+	public boolean offer(MBOrder order) {
+		return worker.offer(order);
+	}
+
+	/** Returns true once the butler has shut down and doesn't take
+	 * orders anymore. */
+	public boolean isClosed() {
+		return worker.isClosed();
+	}
+
 	@Override
 	public String toString() {
-		return "Butler [socket=" + clientSocket.getLocalPort() +
+		return "Butler [port=" + connection.getPort() +
 				", account=" + loggedAccount.getName() +
 				", player=" + activePlayer.getName() + "]";
 	}
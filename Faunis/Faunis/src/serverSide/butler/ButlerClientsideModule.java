@@ -33,6 +33,7 @@ import common.butlerToClientOrders.*;
 import common.clientToButlerOrders.*;
 import common.enums.CharacterClass;
 import common.enums.ClientStatus;
+import common.transport.EncodedOrder;
 
 
 public class ButlerClientsideModule {
@@ -87,12 +88,23 @@ public class ButlerClientsideModule {
 	}
 
 	void sendOrderToClient(BCOrder order) {
-		assert(parent.clientOutput != null);
+		assert(parent.connection != null);
 		if (order == null) {
 			Logger.log("Order is null!");
 		}
 		try {
-			parent.clientOutput.writeObject(order);
+			parent.connection.send(order);
+		} catch (IOException e) {
+			Logger.log("Butler: Couldn't pass order to client!");
+		}
+	}
+
+	/** Like sendOrderToClient(BCOrder), but lets the connection reuse the
+	 * frame that another butler has already encoded for the same order. */
+	void sendOrderToClient(EncodedOrder order) {
+		assert(parent.connection != null);
+		try {
+			parent.connection.send(order);
 		} catch (IOException e) {
 			Logger.log("Butler: Couldn't pass order to client!");
 		}
@@ -197,7 +209,8 @@ public class ButlerClientsideModule {
 		String mapname = parent.activePlayer.getMapName();
 		assert(mapname != null);
 		assert(parent.activeMapman == null);
-		parent.activeMapman = parent.parent.getMapman(mapname);
+		parent.activeMapman = parent.parent.getMapman(mapname,
+			parent.activePlayer.getX(), parent.activePlayer.getY());
 		assert(parent.activeMapman != null);
 		parent.serversideWorker.addPlayerToMapman(parent.activeMapman, false);
 		// => the mapman will send a MBMapInfoOrder
@@ -18,6 +18,10 @@
  */
 package serverSide.butler;
 
+import java.awt.Point;
+
+import serverSide.butlerToMapmanOrders.BMMoveOrder;
+import serverSide.butlerToMapmanOrders.BMOrder;
 import serverSide.butlerToMapmanOrders.BMRegisterOrder;
 import serverSide.butlerToMapmanOrders.BMUnregisterOrder;
 import serverSide.mapManager.MapManager;
@@ -31,10 +35,6 @@ import serverSide.mapmanToButlerOrders.MBOrder;
 import serverSide.mapmanToButlerOrders.MBRemoveCharOrder;
 import common.Link;
 import common.Logger;
-import common.butlerToClientOrders.BCAddCharOrder;
-import common.butlerToClientOrders.BCChangeCharOrder;
-import common.butlerToClientOrders.BCChatMessageOrder;
-import common.butlerToClientOrders.BCRemoveCharOrder;
 import common.butlerToClientOrders.BCSetMapOrder;
 
 
@@ -51,9 +51,12 @@ public class ButlerServersideModule {
 	}
 
 	protected void handleMessage(MBOrder order) {
-		// Assert that given order comes from our active mapman!
+		// Assert that given order comes from our active mapman, or from the
+		// mapman of another region of the same map, whose players we see!
 		// the only exception is if it's set to null (needed for chat orders, f.ex.)
-			if (order.getSource() != null && order.getSource() != parent.activeMapman) {
+			if (order.getSource() != null && order.getSource() != parent.activeMapman
+				&& (parent.activeMapman == null
+					|| order.getSource().getShards() != parent.activeMapman.getShards())) {
 				Logger.log("Butler: Received order from foreign mapman!");
 				return;
 			}
@@ -76,23 +79,19 @@ public class ButlerServersideModule {
 	}
 
 	void clientChatMessage(MBChatMessageOrder order) {
-		String toName = order.getToPlayername();
-		boolean isBroadcast = (toName == null || toName.equals(""));
-		parent.clientsideWorker.sendOrderToClient(new BCChatMessageOrder(order.getMessage(),
-													order.getFromPlayername(),
-													isBroadcast));
+		parent.clientsideWorker.sendOrderToClient(order.getClientOrder());
 	}
 
 	void clientAddChar(MBAddCharOrder order) {
-		parent.clientsideWorker.sendOrderToClient(new BCAddCharOrder(order));
+		parent.clientsideWorker.sendOrderToClient(order.getClientOrder());
 	}
 
 	void clientChangeChar(MBChangeCharOrder order) {
-		parent.clientsideWorker.sendOrderToClient(new BCChangeCharOrder(order));
+		parent.clientsideWorker.sendOrderToClient(order.getClientOrder());
 	}
 
 	void clientRemoveChar(MBRemoveCharOrder order) {
-		parent.clientsideWorker.sendOrderToClient(new BCRemoveCharOrder(order));
+		parent.clientsideWorker.sendOrderToClient(order.getClientOrder());
 	}
 
 	void clientMapInfo(MBMapInfoOrder order) {
@@ -103,10 +102,41 @@ public class ButlerServersideModule {
 		MapManager oldMapman = order.getSource();
 		assert(parent.activeMapman == oldMapman);
 		Link link = order.getLink();
+		if (link == null) {
+			// the player has stepped into another region of the same map
+			// the player stays in view of the others meanwhile
+			MapManager newMapman = order.getTargetMapman();
+			BMUnregisterOrder unregister = new BMUnregisterOrder(parent, parent.activePlayer,
+																 false, true);
+			oldMapman.put(unregister);
+			if (!awaitHandover(unregister)) {
+				if (unregister.withdraw()) {
+					// it stays with the old mapman, who hands it over
+					// again after its next step
+					Logger.log("Butler: Gave up handing "+parent.activePlayer.getName()
+							   +" over to "+newMapman);
+					return;
+				}
+				// the old mapman is just executing it
+				awaitMapman(unregister);
+			}
+			BMRegisterOrder register = new BMRegisterOrder(parent, parent.activePlayer,
+														   false, true);
+			newMapman.put(register);
+			// the new mapman executes the orders that follow after this one
+			awaitHandover(register);
+			parent.activeMapman = newMapman;
+			Point moveTarget = order.getMoveTarget();
+			if (moveTarget != null) {
+				newMapman.put(new BMMoveOrder(parent.activePlayer, parent, moveTarget.x, moveTarget.y));
+			}
+			return;
+		}
 		String newMap = link.getTargetMap();
-		MapManager newMapman = parent.parent.getMapman(newMap);
 		removePlayerFromMapman(oldMapman, true);
 		link.move(parent.activePlayer);
+		MapManager newMapman = parent.parent.getMapman(newMap,
+			parent.activePlayer.getX(), parent.activePlayer.getY());
 		addPlayerToMapman(newMapman, true);
 		parent.activeMapman = newMapman;
 	}
@@ -120,7 +150,7 @@ public class ButlerServersideModule {
 		assert(mapman != null);
 		BMRegisterOrder order = new BMRegisterOrder(parent, parent.activePlayer, addPlayerMapEntry);
 		mapman.put(order);
-		order.waitUntilDone();
+		awaitMapman(order);
 	}
 
 	void removePlayerFromMapman(MapManager mapman, boolean removePlayerMapEntry) {
@@ -128,6 +158,33 @@ public class ButlerServersideModule {
 		assert(mapman != null);
 		BMUnregisterOrder order = new BMUnregisterOrder(parent, parent.activePlayer, removePlayerMapEntry);
 		mapman.put(order);
-		order.waitUntilDone();
+		awaitMapman(order);
+	}
+
+	/** Waits until the mapman has executed given order of a handover,
+	 * but at most mapmanOrderTimeout. Returns whether it has. */
+	private boolean awaitHandover(BMOrder order) {
+		long timeout = parent.parent.getServerSettings().mapmanOrderTimeout();
+		if (order.waitUntilDone(timeout)) {
+			return true;
+		}
+		Logger.log("Butler: Mapman hasn't executed "+order.getClass().getSimpleName()
+				   +" of a handover within "+timeout+" ms, not waiting any longer.");
+		return false;
+	}
+
+	/** Waits until the mapman has executed given order. Complains in the
+	 * log each time the mapmanOrderTimeout has passed without that, and
+	 * gives up only if the butler's thread is interrupted. */
+	private void awaitMapman(BMOrder order) {
+		long timeout = parent.parent.getServerSettings().mapmanOrderTimeout();
+		while (!order.waitUntilDone(timeout)) {
+			if (Thread.currentThread().isInterrupted()) {
+				Logger.log("Butler: Interrupted while waiting for mapman.");
+				return;
+			}
+			Logger.log("Butler: Mapman hasn't executed "+order.getClass().getSimpleName()
+					   +" within "+timeout+" ms, still waiting.");
+		}
 	}
 }
@@ -19,32 +19,40 @@
 package serverSide.butler;
 
 import mux.MuxObjectInputStream;
-import mux.MuxObjectInputStream.BlockingQueueRunnable;
+import mux.MuxObjectInputStream.Inlet;
 import serverSide.mapmanToButlerOrders.MBOrder;
 import common.clientToButlerOrders.CBOrder;
+import common.modules.workerModule.ActorPool;
 import common.modules.workerModule.WorkerModule;
 
 
 public class ButlerWorkerModule extends WorkerModule<Butler> {
+	/** The mapmen put their orders here. */
+	private final Inlet inlet;
+
 	public ButlerWorkerModule(MuxObjectInputStream mux, String threadName) {
 		super(mux, threadName);
+		this.inlet = mux.addInlet(MBOrder.class);
 	}
 
-	@SuppressWarnings("unchecked")
 	public void put(MBOrder order) {
-		BlockingQueueRunnable queueRunnable;
-		try {
-			queueRunnable = mux.getQueueRunnable(0);
-		} catch(ArrayIndexOutOfBoundsException e) {
-			return;
-		}
 		try {
-			queueRunnable.getQueue().put(order);
+			ActorPool.put(inlet, order);
 		} catch (InterruptedException e) {
 			e.printStackTrace();
 		}
 	}
 
+	/** Like put(), but returns false instead of waiting if the queue
+	 * is full, or if the butler has shut down. */
+	public boolean offer(MBOrder order) {
+		return inlet.offer(order);
+	}
+
+	public boolean isClosed() {
+		return inlet.isClosed();
+	}
+
 	@Override
 	protected void handleMessage(Object read) {
 		if (read instanceof CBOrder) {
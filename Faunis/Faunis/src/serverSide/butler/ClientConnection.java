@@ -0,0 +1,52 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.butler;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+
+import common.butlerToClientOrders.BCOrder;
+import common.transport.EncodedOrder;
+
+/** The connection between a butler and his client. */
+public interface ClientConnection {
+	/** Sends given order to the client. May be called by several
+	 * threads at once, doesn't wait for the order to be written. Throws
+	 * an IOException if the connection is closed, or has just been
+	 * closed because the client couldn't keep up. */
+	void send(BCOrder order) throws IOException;
+
+	/** Sends the order contained in given EncodedOrder to the client,
+	 * reusing its frame if the transport allows for it. */
+	void send(EncodedOrder order) throws IOException;
+
+	/** Returns the queue of orders that haven't been written yet. */
+	OutboundQueue getOutboundQueue();
+
+	/** Returns the stream from which the butler shall read the client's
+	 * orders, or null if the connection delivers them by itself through
+	 * Butler.receiveFromClient(). */
+	ObjectInputStream getInputStream();
+
+	/** Closes the connection. Calling this more than once does no harm. */
+	void close();
+
+	/** Returns the client's port. */
+	int getPort();
+}
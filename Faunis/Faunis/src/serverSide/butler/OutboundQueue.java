@@ -0,0 +1,380 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.butler;
+
+import java.util.HashMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import common.butlerToClientOrders.BCAddCharOrder;
+import common.butlerToClientOrders.BCChangeCharOrder;
+import common.butlerToClientOrders.BCChatMessageOrder;
+import common.butlerToClientOrders.BCErrorMessageOrder;
+import common.butlerToClientOrders.BCRemoveCharOrder;
+import common.butlerToClientOrders.BCSystemMessageOrder;
+import common.graphics.PlayerData;
+import common.graphics.PlayerDataDelta;
+import common.transport.EncodedOrder;
+
+/** The orders that wait to be written to a client, in a ring buffer of
+ * fixed capacity. Adding never blocks: if the buffer is full, room is made
+ * according to the SlowConsumerPolicy, or the client has to be
+ * disconnected. Thus a slow client can't hold up the butler nor the
+ * mapmans that send to him. <br />
+ * A change of a character that still has an order waiting is merged into
+ * that order, so that a client who falls behind only gets each
+ * character's newest state instead of replaying every step. The waiting
+ * order keeps its place, and merging never passes an order after which
+ * the character's state may mean something else, like a new map. <br />
+ * The orders are taken out by whoever writes to the client's socket. */
+public class OutboundQueue {
+	private static final int positionOnly = PlayerDataDelta.position | PlayerDataDelta.path;
+
+	private final SlowConsumerPolicy policy;
+	/** Not the monitor, so that a virtual thread that waits in take()
+	 * doesn't pin its carrier thread. */
+	private final ReentrantLock lock;
+	private final Condition notEmpty;
+	// all following fields are guarded by lock
+	private final EncodedOrder[] ring;
+	private int head; // index of the oldest order
+	private int size;
+	private long headSequence; // how many orders have left through poll()
+	/** Maps a character's name to the sequence number of the waiting order
+	 * that changes or adds him, as long as later orders may be merged into
+	 * it. Entries below headSequence are outdated. */
+	private final HashMap<String, Long> mergeable;
+	private boolean closed;
+	private int maxDepth;
+	private long offered;
+	private long dropped;
+	private long coalesced;
+
+	public OutboundQueue(int capacity, SlowConsumerPolicy policy) {
+		assert(capacity > 0);
+		this.ring = new EncodedOrder[capacity];
+		this.policy = policy;
+		this.mergeable = new HashMap<String, Long>();
+		this.lock = new ReentrantLock();
+		this.notEmpty = lock.newCondition();
+	}
+
+	/** Appends given order. Returns false if the queue is full and the
+	 * policy doesn't allow for dropping anything, in which case the
+	 * client has to be disconnected. Also returns false if the queue
+	 * has been closed. */
+	public boolean offer(EncodedOrder order) {
+		lock.lock();
+		try {
+			if (closed) {
+				return false;
+			}
+			offered++;
+			if (tryMerge(order)) {
+				return true;
+			}
+			if (size == ring.length && !makeRoom(order)) {
+				return false;
+			}
+			ring[(head + size) % ring.length] = order;
+			size++;
+			updateMergeable(order);
+			if (size > maxDepth) {
+				maxDepth = size;
+			}
+			if (size == 1) {
+				notEmpty.signalAll();
+			}
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Removes and returns the oldest order, or returns null if there
+	 * is none. */
+	public EncodedOrder poll() {
+		lock.lock();
+		try {
+			if (size == 0) {
+				return null;
+			}
+			EncodedOrder result = ring[head];
+			ring[head] = null;
+			head = (head + 1) % ring.length;
+			size--;
+			headSequence++;
+			if (size == 0) {
+				mergeable.clear();
+			}
+			return result;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Like poll(), but waits for an order. Returns null once the queue
+	 * is closed. */
+	public EncodedOrder take() throws InterruptedException {
+		lock.lock();
+		try {
+			while (size == 0 && !closed) {
+				notEmpty.await();
+			}
+			return poll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Discards all orders and rejects any further ones. Wakes up a
+	 * thread that waits in take(). */
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+			while (size > 0) {
+				poll();
+			}
+			notEmpty.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** If given order is a change of a character whose former change or
+	 * addition is still waiting, replaces the waiting order by one that
+	 * contains both. */
+	private boolean tryMerge(EncodedOrder order) {
+		if (!(order.getOrder() instanceof BCChangeCharOrder)) {
+			return false;
+		}
+		BCChangeCharOrder change = (BCChangeCharOrder) order.getOrder();
+		Long sequence = mergeable.get(change.getPlayerName());
+		if (sequence == null || sequence < headSequence) {
+			return false;
+		}
+		int index = (head + (int) (sequence - headSequence)) % ring.length;
+		Object waiting = ring[index].getOrder();
+		if (waiting instanceof BCChangeCharOrder) {
+			PlayerDataDelta delta = ((BCChangeCharOrder) waiting).getDelta();
+			ring[index] = new EncodedOrder(new BCChangeCharOrder(change.getPlayerName(),
+														 delta.merge(change.getDelta())));
+		} else {
+			PlayerData data = ((BCAddCharOrder) waiting).getGraphStatus();
+			ring[index] = new EncodedOrder(new BCAddCharOrder(change.getPlayerName(),
+													  change.getDelta().applyTo(data)));
+		}
+		coalesced++;
+		return true;
+	}
+
+	/** Called after given order has been appended. */
+	private void updateMergeable(EncodedOrder order) {
+		Object appended = order.getOrder();
+		long sequence = headSequence + size - 1;
+		if (appended instanceof BCChangeCharOrder) {
+			mergeable.put(((BCChangeCharOrder) appended).getPlayerName(), sequence);
+		} else if (appended instanceof BCAddCharOrder) {
+			BCAddCharOrder add = (BCAddCharOrder) appended;
+			if (add.getGraphStatus() != null) {
+				mergeable.put(add.getPlayerName(), sequence);
+			} else {
+				mergeable.remove(add.getPlayerName());
+			}
+		} else if (appended instanceof BCRemoveCharOrder) {
+			mergeable.remove(((BCRemoveCharOrder) appended).getPlayerName());
+		} else if (!(appended instanceof BCChatMessageOrder
+					 || appended instanceof BCErrorMessageOrder
+					 || appended instanceof BCSystemMessageOrder)) {
+			// e.g. a new map, after which no former character is valid
+			mergeable.clear();
+		}
+	}
+
+	private boolean makeRoom(EncodedOrder newOrder) {
+		switch (policy) {
+		case coalesce:
+			if (removeSuperseded(newOrder)) {
+				return true;
+			}
+			return removeOldestStale(newOrder);
+		case dropStale:
+			return removeOldestStale(newOrder);
+		default:
+			return false;
+		}
+	}
+
+	/** Removes all queued changes of the character that given order
+	 * changes, if the order changes at least the same fields. */
+	private boolean removeSuperseded(EncodedOrder newOrder) {
+		if (!(newOrder.getOrder() instanceof BCChangeCharOrder)) {
+			return false;
+		}
+		BCChangeCharOrder newChange = (BCChangeCharOrder) newOrder.getOrder();
+		int newFields = newChange.getDelta().getChangedFields();
+		boolean removed = false;
+		for (int i = size - 1; i >= 0; i--) {
+			Object queued = ring[(head + i) % ring.length].getOrder();
+			if (queued instanceof BCChangeCharOrder) {
+				BCChangeCharOrder change = (BCChangeCharOrder) queued;
+				int fields = change.getDelta().getChangedFields();
+				if (change.getPlayerName().equals(newChange.getPlayerName())
+					&& (fields & ~newFields) == 0) {
+					removeAt(i);
+					coalesced++;
+					removed = true;
+				}
+			}
+		}
+		return removed;
+	}
+
+	/** Removes the oldest queued change that only moves a character and
+	 * is covered by a later change of him, be it queued or given one, so
+	 * that the client still gets the character's newest position. */
+	private boolean removeOldestStale(EncodedOrder newOrder) {
+		for (int i = 0; i < size; i++) {
+			Object queued = ring[(head + i) % ring.length].getOrder();
+			if (queued instanceof BCChangeCharOrder) {
+				BCChangeCharOrder change = (BCChangeCharOrder) queued;
+				int fields = change.getDelta().getChangedFields();
+				if ((fields & ~positionOnly) == 0
+					&& isCovered(change.getPlayerName(), fields, i + 1, newOrder)) {
+					removeAt(i);
+					dropped++;
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/** Tells whether an order from the given index on, or given new
+	 * order, changes at least given fields of given character, or
+	 * adds or removes him. */
+	private boolean isCovered(String playerName, int fields, int from,
+							  EncodedOrder newOrder) {
+		if (covers(newOrder.getOrder(), playerName, fields)) {
+			return true;
+		}
+		for (int i = from; i < size; i++) {
+			if (covers(ring[(head + i) % ring.length].getOrder(), playerName, fields)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean covers(Object order, String playerName, int fields) {
+		if (order instanceof BCChangeCharOrder) {
+			BCChangeCharOrder change = (BCChangeCharOrder) order;
+			return change.getPlayerName().equals(playerName)
+				&& (fields & ~change.getDelta().getChangedFields()) == 0;
+		} else if (order instanceof BCAddCharOrder) {
+			BCAddCharOrder add = (BCAddCharOrder) order;
+			return add.getPlayerName().equals(playerName) && add.getGraphStatus() != null;
+		} else if (order instanceof BCRemoveCharOrder) {
+			return ((BCRemoveCharOrder) order).getPlayerName().equals(playerName);
+		}
+		return false;
+	}
+
+	/** Removes the i-th oldest order, closing the gap by moving the
+	 * newer ones forward. */
+	private void removeAt(int i) {
+		for (int j = i; j < size - 1; j++) {
+			ring[(head + j) % ring.length] = ring[(head + j + 1) % ring.length];
+		}
+		ring[(head + size - 1) % ring.length] = null;
+		size--;
+		// the sequence numbers of the moved orders have changed
+		mergeable.clear();
+	}
+
+	public int getCapacity() {
+		return ring.length;
+	}
+
+	public int getDepth() {
+		lock.lock();
+		try {
+			return size;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Returns the highest depth there has been so far. */
+	public int getMaxDepth() {
+		lock.lock();
+		try {
+			return maxDepth;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long getOffered() {
+		lock.lock();
+		try {
+			return offered;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Returns how many orders have been dropped because of dropStale. */
+	public long getDropped() {
+		lock.lock();
+		try {
+			return dropped;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Returns how many orders have been dropped because a newer one
+	 * superseded them or has been merged into them. */
+	public long getCoalesced() {
+		lock.lock();
+		try {
+			return coalesced;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public SlowConsumerPolicy getPolicy() {
+		return policy;
+	}
+
+	@Override
+	public String toString() {
+		lock.lock();
+		try {
+			return "OutboundQueue [policy=" + policy + ", depth=" + size + "/" + ring.length
+					+ ", maxDepth=" + maxDepth + ", offered=" + offered
+					+ ", dropped=" + dropped + ", coalesced=" + coalesced + "]";
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,36 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.butler;
+
+/** Tells an OutboundQueue what to do when it is full, i.e. when its
+ * client doesn't read as fast as the server sends. */
+public enum SlowConsumerPolicy {
+	/** Drops the oldest queued change that only moves a character, if a
+	 * later queued or the new order changes at least the same fields of
+	 * that character, or adds or removes him; thus the client never
+	 * misses a character's newest position. If there is no such change,
+	 * disconnects. */
+	dropStale,
+	/** Drops the queued changes of the same character that are entirely
+	 * superseded by the new one. If there are none, behaves like
+	 * dropStale. */
+	coalesce,
+	/** Disconnects the client. */
+	disconnect
+}
@@ -0,0 +1,141 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.butler;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.Socket;
+
+import serverSide.ServerSettings;
+import common.Logger;
+import common.Threads;
+import common.butlerToClientOrders.BCOrder;
+import common.transport.EncodedOrder;
+import common.transport.FramedObjectInputStream;
+import common.transport.FramedObjectOutputStream;
+
+/** A client connection over a blocking socket. The butler's mux needs
+ * a thread to read from its input stream. Outgoing orders are put into
+ * an OutboundQueue, from which an own writer thread writes them, so that
+ * a client who reads slowly doesn't block the sender. */
+public class StreamClientConnection implements ClientConnection {
+	private final Socket socket;
+	private final ObjectOutputStream output; // only accessed by the writer thread
+	private final ObjectInputStream input;
+	private final OutboundQueue outboundQueue;
+	private final Thread writerThread;
+
+	public StreamClientConnection(Socket socket, ServerSettings settings) {
+		this.socket = socket;
+		Logger.log("Butler: Try to create input / output streams...");
+		try {
+			if (settings.framedTransport()) {
+				this.output = new FramedObjectOutputStream(socket.getOutputStream(),
+														   settings.orderCodec());
+				this.input = new FramedObjectInputStream(socket.getInputStream(),
+														 settings.orderCodec());
+			} else {
+				this.output = new ObjectOutputStream(socket.getOutputStream());
+				this.input = new ObjectInputStream(socket.getInputStream());
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("Couldn't create input / output stream!");
+		}
+		Logger.log("Input and output streams have been created.");
+		this.outboundQueue = new OutboundQueue(settings.outboundQueueCapacity(),
+											   settings.slowConsumerPolicy());
+		this.writerThread = Threads.newThread(new WriterRunnable(), "butlerWriter_"+socket.getPort());
+		this.writerThread.start();
+	}
+
+	@Override
+	public void send(BCOrder order) throws IOException {
+		send(new EncodedOrder(order));
+	}
+
+	@Override
+	public void send(EncodedOrder order) throws IOException {
+		if (!outboundQueue.offer(order)) {
+			if (!socket.isClosed()) {
+				Logger.log("Butler: Client at port "+getPort()+" is too slow, disconnecting. "
+						   +outboundQueue);
+				close();
+			}
+			throw new IOException("Socket closed");
+		}
+	}
+
+	@Override
+	public OutboundQueue getOutboundQueue() {
+		return outboundQueue;
+	}
+
+	@Override
+	public ObjectInputStream getInputStream() {
+		return input;
+	}
+
+	/** Also lets the writer thread terminate; orders that haven't been
+	 * written yet are discarded. */
+	@Override
+	public void close() {
+		outboundQueue.close();
+		try {
+			socket.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public int getPort() {
+		return socket.getPort();
+	}
+
+	/** Without framed transport, the order has to be serialized for
+	 * every client since every ObjectOutputStream has its own back
+	 * references. */
+	private void write(EncodedOrder order) throws IOException {
+		if (output instanceof FramedObjectOutputStream) {
+			((FramedObjectOutputStream) output).writeEncoded(order);
+		} else {
+			output.writeObject(order.getOrder());
+		}
+	}
+
+	private class WriterRunnable implements Runnable {
+		@Override
+		public void run() {
+			try {
+				EncodedOrder order;
+				while ((order = outboundQueue.take()) != null) {
+					write(order);
+				}
+			} catch (InterruptedException e) {
+				Logger.log("Butler: Writer thread for port "+getPort()+" interrupted.");
+			} catch (IOException e) {
+				// the reading side will notice the broken connection as well
+				Logger.log("Butler: Couldn't write to client at port "+getPort()+": "+e.getMessage());
+				close();
+			}
+		}
+	}
+}
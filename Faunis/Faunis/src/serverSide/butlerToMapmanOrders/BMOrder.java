@@ -18,23 +18,30 @@
  */
 package serverSide.butlerToMapmanOrders;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import serverSide.butler.Butler;
+import common.Completion;
 
 public abstract class BMOrder {
 	private Butler source;
 	/**
-	 * "done" is set to true when or before the mapman has
+	 * "done" is completed when or before the mapman has
 	 * executed what the order said.
-	 * Note that both the butlers and the mapmans may block:
-	 * The butlers block until "done" is set to true, and the
-	 * mapmans block until they can push orders to the butlers.
-	 * Thus, the "done" flag must be set before the mapman
-	 * pushes any orders by himself. */
-	private boolean done;
+	 * The butlers block until "done" is completed, but the
+	 * mapmans never block on the butlers, since their orders
+	 * to the butlers go through a NotificationQueue. */
+	private final Completion<Boolean> done;
+	/** Set by whoever comes first: the mapman who starts to execute
+	 * the order, or the butler who withdraws it. */
+	private final AtomicBoolean claimed;
 
 	BMOrder(Butler source) {
 		this.source = source;
-		this.done = false;
+		this.done = new Completion<Boolean>();
+		this.claimed = new AtomicBoolean(false);
 	}
 
 	public Butler getSource() {
@@ -42,15 +49,39 @@ public abstract class BMOrder {
 	}
 
 	public boolean isDone() {
-		return done;
+		return done.isDone();
 	}
+	/** Once set to true, the order stays done. */
 	public void setDone(boolean value) {
-		this.done = value;
+		if (value) {
+			done.complete(Boolean.TRUE);
+		}
+	}
+
+	/** Called by the mapman before it executes the order. Returns
+	 * false if the order has been withdrawn and must be skipped. */
+	public boolean claim() {
+		return claimed.compareAndSet(false, true);
+	}
+
+	/** Withdraws the order unless the mapman has already started to
+	 * execute it. Returns whether it has been withdrawn. */
+	public boolean withdraw() {
+		return claimed.compareAndSet(false, true);
 	}
 
-	public void waitUntilDone() {
-		while (!this.done) {
-			Thread.yield();
+	/** Waits until the order is done, but at most the given number of
+	 * milliseconds. Returns whether it is done. If the waiting thread is
+	 * interrupted, returns false and leaves the thread interrupted. */
+	public boolean waitUntilDone(long timeout) {
+		try {
+			done.get(timeout, TimeUnit.MILLISECONDS);
+			return true;
+		} catch (TimeoutException e) {
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
 		}
 	}
 }
@@ -24,11 +24,20 @@ import serverSide.player.ServerPlayer;
 public class BMRegisterOrder extends BMOrder {
 	private ServerPlayer player;
 	private boolean addPlayerMapEntry;
+	private boolean handover;
 
 	public BMRegisterOrder(Butler source, ServerPlayer player, boolean addPlayerMapEntry) {
+		this(source, player, addPlayerMapEntry, false);
+	}
+
+	/** handover tells that the player comes from the mapman of another
+	 * region of the same map, see MapShards. */
+	public BMRegisterOrder(Butler source, ServerPlayer player, boolean addPlayerMapEntry,
+						   boolean handover) {
 		super(source);
 		this.player = player;
 		this.addPlayerMapEntry = addPlayerMapEntry;
+		this.handover = handover;
 	}
 
 	public ServerPlayer getPlayer() {
@@ -39,9 +48,13 @@ public class BMRegisterOrder extends BMOrder {
 		return addPlayerMapEntry;
 	}
 
+	public boolean isHandover() {
+		return handover;
+	}
+
 	@Override
 	public String toString() {
 		return "BMRegisterOrder [player=" + player + ", addPlayerMapEntry="
-				+ addPlayerMapEntry + "]";
+				+ addPlayerMapEntry + ", handover=" + handover + "]";
 	}
 }
@@ -24,11 +24,20 @@ import serverSide.player.ServerPlayer;
 public class BMUnregisterOrder extends BMOrder {
 	private ServerPlayer player;
 	private boolean removePlayerMapEntry;
+	private boolean handover;
 
 	public BMUnregisterOrder(Butler source, ServerPlayer player, boolean removePlayerMapEntry) {
+		this(source, player, removePlayerMapEntry, false);
+	}
+
+	/** handover tells that the player goes to the mapman of another
+	 * region of the same map, see MapShards. */
+	public BMUnregisterOrder(Butler source, ServerPlayer player, boolean removePlayerMapEntry,
+							 boolean handover) {
 		super(source);
 		this.player = player;
 		this.removePlayerMapEntry = removePlayerMapEntry;
+		this.handover = handover;
 	}
 
 	public ServerPlayer getPlayer() {
@@ -38,4 +47,8 @@ public class BMUnregisterOrder extends BMOrder {
 	public boolean getRemovePlayerMapEntry() {
 		return removePlayerMapEntry;
 	}
+
+	public boolean isHandover() {
+		return handover;
+	}
 }
@@ -26,11 +26,24 @@ import java.util.Map;
 public class Inventory implements Serializable {
 	private static final long serialVersionUID = 1L;
 	private Map<Item, Integer> itemAndAmount;
+	private transient int modifications; // only compared for inequality
 
 	public Inventory() {
 		this.itemAndAmount = new HashMap<Item, Integer>();
 	}
 
+	/** Returns an independent copy. */
+	public Inventory copy() {
+		Inventory result = new Inventory();
+		result.itemAndAmount.putAll(this.itemAndAmount);
+		return result;
+	}
+
+	/** Returns a number that changes whenever the content changes. */
+	public int getModifications() {
+		return modifications;
+	}
+
 	public boolean canAdd(Item item, int amount) {
 		if (amount < 0) {
 			return false;
@@ -51,6 +64,7 @@ public class Inventory implements Serializable {
 			} else {
 				itemAndAmount.put(item, newAmount);
 			}
+			modifications++;
 		}
 		return true;
 	}
@@ -75,6 +89,7 @@ public class Inventory implements Serializable {
 			} else {
 				itemAndAmount.put(item, newAmount);
 			}
+			modifications++;
 		}
 		return true;
 	}
@@ -0,0 +1,180 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.mapManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import serverSide.butler.Butler;
+import serverSide.player.ServerPlayer;
+
+/** The area of interest (AOI) index of a map, shared by all of its
+ * mapmen (see MapShards): divides the map into square cells and
+ * remembers which players are in which cell, so that what a player does
+ * only has to be sent to the butlers of players nearby. Two players see
+ * each other if their cells are at most viewRange cells apart in both
+ * directions, so seeing is mutual. <br />
+ * All methods must be called while holding the lock of this grid. The
+ * player module keeps it while it queues the resulting orders in the
+ * NotificationQueue of the map, so that every butler learns about
+ * players coming into view before it learns about what they do. It
+ * never waits for a butler while holding the lock. */
+class InterestGrid {
+	private final int cellSize;
+	private final int viewRange;
+	private final int cellsX;
+	private final int cellsY;
+	/** The players of each cell, or null for empty cells. */
+	private final ArrayList<HashMap<ServerPlayer, Butler>> cells;
+	private final HashMap<ServerPlayer, Integer> cellOfPlayer;
+
+	InterestGrid(int width, int height, int cellSize, int viewRange) {
+		assert(cellSize > 0 && viewRange >= 0);
+		this.cellSize = cellSize;
+		this.viewRange = viewRange;
+		this.cellsX = Math.max((width + cellSize - 1) / cellSize, 1);
+		this.cellsY = Math.max((height + cellSize - 1) / cellSize, 1);
+		this.cells = new ArrayList<HashMap<ServerPlayer, Butler>>(cellsX * cellsY);
+		for (int i = 0; i < cellsX * cellsY; i++) {
+			cells.add(null);
+		}
+		this.cellOfPlayer = new HashMap<ServerPlayer, Integer>();
+	}
+
+	/** Puts given player into the cell of its current position. */
+	void add(ServerPlayer player, Butler butler) {
+		assert(Thread.holdsLock(this));
+		assert(!cellOfPlayer.containsKey(player));
+		int cell = cellOf(player);
+		cellOfPlayer.put(player, cell);
+		HashMap<ServerPlayer, Butler> players = cells.get(cell);
+		if (players == null) {
+			players = new HashMap<ServerPlayer, Butler>();
+			cells.set(cell, players);
+		}
+		players.put(player, butler);
+	}
+
+	void remove(ServerPlayer player) {
+		assert(Thread.holdsLock(this));
+		Integer cell = cellOfPlayer.remove(player);
+		if (cell == null) {
+			return;
+		}
+		HashMap<ServerPlayer, Butler> players = cells.get(cell);
+		players.remove(player);
+		if (players.isEmpty()) {
+			cells.set(cell, null);
+		}
+	}
+
+	/** Moves given player into the cell of its current position. If
+	 * that is another cell than before, adds the players who come into
+	 * its view to entered and those who go out of view to left, and
+	 * returns true. */
+	boolean move(ServerPlayer player, List<ServerPlayer> entered, List<ServerPlayer> left) {
+		assert(Thread.holdsLock(this));
+		Integer oldCell = cellOfPlayer.get(player);
+		if (oldCell == null) {
+			return false;
+		}
+		int newCell = cellOf(player);
+		if (newCell == oldCell) {
+			return false;
+		}
+		Butler butler = cells.get(oldCell).get(player);
+		remove(player);
+		collect(newCell, oldCell, entered);
+		collect(oldCell, newCell, left);
+		add(player, butler);
+		return true;
+	}
+
+	/** Returns the butler of given player, or null if it isn't in here. */
+	Butler butlerOf(ServerPlayer player) {
+		assert(Thread.holdsLock(this));
+		Integer cell = cellOfPlayer.get(player);
+		return cell == null ? null : cells.get(cell).get(player);
+	}
+
+	/** Returns the butlers of all players who see given player,
+	 * including its own, except for given one. */
+	List<Butler> butlersNear(ServerPlayer player, Butler exclude) {
+		assert(Thread.holdsLock(this));
+		ArrayList<Butler> result = new ArrayList<Butler>();
+		Integer cell = cellOfPlayer.get(player);
+		if (cell == null) {
+			return result;
+		}
+		int cellX = cell % cellsX;
+		int cellY = cell / cellsX;
+		for (int y = Math.max(cellY - viewRange, 0); y <= Math.min(cellY + viewRange, cellsY - 1); y++) {
+			for (int x = Math.max(cellX - viewRange, 0); x <= Math.min(cellX + viewRange, cellsX - 1); x++) {
+				HashMap<ServerPlayer, Butler> players = cells.get(y * cellsX + x);
+				if (players == null) {
+					continue;
+				}
+				for (Butler butler : players.values()) {
+					if (butler != exclude) {
+						result.add(butler);
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/** Returns all players whom given player sees, including itself. */
+	List<ServerPlayer> playersNear(ServerPlayer player) {
+		assert(Thread.holdsLock(this));
+		ArrayList<ServerPlayer> result = new ArrayList<ServerPlayer>();
+		Integer cell = cellOfPlayer.get(player);
+		if (cell != null) {
+			collect(cell, -1, result);
+		}
+		return result;
+	}
+
+	/** Adds the players of all cells in view of the first given cell
+	 * which aren't in view of the second one to result. */
+	private void collect(int cell, int exceptNear, List<ServerPlayer> result) {
+		int cellX = cell % cellsX;
+		int cellY = cell / cellsX;
+		for (int y = Math.max(cellY - viewRange, 0); y <= Math.min(cellY + viewRange, cellsY - 1); y++) {
+			for (int x = Math.max(cellX - viewRange, 0); x <= Math.min(cellX + viewRange, cellsX - 1); x++) {
+				HashMap<ServerPlayer, Butler> players = cells.get(y * cellsX + x);
+				if (players != null && (exceptNear < 0 || !inView(y * cellsX + x, exceptNear))) {
+					result.addAll(players.keySet());
+				}
+			}
+		}
+	}
+
+	private boolean inView(int cell, int otherCell) {
+		return Math.abs(cell % cellsX - otherCell % cellsX) <= viewRange
+			&& Math.abs(cell / cellsX - otherCell / cellsX) <= viewRange;
+	}
+
+	private int cellOf(ServerPlayer player) {
+		int x = Math.min(Math.max(player.getX() / cellSize, 0), cellsX - 1);
+		int y = Math.min(Math.max(player.getY() / cellSize, 0), cellsY - 1);
+		return y * cellsX + x;
+	}
+}
@@ -18,49 +18,109 @@
  */
 package serverSide.mapManager;
 
+import java.awt.Rectangle;
 import java.util.HashMap;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import serverSide.MainServer;
+import serverSide.ServerSettings;
 import serverSide.butler.Butler;
 import serverSide.butlerToMapmanOrders.BMOrder;
+import serverSide.butlerToMapmanOrders.BMTickOrder;
 import serverSide.player.ServerPlayer;
 
+import common.Logger;
 import common.Map;
 import common.MapInfo;
 import common.graphics.PlayerData;
 import common.modules.ModuleOwner;
+import common.modules.workerModule.ActorPool;
+import common.movement.HierarchicalPathfinder;
 import common.movement.Mover;
+import common.movement.PathfindingMode;
 
 /** The map manager manages everything that happens on a map. There is exactly
  * one map manager for each map in the game. All players / butlers on a map have
- * to be registered at the map manager of that map. */
+ * to be registered at the map manager of that map. <br />
+ * The orders are dealt with by the worker module, which either has its own
+ * thread, or runs as an actor on the shared ActorPool together with the
+ * workers of all other maps (see ServerSettings.mapmanActors()). Either way,
+ * only one order of a map is dealt with at a time. <br />
+ * In tick mode (see ServerSettings.mapmanTickMode()), the moving players
+ * aren't moved by scheduled tasks, but all of them are advanced together
+ * by the worker whenever a BMTickOrder arrives. Thus everything that
+ * happens on the map happens in one thread at a time. */
 public class MapManager implements ModuleOwner {
+	/** How many ticks pass between two log outputs of the tick stats. */
+	private static final int ticksPerStatsLog = 600;
+
 	final MainServer parent;
 	private final Map map;
+	final MapShards shards;
+	/** The tiles whose players this mapman serves. */
+	private final Rectangle region;
+	private final String name;
+	private final boolean tickMode;
+	final PathfindingMode pathfindingMode;
+	/** Only exists with PathfindingMode.hierarchical. */
+	final HierarchicalPathfinder hierarchicalPathfinder;
+	private final long tickInterval;
+	private final AtomicBoolean tickPending;
+	private final TickStats tickStats;
+	private ScheduledFuture<?> tickTimer;
 
 	final ConcurrentHashMap<ServerPlayer, Butler> registeredPlayers;
 	final ConcurrentHashMap<String, ServerPlayer> playerNameToPlayer;
 	final ConcurrentHashMap<ServerPlayer, Mover<ServerPlayer, MapManager>> movingPlayers;
+	/** Tells which players see each other. Shared by all mapmen of the
+	 * map, see MapShards. */
+	final InterestGrid interestGrid;
+	/** Carries all orders to the butlers. Shared like interestGrid. */
+	final NotificationQueue notifications;
 
 	final MapManagerPlayerModule playerModule;
 	final MapManagerMoverModule moverModule;
 	final MapManagerWorkerModule workerModule;
 
-	public MapManager(MainServer parent, Map map) {
+	/** Creates the mapman of given region of given map, see MapShards. */
+	MapManager(MainServer parent, Map map, MapShards shards, Rectangle region,
+			   InterestGrid interestGrid, NotificationQueue notifications, String name) {
 		this.parent = parent;
 		this.map = map;
+		this.shards = shards;
+		this.region = region;
+		this.name = name;
+		ServerSettings settings = parent.getServerSettings();
+		this.tickMode = settings.mapmanTickMode();
+		this.tickInterval = settings.moveInterval();
+		this.pathfindingMode = settings.pathfinding();
+		if (pathfindingMode == PathfindingMode.hierarchical) {
+			this.hierarchicalPathfinder = new HierarchicalPathfinder(
+				map, settings.pathClusterSize(), settings.pathCacheSize());
+		} else {
+			this.hierarchicalPathfinder = null;
+		}
+		this.tickPending = new AtomicBoolean(false);
+		this.tickStats = new TickStats();
 
 		this.registeredPlayers = new ConcurrentHashMap<ServerPlayer, Butler>();
 		this.playerNameToPlayer = new ConcurrentHashMap<String, ServerPlayer>();
 		this.movingPlayers = new ConcurrentHashMap<ServerPlayer, Mover<ServerPlayer, MapManager>>();
+		this.interestGrid = interestGrid;
+		this.notifications = notifications;
 
 		this.playerModule = new MapManagerPlayerModule(registeredPlayers);
-		this.moverModule = new MapManagerMoverModule(movingPlayers);
-		this.workerModule = new MapManagerWorkerModule(
-			new ArrayBlockingQueue<BMOrder>(50), map.getName()
-		);
+		this.moverModule = new MapManagerMoverModule(movingPlayers, tickInterval, tickMode);
+		if (settings.mapmanActors()) {
+			this.workerModule = new MapManagerWorkerModule(
+				new ArrayBlockingQueue<Object>(50), ActorPool.shared()
+			);
+		} else {
+			this.workerModule = new MapManagerWorkerModule(64, name);
+		}
 	}
 
 	public void init()  {
@@ -68,6 +128,65 @@ public class MapManager implements ModuleOwner {
 		moverModule.init(this);
 		workerModule.init(this);
 		workerModule.start();
+		if (tickMode) {
+			startTicking();
+		}
+	}
+
+	/** Regularly queues a BMTickOrder. If the previous one hasn't been
+	 * dealt with yet, the tick is skipped instead. */
+	private void startTicking() {
+		tickTimer = moverModule.scheduler().scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				if (!tickPending.compareAndSet(false, true)) {
+					tickStats.recordSkippedTick();
+					return;
+				}
+				if (!workerModule.offer(new BMTickOrder())) {
+					tickPending.set(false);
+					tickStats.recordSkippedTick();
+				}
+			}
+		}, tickInterval);
+	}
+
+	/** Stops queueing BMTickOrders. */
+	public void stopTicking() {
+		if (tickTimer != null) {
+			tickTimer.cancel(false);
+		}
+	}
+
+	/** Stops ticking and ends the worker. Orders that are still
+	 * queued are dropped. */
+	public void stop() {
+		stopTicking();
+		workerModule.stop();
+	}
+
+	/** Advances all moving players by one step. The resulting notifications
+	 * are sent as one batch at the end of the tick. Must only be called
+	 * by the worker. The lock of the interestGrid is only held for each
+	 * player's own notifications, so that the mapmen of the other regions
+	 * of the map can tick at the same time. */
+	void tick() {
+		long start = System.nanoTime();
+		playerModule.beginBatch();
+		try {
+			moverModule.tickAll();
+		} finally {
+			playerModule.flushBatch();
+			tickPending.set(false);
+		}
+		tickStats.recordTick(System.nanoTime() - start);
+		if (tickStats.getTicks() % ticksPerStatsLog == 0) {
+			Logger.log(this+": "+tickStats);
+		}
+	}
+
+	public TickStats getTickStats() {
+		return tickStats;
 	}
 
 
@@ -84,20 +203,32 @@ public class MapManager implements ModuleOwner {
 		return map.getName();
 	}
 
+	/** Returns true if given tile belongs to the region of this mapman. */
+	public boolean isInRegion(int x, int y) {
+		return region.contains(x, y);
+	}
+
+	public MapShards getShards() {
+		return shards;
+	}
+
 
 
-	/** locks registeredPlayers */
-	MapInfo getMapInfo() {
+	/** Returns the map with all players whom given player sees. Must be
+	 * called while holding the lock of interestGrid. */
+	MapInfo getMapInfo(ServerPlayer viewer) {
 		HashMap<String, PlayerData> players = new HashMap<String, PlayerData>();
-		for (ServerPlayer player : registeredPlayers.keySet()) {
-			PlayerData playerData = player.getPlayerData();
-			players.put(player.getName(), playerData);
+		if (viewer != null) {
+			for (ServerPlayer player : interestGrid.playersNear(viewer)) {
+				PlayerData playerData = player.getPlayerData();
+				players.put(player.getName(), playerData);
+			}
 		}
 		return new MapInfo(map, players);
 	}
 
 	@Override
 	public String toString() {
-		return "MapManager [map=" + map.getName() + "]";
+		return "MapManager [map=" + name + "]";
 	}
 }
@@ -18,37 +18,54 @@
  */
 package serverSide.mapManager;
 
+import java.awt.Point;
+import java.util.List;
 import java.util.Map;
 
+import serverSide.butler.Butler;
 import serverSide.mapmanToButlerOrders.MBChangeCharOrder;
 import serverSide.mapmanToButlerOrders.MBCharAtOtherMapmanOrder;
 import serverSide.player.ServerPlayer;
 
 import common.Link;
-import common.graphics.PlayerData;
+import common.graphics.PlayerDataDelta;
 import common.modules.timerModule.MoverModule;
 import common.movement.Mover;
 import common.movement.MovingTask;
+import common.movement.Path;
 import common.movement.RoughMovingTask;
 
 public class MapManagerMoverModule extends MoverModule<ServerPlayer, MapManager, Void> {
 
-	public MapManagerMoverModule(Map<ServerPlayer, Mover<ServerPlayer, MapManager>> map) {
-		super(map);
+	private final long moveInterval;
+
+	public MapManagerMoverModule(Map<ServerPlayer, Mover<ServerPlayer, MapManager>> map,
+								 long moveInterval, boolean tickMode) {
+		super(map, tickMode);
+		this.moveInterval = moveInterval;
 	}
 
 	@Override
 	public void unregistered(ServerPlayer forPlayer) {
+		if (!parent.isInRegion(forPlayer.getX(), forPlayer.getY())) {
+			// it is being handed over, see moved()
+			return;
+		}
 		// Check if the player has landed on a link to another map
 		Link link = parent.getMap().getOutgoingLink(forPlayer.getX(), forPlayer.getY());
 		if (link != null) {
 			if (link.getTargetMap().equals(parent.getMapName())) {
 				// just move the player to the targetField
 				link.move(forPlayer);
+				if (parent.isInRegion(forPlayer.getX(), forPlayer.getY())) {
+					parent.playerModule.moved(forPlayer);
+				} else {
+					handOver(forPlayer);
+				}
 			} else {
 				// the player must be moved to another mapman:
 				// -> inform the butler so that he can apply the change
-				parent.registeredPlayers.get(forPlayer).put(
+				parent.playerModule.sendTo(parent.registeredPlayers.get(forPlayer),
 					new MBCharAtOtherMapmanOrder(parent, link));
 			}
 		}
@@ -56,9 +73,51 @@ public class MapManagerMoverModule extends MoverModule<ServerPlayer, MapManager,
 
 	@Override
 	public void started(ServerPlayer player) {
-		String playerName = player.getName();
-		PlayerData playerData = player.getPlayerData();
-		parent.playerModule.notifyAll(new MBChangeCharOrder(parent, playerName, playerData));
+		// the path must be copied since the mover pops its waypoints
+		PlayerDataDelta delta = new PlayerDataDelta()
+			.setPosition(player.getX(), player.getY(), player.getDirection())
+			.setPath(player.getPath().copy());
+		parent.playerModule.notifyNear(player, new MBChangeCharOrder(parent, player.getName(), delta));
+	}
+
+	@Override
+	public void moved(ServerPlayer player) {
+		if (parent.isInRegion(player.getX(), player.getY())) {
+			parent.playerModule.moved(player);
+		} else {
+			handOver(player);
+		}
+	}
+
+	/** Stops given player, who has left the region of this mapman, and
+	 * asks its butler to hand it over to the mapman of its new region,
+	 * which then continues towards the end of the player's path. */
+	private void handOver(ServerPlayer player) {
+		Point moveTarget = null;
+		Path path = player.getPath();
+		if (path != null) {
+			List<Point> steps = path.getSteps();
+			if (!steps.isEmpty()) {
+				moveTarget = steps.get(steps.size() - 1);
+			}
+			// the mover stops with its next step
+			path.clear();
+		}
+		Butler butler = parent.registeredPlayers.get(player);
+		if (butler != null) {
+			MapManager newMapman = parent.shards.shardAt(player.getX(), player.getY());
+			parent.playerModule.sendTo(butler,
+				new MBCharAtOtherMapmanOrder(parent, newMapman, moveTarget));
+		}
+	}
+
+	@Override
+	public void movementBlocked(ServerPlayer player, int x, int y) {
+		// the clients must stop the movement that started() announced
+		PlayerDataDelta delta = new PlayerDataDelta()
+			.setPosition(player.getX(), player.getY(), player.getDirection())
+			.setPath(null);
+		parent.playerModule.notifyNear(player, new MBChangeCharOrder(parent, player.getName(), delta));
 	}
 
 	@Override
@@ -66,8 +125,8 @@ public class MapManagerMoverModule extends MoverModule<ServerPlayer, MapManager,
 		if (!player.hasPath() || player.getPath().isEmpty()) {
 			return null;
 		}
-		Mover<ServerPlayer, MapManager> mover = new Mover<ServerPlayer, MapManager>(this, player, 500);//TODO: time unit
-		MovingTask<ServerPlayer, MapManager> movingTask = new RoughMovingTask(mover, player);
+		Mover<ServerPlayer, MapManager> mover = new Mover<ServerPlayer, MapManager>(this, player, moveInterval);
+		MovingTask<ServerPlayer, MapManager> movingTask = new RoughMovingTask(mover, player, parent.getMap());
 		mover.setMovingTask(movingTask);
 		return mover;
 	}
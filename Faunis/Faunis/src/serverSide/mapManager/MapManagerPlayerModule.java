@@ -18,6 +18,9 @@
  */
 package serverSide.mapManager;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 
 import serverSide.butler.Butler;
@@ -31,14 +34,19 @@ import serverSide.mapmanToButlerOrders.MBRemoveCharOrder;
 import serverSide.player.ServerPlayer;
 import common.MapInfo;
 import common.enums.Mood;
-import common.graphics.PlayerData;
+import common.graphics.PlayerDataDelta;
 import common.modules.objectModule.ObjectModule;
 
 public class MapManagerPlayerModule extends ObjectModule<ServerPlayer, Butler, MapManager, BMRegisterOrder,
 														 BMUnregisterOrder> {
 
+	/** While true, notifications are only queued, and sent when
+	 * flushBatch() is called. */
+	private boolean batching;
+
 	public MapManagerPlayerModule(Map<ServerPlayer, Butler> map) {
 		super(map);
+		this.batching = false;
 	}
 
 	@Override
@@ -52,12 +60,22 @@ public class MapManagerPlayerModule extends ObjectModule<ServerPlayer, Butler, M
 			assert(player.getMapName() == null);
 			player.setMapName(parent.getMapName());
 		}
-		// send map information to the new player's butler:
-		MapInfo mapInfo = parent.getMapInfo();
-		sourceButler.put(new MBMapInfoOrder(parent, mapInfo));
-		// send information about the new player to all other butlers:
-		notifyAllExcept(new MBAddCharOrder(parent, playerName,
-				  		player.getPlayerData()), sourceButler);
+		if (order.isHandover()) {
+			// it has stayed in the grid, which all mapmen of the map share,
+			// but its last step hasn't been accounted for yet
+			moved(player);
+			return;
+		}
+		synchronized(parent.interestGrid) {
+			parent.interestGrid.add(player, sourceButler);
+			// send map information to the new player's butler:
+			MapInfo mapInfo = parent.getMapInfo(player);
+			queue(new MBMapInfoOrder(parent, mapInfo), Collections.singletonList(sourceButler));
+			// send information about the new player to all butlers nearby:
+			queue(new MBAddCharOrder(parent, playerName, player.getPlayerData()),
+				parent.interestGrid.butlersNear(player, sourceButler));
+		}
+		sendQueued();
 	}
 
 	@Override
@@ -71,45 +89,133 @@ public class MapManagerPlayerModule extends ObjectModule<ServerPlayer, Butler, M
 			assert(player.getMapName() != null);
 			player.setMapName(null);
 		}
-		// inform every registered butler about the leave:
-		parent.playerModule.notifyAll(new MBRemoveCharOrder(parent, playerName));
+		if (order.isHandover()) {
+			// the mapman of the new region keeps it in view, see added()
+			return;
+		}
+		// inform every butler nearby about the leave:
+		synchronized(parent.interestGrid) {
+			queue(new MBRemoveCharOrder(parent, playerName),
+				parent.interestGrid.butlersNear(player, null));
+			parent.interestGrid.remove(player);
+		}
+		sendQueued();
 	}
 
+	/** Updates the interest grid after given player has moved. Players
+	 * who come into or go out of its view and the player itself are
+	 * added to or removed from each other's butlers. */
+	void moved(ServerPlayer player) {
+		synchronized(parent.interestGrid) {
+			ArrayList<ServerPlayer> entered = new ArrayList<ServerPlayer>();
+			ArrayList<ServerPlayer> left = new ArrayList<ServerPlayer>();
+			if (!parent.interestGrid.move(player, entered, left)) {
+				return;
+			}
+			Butler butler = parent.interestGrid.butlerOf(player);
+			if (!entered.isEmpty()) {
+				MBAddCharOrder addPlayer = new MBAddCharOrder(parent, player.getName(),
+															player.getPlayerData());
+				for (ServerPlayer other : entered) {
+					queue(new MBAddCharOrder(parent, other.getName(), other.getPlayerData()),
+						Collections.singletonList(butler));
+					queue(addPlayer, Collections.singletonList(parent.interestGrid.butlerOf(other)));
+				}
+			}
+			if (!left.isEmpty()) {
+				MBRemoveCharOrder removePlayer = new MBRemoveCharOrder(parent, player.getName());
+				for (ServerPlayer other : left) {
+					queue(new MBRemoveCharOrder(parent, other.getName()),
+						Collections.singletonList(butler));
+					queue(removePlayer, Collections.singletonList(parent.interestGrid.butlerOf(other)));
+				}
+			}
+		}
+		sendQueued();
+	}
+
+	/** Sends given order to the butlers of all players who see given
+	 * player, including its own. */
+	void notifyNear(ServerPlayer player, MBOrder order) {
+		synchronized(parent.interestGrid) {
+			queue(order, parent.interestGrid.butlersNear(player, null));
+		}
+		sendQueued();
+	}
 
+	/** Sends given order to the butlers of all players on this map. */
 	void notifyAll(MBOrder order) {
-		for (Butler butler : parent.registeredPlayers.values()) {
-			butler.put(order);
+		queue(order, new ArrayList<Butler>(parent.registeredPlayers.values()));
+		sendQueued();
+	}
+
+	/** Sends given order to given butler, after the notifications that
+	 * are already on their way. */
+	void sendTo(Butler butler, MBOrder order) {
+		queue(order, Collections.singletonList(butler));
+		sendQueued();
+	}
+
+	/** Sends what given player sees of the map to given butler. */
+	void sendMapInfo(ServerPlayer viewer, Butler butler) {
+		synchronized(parent.interestGrid) {
+			queue(new MBMapInfoOrder(parent, parent.getMapInfo(viewer)),
+				Collections.singletonList(butler));
 		}
+		sendQueued();
 	}
-	void notifyAllExcept(MBOrder order, Butler exclude) {
-		for (Butler butler : parent.registeredPlayers.values()) {
-			if (butler != exclude) {
-				butler.put(order);
-			}
+
+	/** Adds given order for given butlers, which mustn't change
+	 * afterwards, to the notification queue of the map. Orders that
+	 * follow from the interest grid must be queued while holding its
+	 * lock. */
+	private void queue(MBOrder order, Collection<Butler> recipients) {
+		parent.notifications.add(order, recipients);
+	}
+
+	/** Sends the queued notifications, unless a batch is collected.
+	 * Must be called without holding the lock of the interest grid. */
+	private void sendQueued() {
+		if (!batching) {
+			parent.notifications.send();
 		}
 	}
 
+	/** From now on, only queues the notifications until flushBatch() is called. */
+	void beginBatch() {
+		assert(!batching);
+		batching = true;
+	}
+
+	/** Sends all notifications queued since beginBatch() in their original
+	 * order and stops collecting. */
+	void flushBatch() {
+		batching = false;
+		parent.notifications.send();
+	}
+
 	void fireAnimation(ServerPlayer player, String animation) {
-		PlayerData status = player.getPlayerData();
-		status.currentAnimation = animation;
-		notifyAll(new MBChangeCharOrder(parent, player.getName(), status));
+		notifyNear(player, new MBChangeCharOrder(parent, player.getName(),
+										new PlayerDataDelta().setAnimation(animation)));
 	}
 
 	void deleteAnimation(ServerPlayer player) {
 		if (player.getCurrentAnimation() != null) {
 			player.setCurrentAnimation(null);
-			notifyAll(new MBChangeCharOrder(parent, player.getName(), player.getPlayerData()));
+			notifyNear(player, new MBChangeCharOrder(parent, player.getName(),
+											new PlayerDataDelta().setAnimation(null)));
 		}
 	}
 
 	void storeAnimation(ServerPlayer player, String animation) {
 		player.setCurrentAnimation(animation);
-		notifyAll(new MBChangeCharOrder(parent, player.getName(), player.getPlayerData()));
+		notifyNear(player, new MBChangeCharOrder(parent, player.getName(),
+										new PlayerDataDelta().setAnimation(animation)));
 	}
 	
 	void setMood(ServerPlayer player, Mood mood) {
 		player.setMood(mood);
-		notifyAll(new MBChangeCharOrder(parent, player.getName(), player.getPlayerData()));
+		notifyNear(player, new MBChangeCharOrder(parent, player.getName(),
+										new PlayerDataDelta().setMood(mood)));
 	}
-
 }
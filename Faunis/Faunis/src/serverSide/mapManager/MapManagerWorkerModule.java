@@ -20,26 +20,26 @@ package serverSide.mapManager;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 
 import mux.MuxObjectInputStream;
-import mux.MuxObjectInputStream.BlockingQueueRunnable;
+import mux.MuxObjectInputStream.Inlet;
 import serverSide.Result;
 import serverSide.butler.Butler;
 import serverSide.butlerToMapmanOrders.*;
 import serverSide.mapmanToButlerOrders.MBChatMessageOrder;
 import serverSide.mapmanToButlerOrders.MBErrorMessageOrder;
-import serverSide.mapmanToButlerOrders.MBMapInfoOrder;
 import serverSide.player.ServerPlayer;
 import common.Logger;
-import common.MapInfo;
 import common.enums.AniEndType;
 import common.enums.CharacterClass;
 import common.graphics.graphicsContentManager.GraphicsContentManager;
 import common.graphics.osseous.BoneCollection;
 import common.graphics.osseous.NotFoundException;
 import common.graphics.osseous.path.ClearPath;
+import common.modules.workerModule.ActorPool;
 import common.modules.workerModule.WorkerModule;
 import common.movement.Path;
 import common.movement.PathFactory;
@@ -47,36 +47,63 @@ import common.movement.PathFactory;
 
 public class MapManagerWorkerModule extends WorkerModule<MapManager> {
 
-	@SuppressWarnings("rawtypes")
-	public MapManagerWorkerModule(BlockingQueue queue, String name) {
+	/** Only without actor mode: the butlers put their orders here. */
+	private final Inlet inlet;
+
+	/** Creates a worker with its own thread, which reads the orders
+	 * from a mux that holds up to given number of them. */
+	public MapManagerWorkerModule(int capacity, String name) {
 		super(
 			new MuxObjectInputStream(
-				name, 16, true, new ObjectInputStream[0], new Class[0],
-				new BlockingQueue[] {queue}, new Class[] {BMOrder.class}),
+				name, capacity, true, new ObjectInputStream[0], new Class<?>[0],
+				new BlockingQueue<?>[0], new Class<?>[0]),
 			  "MapmanThread[name="+name+"]");
+		this.inlet = mux.addInlet(BMOrder.class);
+	}
+
+	/** Creates a worker in actor mode, which runs on given pool
+	 * and takes the orders from given queue. */
+	public MapManagerWorkerModule(BlockingQueue<Object> queue, ActorPool pool) {
+		super(queue, pool);
+		this.inlet = null;
 	}
 
-	@SuppressWarnings("unchecked")
 	public void put(BMOrder order) {
-		BlockingQueueRunnable queueRunnable;
-		try {
-			queueRunnable = mux.getQueueRunnable(0);
-		} catch(ArrayIndexOutOfBoundsException e) {
+		if (mux == null) {
+			putMessage(order);
 			return;
 		}
 		try {
-			queueRunnable.getQueue().put(order);
+			ActorPool.put(inlet, order);
 		} catch (InterruptedException e) {
 			e.printStackTrace();
 		}
 	}
 
+	/** Like put(), but doesn't block if the queue is full.
+	 * Returns whether the order could be queued. */
+	public boolean offer(BMOrder order) {
+		if (mux == null) {
+			return offerMessage(order);
+		}
+		return inlet.offer(order);
+	}
+
 	@Override
 	protected void handleMessage(Object order) {
 		assert(order != null);
-		if (order instanceof BMMapInfoOrder) {
-			MapInfo mapInfo = parent.getMapInfo();
-			((BMMapInfoOrder) order).getSource().put(new MBMapInfoOrder(parent, mapInfo));
+		if (order instanceof BMTickOrder) {
+			parent.tick();
+		}
+		else if (order instanceof BMMapInfoOrder) {
+			Butler source = ((BMMapInfoOrder) order).getSource();
+			ServerPlayer viewer = null;
+			for (Map.Entry<ServerPlayer, Butler> entry : parent.registeredPlayers.entrySet()) {
+				if (entry.getValue() == source) {
+					viewer = entry.getKey();
+				}
+			}
+			parent.playerModule.sendMapInfo(viewer, source);
 		}
 		else if (order instanceof BMRegisterOrder) {
 			registerPlayer((BMRegisterOrder) order);
@@ -103,12 +130,34 @@ public class MapManagerWorkerModule extends WorkerModule<MapManager> {
 	}
 
 	void unregisterPlayer(BMUnregisterOrder order) {
+		if (!order.claim()) {
+			// the butler has given up the handover, see ButlerServersideModule
+			Logger.log(parent+": Skipped withdrawn BMUnregisterOrder for "
+					   +order.getPlayer().getName());
+			return;
+		}
 		ServerPlayer player = order.getPlayer();
 		parent.playerModule.remove(player, order);
 		order.setDone(true);
 	}
 	
+	/** Returns false and completes given order if given player isn't
+	 * registered here. That happens if it has just been handed over to
+	 * the mapman of another region while its butler sent the order. */
+	private boolean isRegistered(ServerPlayer player, BMOrder order) {
+		if (parent.registeredPlayers.containsKey(player)) {
+			return true;
+		}
+		Logger.log(parent+": Dropped "+order.getClass().getSimpleName()
+				   +" for unregistered player "+player.getName());
+		order.setDone(true);
+		return false;
+	}
+
 	private void bMSetMoodOrder(BMSetMoodOrder order) {
+		if (!isRegistered(order.getPlayer(), order)) {
+			return;
+		}
 		parent.playerModule.setMood(order.getPlayer(), order.getMood());
 		order.setDone(true);
 	}
@@ -116,6 +165,9 @@ public class MapManagerWorkerModule extends WorkerModule<MapManager> {
 	private void bMTriggerAnimationOrder(BMTriggerAnimationOrder order) {
 		// determine if animation is valid for given player type:
 		ServerPlayer player = order.getPlayer();
+		if (!isRegistered(player, order)) {
+			return;
+		}
 		CharacterClass type = player.getType();
 		String animation = order.getAnimation();
 		if (animation == null || animation.equals("")) {
@@ -133,7 +185,8 @@ public class MapManagerWorkerModule extends WorkerModule<MapManager> {
 		} catch (NotFoundException e) {
 		}
 		if (animations == null || !animations.contains(animation)) {
-			order.getSource().put(new MBErrorMessageOrder(parent, "Animation is invalid!"));
+			parent.playerModule.sendTo(order.getSource(),
+				new MBErrorMessageOrder(parent, "Animation is invalid!"));
 			order.setDone(true);
 			return;
 		}
@@ -165,8 +218,17 @@ public class MapManagerWorkerModule extends WorkerModule<MapManager> {
 		order.setDone(true);
 		String playerName = order.getToName();
 		if (playerName == null || playerName.equals("")) {
-			// broadcast message to all players of this mapman
-			parent.playerModule.notifyAll(new MBChatMessageOrder(parent, order));
+			// broadcast message to all players of this map
+			for (MapManager shard : parent.shards.getShards()) {
+				if (shard == parent) {
+					parent.playerModule.notifyAll(new MBChatMessageOrder(parent, order));
+				} else {
+					// butlers only listen to their own mapman
+					for (Butler butler : shard.registeredPlayers.values()) {
+						parent.playerModule.sendTo(butler, new MBChatMessageOrder(shard, order));
+					}
+				}
+			}
 			return;
 		}
 		// else find the butler that corresponds to playerName
@@ -175,26 +237,28 @@ public class MapManagerWorkerModule extends WorkerModule<MapManager> {
 		if (player != null) {
 			Butler butler;
 			butler = parent.registeredPlayers.get(player);
-			butler.put(new MBChatMessageOrder(parent, order));
+			parent.playerModule.sendTo(butler, new MBChatMessageOrder(parent, order));
 		} else {
 			Result<Butler> butlerQuery = parent.parent.getButlerByPlayerName(playerName);
 			if (!butlerQuery.successful()) {
 				String error = "Couldn't deliver message to given player.";
-				order.getSource().put(new MBErrorMessageOrder(parent, error));
+				parent.playerModule.sendTo(order.getSource(), new MBErrorMessageOrder(parent, error));
 				return;
 			}
 			Butler butler = butlerQuery.getResult();
 			// Since the butler will only listen to his mapman,
 			// we have to show him that it's okay by setting
 			// the source to null:
-			butler.put(new MBChatMessageOrder(null, order));
+			parent.playerModule.sendTo(butler, new MBChatMessageOrder(null, order));
 		}
 	}
 
 	private void movePlayer(final BMMoveOrder order) {
 		assert(order != null);
 		final ServerPlayer player = order.getPlayer();
-		assert(parent.registeredPlayers.containsKey(player));
+		if (!isRegistered(player, order)) {
+			return;
+		}
 		// stop possible earlier movement:
 		parent.moverModule.tryStop(player);
 		// stop possible earlier animation:
@@ -202,12 +266,25 @@ public class MapManagerWorkerModule extends WorkerModule<MapManager> {
 		// if we are already at our target then return:
 		if (order.getXTarget() == player.getX()
 			&& order.getYTarget() == player.getY()) {
+			order.setDone(true);
 			return;
 		}
 		// Start Movement:
 		// build path and set its reference in the player object:
-		Path path = PathFactory.createAirlinePath(player.getX(), player.getY(),
-				order.getXTarget(), order.getYTarget());
+		Path path;
+		if (parent.hierarchicalPathfinder != null) {
+			path = parent.hierarchicalPathfinder.findPath(player.getX(), player.getY(),
+					order.getXTarget(), order.getYTarget());
+		} else {
+			path = PathFactory.createPath(parent.pathfindingMode, parent.getMap(),
+					player.getX(), player.getY(), order.getXTarget(), order.getYTarget());
+		}
+		if (path == null) {
+			parent.playerModule.sendTo(order.getSource(),
+				new MBErrorMessageOrder(parent, "Target can't be reached!"));
+			order.setDone(true);
+			return;
+		}
 		player.setPath(path);
 		parent.moverModule.tryStart(player, null);
 		order.setDone(true);
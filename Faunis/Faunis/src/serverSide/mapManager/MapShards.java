@@ -0,0 +1,105 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.mapManager;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import serverSide.MainServer;
+import serverSide.ServerSettings;
+
+import common.Map;
+import common.modules.timerModule.TickScheduler;
+
+/** The mapmen of one map. Usually there is just one, but a large map can
+ * be divided into strips of equal size across its longer side, each of
+ * which is served by its own mapman with its own worker. Players
+ * who cross into another strip are handed over to its mapman by their
+ * butler, much like when they take a link to another map. <br />
+ * All mapmen of a map share one InterestGrid, so that players see each
+ * other across the borders of the strips, and a player who is handed
+ * over stays in view of the others. They also share one
+ * NotificationQueue, which keeps their orders to the butlers in the
+ * order in which the grid changed. */
+public class MapShards {
+	private final Map map;
+	private final List<MapManager> shards;
+	/** True if the strips lie side by side, false if one above another. */
+	private final boolean sideBySide;
+	private final int length;
+
+	public MapShards(MainServer parent, Map map, int count) {
+		this.map = map;
+		this.sideBySide = map.getWidth() >= map.getHeight();
+		this.length = sideBySide ? map.getWidth() : map.getHeight();
+		count = Math.max(1, Math.min(count, length));
+		ServerSettings settings = parent.getServerSettings();
+		InterestGrid interestGrid = new InterestGrid(map.getWidth(), map.getHeight(),
+			settings.interestCellSize(), settings.interestViewRange());
+		NotificationQueue notifications = new NotificationQueue(TickScheduler.shared());
+		MapManager[] mapmen = new MapManager[count];
+		for (int i = 0; i < count; i++) {
+			int start = (int) ((long) i * length / count);
+			int end = (int) ((long) (i + 1) * length / count);
+			Rectangle region = sideBySide
+				? new Rectangle(start, 0, end - start, map.getHeight())
+				: new Rectangle(0, start, map.getWidth(), end - start);
+			String name = count == 1 ? map.getName() : map.getName()+"#"+i;
+			mapmen[i] = new MapManager(parent, map, this, region, interestGrid,
+				notifications, name);
+		}
+		this.shards = Collections.unmodifiableList(Arrays.asList(mapmen));
+	}
+
+	public void init() {
+		for (MapManager mapman : shards) {
+			mapman.init();
+		}
+	}
+
+	/** Returns the mapman whose region contains given tile. Tiles off
+	 * the map belong to the nearest region. */
+	public MapManager shardAt(int x, int y) {
+		int position = sideBySide ? x : y;
+		int index = (int) ((long) Math.max(position, 0) * shards.size() / length);
+		return shards.get(Math.min(index, shards.size() - 1));
+	}
+
+	public List<MapManager> getShards() {
+		return shards;
+	}
+
+	public void stopTicking() {
+		for (MapManager mapman : shards) {
+			mapman.stopTicking();
+		}
+	}
+
+	public void stop() {
+		for (MapManager mapman : shards) {
+			mapman.stop();
+		}
+	}
+
+	public Map getMap() {
+		return map;
+	}
+}
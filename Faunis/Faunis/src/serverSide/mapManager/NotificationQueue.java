@@ -0,0 +1,142 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.mapManager;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import serverSide.butler.Butler;
+import serverSide.mapmanToButlerOrders.MBOrder;
+
+import common.modules.timerModule.TickScheduler;
+
+/** The orders of all mapmen of one map on their way to the butlers,
+ * shared like the InterestGrid (see MapShards). The player module adds
+ * the orders that follow from a change of the grid while holding the
+ * grid's lock, so that every butler gets them in the order in which the
+ * grid changed, and sends them after releasing it. <br />
+ * Sending never blocks: an order for a butler whose queue is full waits
+ * here, together with all later ones for that butler, and is tried
+ * again after retryDelay. Otherwise a mapman that waits for a butler
+ * could wait forever, since the butler may be waiting for a mapman
+ * itself. Only one thread sends at a time; whoever finds another one
+ * sending leaves its orders to it. */
+class NotificationQueue {
+	/** Milliseconds until orders for a full butler are tried again. */
+	private static final long retryDelay = 10;
+
+	private final TickScheduler scheduler;
+	private final ConcurrentLinkedQueue<Notification> queue;
+	private final ReentrantLock sendLock;
+	/** The orders that didn't fit into the queues of their butlers
+	 * yet, oldest first. Guarded by sendLock. */
+	private final HashMap<Butler, ArrayDeque<MBOrder>> backlog;
+	private final AtomicBoolean retryScheduled;
+
+	NotificationQueue(TickScheduler scheduler) {
+		this.scheduler = scheduler;
+		this.queue = new ConcurrentLinkedQueue<Notification>();
+		this.sendLock = new ReentrantLock();
+		this.backlog = new HashMap<Butler, ArrayDeque<MBOrder>>();
+		this.retryScheduled = new AtomicBoolean(false);
+	}
+
+	/** Queues given order for given butlers, which mustn't change
+	 * afterwards. */
+	void add(MBOrder order, Collection<Butler> recipients) {
+		if (!recipients.isEmpty()) {
+			queue.add(new Notification(order, recipients));
+		}
+	}
+
+	/** Hands all queued orders to their butlers, unless another thread
+	 * is doing so already, which then also hands over the orders that
+	 * have been queued meanwhile. */
+	void send() {
+		do {
+			if (!sendLock.tryLock()) {
+				return;
+			}
+			try {
+				deliver();
+			} finally {
+				sendLock.unlock();
+			}
+			// an order queued just before the unlock may have been left to us
+		} while (!queue.isEmpty());
+	}
+
+	private void deliver() {
+		Iterator<Entry<Butler, ArrayDeque<MBOrder>>> iterator = backlog.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Entry<Butler, ArrayDeque<MBOrder>> entry = iterator.next();
+			ArrayDeque<MBOrder> orders = entry.getValue();
+			while (!orders.isEmpty() && offer(entry.getKey(), orders.peek())) {
+				orders.poll();
+			}
+			if (orders.isEmpty()) {
+				iterator.remove();
+			}
+		}
+		Notification notification;
+		while ((notification = queue.poll()) != null) {
+			for (Butler butler : notification.recipients) {
+				ArrayDeque<MBOrder> orders = backlog.get(butler);
+				if (orders == null && offer(butler, notification.order)) {
+					continue;
+				}
+				if (orders == null) {
+					orders = new ArrayDeque<MBOrder>();
+					backlog.put(butler, orders);
+				}
+				orders.add(notification.order);
+			}
+		}
+		if (!backlog.isEmpty() && retryScheduled.compareAndSet(false, true)) {
+			scheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					retryScheduled.set(false);
+					send();
+				}
+			}, retryDelay);
+		}
+	}
+
+	/** Returns false if given butler's queue is full. Orders for a
+	 * butler who has shut down are dropped, like put() does. */
+	private static boolean offer(Butler butler, MBOrder order) {
+		return butler.offer(order) || butler.isClosed();
+	}
+
+	private static class Notification {
+		final MBOrder order;
+		final Collection<Butler> recipients;
+		Notification(MBOrder order, Collection<Butler> recipients) {
+			this.order = order;
+			this.recipients = recipients;
+		}
+	}
+}
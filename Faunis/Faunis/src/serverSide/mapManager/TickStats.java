@@ -0,0 +1,68 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.mapManager;
+
+/** Counts how long the ticks of a mapman in tick mode take.
+ * Ticks are only recorded by the mapman's worker, skipped ticks
+ * only by the tick timer. */
+public class TickStats {
+	private volatile long ticks;
+	private volatile long skippedTicks;
+	private volatile long totalNanos;
+	private volatile long maxNanos;
+
+	void recordTick(long nanos) {
+		ticks++;
+		totalNanos += nanos;
+		if (nanos > maxNanos) {
+			maxNanos = nanos;
+		}
+	}
+
+	/** Called when a tick was due while the previous one was still pending. */
+	void recordSkippedTick() {
+		skippedTicks++;
+	}
+
+	public long getTicks() {
+		return ticks;
+	}
+
+	public long getSkippedTicks() {
+		return skippedTicks;
+	}
+
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+
+	public long getAverageNanos() {
+		long count = ticks;
+		if (count == 0) {
+			return 0;
+		}
+		return totalNanos / count;
+	}
+
+	@Override
+	public String toString() {
+		return "TickStats [ticks=" + ticks + ", skipped=" + skippedTicks
+				+ ", avg=" + getAverageNanos()/1000 + "us, max=" + maxNanos/1000 + "us]";
+	}
+}
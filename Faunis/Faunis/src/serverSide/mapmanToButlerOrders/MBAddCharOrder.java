@@ -18,6 +18,8 @@
  */
 package serverSide.mapmanToButlerOrders;
 
+import common.butlerToClientOrders.BCAddCharOrder;
+import common.butlerToClientOrders.BCOrder;
 import common.graphics.PlayerData;
 import serverSide.mapManager.MapManager;
 
@@ -42,4 +44,9 @@ public class MBAddCharOrder extends MBOrder {
 	public PlayerData getGraphStatus() {
 		return graphStatus;
 	}
+
+	@Override
+	protected BCOrder createClientOrder() {
+		return new BCAddCharOrder(this);
+	}
 }
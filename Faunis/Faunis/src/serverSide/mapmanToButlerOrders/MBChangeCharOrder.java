@@ -18,25 +18,33 @@
  */
 package serverSide.mapmanToButlerOrders;
 
+import common.butlerToClientOrders.BCChangeCharOrder;
+import common.butlerToClientOrders.BCOrder;
 import serverSide.mapManager.MapManager;
-import common.graphics.PlayerData;
+import common.graphics.PlayerDataDelta;
 
-/** A character has changed its graphical status */
+/** A character has changed its graphical status. Only the changes are
+ * contained. */
 public class MBChangeCharOrder extends MBOrder {
 	private final String playerName;
-	private final PlayerData graphStatus;
+	private final PlayerDataDelta delta;
 
-	public MBChangeCharOrder(MapManager source, String playerName, PlayerData graphStatus) {
+	public MBChangeCharOrder(MapManager source, String playerName, PlayerDataDelta delta) {
 		super(source);
 		this.playerName = playerName;
-		this.graphStatus = graphStatus;
+		this.delta = delta;
 	}
 
 	public String getPlayerName() {
 		return playerName;
 	}
 
-	public PlayerData getGraphStatus() {
-		return graphStatus;
+	public PlayerDataDelta getDelta() {
+		return delta;
+	}
+
+	@Override
+	protected BCOrder createClientOrder() {
+		return new BCChangeCharOrder(this);
 	}
 }
@@ -18,22 +18,53 @@
  */
 package serverSide.mapmanToButlerOrders;
 
+import java.awt.Point;
+
 import common.Link;
 import serverSide.mapManager.MapManager;
 
 /** When the player steps on a link on the map, the MapManager tells the Butler
  * with this order that he should assign the player to a new MapManager. The
  * Butler has to do that on his own by calling unregister() and register().
+ * The same happens when the player steps into the region of another
+ * MapManager of the same map, see MapShards.
 */
 public class MBCharAtOtherMapmanOrder extends MBOrder {
 	private final Link link;
+	private final MapManager targetMapman;
+	private final Point moveTarget;
 
 	public MBCharAtOtherMapmanOrder(MapManager source, Link link) {
 		super(source);
 		this.link = link;
+		this.targetMapman = null;
+		this.moveTarget = null;
+	}
+
+	/** moveTarget is where the player was going, or null. */
+	public MBCharAtOtherMapmanOrder(MapManager source, MapManager targetMapman,
+									Point moveTarget) {
+		super(source);
+		this.link = null;
+		this.targetMapman = targetMapman;
+		this.moveTarget = moveTarget;
 	}
 
+	/** Returns the link the player has taken, or null if it has stepped
+	 * into the region of another mapman. */
 	public Link getLink() {
 		return link;
 	}
+
+	/** Returns the mapman of the region the player has stepped into, or
+	 * null if it has taken a link. */
+	public MapManager getTargetMapman() {
+		return targetMapman;
+	}
+
+	/** Returns where the player should continue to walk to after the
+	 * handover, or null. */
+	public Point getMoveTarget() {
+		return moveTarget;
+	}
 }
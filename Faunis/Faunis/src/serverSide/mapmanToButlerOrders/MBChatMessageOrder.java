@@ -18,6 +18,8 @@
  */
 package serverSide.mapmanToButlerOrders;
 
+import common.butlerToClientOrders.BCChatMessageOrder;
+import common.butlerToClientOrders.BCOrder;
 import serverSide.butlerToMapmanOrders.BMChatMessageOrder;
 import serverSide.mapManager.MapManager;
 
@@ -51,4 +53,10 @@ public class MBChatMessageOrder extends MBOrder {
 	public String getMessage() {
 		return message;
 	}
+
+	@Override
+	protected BCOrder createClientOrder() {
+		boolean isBroadcast = (toPlayername == null || toPlayername.equals(""));
+		return new BCChatMessageOrder(message, fromPlayername, isBroadcast);
+	}
 }
@@ -19,9 +19,12 @@
 package serverSide.mapmanToButlerOrders;
 
 import serverSide.mapManager.MapManager;
+import common.butlerToClientOrders.BCOrder;
+import common.transport.EncodedOrder;
 
 public abstract class MBOrder {
 	protected final MapManager source;
+	private EncodedOrder clientOrder; // guarded by this
 
 	MBOrder(MapManager source) {
 		this.source = source;
@@ -30,4 +33,25 @@ public abstract class MBOrder {
 	public MapManager getSource() {
 		return source;
 	}
+
+	/** Returns the order that the butler shall pass to his client, or
+	 * null if it depends on the butler. It is created only once, so that
+	 * all butlers that receive this order from a broadcast share its
+	 * encoded frame. */
+	public synchronized EncodedOrder getClientOrder() {
+		if (clientOrder == null) {
+			BCOrder order = createClientOrder();
+			if (order == null) {
+				return null;
+			}
+			clientOrder = new EncodedOrder(order);
+		}
+		return clientOrder;
+	}
+
+	/** Override this if the order for the client is the same for every
+	 * butler. */
+	protected BCOrder createClientOrder() {
+		return null;
+	}
 }
@@ -18,6 +18,8 @@
  */
 package serverSide.mapmanToButlerOrders;
 
+import common.butlerToClientOrders.BCOrder;
+import common.butlerToClientOrders.BCRemoveCharOrder;
 import serverSide.mapManager.MapManager;
 
 public class MBRemoveCharOrder extends MBOrder {
@@ -31,4 +33,9 @@ public class MBRemoveCharOrder extends MBOrder {
 	public String getPlayerName() {
 		return playerName;
 	}
+
+	@Override
+	protected BCOrder createClientOrder() {
+		return new BCRemoveCharOrder(this);
+	}
 }
@@ -0,0 +1,280 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.nio;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import serverSide.butler.Butler;
+import serverSide.butler.ClientConnection;
+import serverSide.butler.OutboundQueue;
+import common.Logger;
+import common.butlerToClientOrders.BCOrder;
+import common.clientToButlerOrders.CBOrder;
+import common.transport.EncodedOrder;
+import common.transport.OrderCodec;
+
+/** A client connection over a non-blocking SocketChannel that is served
+ * by a NioIoThread. Incoming frames are decoded in the I/O thread and
+ * handed directly to the butler. Outgoing orders are encoded by the
+ * sending thread, put into an OutboundQueue and written by the I/O
+ * thread. <br />
+ * While nothing happens, a connection only costs its read buffer. */
+public class NioClientConnection implements ClientConnection {
+	private static final int initialBufferSize = 4096;
+
+	private final SocketChannel channel;
+	private final OrderCodec codec;
+	private final NioIoThread ioThread;
+	private final NioReception reception;
+	private final int port;
+	private final OutboundQueue outboundQueue;
+	private final AtomicBoolean writeRequested;
+	private final AtomicBoolean closed;
+	private Butler butler;
+	// The following fields are only accessed by the I/O thread:
+	private SelectionKey key;
+	private ByteBuffer readBuffer;
+	/** Frame that has only been written in part. */
+	private ByteBuffer pendingFrame;
+	/** Decoded order that the butler couldn't take yet. While it is set,
+	 * nothing more is read from the channel. */
+	private CBOrder stalledOrder;
+
+	NioClientConnection(SocketChannel channel, OrderCodec codec, OutboundQueue outboundQueue,
+						NioIoThread ioThread, NioReception reception) {
+		this.channel = channel;
+		this.codec = codec;
+		this.ioThread = ioThread;
+		this.reception = reception;
+		this.port = channel.socket().getPort();
+		this.outboundQueue = outboundQueue;
+		this.writeRequested = new AtomicBoolean(false);
+		this.closed = new AtomicBoolean(false);
+		this.readBuffer = ByteBuffer.allocate(initialBufferSize);
+		this.stalledOrder = null;
+	}
+
+	void attach(Butler _butler) {
+		this.butler = _butler;
+	}
+
+	Butler getButler() {
+		return butler;
+	}
+
+	@Override
+	public void send(BCOrder order) throws IOException {
+		send(new EncodedOrder(order));
+	}
+
+	/** The frame is shared with the other connections the order goes to;
+	 * each one only gets its own buffer position. It is made here so that
+	 * the I/O thread doesn't have to encode. */
+	@Override
+	public void send(EncodedOrder order) throws IOException {
+		if (closed.get()) {
+			throw new IOException("Socket closed");
+		}
+		order.getFrame(codec);
+		if (!outboundQueue.offer(order)) {
+			if (!closed.get()) {
+				Logger.log("NIO: Client at port "+port+" is too slow, disconnecting. "
+						   +outboundQueue);
+				connectionLost();
+			}
+			throw new IOException("Socket closed");
+		}
+		if (writeRequested.compareAndSet(false, true)) {
+			ioThread.requestWrite(this);
+		}
+	}
+
+	@Override
+	public OutboundQueue getOutboundQueue() {
+		return outboundQueue;
+	}
+
+	@Override
+	public ObjectInputStream getInputStream() {
+		return null;
+	}
+
+	@Override
+	public void close() {
+		outboundQueue.close();
+		if (closed.compareAndSet(false, true)) {
+			closeChannel();
+		}
+	}
+
+	private void closeChannel() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public int getPort() {
+		return port;
+	}
+
+	/** Called by the I/O thread. */
+	void register(Selector selector) {
+		try {
+			key = channel.register(selector, SelectionKey.OP_READ, this);
+		} catch (ClosedChannelException e) {
+			connectionLost();
+			return;
+		}
+		// the butler may already have sent something
+		flush();
+	}
+
+	/** Called by the I/O thread. */
+	void onReadable() {
+		try {
+			int read = channel.read(readBuffer);
+			if (read < 0) {
+				connectionLost();
+				return;
+			}
+			processFrames();
+		} catch (IOException e) {
+			Logger.log("NIO: Error while reading from client at port "+port+": "+e.getMessage());
+			connectionLost();
+		}
+	}
+
+	/** Decodes all complete frames in the read buffer and hands them
+	 * to the butler, until he can't take any more. */
+	private void processFrames() throws IOException {
+		readBuffer.flip();
+		try {
+			while (stalledOrder == null && readBuffer.remaining() >= 4) {
+				int length = readBuffer.getInt(readBuffer.position());
+				if (length < 0 || length > OrderCodec.maxFrameLength) {
+					throw new IOException("Invalid frame length "+length);
+				}
+				if (readBuffer.remaining() < 4 + length) {
+					break;
+				}
+				readBuffer.getInt();
+				Object decoded = codec.decode(readBuffer.array(),
+					readBuffer.arrayOffset() + readBuffer.position(), length);
+				readBuffer.position(readBuffer.position() + length);
+				if (!(decoded instanceof CBOrder)) {
+					throw new IOException("Client sent no CBOrder but "+decoded);
+				}
+				deliver((CBOrder) decoded);
+			}
+		} finally {
+			readBuffer.compact();
+		}
+		if (!readBuffer.hasRemaining()) {
+			// an incomplete frame fills the whole buffer
+			ByteBuffer larger = ByteBuffer.allocate(readBuffer.capacity() * 2);
+			readBuffer.flip();
+			larger.put(readBuffer);
+			readBuffer = larger;
+		} else if (readBuffer.position() == 0 && readBuffer.capacity() > initialBufferSize) {
+			readBuffer = ByteBuffer.allocate(initialBufferSize);
+		}
+	}
+
+	private void deliver(CBOrder order) {
+		if (!butler.receiveFromClient(order)) {
+			stalledOrder = order;
+			key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+			ioThread.addStalled(this);
+		}
+	}
+
+	/** Called by the I/O thread. */
+	void retryStalled() {
+		if (closed.get() || !key.isValid()) {
+			return;
+		}
+		CBOrder order = stalledOrder;
+		stalledOrder = null;
+		deliver(order);
+		if (stalledOrder != null) {
+			return;
+		}
+		key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+		try {
+			processFrames();
+		} catch (IOException e) {
+			Logger.log("NIO: Error while reading from client at port "+port+": "+e.getMessage());
+			connectionLost();
+		}
+	}
+
+	/** Called by the I/O thread. Writes as many outgoing frames as the
+	 * channel takes; if it doesn't take all, waits until it's writable. */
+	void flush() {
+		if (key == null || !key.isValid()) {
+			return;
+		}
+		try {
+			while (true) {
+				if (pendingFrame == null) {
+					EncodedOrder order = outboundQueue.poll();
+					if (order == null) {
+						writeRequested.set(false);
+						// a sender may have added an order just before the flag was cleared
+						if (outboundQueue.getDepth() == 0 || !writeRequested.compareAndSet(false, true)) {
+							key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+							return;
+						}
+						continue;
+					}
+					pendingFrame = ByteBuffer.wrap(order.getFrame(codec));
+				}
+				channel.write(pendingFrame);
+				if (pendingFrame.hasRemaining()) {
+					key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+					return;
+				}
+				pendingFrame = null;
+			}
+		} catch (IOException e) {
+			Logger.log("NIO: Error while writing to client at port "+port+": "+e.getMessage());
+			connectionLost();
+		}
+	}
+
+	/** If the connection hadn't been closed before, lets the
+	 * reception shut the butler down. */
+	private void connectionLost() {
+		outboundQueue.close();
+		if (closed.compareAndSet(false, true)) {
+			closeChannel();
+			reception.connectionLost(this);
+		}
+	}
+}
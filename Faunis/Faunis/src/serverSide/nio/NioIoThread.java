@@ -0,0 +1,145 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.nio;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import common.Logger;
+
+/** Reads from and writes to any number of NioClientConnections using one
+ * Selector. Everything that touches a connection's selection key happens
+ * in this thread; other threads only leave requests in the queues and
+ * wake the selector up. */
+class NioIoThread implements Runnable {
+	/** How long to wait before retrying to deliver orders to butlers
+	 * that were busy. */
+	private static final long stalledRetryMillis = 20;
+
+	private final Selector selector;
+	private final Thread thread;
+	private final ConcurrentLinkedQueue<NioClientConnection> registrations;
+	private final ConcurrentLinkedQueue<NioClientConnection> writeRequests;
+	/** Connections that hold an order their butler couldn't take yet.
+	 * Only accessed by this thread. */
+	private final ArrayList<NioClientConnection> stalled;
+	private volatile boolean stopRunning;
+
+	NioIoThread(String name) throws IOException {
+		this.selector = Selector.open();
+		this.thread = new Thread(this, name);
+		this.registrations = new ConcurrentLinkedQueue<NioClientConnection>();
+		this.writeRequests = new ConcurrentLinkedQueue<NioClientConnection>();
+		this.stalled = new ArrayList<NioClientConnection>();
+		this.stopRunning = false;
+	}
+
+	void start() {
+		thread.start();
+	}
+
+	void shutdown() {
+		stopRunning = true;
+		selector.wakeup();
+	}
+
+	/** Lets this thread serve given connection from now on. */
+	void register(NioClientConnection connection) {
+		registrations.add(connection);
+		selector.wakeup();
+	}
+
+	/** Lets this thread write the outgoing frames of given connection. */
+	void requestWrite(NioClientConnection connection) {
+		writeRequests.add(connection);
+		selector.wakeup();
+	}
+
+	/** Remembers that given connection has to retry delivering an order.
+	 * Must only be called by this thread. */
+	void addStalled(NioClientConnection connection) {
+		stalled.add(connection);
+	}
+
+	@Override
+	public void run() {
+		while (!stopRunning) {
+			try {
+				if (stalled.isEmpty()) {
+					selector.select();
+				} else {
+					selector.select(stalledRetryMillis);
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+				Logger.log("NIO: Error while selecting, I/O thread terminates!");
+				break;
+			}
+			handleRegistrations();
+			handleWriteRequests();
+			retryStalled();
+			Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
+			while (keyIterator.hasNext()) {
+				SelectionKey key = keyIterator.next();
+				keyIterator.remove();
+				NioClientConnection connection = (NioClientConnection) key.attachment();
+				if (key.isValid() && key.isReadable()) {
+					connection.onReadable();
+				}
+				if (key.isValid() && key.isWritable()) {
+					connection.flush();
+				}
+			}
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void handleRegistrations() {
+		NioClientConnection connection;
+		while ((connection = registrations.poll()) != null) {
+			connection.register(selector);
+		}
+	}
+
+	private void handleWriteRequests() {
+		NioClientConnection connection;
+		while ((connection = writeRequests.poll()) != null) {
+			connection.flush();
+		}
+	}
+
+	private void retryStalled() {
+		if (stalled.isEmpty()) {
+			return;
+		}
+		ArrayList<NioClientConnection> toRetry = new ArrayList<NioClientConnection>(stalled);
+		stalled.clear();
+		for (NioClientConnection connection : toRetry) {
+			connection.retryStalled();
+		}
+	}
+}
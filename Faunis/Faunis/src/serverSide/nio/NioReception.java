@@ -0,0 +1,162 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.nio;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import serverSide.ClientAcceptor;
+import serverSide.MainServer;
+import serverSide.ServerSettings;
+import serverSide.butler.Butler;
+import serverSide.butler.OutboundQueue;
+import common.Logger;
+
+/** Alternative to the Reception that serves all clients with a few
+ * NioIoThreads instead of giving each client its own reading thread.
+ * New clients are distributed among the I/O threads in turn. */
+public class NioReception implements ClientAcceptor {
+	protected boolean stopRunning;
+	protected MainServer parent;
+	private final ServerSettings settings;
+	private final ServerSocketChannel serverChannel;
+	private final NioIoThread[] ioThreads;
+	private int nextIoThread;
+	private Thread recThread;
+	/** Shuts down the butlers of lost connections, since that may block
+	 * and thus must not happen in an I/O thread. */
+	private final ExecutorService shutdownExecutor;
+
+	public NioReception(MainServer parent, ServerSettings settings) {
+		this.stopRunning = false;
+		this.parent = parent;
+		this.settings = settings;
+		try {
+			this.serverChannel = ServerSocketChannel.open();
+			this.serverChannel.socket().bind(new InetSocketAddress(settings.receptionPort()));
+			this.ioThreads = new NioIoThread[Math.max(1, settings.nioThreads())];
+			for (int i = 0; i < ioThreads.length; i++) {
+				ioThreads[i] = new NioIoThread("nio_io_"+i);
+			}
+		} catch(IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("Couldn't create reception socket!");
+		}
+		this.nextIoThread = 0;
+		this.shutdownExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				return new Thread(runnable, "nio_butler_shutdown");
+			}
+		});
+		this.recThread = new Thread(new RecRunnable(), "reception_thread");
+	}
+
+	@Override
+	public void startListening() {
+		for (NioIoThread ioThread : ioThreads) {
+			ioThread.start();
+		}
+		recThread.start();
+	}
+
+	class RecRunnable implements Runnable {
+		@Override
+		public void run() {
+			Logger.log("NIO reception runnable runs");
+			while (!stopRunning) {
+				SocketChannel channel;
+				try {
+					channel = serverChannel.accept();
+				} catch (IOException e) {
+					if (!stopRunning) {
+						e.printStackTrace();
+						Logger.log("Error while listening to the reception socket!");
+					}
+					return;
+				}
+				try {
+					accept(channel);
+				} catch (IOException e) {
+					e.printStackTrace();
+					Logger.log("Couldn't set up connection to new client!");
+					try {
+						channel.close();
+					} catch (IOException e1) {
+					}
+				}
+			}
+		}
+	}
+
+	private void accept(SocketChannel channel) throws IOException {
+		Logger.log("Client heard, create butler ...");
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		NioIoThread ioThread = ioThreads[nextIoThread];
+		nextIoThread = (nextIoThread + 1) % ioThreads.length;
+		NioClientConnection connection = new NioClientConnection(
+			channel, settings.orderCodec(),
+			new OutboundQueue(settings.outboundQueueCapacity(), settings.slowConsumerPolicy()),
+			ioThread, this);
+		// the butler must exist before the first order can be read
+		Butler butler = parent.createButler(connection);
+		connection.attach(butler);
+		ioThread.register(connection);
+	}
+
+	/** Called by an I/O thread when given connection has been lost. */
+	void connectionLost(final NioClientConnection connection) {
+		final Butler butler = connection.getButler();
+		if (butler == null) {
+			return;
+		}
+		try {
+			shutdownExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					butler.shutdown();
+				}
+			});
+		} catch(RuntimeException e) {
+			// executor is already shut down, so the server is shutting down
+		}
+	}
+
+	/** NOTE: Execution doesn't wait for reception to terminate. */
+	@Override
+	public void shutdown() {
+		stopRunning = true;
+		try {
+			serverChannel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("Couldn't choke reception thread!");
+		}
+		for (NioIoThread ioThread : ioThreads) {
+			ioThread.shutdown();
+		}
+		shutdownExecutor.shutdown();
+	}
+}
@@ -46,6 +46,10 @@ public class ServerPlayer implements Serializable, Moveable {
 	private transient Path path;
 	private String currentAnimation; // do not store animations of end type "revert" here!
 	private Inventory inventory;
+	/** Is increased whenever something that is saved changes. Increments
+	 * may get lost between threads, which doesn't matter since it is
+	 * only compared for inequality. */
+	private transient volatile long version;
 
 
 	public ServerPlayer(String name, CharacterClass type, String currentMapName, String accountName) {
@@ -63,6 +67,32 @@ public class ServerPlayer implements Serializable, Moveable {
 	}
 
 
+	/** locks this<br />
+	 * Returns a copy of everything that is saved of this player, so that
+	 * it can be serialised while this player goes on moving. Path and
+	 * animation are left out. */
+	public ServerPlayer persistentCopy() {
+		synchronized(this) {
+			ServerPlayer result = new ServerPlayer(name, type, currentMapName, accountName);
+			result.mood = this.mood;
+			result.x = this.x;
+			result.y = this.y;
+			result.direction = this.direction;
+			result.inventory = this.inventory.copy();
+			return result;
+		}
+	}
+
+	/** Returns a number that differs from any earlier result if
+	 * something that is saved has changed in between. */
+	public long getVersion() {
+		return version + inventory.getModifications();
+	}
+
+	private void changed() {
+		version++;
+	}
+
 	/** IMPORTANT: result has to be independent from the player,
 	 *  that means no shared references etc.! */
 	public PlayerData getPlayerData() {
@@ -93,12 +123,14 @@ public class ServerPlayer implements Serializable, Moveable {
 	}
 	public void setMood(Mood mood) {
 		this.mood = mood;
+		changed();
 	}
 	public String getAccountName() {
 		return accountName;
 	}
 	public void setAccountName(String accountName) {
 		this.accountName = accountName;
+		changed();
 	}
 	public String getName(){
 		return this.name;
@@ -111,6 +143,9 @@ public class ServerPlayer implements Serializable, Moveable {
 	public int getY() {
 		return y;
 	}
+	public Direction getDirection() {
+		return direction;
+	}
 	@Override
 	public Path getPath() {
 		return path;
@@ -153,10 +188,12 @@ public class ServerPlayer implements Serializable, Moveable {
 		}
 		this.x = toX;
 		this.y = toY;
+		changed();
 	}
 
 	public void setMapName(String mapName) {
 		this.currentMapName = mapName;
+		changed();
 	}
 
 	public Inventory getInventory() {
@@ -0,0 +1,159 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import serverSide.Account;
+import serverSide.Result;
+import serverSide.ServerSettings;
+import serverSide.archivist.AccountsArchivist;
+import serverSide.archivist.CoreArchivist;
+import serverSide.archivist.PasswordHasher;
+import serverSide.archivist.fileSystemArchivist.FileSystemArchivist;
+import serverSide.archivist.logArchivist.LogArchivist;
+import serverSide.player.ServerPlayer;
+import common.enums.CharacterClass;
+import common.enums.Mood;
+
+/** Compares the FileSystemArchivist against the LogArchivist (with the
+ * sync policy of the ServerSettings) in a temporary directory: creating
+ * accounts and players, logging in, saving players until everything is
+ * written, and booting on the resulting data. Logging is switched off
+ * while measuring, and passwords are hashed with a single iteration
+ * (see PasswordHasherBenchmark for their cost). <br />
+ * Usage: ArchivistBenchmark [accounts] [saves per player] */
+public class ArchivistBenchmark {
+	private static int accounts = 2000;
+	private static int saves = 10;
+	private static PrintStream out = System.out;
+	private static PasswordHasher passwordHasher = new PasswordHasher(1, 1, 1);
+
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0) accounts = Integer.parseInt(args[0]);
+		if (args.length > 1) saves = Integer.parseInt(args[1]);
+		File baseDir = File.createTempFile("archivistBenchmark", "");
+		baseDir.delete();
+		out.println("accounts="+accounts+" saves="+saves+" in "+baseDir);
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		}));
+		try {
+			for (boolean log : new boolean[] {false, true}) {
+				File serverDataDir = new File(baseDir, log ? "log" : "fs");
+				new File(serverDataDir, "accounts").mkdirs();
+				run(new ServerSettings(serverDataDir.getPath()+"/"), log);
+			}
+		} finally {
+			System.setOut(out);
+			delete(baseDir);
+		}
+	}
+
+	private static CoreArchivist createArchivist(ServerSettings settings, boolean log) {
+		CoreArchivist result;
+		if (log) {
+			result = new LogArchivist(settings, passwordHasher);
+		} else {
+			result = new FileSystemArchivist(settings, passwordHasher);
+		}
+		result.init();
+		return result;
+	}
+
+	private static void run(ServerSettings settings, boolean log) {
+		CoreArchivist archivist = createArchivist(settings, log);
+		AccountsArchivist accountsArchivist = archivist.accountsArchivist();
+		long start = System.nanoTime();
+		for (int i = 0; i < accounts; i++) {
+			check(accountsArchivist.createAccount("robot"+i, "robot"+i));
+		}
+		long createAccountNanos = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		Account[] loggedIn = new Account[accounts];
+		for (int i = 0; i < accounts; i++) {
+			loggedIn[i] = check(accountsArchivist.loadAccount("robot"+i, "robot"+i));
+		}
+		long loginNanos = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int i = 0; i < accounts; i++) {
+			check(accountsArchivist.createNewPlayer(loggedIn[i], "robot"+i+"player0",
+													CharacterClass.ursine));
+		}
+		long createPlayerNanos = System.nanoTime() - start;
+
+		ServerPlayer[] players = new ServerPlayer[accounts];
+		for (int i = 0; i < accounts; i++) {
+			players[i] = check(accountsArchivist.loadAndActivatePlayer(loggedIn[i],
+																	   "robot"+i+"player0"));
+		}
+		start = System.nanoTime();
+		for (int save = 0; save < saves; save++) {
+			for (int i = 0; i < accounts; i++) {
+				players[i].setMood(save % 2 == 0 ? Mood.happy : Mood.normal);
+				accountsArchivist.savePlayer(players[i]);
+			}
+		}
+		// until everything has been written
+		archivist.shutdown();
+		long saveNanos = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		CoreArchivist rebooted = createArchivist(settings, log);
+		long bootNanos = System.nanoTime() - start;
+		rebooted.shutdown();
+
+		out.println(String.format("%-20s %,9d accounts/s %,9d logins/s %,9d players/s "
+			+"%,9d saves/s  boot %,6d ms", archivist.getClass().getSimpleName(),
+			perSecond(accounts, createAccountNanos), perSecond(accounts, loginNanos),
+			perSecond(accounts, createPlayerNanos), perSecond(accounts * saves, saveNanos),
+			bootNanos / 1000000));
+	}
+
+	private static long perSecond(long count, long nanos) {
+		return count * 1000000000L / Math.max(nanos, 1);
+	}
+
+	private static <T> T check(Result<T> result) {
+		if (!result.successful()) {
+			throw new RuntimeException(result.getErrorMessage());
+		}
+		return result.getResult();
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
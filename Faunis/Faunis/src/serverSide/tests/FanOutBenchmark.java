@@ -0,0 +1,100 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.tests;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import serverSide.mapmanToButlerOrders.MBChangeCharOrder;
+import common.enums.Direction;
+import common.graphics.PlayerDataDelta;
+import common.movement.Path;
+import common.transport.FramedObjectOutputStream;
+import common.transport.OrderCodec;
+import common.transport.WireFormat;
+
+/** Compares the cost of broadcasting a movement to a map's population:
+ * encoding the order once per recipient against encoding it once and
+ * writing the shared frame to every recipient's stream. The streams
+ * discard what is written, so only the server's work is measured.
+ * Usage: FanOutBenchmark [broadcasts] */
+public class FanOutBenchmark {
+	private static int broadcasts = 2000;
+	private static final int[] populations = {1, 10, 50, 200};
+
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0) broadcasts = Integer.parseInt(args[0]);
+		for (WireFormat format : WireFormat.values()) {
+			OrderCodec codec = format.createCodec();
+			for (int population : populations) {
+				FramedObjectOutputStream[] streams = new FramedObjectOutputStream[population];
+				for (int i = 0; i < population; i++) {
+					streams[i] = new FramedObjectOutputStream(new NullOutputStream(), codec);
+				}
+				// warm up, then measure
+				measure(streams, broadcasts / 4, false);
+				long perRecipient = measure(streams, broadcasts, false);
+				measure(streams, broadcasts / 4, true);
+				long shared = measure(streams, broadcasts, true);
+				System.out.println(String.format("%-13s %4d recipients: %9d ns per broadcast encoding per recipient, %9d ns sharing the frame",
+					format, population, perRecipient / broadcasts, shared / broadcasts));
+			}
+		}
+	}
+
+	/** Returns the nanoseconds that given number of broadcasts took. */
+	private static long measure(FramedObjectOutputStream[] streams, int count,
+								boolean shared) throws IOException {
+		long start = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			MBChangeCharOrder order = movement(i);
+			for (FramedObjectOutputStream stream : streams) {
+				if (shared) {
+					stream.writeEncoded(order.getClientOrder());
+				} else {
+					stream.writeObject(order.getClientOrder().getOrder());
+				}
+			}
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static MBChangeCharOrder movement(int seed) {
+		int x = seed % 50;
+		Path path = new Path();
+		for (int i = 1; i <= 8; i++) {
+			path.push(new Point(x + i, 9 + i / 2));
+		}
+		return new MBChangeCharOrder(null, "robot12player2",
+			new PlayerDataDelta().setPosition(x, 9, Direction.right).setPath(path));
+	}
+
+	private static class NullOutputStream extends OutputStream {
+		@Override
+		public void write(int b) {
+			// discard
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			// discard
+		}
+	}
+}
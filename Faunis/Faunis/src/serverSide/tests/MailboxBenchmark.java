@@ -0,0 +1,162 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.tests;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import mux.MuxObjectInputStream;
+import mux.MuxObjectInputStream.Inlet;
+
+/** Compares how long a message takes from a producer to the worker
+ * reading the mux, once through a queue and its relay thread, as the
+ * mux used to be fed, and once through an inlet, which puts directly
+ * into the mailbox of the mux. The "handoff" run sends one message at
+ * a time and waits until it was read, the "flood" runs let several
+ * producers send as fast as they can. <br />
+ * Usage: MailboxBenchmark [messages per run] [producers] */
+public class MailboxBenchmark {
+	private static int messages = 200000;
+	private static int producers = 4;
+
+	/** A message that knows when it was sent. */
+	private static class Stamp {
+		final long sent = System.nanoTime();
+	}
+
+	/** Either the queue of a relay or an inlet. */
+	private interface Sender {
+		void send(Object message) throws InterruptedException;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0) messages = Integer.parseInt(args[0]);
+		if (args.length > 1) producers = Integer.parseInt(args[1]);
+		System.out.println("messages="+messages+" producers="+producers
+			+" cores="+Runtime.getRuntime().availableProcessors());
+		for (int round = 0; round < 2; round++) {
+			// the first round only warms up
+			boolean print = round == 1;
+			for (boolean relay : new boolean[] {true, false}) {
+				run(relay, 1, true, print);
+				run(relay, 1, false, print);
+				run(relay, producers, false, print);
+			}
+		}
+	}
+
+	@SuppressWarnings({"rawtypes", "unchecked"})
+	private static void run(boolean relay, final int producerCount, final boolean handoff,
+							boolean print) throws Exception {
+		final MuxObjectInputStream mux;
+		final Sender sender;
+		if (relay) {
+			final BlockingQueue queue = new ArrayBlockingQueue(64);
+			mux = new MuxObjectInputStream(
+				"relay", 64, true, new ObjectInputStream[0], new Class<?>[0],
+				new BlockingQueue<?>[] {queue}, new Class<?>[] {Stamp.class}
+			);
+			sender = new Sender() {
+				@Override
+				public void send(Object message) throws InterruptedException {
+					queue.put(message);
+				}
+			};
+		} else {
+			mux = new MuxObjectInputStream(
+				"inlet", 64, true, new ObjectInputStream[0], new Class<?>[0],
+				new BlockingQueue<?>[0], new Class<?>[0]
+			);
+			final Inlet inlet = mux.addInlet(Stamp.class);
+			sender = new Sender() {
+				@Override
+				public void send(Object message) throws InterruptedException {
+					inlet.put(message);
+				}
+			};
+		}
+		final int perProducer = messages / producerCount;
+		final int total = perProducer * producerCount;
+		final long[] latencies = new long[total];
+		final AtomicLong received = new AtomicLong();
+		Thread consumer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < total; i++) {
+						Stamp stamp = (Stamp) mux.readObject();
+						latencies[i] = System.nanoTime() - stamp.sent;
+						received.incrementAndGet();
+					}
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}, "consumer");
+		Thread[] threads = new Thread[producerCount];
+		for (int p = 0; p < producerCount; p++) {
+			threads[p] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < perProducer; i++) {
+							sender.send(new Stamp());
+							if (handoff) {
+								while (received.get() <= i) {
+									Thread.yield();
+								}
+							}
+						}
+					} catch (InterruptedException e) {
+						e.printStackTrace();
+					}
+				}
+			}, "producer_"+p);
+		}
+		long start = System.nanoTime();
+		consumer.start();
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		consumer.join();
+		long elapsed = System.nanoTime() - start;
+		mux.close();
+		if (!print) {
+			return;
+		}
+		Arrays.sort(latencies);
+		long sum = 0;
+		for (long latency : latencies) {
+			sum += latency;
+		}
+		System.out.println(String.format(
+			"%-5s %-7s producers=%d: %9.0f msg/s, latency avg=%6d p50=%6d p99=%8d max=%9d ns",
+			relay ? "relay" : "inlet", handoff ? "handoff" : "flood", producerCount,
+			total * 1e9 / elapsed, sum / total, latencies[total / 2],
+			latencies[(int) (total * 0.99)], latencies[total - 1]
+		));
+	}
+}
@@ -0,0 +1,129 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.tests;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import serverSide.butlerToMapmanOrders.BMOrder;
+import serverSide.butlerToMapmanOrders.BMTickOrder;
+
+/** Simulates a storm of map changes: many butler threads keep handing
+ * orders to a single mapman thread and wait for each one to be done, as
+ * ButlerServersideModule does when registering and unregistering a
+ * player. The mapman needs some time per order without using the CPU,
+ * like it does when it has to wait for a butler's queue. Compares the former yield loop over a flag
+ * against BMOrder.waitUntilDone(), which blocks. <br />
+ * Usage: MapChangeWaitBenchmark [butlers] [mapman micros per order] [seconds] */
+public class MapChangeWaitBenchmark {
+	private static int butlers = 50;
+	private static long mapmanMicros = 200;
+	private static int seconds = 5;
+
+	public static void main(String[] args) throws InterruptedException {
+		if (args.length > 0) butlers = Integer.parseInt(args[0]);
+		if (args.length > 1) mapmanMicros = Long.parseLong(args[1]);
+		if (args.length > 2) seconds = Integer.parseInt(args[2]);
+		System.out.println("butlers="+butlers+" mapmanMicros="+mapmanMicros
+						   +" duration="+seconds+"s");
+		run(true);
+		run(false);
+	}
+
+	private static void run(final boolean spin) throws InterruptedException {
+		final BlockingQueue<Object> mapmanQueue = new ArrayBlockingQueue<Object>(butlers);
+		final AtomicLong executed = new AtomicLong(0);
+		Thread mapman = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						Object order = mapmanQueue.take();
+						LockSupport.parkNanos(mapmanMicros * 1000);
+						if (order instanceof SpinOrder) {
+							((SpinOrder) order).done = true;
+						} else {
+							((BMOrder) order).setDone(true);
+						}
+						executed.incrementAndGet();
+					}
+				} catch (InterruptedException e) {
+					// finished
+				}
+			}
+		}, "mapman");
+		Thread[] butlerThreads = new Thread[butlers];
+		for (int i = 0; i < butlers; i++) {
+			butlerThreads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						while (!Thread.currentThread().isInterrupted()) {
+							if (spin) {
+								SpinOrder order = new SpinOrder();
+								mapmanQueue.put(order);
+								while (!order.done) {
+									if (Thread.currentThread().isInterrupted()) {
+										return;
+									}
+									Thread.yield();
+								}
+							} else {
+								BMOrder order = new BMTickOrder();
+								mapmanQueue.put(order);
+								while (!order.waitUntilDone(1000)) {
+									if (Thread.currentThread().isInterrupted()) {
+										return;
+									}
+								}
+							}
+						}
+					} catch (InterruptedException e) {
+						// finished
+					}
+				}
+			}, "butler_"+i);
+		}
+		ProcessStats before = ProcessStats.take();
+		mapman.start();
+		for (Thread thread : butlerThreads) {
+			thread.start();
+		}
+		Thread.sleep(seconds * 1000L);
+		ProcessStats after = ProcessStats.take();
+		long count = executed.get();
+		for (Thread thread : butlerThreads) {
+			thread.interrupt();
+		}
+		mapman.interrupt();
+		for (Thread thread : butlerThreads) {
+			thread.join();
+		}
+		mapman.join();
+		System.out.println((spin ? "yield loop:    " : "waitUntilDone: ")
+						   +count+" orders, "+after.since(before));
+	}
+
+	/** The former way of waiting: a flag that the butler polls. */
+	private static class SpinOrder {
+		volatile boolean done = false;
+	}
+}
@@ -0,0 +1,133 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.tests;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.Random;
+
+import serverSide.archivist.fileSystemArchivist.FSMapArchivist;
+import serverSide.archivist.fileSystemArchivist.MapCompiler;
+
+import common.Map;
+
+/** Generates many large text maps in a temporary directory and
+ * compares how long loading them takes, and how much heap they keep,
+ * from the text files and from the compiled map.bin files. <br />
+ * Usage: MapLoadBenchmark [maps] [width] [height] */
+public class MapLoadBenchmark {
+	private static int maps = 200;
+	private static int width = 500;
+	private static int height = 500;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0) maps = Integer.parseInt(args[0]);
+		if (args.length > 1) width = Integer.parseInt(args[1]);
+		if (args.length > 2) height = Integer.parseInt(args[2]);
+		File mapDir = File.createTempFile("mapLoadBenchmark", "");
+		mapDir.delete();
+		mapDir.mkdir();
+		System.out.println("maps="+maps+" size="+width+"x"+height+" in "+mapDir);
+		try {
+			Random random = new Random(5l);
+			for (int i = 0; i < maps; i++) {
+				writeTextMap(new File(mapDir, "map"+i), random);
+			}
+			String mapPath = mapDir.getPath()+"/";
+			load("text", new FSMapArchivist(false), mapPath);
+			PrintStream out = System.out;
+			long start = System.nanoTime();
+			System.setOut(new PrintStream(new OutputStream() {
+				@Override
+				public void write(int b) {
+				}
+			}));
+			try {
+				MapCompiler.main(new String[] {mapPath});
+			} finally {
+				System.setOut(out);
+			}
+			System.out.println(String.format("compiling %,d ms", (System.nanoTime()-start)/1000000));
+			load("compiled", new FSMapArchivist(true), mapPath);
+		} finally {
+			delete(mapDir);
+		}
+	}
+
+	private static void load(String kind, FSMapArchivist archivist, String mapPath) {
+		long heapBefore = usedHeap();
+		long start = System.nanoTime();
+		java.util.Map<String, Map> loaded = archivist.loadAllMaps(mapPath);
+		long nanos = System.nanoTime() - start;
+		long heap = usedHeap() - heapBefore;
+		System.out.println(String.format("%-8s %,6d ms  %,8d KB heap  (%d maps)",
+			kind, nanos/1000000, heap/1024, loaded.size()));
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/** Every tenth tile gets a decoration, the border tiles get links. */
+	private static void writeTextMap(File dir, Random random) throws IOException {
+		dir.mkdir();
+		PrintWriter settings = new PrintWriter(new FileWriter(new File(dir, "settings.txt")));
+		settings.println(width+","+height);
+		settings.close();
+		PrintWriter deco = new PrintWriter(new FileWriter(new File(dir, "deco.txt")));
+		PrintWriter links = new PrintWriter(new FileWriter(new File(dir, "links.txt")));
+		for (int y = 0; y < height; y++) {
+			StringBuilder decoRow = new StringBuilder(width);
+			StringBuilder linkRow = new StringBuilder(width);
+			for (int x = 0; x < width; x++) {
+				decoRow.append(random.nextInt(10) == 0 ? (char) ('a' + random.nextInt(4)) : '.');
+				linkRow.append(x == 0 || x == width-1 ? 'a' : '.');
+			}
+			deco.println(decoRow);
+			links.println(linkRow);
+		}
+		deco.println("*");
+		deco.println("a=tree");
+		deco.println("b=bush");
+		deco.println("c=stone");
+		deco.println("d=flower");
+		deco.close();
+		links.println("*");
+		links.println("a=map0,*,*");
+		links.close();
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,202 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.tests;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import serverSide.MainServer;
+import serverSide.ServerSettings;
+import serverSide.butlerToMapmanOrders.BMMoveOrder;
+import serverSide.butlerToMapmanOrders.BMOrder;
+import serverSide.butlerToMapmanOrders.BMRegisterOrder;
+import serverSide.mapManager.MapManager;
+import serverSide.mapManager.MapShards;
+import serverSide.player.ServerPlayer;
+
+import common.Link;
+import common.Map;
+import common.enums.CharacterClass;
+
+/** Creates many small maps with a few players each, once with a thread
+ * per mapman and once with the mapmen as actors on the shared ActorPool,
+ * and compares how many threads there are and how many move orders
+ * the mapmen execute per second. In the "spread" run, the players of
+ * all maps move; in the "hot" run, only those of a tenth of the maps. <br />
+ * Usage: MapmanPoolBenchmark [maps] [players per map] [seconds per run] */
+public class MapmanPoolBenchmark {
+	private static final int clients = 16;
+	private static final int size = 32;
+	private static int maps = 200;
+	private static int playersPerMap = 4;
+	private static double seconds = 3;
+
+	public static void main(String[] args) throws InterruptedException {
+		if (args.length > 0) maps = Integer.parseInt(args[0]);
+		if (args.length > 1) playersPerMap = Integer.parseInt(args[1]);
+		if (args.length > 2) seconds = Double.parseDouble(args[2]);
+		System.out.println("maps="+maps+" players per map="+playersPerMap+" seconds="+seconds
+			+" cores="+Runtime.getRuntime().availableProcessors());
+		PrintStream out = System.out;
+		for (boolean actors : new boolean[] {false, true}) {
+			// the mapmen log every order
+			System.setOut(new PrintStream(new OutputStream() {
+				@Override
+				public void write(int b) {
+				}
+			}));
+			try {
+				run(actors, out);
+			} finally {
+				System.setOut(out);
+			}
+		}
+		System.exit(0);
+	}
+
+	private static void run(final boolean actors, PrintStream out) throws InterruptedException {
+		MainServer server = new MainServer(new ServerSettings(
+				System.getProperty("java.io.tmpdir")+"/mapmanPoolBenchmark/") {
+			@Override
+			public boolean mapmanActors() {
+				return actors;
+			}
+		});
+		Random random = new Random(5l);
+		ArrayList<MapShards> allShards = new ArrayList<MapShards>();
+		ArrayList<SimulatedPlayer> simulated = new ArrayList<SimulatedPlayer>();
+		for (int m = 0; m < maps; m++) {
+			MapShards shards = new MapShards(server, randomMap("pool"+m, random), 1);
+			shards.init();
+			allShards.add(shards);
+			for (int p = 0; p < playersPerMap; p++) {
+				String name = "pool"+m+"_"+p;
+				ServerPlayer player = new ServerPlayer(name, CharacterClass.values()[0],
+													   shards.getMap().getName(), name);
+				int[] tile = freeTile(shards.getMap(), random);
+				player.moveAbsolute(tile[0], tile[1], false);
+				SimulatedPlayer simulatedPlayer = new SimulatedPlayer(
+					server, player, shards.shardAt(tile[0], tile[1]), simulated.size());
+				await(simulatedPlayer.mapman, new BMRegisterOrder(simulatedPlayer.butler, player, false));
+				simulated.add(simulatedPlayer);
+			}
+		}
+		String mode = actors ? "actors " : "threads";
+		out.println(String.format("%s: %5d threads for %d mapmen", mode, mapmanThreads(), maps));
+		out.println(String.format("%s: spread %,9.0f moves/s", mode,
+			load(simulated, simulated.size())));
+		out.println(String.format("%s: hot    %,9.0f moves/s", mode,
+			load(simulated, Math.max(1, simulated.size() / 10))));
+		for (MapShards shards : allShards) {
+			shards.stop();
+		}
+	}
+
+	/** Counts the threads of the mapmen and their muxes, or those of the
+	 * ActorPool. */
+	private static int mapmanThreads() {
+		int result = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			String name = thread.getName();
+			if (name.startsWith("MapmanThread[") || name.startsWith("Mux[name=pool")
+					|| name.startsWith("actor_")) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	/** Lets the first given number of players walk around and returns
+	 * the moves per second. */
+	private static double load(final ArrayList<SimulatedPlayer> simulated, final int moving)
+			throws InterruptedException {
+		final AtomicLong moves = new AtomicLong();
+		final long deadline = System.nanoTime() + (long) (seconds * 1000000000);
+		Thread[] threads = new Thread[clients];
+		for (int c = 0; c < clients; c++) {
+			final int client = c;
+			threads[c] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Random clientRandom = new Random(client);
+					while (System.nanoTime() < deadline) {
+						SimulatedPlayer player = simulated.get(clientRandom.nextInt(moving));
+						int[] target = freeTile(player.mapman.getMap(), clientRandom);
+						await(player.mapman, new BMMoveOrder(player.player, player.butler,
+															  target[0], target[1]));
+						moves.incrementAndGet();
+					}
+				}
+			}, "pool_client_"+c);
+		}
+		long start = System.nanoTime();
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		return moves.get() * 1e9 / (System.nanoTime() - start);
+	}
+
+	private static void await(MapManager mapman, BMOrder order) {
+		mapman.put(order);
+		while (!order.waitUntilDone(1000)) {
+			// the mapman must be busy, keep waiting
+		}
+	}
+
+	private static int[] freeTile(Map map, Random random) {
+		int x;
+		int y;
+		do {
+			x = random.nextInt(map.getWidth());
+			y = random.nextInt(map.getHeight());
+		} while (map.isBlocked(x, y));
+		return new int[] {x, y};
+	}
+
+	/** Blocks a tenth of the tiles. */
+	private static Map randomMap(String name, Random random) {
+		long[] blockedTiles = new long[Map.blockedTilesLength(size, size)];
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				if (random.nextInt(10) == 0) {
+					Map.setBlocked(blockedTiles, size, x, y, true);
+				}
+			}
+		}
+		return new Map(name, size, size, null, null, blockedTiles, new ArrayList<Link>());
+	}
+
+	private static class SimulatedPlayer {
+		final ServerPlayer player;
+		final ShardLoadTest.CountingButler butler;
+		final MapManager mapman;
+
+		SimulatedPlayer(MainServer server, ServerPlayer player, MapManager mapman, int port) {
+			this.player = player;
+			this.butler = new ShardLoadTest.CountingButler(server, port);
+			this.mapman = mapman;
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.tests;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import serverSide.Result;
+import serverSide.archivist.PasswordHash;
+import serverSide.archivist.PasswordHasher;
+
+/** Shows what the iteration count of password hashes costs: many
+ * simulated butlers log in at once as fast as they can, against a
+ * PasswordHasher with the given amount of threads and queue capacity.
+ * Logins beyond the capacity are refused instead of queueing up. <br />
+ * Usage: PasswordHasherBenchmark [butlers] [password threads] [queue capacity] [seconds] */
+public class PasswordHasherBenchmark {
+	private static int butlers = 50;
+	private static int threads = 2;
+	private static int queueCapacity = 16;
+	private static int seconds = 3;
+	private static final int[] iterationCounts = new int[] {1000, 5000, 20000, 100000};
+
+	public static void main(String[] args) throws InterruptedException {
+		if (args.length > 0) butlers = Integer.parseInt(args[0]);
+		if (args.length > 1) threads = Integer.parseInt(args[1]);
+		if (args.length > 2) queueCapacity = Integer.parseInt(args[2]);
+		if (args.length > 3) seconds = Integer.parseInt(args[3]);
+		System.out.println("butlers="+butlers+" threads="+threads+" queueCapacity="
+						   +queueCapacity+" duration="+seconds+"s");
+		for (int iterations : iterationCounts) {
+			run(iterations);
+		}
+	}
+
+	private static void run(int iterations) throws InterruptedException {
+		final PasswordHasher hasher = new PasswordHasher(iterations, threads, queueCapacity);
+		final PasswordHash stored = hasher.hash("secret").getResult();
+		final AtomicLong accepted = new AtomicLong(0);
+		final AtomicLong refused = new AtomicLong(0);
+		ArrayList<Thread> butlerThreads = new ArrayList<Thread>();
+		for (int b = 0; b < butlers; b++) {
+			butlerThreads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					while (!Thread.currentThread().isInterrupted()) {
+						Result<Boolean> result = hasher.verify(stored, "secret");
+						if (result.successful()) {
+							assert(result.getResult());
+							accepted.incrementAndGet();
+						} else {
+							refused.incrementAndGet();
+							// like a client that tries again a bit later
+							try {
+								Thread.sleep(10);
+							} catch (InterruptedException e) {
+								return;
+							}
+						}
+					}
+				}
+			}));
+		}
+		ProcessStats before = ProcessStats.take();
+		for (Thread thread : butlerThreads) {
+			thread.start();
+		}
+		Thread.sleep(seconds * 1000L);
+		ProcessStats after = ProcessStats.take();
+		for (Thread thread : butlerThreads) {
+			thread.interrupt();
+		}
+		for (Thread thread : butlerThreads) {
+			thread.join();
+		}
+		hasher.shutdown();
+		System.out.println(String.format("%,7d iterations %,8d logins/s %,8d refused/s  %s",
+			iterations, accepted.get() / seconds, refused.get() / seconds, after.since(before)));
+	}
+}
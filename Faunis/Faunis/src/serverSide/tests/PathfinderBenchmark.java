@@ -0,0 +1,170 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.tests;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Random;
+
+import common.Link;
+import common.Map;
+import common.movement.HierarchicalPathfinder;
+import common.movement.Path;
+import common.movement.Pathfinder;
+
+/** Compares A*, jump point search and hierarchical pathfinding with and
+ * without its path cache on random maps from 20x15 up to 1024x1024
+ * tiles, each with the given share of blocked tiles. The searches start
+ * anywhere on the left and lead to a few targets on the right, like
+ * players walking to the same links. Prints the time per search, the
+ * tiles taken from the open set, the path length and the bytes
+ * allocated per search where the JVM can tell. <br />
+ * Usage: PathfinderBenchmark [blockedShare] [seconds per case] */
+public class PathfinderBenchmark {
+	private static final int[][] sizes = new int[][] {
+		{20, 15}, {64, 64}, {256, 256}, {1024, 1024}
+	};
+	private static final String[] kinds = new String[] {"A*", "JPS", "HPA", "HPA+cache"};
+	private static final int queries = 64;
+	private static final int targets = 8;
+	private static final int clusterSize = 16;
+	private static double blockedShare = 0.2;
+	private static double seconds = 2;
+
+	public static void main(String[] args) {
+		if (args.length > 0) blockedShare = Double.parseDouble(args[0]);
+		if (args.length > 1) seconds = Double.parseDouble(args[1]);
+		System.out.println("blockedShare="+blockedShare+" seconds="+seconds);
+		Random random = new Random(7l);
+		for (int[] size : sizes) {
+			Map map = randomMap(size[0], size[1], random);
+			int[][] pairs = reachablePairs(map, random);
+			long start = System.nanoTime();
+			new HierarchicalPathfinder(map, clusterSize, 0);
+			System.out.println(String.format("%4dx%-4d clusters built in %,d us",
+				size[0], size[1], (System.nanoTime() - start) / 1000));
+			for (String kind : kinds) {
+				run(map, pairs, kind);
+			}
+		}
+	}
+
+	private static void run(Map map, int[][] pairs, String kind) {
+		HierarchicalPathfinder hierarchical = null;
+		if (kind.startsWith("HPA")) {
+			hierarchical = new HierarchicalPathfinder(map, clusterSize,
+				kind.endsWith("cache") ? 1024 : 0);
+		}
+		boolean jumpPoints = kind.equals("JPS");
+		// warm up and count expanded tiles:
+		long expanded = 0;
+		long steps = 0;
+		for (int[] pair : pairs) {
+			Path path = search(map, hierarchical, pair, jumpPoints);
+			expanded += Pathfinder.lastExpanded();
+			steps += path.getSteps().size();
+		}
+		long allocatedBefore = allocatedBytes();
+		if (allocatedBefore < 0) {
+			allocatedBefore = 0;
+		}
+		long searches = 0;
+		long deadline = System.nanoTime() + (long) (seconds * 1000000000);
+		long start = System.nanoTime();
+		while (System.nanoTime() < deadline) {
+			for (int[] pair : pairs) {
+				search(map, hierarchical, pair, jumpPoints);
+			}
+			searches += pairs.length;
+		}
+		long nanos = System.nanoTime() - start;
+		long allocatedAfter = allocatedBytes();
+		long allocated = allocatedAfter < 0 ? -1 : allocatedAfter - allocatedBefore;
+		System.out.println(String.format("%4dx%-4d %-9s %,10.1f us/search  %8s expanded  %,6d steps  %s",
+			map.getWidth(), map.getHeight(), kind, nanos / 1000.0 / searches,
+			hierarchical == null ? String.format("%,d", expanded / pairs.length) : "-",
+			steps / pairs.length,
+			allocated < 0 ? "" : String.format("%,d bytes/search", allocated / searches)));
+	}
+
+	private static Path search(Map map, HierarchicalPathfinder hierarchical, int[] pair,
+								boolean jumpPoints) {
+		if (hierarchical != null) {
+			return hierarchical.findPath(pair[0], pair[1], pair[2], pair[3]);
+		}
+		return Pathfinder.findPath(map, pair[0], pair[1], pair[2], pair[3], jumpPoints);
+	}
+
+	/** Returns the bytes allocated by the current thread so far, or -1
+	 * if this JVM doesn't tell. */
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		try {
+			Method method = Class.forName("com.sun.management.ThreadMXBean")
+				.getMethod("getThreadAllocatedBytes", long.class);
+			return (Long) method.invoke(threads, Thread.currentThread().getId());
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+
+	private static Map randomMap(int width, int height, Random random) {
+		long[] blockedTiles = new long[Map.blockedTilesLength(width, height)];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				if (random.nextDouble() < blockedShare) {
+					Map.setBlocked(blockedTiles, width, x, y, true);
+				}
+			}
+		}
+		return new Map("benchmark", width, height, new String[0], null,
+			blockedTiles, new ArrayList<Link>());
+	}
+
+	/** Picks connected start and target tiles far apart, with the
+	 * targets taken from a few tiles on the right. */
+	private static int[][] reachablePairs(Map map, Random random) {
+		int width = map.getWidth();
+		int height = map.getHeight();
+		int[][] goals = new int[targets][];
+		for (int i = 0; i < targets; i++) {
+			int x;
+			int y;
+			do {
+				x = width - 1 - random.nextInt(width / 4);
+				y = random.nextInt(height);
+			} while (map.isBlocked(x, y));
+			goals[i] = new int[] {x, y};
+		}
+		int[][] result = new int[queries][];
+		int found = 0;
+		while (found < queries) {
+			int fromX = random.nextInt(width / 4);
+			int fromY = random.nextInt(height);
+			int[] goal = goals[found % targets];
+			if (!map.isBlocked(fromX, fromY)
+					&& Pathfinder.findPath(map, fromX, fromY, goal[0], goal[1], false) != null) {
+				result[found++] = new int[] {fromX, fromY, goal[0], goal[1]};
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,115 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.tests;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+
+/** Snapshot of the thread counts, memory and CPU time consumed by this JVM,
+ * used by the benchmarks and load tests in this package. */
+public class ProcessStats {
+	private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	public final long timeMillis;
+	public final int liveThreads;
+	public final int peakThreads;
+	public final long startedThreads;
+	/** Process CPU time in nanoseconds, or -1 if not supported by the JVM. */
+	public final long cpuNanos;
+	public final long heapBytes;
+	/** Resident memory of the process, including the thread stacks, or
+	 * -1 if unknown. Only known on Linux. */
+	public final long residentBytes;
+
+	private ProcessStats() {
+		timeMillis = System.currentTimeMillis();
+		liveThreads = threadBean.getThreadCount();
+		peakThreads = threadBean.getPeakThreadCount();
+		startedThreads = threadBean.getTotalStartedThreadCount();
+		cpuNanos = processCpuTime();
+		heapBytes = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+		residentBytes = residentMemory();
+	}
+
+	public static ProcessStats take() {
+		return new ProcessStats();
+	}
+
+	/** Resets the peak thread count to the current number of live threads. */
+	public static void resetPeak() {
+		threadBean.resetPeakThreadCount();
+	}
+
+	private static long processCpuTime() {
+		OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+		if (osBean instanceof com.sun.management.OperatingSystemMXBean) {
+			return ((com.sun.management.OperatingSystemMXBean) osBean).getProcessCpuTime();
+		}
+		return -1;
+	}
+
+	private static long residentMemory() {
+		try {
+			BufferedReader reader = new BufferedReader(new FileReader("/proc/self/status"));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (line.startsWith("VmRSS:")) {
+						// e.g. "VmRSS:	  123456 kB"
+						String[] parts = line.substring(6).trim().split("\\s+");
+						return Long.parseLong(parts[0]) * 1024;
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			// not on Linux
+		} catch (NumberFormatException e) {
+			// unexpected format
+		}
+		return -1;
+	}
+
+	/** Returns a one-line summary of what happened between given earlier
+	 * snapshot and this one. */
+	public String since(ProcessStats earlier) {
+		long wallMillis = timeMillis - earlier.timeMillis;
+		StringBuilder result = new StringBuilder();
+		result.append("wall=").append(wallMillis).append("ms");
+		result.append(" liveThreads=").append(liveThreads);
+		result.append(" peakThreads=").append(peakThreads);
+		result.append(" startedThreads=").append(startedThreads - earlier.startedThreads);
+		result.append(" heap=").append(heapBytes / (1024 * 1024)).append("MB");
+		if (residentBytes >= 0) {
+			result.append(" resident=").append(residentBytes / (1024 * 1024)).append("MB");
+		}
+		if (cpuNanos >= 0 && earlier.cpuNanos >= 0) {
+			long cpuMillis = (cpuNanos - earlier.cpuNanos) / 1000000;
+			result.append(" cpu=").append(cpuMillis).append("ms");
+			if (wallMillis > 0) {
+				result.append(" (").append(100 * cpuMillis / wallMillis).append("% of one core)");
+			}
+		}
+		return result.toString();
+	}
+}
@@ -34,6 +34,8 @@ public class Robot implements Runnable {
 	private int delayDeviationMs = 100;
 	private int doNothingPart = 40; // number of cases where robot just waits a small delay
 	private int movePart = 4; // number of cases where a move command is given
+	/** Set once the robot has loaded a player for the first time. */
+	private volatile boolean arrived = false;
 	private static String[] chatMessages = new String[] {"Hi folks!", "How are you?",
 		"Where's the chocolate?", "I'm beginning to feel a bit hungry...",
 		"Isn't it time for hibernation yet?", "Eurofurence rocks", "^^", "lol", "XD",
@@ -56,6 +58,7 @@ public class Robot implements Runnable {
 		client = new Client();
 		client.init(null);
 		getToStatus(ClientStatus.exploring);
+		arrived = true;
 		while (true) {
 //			try {
 //			Thread.sleep(600);
@@ -67,6 +70,12 @@ public class Robot implements Runnable {
 		}
 	}
 
+	/** Returns whether the robot has connected, logged in and loaded
+	 * a player at least once. */
+	public boolean hasArrived() {
+		return arrived;
+	}
+
 	private void randomAction() {
 		if (clientStatus() != ClientStatus.exploring) {
 			if (random.nextBoolean()) {
@@ -81,6 +90,11 @@ public class Robot implements Runnable {
 			}
 			else if (rndInt > doNothingPart && rndInt <= doNothingPart+movePart) {
 				Map map = client.getCurrentMap();
+				if (map == null) {
+					// the map info hasn't arrived yet
+					delay();
+					return;
+				}
 				int x = random.nextInt(map.getWidth());
 				int y = random.nextInt(map.getHeight());
 				client.putUCOrder(new UCParseCommandOrder("/m "+x+" "+y));
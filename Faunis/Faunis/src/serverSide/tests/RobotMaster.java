@@ -21,16 +21,55 @@ package serverSide.tests;
 import java.util.ArrayList;
 import java.util.Random;
 
+import serverSide.MainServer;
 import serverSide.ServerSettings;
 
+import common.Threads;
+
+/** Lets robots play on a server. <br />
+ * Usage: RobotMaster <br />
+ * runs robotsCount robots against a server that is already running. <br />
+ * Usage: RobotMaster ramp [platform|virtual] [max robots] <br />
+ * starts a server in this JVM, then adds rampStep robots every
+ * rampInterval and reports memory and threads after each step. A step is
+ * sustainable if all robots so far have managed to connect, log in and
+ * load a player by its end. The run stops at the first step that isn't,
+ * or at max robots. With "virtual", the server's and the robots' threads
+ * are virtual threads (see common.Threads); note that the thread counts
+ * of ProcessStats only include platform threads. */
 public class RobotMaster {
 	private static int robotsCount = 20;
 	private static int playersPerRobot = 3;
+	private static int rampStep = 50;
+	private static long rampInterval = 15000;
+	private static int rampMaxRobots = 2000;
 	private static ServerSettings serverSettings = new ServerSettings();
 	private static ArrayList<Robot> robots;
+	private static long statsInterval = 10000;
 	public static void main(String[] args) {
+		if (args.length > 0 && args[0].equals("ramp")) {
+			boolean virtual = args.length > 1 && args[1].equals("virtual");
+			robotsCount = args.length > 2 ? Integer.parseInt(args[2]) : rampMaxRobots;
+			ramp(virtual);
+			System.exit(0);
+		}
 		initialise();
 		start();
+		reportStats();
+	}
+
+	/** Periodically prints thread counts and CPU time of this JVM,
+	 * which contains all robots' clients. */
+	private static void reportStats() {
+		ProcessStats start = ProcessStats.take();
+		while (true) {
+			try {
+				Thread.sleep(statsInterval);
+			} catch (InterruptedException e) {
+				return;
+			}
+			System.out.println("RobotMaster stats: "+ProcessStats.take().since(start));
+		}
 	}
 
 	private static void start() {
@@ -39,6 +78,50 @@ public class RobotMaster {
 		}
 	}
 
+	private static void ramp(boolean virtual) {
+		if (virtual && !Threads.useVirtualThreads()) {
+			System.out.println("RobotMaster: virtual threads need Java 24 or later.");
+			return;
+		}
+		initialise();
+		ProcessStats.resetPeak();
+		ProcessStats start = ProcessStats.take();
+		new MainServer().initAndRun();
+		int sustainable = 0;
+		int started = 0;
+		while (started < robots.size()) {
+			int stepEnd = Math.min(started + rampStep, robots.size());
+			try {
+				for (; started < stepEnd; started++) {
+					Threads.newThread(robots.get(started), "robot"+started).start();
+				}
+			} catch (OutOfMemoryError e) {
+				System.out.println("RobotMaster: can't start robot "+started+": "+e);
+				break;
+			}
+			try {
+				Thread.sleep(rampInterval);
+			} catch (InterruptedException e) {
+				return;
+			}
+			int arrived = 0;
+			for (int i = 0; i < started; i++) {
+				if (robots.get(i).hasArrived()) {
+					arrived++;
+				}
+			}
+			System.gc();
+			System.out.println("RobotMaster ramp: robots="+started+" arrived="+arrived+" "
+				+ProcessStats.take().since(start));
+			if (arrived < started) {
+				break;
+			}
+			sustainable = started;
+		}
+		System.out.println("RobotMaster ramp: "+(virtual ? "virtual" : "platform")
+			+" threads sustained "+sustainable+" robots");
+	}
+
 	private static void initialise() {
 		robots = new ArrayList<Robot>();
 		Random random = new Random(5l);
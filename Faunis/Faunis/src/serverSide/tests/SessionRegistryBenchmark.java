@@ -0,0 +1,211 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.tests;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import serverSide.Account;
+import serverSide.SessionRegistry;
+import serverSide.butler.Butler;
+import serverSide.player.ServerPlayer;
+import common.enums.CharacterClass;
+
+/** Measures the lookups that mapmans do for whispers (player name to
+ * butler) while accounts keep logging in, loading a player, unloading
+ * and logging out, like the robots of RobotMaster do. Compares the former
+ * synchronized HashMaps of MainServer, locked in their fixed order,
+ * against the SessionRegistry. <br />
+ * Usage: SessionRegistryBenchmark [lookup threads] [churn threads] [accounts] [seconds] */
+public class SessionRegistryBenchmark {
+	private static int lookupThreads = 8;
+	private static int churnThreads = 4;
+	private static int accounts = 200;
+	private static int seconds = 5;
+
+	public static void main(String[] args) throws InterruptedException {
+		if (args.length > 0) lookupThreads = Integer.parseInt(args[0]);
+		if (args.length > 1) churnThreads = Integer.parseInt(args[1]);
+		if (args.length > 2) accounts = Integer.parseInt(args[2]);
+		if (args.length > 3) seconds = Integer.parseInt(args[3]);
+		System.out.println("lookupThreads="+lookupThreads+" churnThreads="+churnThreads
+						   +" accounts="+accounts+" duration="+seconds+"s");
+		run(new LockedRegistry());
+		run(new ConcurrentRegistry());
+	}
+
+	private static void run(final Registry registry) throws InterruptedException {
+		final Account[] allAccounts = new Account[accounts];
+		final ServerPlayer[] allPlayers = new ServerPlayer[accounts];
+		for (int i = 0; i < accounts; i++) {
+			String accountName = "robot"+i;
+			ArrayList<String> playerNames = new ArrayList<String>();
+			playerNames.add(accountName+"player0");
+			allAccounts[i] = new Account(accountName, null, playerNames);
+			allPlayers[i] = new ServerPlayer(accountName+"player0", CharacterClass.ursine,
+											 "sw-green", accountName);
+		}
+		final AtomicLong lookups = new AtomicLong(0);
+		final AtomicLong transitions = new AtomicLong(0);
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < lookupThreads; t++) {
+			final Random random = new Random(t);
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					long count = 0;
+					while (!Thread.currentThread().isInterrupted()) {
+						registry.getButlerByPlayerName(allPlayers[random.nextInt(accounts)].getName());
+						count++;
+					}
+					lookups.addAndGet(count);
+				}
+			}));
+		}
+		for (int t = 0; t < churnThreads; t++) {
+			final int first = t;
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					long count = 0;
+					while (!Thread.currentThread().isInterrupted()) {
+						// every churn thread has its own accounts
+						for (int i = first; i < accounts; i += churnThreads) {
+							registry.login(allAccounts[i]);
+							registry.activate(allPlayers[i]);
+							registry.deactivate(allPlayers[i]);
+							registry.logout(allAccounts[i]);
+							count++;
+						}
+					}
+					transitions.addAndGet(count);
+				}
+			}));
+		}
+		ProcessStats before = ProcessStats.take();
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		Thread.sleep(seconds * 1000L);
+		ProcessStats after = ProcessStats.take();
+		for (Thread thread : threads) {
+			thread.interrupt();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		System.out.println(String.format("%-20s %,12d lookups/s %,10d login-logout cycles/s  %s",
+			registry.getClass().getSimpleName(), lookups.get() / seconds,
+			transitions.get() / seconds, after.since(before)));
+	}
+
+	private interface Registry {
+		void login(Account account);
+		void activate(ServerPlayer player);
+		void deactivate(ServerPlayer player);
+		void logout(Account account);
+		Butler getButlerByPlayerName(String playerName);
+	}
+
+	/** The way MainServer did it before the SessionRegistry. */
+	private static class LockedRegistry implements Registry {
+		private final HashMap<String, Butler> accnameToButler = new HashMap<String, Butler>();
+		private final HashMap<String, ServerPlayer> activePlayernameToPlayer = new HashMap<String, ServerPlayer>();
+		private final HashMap<String, Account> loggedAccnameToAccount = new HashMap<String, Account>();
+
+		@Override
+		public void login(Account account) {
+			synchronized(accnameToButler) {
+				synchronized(loggedAccnameToAccount) {
+					loggedAccnameToAccount.put(account.getName(), account);
+					accnameToButler.put(account.getName(), null);
+				}
+			}
+		}
+
+		@Override
+		public void activate(ServerPlayer player) {
+			synchronized(activePlayernameToPlayer) {
+				activePlayernameToPlayer.put(player.getName(), player);
+			}
+		}
+
+		@Override
+		public void deactivate(ServerPlayer player) {
+			synchronized(activePlayernameToPlayer) {
+				activePlayernameToPlayer.remove(player.getName());
+			}
+		}
+
+		@Override
+		public void logout(Account account) {
+			synchronized(accnameToButler) {
+				synchronized(loggedAccnameToAccount) {
+					loggedAccnameToAccount.remove(account.getName());
+					accnameToButler.remove(account.getName());
+				}
+			}
+		}
+
+		@Override
+		public Butler getButlerByPlayerName(String playerName) {
+			ServerPlayer player;
+			synchronized(activePlayernameToPlayer) {
+				player = activePlayernameToPlayer.get(playerName);
+			}
+			if (player == null) {
+				return null;
+			}
+			synchronized(accnameToButler) {
+				return accnameToButler.get(player.getAccountName());
+			}
+		}
+	}
+
+	private static class ConcurrentRegistry implements Registry {
+		private final SessionRegistry sessions = new SessionRegistry();
+
+		@Override
+		public void login(Account account) {
+			sessions.login(account, null);
+		}
+
+		@Override
+		public void activate(ServerPlayer player) {
+			sessions.activate(player);
+		}
+
+		@Override
+		public void deactivate(ServerPlayer player) {
+			sessions.deactivate(player);
+		}
+
+		@Override
+		public void logout(Account account) {
+			sessions.logout(account.getName());
+		}
+
+		@Override
+		public Butler getButlerByPlayerName(String playerName) {
+			return sessions.getButlerByPlayerName(playerName);
+		}
+	}
+}
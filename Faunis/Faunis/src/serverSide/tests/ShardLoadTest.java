@@ -0,0 +1,268 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.tests;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import serverSide.MainServer;
+import serverSide.ServerSettings;
+import serverSide.butler.Butler;
+import serverSide.butler.ClientConnection;
+import serverSide.butler.OutboundQueue;
+import serverSide.butlerToMapmanOrders.BMMoveOrder;
+import serverSide.butlerToMapmanOrders.BMOrder;
+import serverSide.butlerToMapmanOrders.BMRegisterOrder;
+import serverSide.butlerToMapmanOrders.BMUnregisterOrder;
+import serverSide.mapManager.MapManager;
+import serverSide.mapManager.MapShards;
+import serverSide.mapmanToButlerOrders.MBCharAtOtherMapmanOrder;
+import serverSide.mapmanToButlerOrders.MBOrder;
+import serverSide.player.ServerPlayer;
+
+import common.Link;
+import common.Map;
+import common.butlerToClientOrders.BCOrder;
+import common.enums.CharacterClass;
+import common.transport.EncodedOrder;
+
+/** Lets many players walk to random targets on one large map and counts
+ * how many move orders its mapmen execute per second, once for every
+ * number of shards. Each move order means finding a path and telling
+ * the players nearby. Players who cross into another shard are handed
+ * over like a butler would do it. Without enough cores, the throughput
+ * can't grow with the number of shards, of course. <br />
+ * Usage: ShardLoadTest [players] [seconds per run] [width] [height] */
+public class ShardLoadTest {
+	private static final int[] shardCounts = {1, 2, 4, 8};
+	private static final int clients = 16;
+	private static int players = 400;
+	private static double seconds = 5;
+	private static int width = 512;
+	private static int height = 256;
+
+	public static void main(String[] args) throws InterruptedException {
+		if (args.length > 0) players = Integer.parseInt(args[0]);
+		if (args.length > 1) seconds = Double.parseDouble(args[1]);
+		if (args.length > 2) width = Integer.parseInt(args[2]);
+		if (args.length > 3) height = Integer.parseInt(args[3]);
+		System.out.println("players="+players+" seconds="+seconds+" map="+width+"x"+height
+			+" cores="+Runtime.getRuntime().availableProcessors());
+		Map map = randomMap(new Random(3l));
+		MainServer server = new MainServer(new ServerSettings(
+			System.getProperty("java.io.tmpdir")+"/shardLoadTest/"));
+		PrintStream out = System.out;
+		for (int shardCount : shardCounts) {
+			// the mapmen log every order
+			System.setOut(new PrintStream(new OutputStream() {
+				@Override
+				public void write(int b) {
+				}
+			}));
+			try {
+				run(server, map, shardCount, out);
+			} finally {
+				System.setOut(out);
+			}
+		}
+		System.exit(0);
+	}
+
+	private static void run(MainServer server, Map map, int shardCount, PrintStream out)
+			throws InterruptedException {
+		final MapShards shards = new MapShards(server, map, shardCount);
+		shards.init();
+		final Random random = new Random(11l);
+		final ArrayList<SimulatedPlayer> simulated = new ArrayList<SimulatedPlayer>();
+		for (int i = 0; i < players; i++) {
+			ServerPlayer player = new ServerPlayer("load"+i, CharacterClass.values()[0],
+												   map.getName(), "load"+i);
+			int[] tile = freeTile(map, random);
+			player.moveAbsolute(tile[0], tile[1], false);
+			SimulatedPlayer simulatedPlayer = new SimulatedPlayer(server, player, i);
+			simulatedPlayer.mapman = shards.shardAt(tile[0], tile[1]);
+			await(simulatedPlayer.mapman, new BMRegisterOrder(simulatedPlayer.butler, player, false));
+			simulated.add(simulatedPlayer);
+		}
+		final AtomicLong moves = new AtomicLong();
+		final AtomicInteger handovers = new AtomicInteger();
+		final long deadline = System.nanoTime() + (long) (seconds * 1000000000);
+		Thread[] threads = new Thread[clients];
+		for (int c = 0; c < clients; c++) {
+			final int client = c;
+			threads[c] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Random clientRandom = new Random(client);
+					while (System.nanoTime() < deadline) {
+						for (int i = client; i < simulated.size(); i += clients) {
+							SimulatedPlayer player = simulated.get(i);
+							if (player.handOver(shards)) {
+								handovers.incrementAndGet();
+							}
+							int[] target = freeTile(shards.getMap(), clientRandom);
+							await(player.mapman, new BMMoveOrder(player.player, player.butler,
+																  target[0], target[1]));
+							moves.incrementAndGet();
+						}
+					}
+				}
+			}, "load_client_"+c);
+		}
+		long start = System.nanoTime();
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long nanos = System.nanoTime() - start;
+		long sent = 0;
+		for (SimulatedPlayer player : simulated) {
+			sent += player.butler.received.get();
+		}
+		out.println(String.format("%d shards: %,9.0f moves/s  %,10.0f orders to butlers/s  %,5d handovers",
+			shards.getShards().size(), moves.get() * 1e9 / nanos, sent * 1e9 / nanos,
+			handovers.get()));
+		shards.stop();
+	}
+
+	private static void await(MapManager mapman, BMOrder order) {
+		mapman.put(order);
+		while (!order.waitUntilDone(1000)) {
+			// the mapman must be busy, keep waiting
+		}
+	}
+
+	private static int[] freeTile(Map map, Random random) {
+		int x;
+		int y;
+		do {
+			x = random.nextInt(map.getWidth());
+			y = random.nextInt(map.getHeight());
+		} while (map.isBlocked(x, y));
+		return new int[] {x, y};
+	}
+
+	/** Blocks a tenth of the tiles. */
+	private static Map randomMap(Random random) {
+		long[] blockedTiles = new long[Map.blockedTilesLength(width, height)];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				if (random.nextInt(10) == 0) {
+					Map.setBlocked(blockedTiles, width, x, y, true);
+				}
+			}
+		}
+		return new Map("shardLoadTest", width, height, null, null,
+			blockedTiles, new ArrayList<Link>());
+	}
+
+	/** A player with a butler who only counts the orders he gets from
+	 * the mapmen, except for handovers, which its client thread carries
+	 * out like a butler would. */
+	private static class SimulatedPlayer {
+		final ServerPlayer player;
+		final CountingButler butler;
+		MapManager mapman;
+
+		SimulatedPlayer(MainServer server, ServerPlayer player, int port) {
+			this.player = player;
+			this.butler = new CountingButler(server, port);
+		}
+
+		/** Returns true if the player had to be handed over. */
+		boolean handOver(MapShards shards) {
+			MBCharAtOtherMapmanOrder order = butler.handovers.poll();
+			if (order == null || order.getSource() != mapman) {
+				return false;
+			}
+			await(mapman, new BMUnregisterOrder(butler, player, false, true));
+			mapman = order.getTargetMapman();
+			await(mapman, new BMRegisterOrder(butler, player, false, true));
+			return true;
+		}
+	}
+
+	static class CountingButler extends Butler {
+		final AtomicLong received = new AtomicLong();
+		final ConcurrentLinkedQueue<MBCharAtOtherMapmanOrder> handovers =
+			new ConcurrentLinkedQueue<MBCharAtOtherMapmanOrder>();
+
+		CountingButler(MainServer server, int port) {
+			super(server, new NullConnection(port));
+		}
+
+		@Override
+		public void put(MBOrder order) {
+			received.incrementAndGet();
+			if (order instanceof MBCharAtOtherMapmanOrder) {
+				handovers.add((MBCharAtOtherMapmanOrder) order);
+			}
+		}
+
+		@Override
+		public boolean offer(MBOrder order) {
+			put(order);
+			return true;
+		}
+	}
+
+	private static class NullConnection implements ClientConnection {
+		private final int port;
+
+		NullConnection(int port) {
+			this.port = port;
+		}
+
+		@Override
+		public void send(BCOrder order) throws IOException {
+		}
+
+		@Override
+		public void send(EncodedOrder order) throws IOException {
+		}
+
+		@Override
+		public OutboundQueue getOutboundQueue() {
+			return null;
+		}
+
+		@Override
+		public ObjectInputStream getInputStream() {
+			return null;
+		}
+
+		@Override
+		public void close() {
+		}
+
+		@Override
+		public int getPort() {
+			return port;
+		}
+	}
+}
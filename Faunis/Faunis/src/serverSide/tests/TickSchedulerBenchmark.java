@@ -0,0 +1,164 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.tests;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import common.modules.timerModule.TickScheduler;
+
+/** Compares the old one-java.util.Timer-per-Mover design against the
+ * shared TickScheduler. A fixed number of walkers is kept busy: each one
+ * walks a path of a few steps, and as soon as it arrives a new walk is
+ * started, just like robots clicking on the map again and again. <br />
+ * Usage: TickSchedulerBenchmark [walkers] [steps per path] [interval ms] [seconds] */
+public class TickSchedulerBenchmark {
+	private static int walkers = 300;
+	private static int stepsPerPath = 10;
+	private static long interval = 50;
+	private static int seconds = 10;
+
+	public static void main(String[] args) throws InterruptedException {
+		if (args.length > 0) walkers = Integer.parseInt(args[0]);
+		if (args.length > 1) stepsPerPath = Integer.parseInt(args[1]);
+		if (args.length > 2) interval = Long.parseLong(args[2]);
+		if (args.length > 3) seconds = Integer.parseInt(args[3]);
+		System.out.println("walkers="+walkers+" stepsPerPath="+stepsPerPath
+						   +" interval="+interval+"ms duration="+seconds+"s");
+		run(new TimerPerWalk());
+		run(new SchedulerPerWalk(TickScheduler.shared()));
+	}
+
+	private static void run(WalkStarter starter) throws InterruptedException {
+		AtomicLong steps = new AtomicLong(0);
+		AtomicLong walks = new AtomicLong(0);
+		System.gc();
+		ProcessStats.resetPeak();
+		ProcessStats before = ProcessStats.take();
+		Walker[] allWalkers = new Walker[walkers];
+		for (int i = 0; i < walkers; i++) {
+			allWalkers[i] = new Walker(starter, steps, walks);
+			allWalkers[i].startWalk();
+		}
+		Thread.sleep(seconds * 1000l);
+		for (Walker walker : allWalkers) {
+			walker.finish();
+		}
+		ProcessStats after = ProcessStats.take();
+		System.out.println(starter.getClass().getSimpleName()+": "+after.since(before)
+						   +" walks="+walks.get()+" steps="+steps.get());
+	}
+
+	private interface WalkStarter {
+		/** Runs given step periodically until the returned handle is cancelled. */
+		Cancellable start(Runnable step);
+	}
+
+	private interface Cancellable {
+		void cancel();
+	}
+
+	/** What Mover did before: a new Timer (and thus thread) per walk. */
+	private static class TimerPerWalk implements WalkStarter {
+		@Override
+		public Cancellable start(final Runnable step) {
+			final Timer timer = new Timer();
+			timer.scheduleAtFixedRate(new TimerTask() {
+				@Override
+				public void run() {
+					step.run();
+				}
+			}, 0, interval);
+			return new Cancellable() {
+				@Override
+				public void cancel() {
+					timer.cancel();
+				}
+			};
+		}
+	}
+
+	/** What Mover does now. */
+	private static class SchedulerPerWalk implements WalkStarter {
+		private final TickScheduler scheduler;
+		public SchedulerPerWalk(TickScheduler scheduler) {
+			this.scheduler = scheduler;
+		}
+		@Override
+		public Cancellable start(Runnable step) {
+			final ScheduledFuture<?> future = scheduler.scheduleAtFixedRate(step, interval);
+			return new Cancellable() {
+				@Override
+				public void cancel() {
+					future.cancel(false);
+				}
+			};
+		}
+	}
+
+	private static class Walker implements Runnable {
+		private final WalkStarter starter;
+		private final AtomicLong steps;
+		private final AtomicLong walks;
+		private Cancellable current;
+		private int stepsLeft;
+		private boolean finished;
+
+		public Walker(WalkStarter starter, AtomicLong steps, AtomicLong walks) {
+			this.starter = starter;
+			this.steps = steps;
+			this.walks = walks;
+			this.finished = false;
+		}
+
+		public synchronized void startWalk() {
+			if (finished) {
+				return;
+			}
+			stepsLeft = stepsPerPath;
+			walks.incrementAndGet();
+			current = starter.start(this);
+		}
+
+		@Override
+		public void run() {
+			synchronized(this) {
+				if (finished || stepsLeft <= 0) {
+					return;
+				}
+				stepsLeft--;
+				steps.incrementAndGet();
+				if (stepsLeft > 0) {
+					return;
+				}
+				current.cancel();
+			}
+			startWalk();
+		}
+
+		public synchronized void finish() {
+			finished = true;
+			if (current != null) {
+				current.cancel();
+			}
+		}
+	}
+}
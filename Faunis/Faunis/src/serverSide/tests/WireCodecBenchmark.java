@@ -0,0 +1,115 @@
+/* Copyright 2012 - 2014 Simon Ley alias "skarute"
+ *
+ * This file is part of Faunis.
+ *
+ * Faunis is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Faunis is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General
+ * Public License along with Faunis. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package serverSide.tests;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.util.Arrays;
+
+import common.butlerToClientOrders.BCAddCharOrder;
+import common.butlerToClientOrders.BCChangeCharOrder;
+import common.butlerToClientOrders.BCChatMessageOrder;
+import common.butlerToClientOrders.BCRemoveCharOrder;
+import common.clientToButlerOrders.CBChatOrder;
+import common.clientToButlerOrders.CBMoveOrder;
+import common.enums.CharacterClass;
+import common.enums.Direction;
+import common.enums.Mood;
+import common.graphics.PlayerData;
+import common.graphics.PlayerDataDelta;
+import common.movement.Path;
+import common.transport.OrderCodec;
+import common.transport.WireFormat;
+
+/** Prints bytes per order and encode / decode time per order for
+ * every WireFormat, using the orders that make up most of the traffic.
+ * Usage: WireCodecBenchmark [iterations] */
+public class WireCodecBenchmark {
+	private static int iterations = 200000;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0) iterations = Integer.parseInt(args[0]);
+		Object[] orders = sampleOrders();
+		for (WireFormat format : WireFormat.values()) {
+			OrderCodec codec = format.createCodec();
+			// warm up, then measure
+			measure(codec, orders, iterations / 4, false);
+			measure(codec, orders, iterations, true);
+		}
+	}
+
+	private static Object[] sampleOrders() {
+		PlayerData standing = playerData("robot12player2", 7, 9, 0);
+		PlayerData walking = playerData("robot12player2", 7, 9, 8);
+		return new Object[] {
+			new CBMoveOrder(12, 3),
+			new CBChatOrder("Where's the chocolate?", null),
+			new BCChangeCharOrder("robot12player2", new PlayerDataDelta().setPosition(
+				walking.x, walking.y, walking.direction).setPath(walking.path)),
+			new BCChangeCharOrder("robot12player2", new PlayerDataDelta().setMood(Mood.sad)),
+			new BCAddCharOrder("robot12player2", standing),
+			new BCRemoveCharOrder("robot12player2"),
+			new BCChatMessageOrder("Where's the chocolate?", "robot12player2", true)
+		};
+	}
+
+	private static PlayerData playerData(String name, int x, int y, int pathLength) {
+		PlayerData data = new PlayerData();
+		data.name = name;
+		data.type = CharacterClass.ursine;
+		data.mood = Mood.happy;
+		data.x = x;
+		data.y = y;
+		data.direction = Direction.right;
+		if (pathLength > 0) {
+			data.path = new Path();
+			for (int i = 1; i <= pathLength; i++) {
+				data.path.push(new Point(x + i, y + i / 2));
+			}
+		}
+		data.accessoires = Arrays.asList("hat");
+		return data;
+	}
+
+	private static void measure(OrderCodec codec, Object[] orders, int count,
+								boolean print) throws IOException {
+		for (Object order : orders) {
+			byte[] encoded = codec.encode(order);
+			long start = System.nanoTime();
+			for (int i = 0; i < count; i++) {
+				encoded = codec.encode(order);
+			}
+			long encodeNanos = System.nanoTime() - start;
+			Object decoded = null;
+			start = System.nanoTime();
+			for (int i = 0; i < count; i++) {
+				decoded = codec.decode(encoded, 0, encoded.length);
+			}
+			long decodeNanos = System.nanoTime() - start;
+			if (decoded.getClass() != order.getClass()) {
+				throw new RuntimeException("Decoded "+decoded+" instead of "+order);
+			}
+			if (print) {
+				System.out.println(String.format("%-14s %-22s %5d bytes %7d ns encode %7d ns decode",
+					codec.getClass().getSimpleName(), order.getClass().getSimpleName(),
+					encoded.length, encodeNanos / count, decodeNanos / count));
+			}
+		}
+	}
+}
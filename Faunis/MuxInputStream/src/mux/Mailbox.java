@@ -0,0 +1,180 @@
+package mux;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+
+/** A bounded queue for many producers and a single consumer, in a ring
+ * buffer without locks. Each slot has a sequence number which tells
+ * whether it is free for the producer that has claimed it, or filled for
+ * the consumer: Producers claim a slot by incrementing tail, fill it and
+ * then publish it by setting its sequence. The consumer takes from head,
+ * which only it changes. <br />
+ * The consumer parks while the mailbox is empty and is woken up by the
+ * next producer. Producers only wait if the mailbox is full, which should
+ * be rare, so they simply check again after growing pauses. <br />
+ * Only one thread at a time may call take() or poll(). */
+public class Mailbox {
+	private static final long maxProducerPauseNanos = 1000000;
+	
+	private final int mask;
+	private final AtomicReferenceArray<Object> slots;
+	/** A slot with sequence s is free for the producer of position s,
+	 * and filled for the consumer at position s-1. */
+	private final AtomicLongArray sequences;
+	private final AtomicLong tail;
+	private final AtomicLong head;
+	/** The consumer while it is parked or about to park, otherwise null. */
+	private volatile Thread parkedConsumer;
+	private volatile boolean closed;
+	
+	
+	/** Capacity is rounded up to the next power of two. */
+	public Mailbox(int capacity) {
+		if (capacity < 1 || capacity > (1 << 30)) {
+			throw new IllegalArgumentException("Invalid capacity "+capacity);
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		this.mask = size - 1;
+		this.slots = new AtomicReferenceArray<Object>(size);
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+		this.tail = new AtomicLong(0);
+		this.head = new AtomicLong(0);
+		this.closed = false;
+	}
+	
+	
+	/** Appends given object unless the mailbox is full or closed.
+	 * Returns whether it was appended. Never blocks. */
+	public boolean offer(Object object) {
+		if (object == null) {
+			throw new NullPointerException();
+		}
+		while (true) {
+			if (closed) {
+				return false;
+			}
+			long position = tail.get();
+			int index = (int) position & mask;
+			long sequence = sequences.get(index);
+			if (sequence == position) {
+				if (tail.compareAndSet(position, position + 1)) {
+					slots.lazySet(index, object);
+					// publishes the object, which was written before
+					sequences.set(index, position + 1);
+					Thread consumer = parkedConsumer;
+					if (consumer != null) {
+						LockSupport.unpark(consumer);
+					}
+					return true;
+				}
+			} else if (sequence < position) {
+				// the consumer hasn't taken the object of the last round yet
+				return false;
+			}
+			// else another producer has claimed the slot, try the next one
+		}
+	}
+	
+	
+	/** Appends given object, waiting while the mailbox is full. Returns
+	 * false if the mailbox is or gets closed. */
+	public boolean put(Object object) throws InterruptedException {
+		long pause = 1000;
+		while (!offer(object)) {
+			if (closed) {
+				return false;
+			}
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			LockSupport.parkNanos(this, pause);
+			pause = Math.min(pause * 2, maxProducerPauseNanos);
+		}
+		return true;
+	}
+	
+	
+	/** Removes and returns the oldest object, or returns null if there is
+	 * none. Only to be called by the consumer. */
+	public Object poll() {
+		long position = head.get();
+		int index = (int) position & mask;
+		if (sequences.get(index) != position + 1) {
+			// empty, or the producer hasn't published yet
+			return null;
+		}
+		Object result = slots.get(index);
+		slots.lazySet(index, null);
+		head.lazySet(position + 1);
+		// frees the slot for the producer of the next round
+		sequences.set(index, position + mask + 1);
+		return result;
+	}
+	
+	
+	/** Removes and returns the oldest object, waiting until there is one.
+	 * Returns null once the mailbox is closed. Only to be called by the
+	 * consumer. */
+	public Object take() throws InterruptedException {
+		while (true) {
+			Object result = poll();
+			if (result != null) {
+				return result;
+			}
+			if (closed) {
+				return null;
+			}
+			parkedConsumer = Thread.currentThread();
+			// a producer who published before now didn't see us parking
+			result = poll();
+			if (result == null && !closed) {
+				LockSupport.park(this);
+			}
+			parkedConsumer = null;
+			if (result != null) {
+				return result;
+			}
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+	}
+	
+	
+	/** Rejects all further objects and wakes up the consumer. Objects that
+	 * are already in the mailbox can still be taken. */
+	public void close() {
+		closed = true;
+		Thread consumer = parkedConsumer;
+		if (consumer != null) {
+			LockSupport.unpark(consumer);
+		}
+	}
+	
+	
+	public boolean isClosed() {
+		return closed;
+	}
+	
+	
+	/** Returns the number of objects in the mailbox, which may already
+	 * be outdated when it is returned. */
+	public int size() {
+		long size = tail.get() - head.get();
+		return (int) Math.max(0, Math.min(size, mask + 1));
+	}
+	
+	
+	public int capacity() {
+		return mask + 1;
+	}
+}
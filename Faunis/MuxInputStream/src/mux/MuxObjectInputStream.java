@@ -6,9 +6,9 @@ import java.io.InterruptedIOException;
 import java.io.ObjectInput;
 import java.io.ObjectInputStream;
 import java.util.ArrayList;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.lang.UnsupportedOperationException;
 
@@ -20,13 +20,16 @@ import listeners.StreamExceptionListener;
 
 /** MuxObjectInputStream itself is not thread-safe */
 public class MuxObjectInputStream implements ObjectInput {
+	/** creates the threads of all Muxes; null means plain new Thread() */
+	private static volatile ThreadFactory threadFactory = null;
 	/** name is used for String representation and to name the Mux threads */
 
 	protected final String name;
 	protected final String streamClosedMessage = "Stream Closed";
 	protected final CopyOnWriteArrayList<ObjectInputStreamRunnable> streamRunnables;
 	protected final CopyOnWriteArrayList<BlockingQueueRunnable> queueRunnables;
-	protected final BlockingQueue<Object> input;
+	protected final CopyOnWriteArrayList<Inlet> inlets;
+	protected final Mailbox input;
 	protected final AtomicBoolean isClosing;
 	protected boolean closed;
 	protected final CopyOnWriteArrayList<QueueCloseListener> queueCloseListeners;
@@ -63,7 +66,8 @@ public class MuxObjectInputStream implements ObjectInput {
 		this.streamCloseListeners = new CopyOnWriteArrayList<StreamCloseListener>();
 		this.streamExceptionListeners = new CopyOnWriteArrayList<StreamExceptionListener>();
 		this.readingThreads = new CopyOnWriteArrayList<Thread>();
-		this.input = new LinkedBlockingQueue<Object>(capacity);
+		this.input = new Mailbox(capacity);
+		this.inlets = new CopyOnWriteArrayList<Inlet>();
 		ArrayList<Thread> streamThreads = new ArrayList<Thread>();
 		this.streamRunnables = new CopyOnWriteArrayList<ObjectInputStreamRunnable>();
 		ArrayList<Thread> queueThreads = new ArrayList<Thread>();
@@ -112,6 +116,25 @@ public class MuxObjectInputStream implements ObjectInput {
 	}
 
 	
+	/** Sets the factory that creates the threads of all Muxes constructed
+	 * afterwards, e.g. one for virtual threads. The threads are named
+	 * after creation. Pass null to go back to plain threads. */
+	public static void setThreadFactory(ThreadFactory factory) {
+		threadFactory = factory;
+	}
+	
+	
+	private static Thread newThread(Runnable runnable, String threadName) {
+		ThreadFactory factory = threadFactory;
+		if (factory == null) {
+			return new Thread(runnable, threadName);
+		}
+		Thread thread = factory.newThread(runnable);
+		thread.setName(threadName);
+		return thread;
+	}
+	
+	
 	public int getNumberOfStreams() {
 		return this.streamRunnables.size();
 	}
@@ -122,6 +145,21 @@ public class MuxObjectInputStream implements ObjectInput {
 	}
 	
 	
+	public int getNumberOfInlets() {
+		return this.inlets.size();
+	}
+	
+	
+	/** Adds an inlet through which producers put objects of given class
+	 * directly into this mux. Unlike a queue, it needs no thread. */
+	@SuppressWarnings("rawtypes")
+	public Inlet addInlet(Class filter) {
+		Inlet inlet = new Inlet(filter);
+		this.inlets.add(inlet);
+		return inlet;
+	}
+	
+	
 	@SuppressWarnings("rawtypes")
 	public void addStream(ObjectInputStream stream, Class filter) {
 		addStreamWithoutStartingIt(stream, filter).start();
@@ -132,7 +170,7 @@ public class MuxObjectInputStream implements ObjectInput {
 	private Thread addStreamWithoutStartingIt(ObjectInputStream stream, Class filter) {
 		ObjectInputStreamRunnable streamRunnable = new ObjectInputStreamRunnable(stream, filter);
 		this.streamRunnables.add(streamRunnable);
-		Thread thread = new Thread(streamRunnable, "Mux[name="+name+"]: Thread for stream "+stream);
+		Thread thread = newThread(streamRunnable, "Mux[name="+name+"]: Thread for stream "+stream);
 		streamRunnable.setThread(thread);
 		return thread;
 	}
@@ -146,7 +184,7 @@ public class MuxObjectInputStream implements ObjectInput {
 	private Thread addQueueWithoutStartingIt(BlockingQueue queue, Class filter) {
 		BlockingQueueRunnable queueRunnable = new BlockingQueueRunnable(queue, filter);
 		this.queueRunnables.add(queueRunnable);
-		Thread thread = new Thread(queueRunnable, "Mux[name="+name+"]: Thread for queue "+queue);
+		Thread thread = newThread(queueRunnable, "Mux[name="+name+"]: Thread for queue "+queue);
 		queueRunnable.setThread(thread);
 		return thread;
 	}
@@ -236,6 +274,19 @@ public class MuxObjectInputStream implements ObjectInput {
 	public boolean isClosed() {
 		return closed;
 	}
+	
+	
+	/** Puts given object directly into the input of this mux, without going
+	 * through a stream or queue thread. Doesn't block and doesn't apply any
+	 * filter, so it is meant for producers that must never wait, like
+	 * non-blocking I/O threads that have already checked what they read.
+	 * Returns false if the mux is full or closed. */
+	public boolean offer(Object object) {
+		if (closed) {
+			return false;
+		}
+		return input.offer(object);
+	}
 
 	
 	@Override
@@ -248,6 +299,9 @@ public class MuxObjectInputStream implements ObjectInput {
 			}
 			try {
 				Object result = input.take();
+				if (result == null) {
+					throw new IOException(streamClosedMessage);
+				}
 				return result;
 			} catch (InterruptedException e) {
 				if (isClosing.get()) {
@@ -272,6 +326,7 @@ public class MuxObjectInputStream implements ObjectInput {
 		boolean success = isClosing.compareAndSet(false, true);
 		if (success) {
 			closed = true;
+			input.close();
 			for (Thread thread : readingThreads) {
 				thread.interrupt();
 			}
@@ -307,6 +362,10 @@ public class MuxObjectInputStream implements ObjectInput {
 		return queueRunnables.get(index);
 	}
 	
+	public Inlet getInlet(int index) {
+		return inlets.get(index);
+	}
+	
 	
 	protected boolean messageMeansStreamClosed(String errorMessage) {
 		if (
@@ -340,6 +399,50 @@ public class MuxObjectInputStream implements ObjectInput {
 	}
 	
 	
+	/** Lets producers put objects directly into the mux. The filter is
+	 * applied right away, so the producer learns about a wrong object
+	 * instead of an exception listener. */
+	@SuppressWarnings("rawtypes")
+	public class Inlet {
+		private final Class _class;
+		
+		public Inlet(Class _class) {
+			this._class = _class;
+		}
+		
+		/** Puts given object into the mux, waiting while it is full.
+		 * Returns false if the mux is closed. Throws an
+		 * IllegalArgumentException if the object doesn't pass the filter. */
+		public boolean put(Object object) throws InterruptedException {
+			check(object);
+			return input.put(object);
+		}
+		
+		/** Like put(), but returns false instead of waiting if the mux
+		 * is full. */
+		public boolean offer(Object object) {
+			check(object);
+			return input.offer(object);
+		}
+		
+		private void check(Object object) {
+			if (!_class.isInstance(object)) {
+				throw new IllegalArgumentException(
+					MuxObjectInputStream.this+": "+object+" is no "+_class.getName()
+				);
+			}
+		}
+		
+		public boolean isClosed() {
+			return input.isClosed();
+		}
+		
+		public Class getFilter() {
+			return _class;
+		}
+	}
+	
+	
 	@SuppressWarnings("rawtypes")
 	public class BlockingQueueRunnable implements Runnable {
 		private Thread thread;
@@ -382,7 +485,9 @@ public class MuxObjectInputStream implements ObjectInput {
 				if (hasRead != null) {
 					if (_class.isInstance(hasRead)) {
 						try {
-							MuxObjectInputStream.this.input.put(hasRead);
+							if (!MuxObjectInputStream.this.input.put(hasRead)) {
+								break;
+							}
 						} catch (InterruptedException e) {
 							if (queueIsClosing.get()) {
 								break;
@@ -492,7 +597,9 @@ public class MuxObjectInputStream implements ObjectInput {
 				if (hasRead != null) {
 					if (_class.isInstance(hasRead)) {
 						try {
-							MuxObjectInputStream.this.input.put(hasRead);
+							if (!MuxObjectInputStream.this.input.put(hasRead)) {
+								break;
+							}
 						} catch (InterruptedException e) {
 							if (streamIsClosing.get()) {
 								break;
@@ -188,5 +188,204 @@ public class WorkTest {
 		}
 		assertTrue(thrown);
 	}
+	
+	
+	@Test
+	public void testMailboxOrder() {
+		Mailbox mailbox = new Mailbox(8);
+		for (int i = 0; i < 5; i++) {
+			assertTrue(mailbox.offer(i));
+		}
+		assertEquals(5, mailbox.size());
+		for (int i = 0; i < 5; i++) {
+			assertEquals(i, mailbox.poll());
+		}
+		assertNull(mailbox.poll());
+		assertEquals(0, mailbox.size());
+	}
+	
+	
+	@Test
+	public void testMailboxFull() {
+		Mailbox mailbox = new Mailbox(5);
+		assertEquals(8, mailbox.capacity());
+		for (int i = 0; i < 8; i++) {
+			assertTrue(mailbox.offer(i));
+		}
+		assertFalse(mailbox.offer(8));
+		assertEquals(0, mailbox.poll());
+		assertTrue(mailbox.offer(8));
+		assertFalse(mailbox.offer(9));
+		for (int i = 1; i <= 8; i++) {
+			assertEquals(i, mailbox.poll());
+		}
+	}
+	
+	
+	@Test
+	public void testMailboxWrapAround() {
+		Mailbox mailbox = new Mailbox(4);
+		int next = 0;
+		int expected = 0;
+		// many rounds through the slots, with a varying fill level
+		for (int round = 0; round < 1000; round++) {
+			int count = 1 + round % 4;
+			for (int i = 0; i < count; i++) {
+				assertTrue(mailbox.offer(next++));
+			}
+			for (int i = 0; i < count; i++) {
+				assertEquals(expected++, mailbox.poll());
+			}
+			assertNull(mailbox.poll());
+		}
+	}
+	
+	
+	@Test(timeout=20000)
+	public void testMailboxProducers() throws InterruptedException {
+		final Mailbox mailbox = new Mailbox(16);
+		final int producers = 4;
+		final int perProducer = 20000;
+		Thread[] threads = new Thread[producers];
+		for (int p = 0; p < producers; p++) {
+			final int producer = p;
+			threads[p] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < perProducer; i++) {
+							assertTrue(mailbox.put(new int[] {producer, i}));
+						}
+					} catch (InterruptedException e) {
+						e.printStackTrace();
+					}
+				}
+			});
+			threads[p].start();
+		}
+		// each producer's objects must arrive completely and in order
+		int[] nextOf = new int[producers];
+		for (int i = 0; i < producers * perProducer; i++) {
+			int[] received = (int[]) mailbox.take();
+			assertEquals(nextOf[received[0]], received[1]);
+			nextOf[received[0]]++;
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertNull(mailbox.poll());
+		for (int p = 0; p < producers; p++) {
+			assertEquals(perProducer, nextOf[p]);
+		}
+	}
+	
+	
+	@Test(timeout=10000)
+	public void testMailboxTakeWakesUp() throws InterruptedException {
+		final Mailbox mailbox = new Mailbox(4);
+		final Object[] taken = new Object[1];
+		Thread consumer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					taken[0] = mailbox.take();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		});
+		consumer.start();
+		while (consumer.getState() != Thread.State.WAITING) {
+			Thread.sleep(10);
+		}
+		assertTrue(mailbox.offer("a"));
+		consumer.join();
+		assertEquals("a", taken[0]);
+	}
+	
+	
+	@Test(timeout=10000)
+	public void testMailboxClose() throws InterruptedException {
+		final Mailbox mailbox = new Mailbox(4);
+		assertTrue(mailbox.offer("a"));
+		mailbox.close();
+		assertTrue(mailbox.isClosed());
+		assertFalse(mailbox.offer("b"));
+		assertFalse(mailbox.put("b"));
+		// what is already in there can still be taken
+		assertEquals("a", mailbox.take());
+		assertNull(mailbox.take());
+		
+		// a parked consumer is woken up
+		final Mailbox other = new Mailbox(4);
+		final Object[] taken = new Object[] {"nothing yet"};
+		Thread consumer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					taken[0] = other.take();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		});
+		consumer.start();
+		while (consumer.getState() != Thread.State.WAITING) {
+			Thread.sleep(10);
+		}
+		other.close();
+		consumer.join();
+		assertNull(taken[0]);
+	}
+	
+	
+	@Test(timeout=10000)
+	public void testInlet() throws IOException, InterruptedException {
+		MuxObjectInputStream myMux = new MuxObjectInputStream(
+			"mux", 4, false, new ObjectInputStream[0], new Class<?>[0],
+			new BlockingQueue<?>[0], new Class<?>[0]
+		);
+		MuxObjectInputStream.Inlet strings = myMux.addInlet(String.class);
+		MuxObjectInputStream.Inlet integers = myMux.addInlet(Integer.class);
+		assertEquals(2, myMux.getNumberOfInlets());
+		assertSame(strings, myMux.getInlet(0));
+		assertEquals(String.class, strings.getFilter());
+		
+		assertTrue(strings.put("a"));
+		assertTrue(integers.offer(1));
+		assertTrue(strings.offer("b"));
+		assertEquals("a", myMux.readObject());
+		assertEquals(1, myMux.readObject());
+		assertEquals("b", myMux.readObject());
+		
+		// the filter is checked when putting, not when reading
+		boolean thrown = false;
+		try {
+			strings.offer(1);
+		} catch (IllegalArgumentException e) {
+			thrown = true;
+		}
+		assertTrue(thrown);
+		thrown = false;
+		try {
+			integers.put("c");
+		} catch (IllegalArgumentException e) {
+			thrown = true;
+		}
+		assertTrue(thrown);
+		
+		myMux.close();
+		assertTrue(strings.isClosed());
+		assertFalse(strings.offer("d"));
+		assertFalse(strings.put("d"));
+		thrown = false;
+		try {
+			myMux.readObject();
+		} catch(IOException e) {
+			assertEquals(e.getMessage(), "Stream Closed");
+			thrown = true;
+		}
+		assertTrue(thrown);
+	}
 
 }